@@ -33,6 +33,11 @@ import java.util.Random;
 public class BitmapUtils {
     private static final String TAG = "BitmapUtils";
 
+    // Number of pixels of each bitmap read at once when comparing bitmaps.
+    private static final int COMPARE_BAND_PIXELS = 64 * 1024;
+
+    private static final int MAX_LOGGED_MISMATCHES = 10;
+
     private BitmapUtils() {}
 
     private static Boolean compareBasicBitmapsInfo(Bitmap bmp1, Bitmap bmp2) {
@@ -66,13 +71,11 @@ public class BitmapUtils {
         final Boolean basicComparison = compareBasicBitmapsInfo(bmp1, bmp2);
         if (basicComparison != null) return basicComparison.booleanValue();
 
-        for (int i = 0; i < bmp1.getWidth(); i++) {
-            for (int j = 0; j < bmp1.getHeight(); j++) {
-                if (bmp1.getPixel(i, j) != bmp2.getPixel(i, j)) {
-                    Log.d(TAG, "compareBitmaps(): pixels (" + i + ", " + j + ") don't match");
-                    return false;
-                }
-            }
+        final int[] mismatch = new int[2];
+        if (countMismatchedPixels(bmp1, bmp2, 1, mismatch) != 0) {
+            Log.d(TAG, "compareBitmaps(): pixels (" + mismatch[0] + ", " + mismatch[1]
+                    + ") don't match");
+            return false;
         }
         return true;
     }
@@ -90,19 +93,14 @@ public class BitmapUtils {
         final int width = bmp1.getWidth();
         final int height = bmp1.getHeight();
 
-        final long numberPixels = width * height;
-        long numberMismatches = 0;
-
-        for (int i = 0; i < width; i++) {
-            for (int j = 0; j < height; j++) {
-                if (bmp1.getPixel(i, j) != bmp2.getPixel(i, j)) {
-                    numberMismatches++;
-                    if (numberMismatches <= 10) {
-                        // Let's not spam logcat...
-                        Log.w(TAG, "compareBitmaps(): pixels (" + i + ", " + j + ") don't match");
-                    }
-                }
-            }
+        final long numberPixels = (long) width * height;
+        // Let's not spam logcat...
+        final int[] mismatches = new int[2 * MAX_LOGGED_MISMATCHES];
+        final long numberMismatches =
+                countMismatchedPixels(bmp1, bmp2, Long.MAX_VALUE, mismatches);
+        for (int i = 0; i < Math.min(numberMismatches, MAX_LOGGED_MISMATCHES); i++) {
+            Log.w(TAG, "compareBitmaps(): pixels (" + mismatches[2 * i] + ", "
+                    + mismatches[2 * i + 1] + ") don't match");
         }
         final double actualPrecision = ((double) numberPixels - numberMismatches) / (numberPixels);
         Log.v(TAG, "compareBitmaps(): numberPixels=" + numberPixels
@@ -112,6 +110,56 @@ public class BitmapUtils {
         return actualPrecision >= minimumPrecision;
     }
 
+    /**
+     * Counts the pixels which differ between two bitmaps of the same size.
+     *
+     * <p>The bitmaps are read a band of rows at a time through {@link Bitmap#getPixels}, into
+     * buffers which are reused for the whole comparison, instead of one {@link Bitmap#getPixel}
+     * call per pixel.
+     *
+     * @param maxMismatches stops comparing once this many mismatches were found, 1 answers
+     *     whether the bitmaps differ at all and {@link Long#MAX_VALUE} counts all mismatches.
+     * @param firstMismatches receives the x and y of the first mismatches in row order, as
+     *     consecutive pairs until it is full. May be null.
+     * @return the number of mismatched pixels, at most {@code maxMismatches}.
+     */
+    public static long countMismatchedPixels(Bitmap bmp1, Bitmap bmp2, long maxMismatches,
+            int[] firstMismatches) {
+        if (bmp1.getWidth() != bmp2.getWidth() || bmp1.getHeight() != bmp2.getHeight()) {
+            throw new IllegalArgumentException("Bitmap sizes don't match");
+        }
+        final int width = bmp1.getWidth();
+        final int height = bmp1.getHeight();
+        if (width == 0 || height == 0 || maxMismatches <= 0) {
+            return 0;
+        }
+
+        final int bandHeight = Math.max(1, Math.min(height, COMPARE_BAND_PIXELS / width));
+        final int[] pixels1 = new int[width * bandHeight];
+        final int[] pixels2 = new int[width * bandHeight];
+        final int maxReported = firstMismatches == null ? 0 : firstMismatches.length / 2;
+        long numberMismatches = 0;
+
+        for (int top = 0; top < height; top += bandHeight) {
+            final int rows = Math.min(bandHeight, height - top);
+            bmp1.getPixels(pixels1, 0, width, 0, top, width, rows);
+            bmp2.getPixels(pixels2, 0, width, 0, top, width, rows);
+            final int length = width * rows;
+            for (int i = 0; i < length; i++) {
+                if (pixels1[i] != pixels2[i]) {
+                    if (numberMismatches < maxReported) {
+                        firstMismatches[2 * (int) numberMismatches] = i % width;
+                        firstMismatches[2 * (int) numberMismatches + 1] = top + i / width;
+                    }
+                    if (++numberMismatches >= maxMismatches) {
+                        return numberMismatches;
+                    }
+                }
+            }
+        }
+        return numberMismatches;
+    }
+
     public static Bitmap generateRandomBitmap(int width, int height) {
         final Bitmap bmp = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
         final Random generator = new Random();
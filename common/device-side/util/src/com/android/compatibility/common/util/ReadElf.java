@@ -19,12 +19,19 @@ package com.android.compatibility.common.util;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
 
 /**
  * A poor man's implementation of the readelf command. This program is designed
  * to parse ELF (Executable and Linkable Format) files.
+ *
+ * <p>The file is memory-mapped and all headers, tables and strings are decoded directly from the
+ * mapping. Symbol tables are only decoded on the first lookup.
  */
 public class ReadElf implements AutoCloseable {
     /** The magic values for the ELF identification. */
@@ -122,9 +129,24 @@ public class ReadElf implements AutoCloseable {
         }
     }
 
+    /** Size of the largest ELF header, the 64-bit one */
+    private static final int MAX_EHDR_SIZE = 64;
+
     private final String mPath;
     private final RandomAccessFile mFile;
-    private final byte[] mBuffer = new byte[512];
+    private final FileChannel mChannel;
+    /** Region of the file read by the sequential readX() methods */
+    private ByteBuffer mBuffer = newBuffer(MAX_EHDR_SIZE);
+    /** Offset in the file of {@link #mBuffer} */
+    private long mBufferOffset;
+    /** Current read position in the file for the sequential readX() methods */
+    private long mPosition;
+    /** String table read by {@link #readString} */
+    private ByteBuffer mStrings = newBuffer(512);
+    /** Offset in the file of {@link #mStrings} */
+    private long mStringsOffset;
+    /** Scratch buffer to decode strings */
+    private byte[] mStringBuffer = new byte[512];
     private int mEndian;
     private boolean mIsDynamic;
     private boolean mIsPIE;
@@ -195,14 +217,24 @@ public class ReadElf implements AutoCloseable {
     private ReadElf(File file) throws IOException {
         mPath = file.getPath();
         mFile = new RandomAccessFile(file, "r");
+        mChannel = mFile.getChannel();
 
-        if (mFile.length() < EI_NIDENT) {
-            throw new IllegalArgumentException("Too small to be an ELF file: " + file);
-        }
+        try {
+            if (mFile.length() < EI_NIDENT) {
+                throw new IllegalArgumentException("Too small to be an ELF file: " + file);
+            }
 
-        readHeader();
+            readHeader();
+        } catch (IOException | RuntimeException e) {
+            close();
+            throw e;
+        }
     }
 
+    /**
+     * Closes the file. As before, symbol tables which were not looked up yet can no longer be
+     * read, and {@link #getSymbol} and {@link #getDynamicSymbol} then return null.
+     */
     @Override
     public void close() {
         try {
@@ -221,15 +253,14 @@ public class ReadElf implements AutoCloseable {
     }
 
     private void readHeader() throws IOException {
-        mFile.seek(0);
-        mFile.readFully(mBuffer, 0, EI_NIDENT);
-
-        if (mBuffer[0] != ELFMAG[0] || mBuffer[1] != ELFMAG[1] ||
-                mBuffer[2] != ELFMAG[2] || mBuffer[3] != ELFMAG[3]) {
+        // Read as much as the largest header; a truncated header fails in readX().
+        loadSequential(0, MAX_EHDR_SIZE);
+        if (mBuffer.get(0) != ELFMAG[0] || mBuffer.get(1) != ELFMAG[1] ||
+                mBuffer.get(2) != ELFMAG[2] || mBuffer.get(3) != ELFMAG[3]) {
             throw new IllegalArgumentException("Invalid ELF file: " + mPath);
         }
 
-        int elfClass = mBuffer[EI_CLASS];
+        int elfClass = mBuffer.get(EI_CLASS);
         if (elfClass == ELFCLASS32) {
             mAddrSize = 4;
         } else if (elfClass == ELFCLASS64) {
@@ -238,7 +269,7 @@ public class ReadElf implements AutoCloseable {
             throw new IOException("Invalid ELF EI_CLASS: " + elfClass + ": " + mPath);
         }
 
-        mEndian = mBuffer[EI_DATA];
+        mEndian = mBuffer.get(EI_DATA);
         if (mEndian == ELFDATA2LSB) {
         } else if (mEndian == ELFDATA2MSB) {
             throw new IOException("Unsupported ELFDATA2MSB file: " + mPath);
@@ -246,6 +277,7 @@ public class ReadElf implements AutoCloseable {
             throw new IOException("Invalid ELF EI_DATA: " + mEndian + ": " + mPath);
         }
 
+        seek(EI_NIDENT);
         mType = readHalf();
 
         int e_machine = readHalf();
@@ -290,9 +322,11 @@ public class ReadElf implements AutoCloseable {
 
     private void readSectionHeaders(long sh_off, int e_shnum, int e_shentsize, int e_shstrndx)
             throws IOException {
+        loadSequential(sh_off, (long) e_shnum * e_shentsize);
+
         // Read the Section Header String Table offset first.
         {
-            mFile.seek(sh_off + e_shstrndx * e_shentsize);
+            seek(sh_off + e_shstrndx * e_shentsize);
 
             long sh_name = readWord();
             long sh_type = readWord();
@@ -305,6 +339,7 @@ public class ReadElf implements AutoCloseable {
             if (sh_type == SHT_STRTAB) {
                 mShStrTabOffset = sh_offset;
                 mShStrTabSize = sh_size;
+                loadStrings(mShStrTabOffset, mShStrTabSize);
             }
         }
 
@@ -314,7 +349,7 @@ public class ReadElf implements AutoCloseable {
                 continue;
             }
 
-            mFile.seek(sh_off + i * e_shentsize);
+            seek(sh_off + i * e_shentsize);
 
             long sh_name = readWord();
             long sh_type = readWord();
@@ -348,8 +383,9 @@ public class ReadElf implements AutoCloseable {
     }
 
     private void readProgramHeaders(long ph_off, int e_phnum, int e_phentsize) throws IOException {
+        loadSequential(ph_off, (long) e_phnum * e_phentsize);
         for (int i = 0; i < e_phnum; ++i) {
-            mFile.seek(ph_off + i * e_phentsize);
+            seek(ph_off + i * e_phentsize);
 
             long p_type = readWord();
             if (p_type == PT_LOAD) {
@@ -371,8 +407,10 @@ public class ReadElf implements AutoCloseable {
     private HashMap<String, Symbol> readSymbolTable(long symStrOffset, long symStrSize,
             long tableOffset, long tableSize) throws IOException {
         HashMap<String, Symbol> result = new HashMap<String, Symbol>();
-        mFile.seek(tableOffset);
-        while (mFile.getFilePointer() < tableOffset + tableSize) {
+        loadSequential(tableOffset, tableSize);
+        loadStrings(symStrOffset, symStrSize);
+        seek(tableOffset);
+        while (mPosition < tableOffset + tableSize) {
             long st_name = readWord();
             int st_info;
             if (mAddrSize == 8) {
@@ -405,7 +443,7 @@ public class ReadElf implements AutoCloseable {
         if (mShStrTabOffset == 0 || strOffset < 0 || strOffset >= mShStrTabSize) {
             return null;
         }
-        return readString(mShStrTabOffset + strOffset);
+        return readString(mShStrTabOffset + strOffset, mShStrTabOffset + mShStrTabSize);
     }
 
     private String readStrTabEntry(long tableOffset, long tableSize, long strOffset)
@@ -413,7 +451,7 @@ public class ReadElf implements AutoCloseable {
         if (tableOffset == 0 || strOffset < 0 || strOffset >= tableSize) {
             return null;
         }
-        return readString(tableOffset + strOffset);
+        return readString(tableOffset + strOffset, tableOffset + tableSize);
     }
 
     private int readHalf() throws IOException {
@@ -432,33 +470,97 @@ public class ReadElf implements AutoCloseable {
         return readX(mAddrSize);
     }
 
-    private long readX(int byteCount) throws IOException {
-        mFile.readFully(mBuffer, 0, byteCount);
+    private static ByteBuffer newBuffer(int capacity) {
+        return ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN);
+    }
 
-        int answer = 0;
-        if (mEndian == ELFDATA2LSB) {
-            for (int i = byteCount - 1; i >= 0; i--) {
-                answer = (answer << 8) | (mBuffer[i] & 0xff);
-            }
-        } else {
-            final int N = byteCount - 1;
-            for (int i = 0; i <= N; ++i) {
-                answer = (answer << 8) | (mBuffer[i] & 0xff);
+    /**
+     * Reads a region of the file into the given buffer, or into a larger one if it does not fit.
+     * The limit of the returned buffer is the number of bytes read, which is less than the size
+     * of the region if the file ends within it.
+     */
+    private ByteBuffer load(ByteBuffer buffer, long offset, long size) throws IOException {
+        if (offset < 0 || size < 0 || size > Integer.MAX_VALUE) {
+            throw new IOException("Invalid region " + offset + "+" + size + ": " + mPath);
+        }
+        if (buffer.capacity() < size) {
+            buffer = newBuffer((int) Math.max(size, 2L * buffer.capacity()));
+        }
+        buffer.clear().limit((int) size);
+        while (buffer.hasRemaining()) {
+            if (mChannel.read(buffer, offset + buffer.position()) < 0) {
+                break;
             }
         }
+        buffer.flip();
+        return buffer;
+    }
 
-        return answer;
+    /** Reads a region of the file for the sequential readX() methods. */
+    private void loadSequential(long offset, long size) throws IOException {
+        mBuffer = load(mBuffer, offset, size);
+        mBufferOffset = offset;
+    }
+
+    /** Reads a string table for {@link #readString}. */
+    private void loadStrings(long offset, long size) throws IOException {
+        mStrings = load(mStrings, offset, size);
+        mStringsOffset = offset;
     }
 
-    private String readString(long offset) throws IOException {
-        long originalOffset = mFile.getFilePointer();
-        mFile.seek(offset);
-        mFile.readFully(mBuffer, 0, (int) Math.min(mBuffer.length, mFile.length() - offset));
-        mFile.seek(originalOffset);
+    private void seek(long offset) throws IOException {
+        if (offset < mBufferOffset || offset > mBufferOffset + mBuffer.limit()) {
+            throw new IOException("Invalid offset: " + offset + ": " + mPath);
+        }
+        mPosition = offset;
+    }
 
-        for (int i = 0; i < mBuffer.length; ++i) {
-            if (mBuffer[i] == 0) {
-                return new String(mBuffer, 0, i);
+    private long readX(int byteCount) throws IOException {
+        if (mPosition + byteCount > mBufferOffset + mBuffer.limit()) {
+            throw new IOException("Unexpected end of file at " + mPosition + ": " + mPath);
+        }
+
+        int index = (int) (mPosition - mBufferOffset);
+        long answer;
+        switch (byteCount) {
+            case 1:
+                answer = mBuffer.get(index) & 0xffL;
+                break;
+            case 2:
+                answer = mBuffer.getShort(index) & 0xffffL;
+                break;
+            case 4:
+                answer = mBuffer.getInt(index) & 0xffffffffL;
+                break;
+            default:
+                answer = mBuffer.getLong(index);
+                break;
+        }
+        mPosition += byteCount;
+        return answer;
+    }
+
+    /**
+     * Decodes a NUL-terminated string at offset without moving the read position.
+     *
+     * @param offset of the string in the file, within the string table read by
+     *        {@link #loadStrings}
+     * @param end offset of the end of the string table holding it
+     * @return the string, or null if it is not terminated within the table
+     */
+    private String readString(long offset, long end) throws IOException {
+        int limit = (int) (Math.min(end, mStringsOffset + mStrings.limit()) - mStringsOffset);
+        int start = (int) (offset - mStringsOffset);
+        for (int i = start; i < limit; ++i) {
+            if (mStrings.get(i) == 0) {
+                int length = i - start;
+                if (length > mStringBuffer.length) {
+                    mStringBuffer = new byte[Math.max(length, mStringBuffer.length * 2)];
+                }
+                for (int j = 0; j < length; ++j) {
+                    mStringBuffer[j] = mStrings.get(start + j);
+                }
+                return new String(mStringBuffer, 0, length, StandardCharsets.UTF_8);
             }
         }
 
@@ -466,7 +568,7 @@ public class ReadElf implements AutoCloseable {
     }
 
     private int readByte() throws IOException {
-        return mFile.read() & 0xff;
+        return (int) readX(1);
     }
 
     public Symbol getSymbol(String name) {
@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package com.android.compatibility.common.util;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+
+/**
+ * Tests for {@link BitmapUtils}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BitmapUtilsTest {
+
+    // 65536 / 300 = 218 rows per band, so the 500 rows are read in bands of 218, 218 and 64.
+    private static final int WIDTH = 300;
+    private static final int HEIGHT = 500;
+
+    @Test
+    public void testMismatchesInLastPartialBand() throws Exception {
+        Bitmap bmp1 = createBitmap(WIDTH, HEIGHT);
+        Bitmap bmp2 = createBitmap(WIDTH, HEIGHT);
+        bmp2.setPixel(7, 3, Color.RED);
+        bmp2.setPixel(5, 450, Color.RED);
+        bmp2.setPixel(WIDTH - 1, HEIGHT - 1, Color.BLUE);
+
+        int[] mismatches = new int[6];
+        assertEquals(3, BitmapUtils.countMismatchedPixels(bmp1, bmp2, Long.MAX_VALUE, mismatches));
+        assertEquals(Arrays.toString(new int[] {7, 3, 5, 450, WIDTH - 1, HEIGHT - 1}),
+                Arrays.toString(mismatches));
+
+        assertFalse(BitmapUtils.compareBitmaps(bmp1, bmp2));
+        assertFalse(BitmapUtils.compareBitmaps(bmp1, bmp2, 1.0));
+        assertTrue(BitmapUtils.compareBitmaps(bmp1, bmp2, 0.99));
+    }
+
+    @Test
+    public void testOnlyMismatchInLastPartialBand() throws Exception {
+        Bitmap bmp1 = createBitmap(WIDTH, HEIGHT);
+        Bitmap bmp2 = createBitmap(WIDTH, HEIGHT);
+        bmp2.setPixel(WIDTH - 1, HEIGHT - 1, Color.BLUE);
+
+        int[] mismatch = new int[2];
+        assertEquals(1, BitmapUtils.countMismatchedPixels(bmp1, bmp2, 1, mismatch));
+        assertEquals(WIDTH - 1, mismatch[0]);
+        assertEquals(HEIGHT - 1, mismatch[1]);
+        assertFalse(BitmapUtils.compareBitmaps(bmp1, bmp2));
+    }
+
+    @Test
+    public void testMaxMismatchesAndReportedMismatches() throws Exception {
+        Bitmap bmp1 = createBitmap(WIDTH, HEIGHT);
+        Bitmap bmp2 = createBitmap(WIDTH, HEIGHT);
+        for (int y = 440; y < HEIGHT; y++) {
+            bmp2.setPixel(y % WIDTH, y, Color.GREEN);
+        }
+
+        assertEquals(HEIGHT - 440,
+                BitmapUtils.countMismatchedPixels(bmp1, bmp2, Long.MAX_VALUE, null));
+        int[] mismatch = new int[2];
+        assertEquals(10, BitmapUtils.countMismatchedPixels(bmp1, bmp2, 10, mismatch));
+        assertEquals(440 % WIDTH, mismatch[0]);
+        assertEquals(440, mismatch[1]);
+    }
+
+    @Test
+    public void testSameBitmaps() throws Exception {
+        Bitmap bmp1 = createBitmap(WIDTH, HEIGHT);
+        Bitmap bmp2 = createBitmap(WIDTH, HEIGHT);
+
+        assertEquals(0, BitmapUtils.countMismatchedPixels(bmp1, bmp2, Long.MAX_VALUE, null));
+        assertTrue(BitmapUtils.compareBitmaps(bmp1, bmp2));
+        assertTrue(BitmapUtils.compareBitmaps(bmp1, bmp2, 1.0));
+    }
+
+    @Test
+    public void testDifferentSizes() throws Exception {
+        Bitmap bmp1 = createBitmap(WIDTH, HEIGHT);
+        Bitmap wider = createBitmap(WIDTH + 1, HEIGHT);
+        Bitmap taller = createBitmap(WIDTH, HEIGHT + 1);
+
+        assertFalse(BitmapUtils.compareBitmaps(bmp1, wider));
+        assertFalse(BitmapUtils.compareBitmaps(bmp1, taller));
+        assertFalse(BitmapUtils.compareBitmaps(bmp1, wider, 0.0));
+        assertFalse(BitmapUtils.compareBitmaps(taller, bmp1, 0.0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCountMismatchedPixelsOfDifferentSizes() throws Exception {
+        BitmapUtils.countMismatchedPixels(createBitmap(WIDTH, HEIGHT),
+                createBitmap(WIDTH, HEIGHT + 1), Long.MAX_VALUE, null);
+    }
+
+    private static Bitmap createBitmap(int width, int height) {
+        Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        bitmap.eraseColor(Color.WHITE);
+        return bitmap;
+    }
+}
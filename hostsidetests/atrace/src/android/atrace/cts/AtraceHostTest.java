@@ -23,16 +23,13 @@ import static android.atrace.cts.AtraceDeviceTestList.beginEndSection;
 import static android.atrace.cts.AtraceDeviceTestList.counter;
 import static android.atrace.cts.AtraceDeviceTestList.launchActivity;
 
-import com.android.tradefed.log.LogUtil.CLog;
-
-import java.io.BufferedReader;
-import java.io.Reader;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import kotlin.Unit;
 import trebuchet.model.Counter;
@@ -49,48 +46,6 @@ import trebuchet.queries.slices.*;
  */
 public class AtraceHostTest extends AtraceHostTestBase {
 
-    private interface FtraceEntryCallback {
-        void onTraceEntry(String threadName, int pid, int tid, String eventType, String args);
-        void onFinished();
-    }
-
-    /**
-     * Helper for parsing ftrace data.
-     * Regexs copied from (and should be kept in sync with) ftrace importer in catapult.
-     */
-    private static class FtraceParser {
-        private static final Pattern sFtraceLine = Pattern.compile(
-                "^ *(.{1,16})-(\\d+) +(?:\\( *(\\d+)?-*\\) )?\\[(\\d+)] (?:[dX.]...)? *([\\d.]*): *"
-                + "([^:]*): *(.*) *$");
-
-        private static void parseLine(String line, FtraceEntryCallback callback) {
-            Matcher m = sFtraceLine.matcher(line);
-            if (m.matches()) {
-                callback.onTraceEntry(
-                        /*threadname*/ m.group(1),
-                        /*pid*/ (m.group(3) == null || m.group(3).startsWith("-")) ? -1 : Integer.parseInt(m.group(3)),
-                        /*tid*/ Integer.parseInt(m.group(2)),
-                        /*eventName*/ m.group(6),
-                        /*details*/ m.group(7));
-                return;
-            }
-
-            CLog.i("line doesn't match: " + line);
-        }
-
-        private static void parse(Reader reader, FtraceEntryCallback callback) throws Exception {
-            try {
-                BufferedReader bufferedReader = new BufferedReader(reader);
-                String line;
-                while ((line = bufferedReader.readLine()) != null) {
-                    FtraceParser.parseLine(line, callback);
-                }
-            } finally {
-                callback.onFinished();
-            }
-        }
-    }
-
     /**
      * Tests that atrace exists and is runnable with no args
      */
@@ -177,17 +132,24 @@ public class AtraceHostTest extends AtraceHostTestBase {
     }
 
     public void testBeginEndSection() {
-        TraceResult result = traceSingleTest(beginEndSection);
-        assertTrue(result.getPid() > 0);
-        assertTrue(result.getTid() > 0);
-        assertNotNull(result.getModel());
-        ThreadModel thread = findThread(result.getModel(), result.getTid());
-        assertNotNull(thread);
-        assertEquals(2, thread.getSlices().size());
-        Slice sdkSlice = thread.getSlices().get(0);
-        assertEquals("AtraceDeviceTest::beginEndSection", sdkSlice.getName());
-        Slice ndkSlice = thread.getSlices().get(1);
-        assertEquals("ndk::beginEndSection", ndkSlice.getName());
+        Map<Integer, List<String>> sections = new HashMap<>();
+        Map<Integer, Integer> endCounts = new HashMap<>();
+        PidTidPair pidTid = streamSingleTest(beginEndSection, new FtraceTokenizer.Listener() {
+            @Override
+            public void onBegin(int pid, int tid, long timestampUs, String name) {
+                sections.computeIfAbsent(tid, k -> new ArrayList<>()).add(name);
+            }
+
+            @Override
+            public void onEnd(int pid, int tid, long timestampUs) {
+                endCounts.merge(tid, 1, Integer::sum);
+            }
+        });
+        assertTrue(pidTid.pid > 0);
+        assertTrue(pidTid.tid > 0);
+        assertEquals(Arrays.asList("AtraceDeviceTest::beginEndSection", "ndk::beginEndSection"),
+                sections.get(pidTid.tid));
+        assertEquals(Integer.valueOf(2), endCounts.get(pidTid.tid));
     }
 
     public void testAsyncBeginEndSection() {
@@ -207,21 +169,18 @@ public class AtraceHostTest extends AtraceHostTestBase {
     }
 
     public void testCounter() {
-        TraceResult result = traceSingleTest(counter);
-        assertTrue(result.getPid() > 0);
-        assertTrue(result.getTid() > 0);
-        assertNotNull(result.getModel());
-        ProcessModel process = findProcess(result.getModel(), result.getPid());
-        assertNotNull(process);
-        assertTrue(process.getCounters().size() > 0);
-        Counter counter = findCounter(process, "AtraceDeviceTest::counter");
-        assertNotNull(counter);
-        List<CounterValue> values = counter.getEvents();
-        assertEquals(4, values.size());
-        assertEquals(10, values.get(0).getCount());
-        assertEquals(20, values.get(1).getCount());
-        assertEquals(30, values.get(2).getCount());
-        assertEquals(9223372000000005807L, values.get(3).getCount());
+        List<Long> values = new ArrayList<>();
+        PidTidPair pidTid = streamSingleTest(counter, new FtraceTokenizer.Listener() {
+            @Override
+            public void onCounter(int pid, int tid, long timestampUs, String name, long value) {
+                if ("AtraceDeviceTest::counter".equals(name)) {
+                    values.add(value);
+                }
+            }
+        });
+        assertTrue(pidTid.pid > 0);
+        assertTrue(pidTid.tid > 0);
+        assertEquals(Arrays.asList(10L, 20L, 30L, 9223372000000005807L), values);
     }
 
     /**
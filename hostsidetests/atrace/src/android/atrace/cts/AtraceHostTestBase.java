@@ -243,4 +243,27 @@ public class AtraceHostTestBase extends DeviceTestCase implements IBuildReceiver
     protected final TraceResult traceSingleTest(AtraceDeviceTestList test, String... categories) {
         return traceSingleTest(test, true, categories);
     }
+
+    /**
+     * Traces a single test with app tracing, and reports the trace markers of the test process to
+     * the listener while the trace is read from the device, without building a {@link Model}.
+     */
+    protected final PidTidPair streamSingleTest(AtraceDeviceTestList test,
+            FtraceTokenizer.Listener listener, String... categories) {
+        requireApk();
+        shell(START_TRACE_CMD, categories);
+        PidTidPair pidTid = runSingleAppTest(test);
+        FtraceTokenizer tokenizer = new FtraceTokenizer(listener, pidTid.pid);
+        String command = STOP_TRACE_CMD;
+        if (categories.length > 0) {
+            command += " " + String.join(" ", categories);
+        }
+        try {
+            getDevice().executeShellCommand(command, tokenizer);
+        } catch (DeviceNotAvailableException ex) {
+            throw new RuntimeException(ex);
+        }
+        assertTrue("unable to capture atrace output", tokenizer.getLineCount() > 0);
+        return pidTid;
+    }
 }
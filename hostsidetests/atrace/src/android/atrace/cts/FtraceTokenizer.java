@@ -0,0 +1,379 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.atrace.cts;
+
+import com.android.ddmlib.IShellOutputReceiver;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Tokenizes ftrace text output while it streams in, and reports the begin, end and counter
+ * trace markers written by the processes of interest.
+ *
+ * <p>Lines are parsed in place in the received bytes, without regular expressions, and Strings
+ * are only created for the names of the reported events, so the trace is never held in memory.
+ * A line has the format of the ftrace importer in catapult:
+ * <pre>
+ *   &lt;thread name&gt;-&lt;tid&gt; (&lt;tgid&gt;) [&lt;cpu&gt;] &lt;flags&gt; &lt;timestamp&gt;: &lt;event&gt;: &lt;details&gt;
+ * </pre>
+ * where the tgid column and the flags are optional. Lines which do not have this format, such as
+ * the comments and the atrace banner, are skipped.
+ */
+public class FtraceTokenizer implements IShellOutputReceiver {
+
+    /** Receives the trace markers of the processes of interest. */
+    public interface Listener {
+        /** A section started with Trace.beginSection or ATrace_beginSection. */
+        default void onBegin(int pid, int tid, long timestampUs, String name) {}
+
+        /** The last section started on the thread ended. */
+        default void onEnd(int pid, int tid, long timestampUs) {}
+
+        /** A counter was set with Trace.setCounter or ATrace_setCounter. */
+        default void onCounter(int pid, int tid, long timestampUs, String name, long value) {}
+    }
+
+    private static final int MAX_THREAD_NAME_LENGTH = 16;
+    private static final byte[] TRACING_MARK_WRITE =
+            "tracing_mark_write".getBytes(StandardCharsets.US_ASCII);
+
+    private final Listener mListener;
+    private final int[] mPids;
+
+    /** Pids of the threads with open sections of the processes of interest, by tid. */
+    private final Map<Integer, Integer> mOpenSectionPids = new HashMap<>();
+    /** Number of open sections, by tid. */
+    private final Map<Integer, Integer> mOpenSectionCounts = new HashMap<>();
+
+    /** The start of a line split between two chunks of output. */
+    private byte[] mPartialLine = new byte[256];
+    private int mPartialLineLength;
+
+    private int mLineCount;
+    private int mSkippedLineCount;
+
+    // Fields of the line being parsed.
+    private int mPosition;
+    private int mTid;
+    private long mTimestampUs;
+
+    /**
+     * @param listener receives the trace markers
+     * @param pids the processes to report the trace markers of, or none for all processes
+     */
+    public FtraceTokenizer(Listener listener, int... pids) {
+        mListener = listener;
+        mPids = pids;
+    }
+
+    @Override
+    public void addOutput(byte[] data, int offset, int length) {
+        int end = offset + length;
+        int lineStart = offset;
+        for (int i = offset; i < end; i++) {
+            if (data[i] != '\n') {
+                continue;
+            }
+            if (mPartialLineLength > 0) {
+                appendPartialLine(data, lineStart, i);
+                parseLine(mPartialLine, 0, mPartialLineLength);
+                mPartialLineLength = 0;
+            } else {
+                parseLine(data, lineStart, i);
+            }
+            lineStart = i + 1;
+        }
+        appendPartialLine(data, lineStart, end);
+    }
+
+    /** Parses the last line, if the output does not end with a line break. */
+    @Override
+    public void flush() {
+        if (mPartialLineLength > 0) {
+            parseLine(mPartialLine, 0, mPartialLineLength);
+            mPartialLineLength = 0;
+        }
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return false;
+    }
+
+    /** Returns the number of lines received. */
+    public int getLineCount() {
+        return mLineCount;
+    }
+
+    /** Returns the number of lines which are not ftrace events. */
+    public int getSkippedLineCount() {
+        return mSkippedLineCount;
+    }
+
+    private void appendPartialLine(byte[] data, int start, int end) {
+        int length = end - start;
+        if (length == 0) {
+            return;
+        }
+        if (mPartialLineLength + length > mPartialLine.length) {
+            byte[] line = new byte[Math.max(2 * mPartialLine.length, mPartialLineLength + length)];
+            System.arraycopy(mPartialLine, 0, line, 0, mPartialLineLength);
+            mPartialLine = line;
+        }
+        System.arraycopy(data, start, mPartialLine, mPartialLineLength, length);
+        mPartialLineLength += length;
+    }
+
+    private void parseLine(byte[] line, int start, int end) {
+        mLineCount++;
+        while (end > start && (line[end - 1] == '\r' || line[end - 1] == ' ')) {
+            end--;
+        }
+        while (start < end && line[start] == ' ') {
+            start++;
+        }
+        if (!parseHeader(line, start, end)) {
+            mSkippedLineCount++;
+            return;
+        }
+
+        // <event>: <details>
+        int eventStart = mPosition;
+        int eventEnd = indexOf(line, eventStart, end, (byte) ':');
+        if (eventEnd < 0) {
+            mSkippedLineCount++;
+            return;
+        }
+        if (regionEquals(line, eventStart, eventEnd, TRACING_MARK_WRITE)) {
+            parseTraceMarker(line, skipSpaces(line, eventEnd + 1, end), end);
+        }
+    }
+
+    /**
+     * Parses the fields before the event name, and leaves {@link #mPosition} at the event name.
+     *
+     * <p>The thread name may contain dashes, so like the greedy match of the catapult importer,
+     * the last dash followed by a tid which lets the rest of the header parse ends the name.
+     */
+    private boolean parseHeader(byte[] line, int start, int end) {
+        int nameEnd = Math.min(start + MAX_THREAD_NAME_LENGTH, end - 1);
+        for (; nameEnd > start; nameEnd--) {
+            if (line[nameEnd] == '-' && parseHeaderAfterName(line, nameEnd + 1, end)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean parseHeaderAfterName(byte[] line, int position, int end) {
+        // <tid>
+        int tidEnd = skipDigits(line, position, end);
+        if (tidEnd == position || tidEnd == end || line[tidEnd] != ' ') {
+            return false;
+        }
+        int tid = parseInt(line, position, tidEnd);
+        position = skipSpaces(line, tidEnd, end);
+
+        // Optional (<tgid>), which is (-----) when unknown
+        if (position < end && line[position] == '(') {
+            int tgidEnd = indexOf(line, position, end, (byte) ')');
+            if (tgidEnd < 0 || tgidEnd + 1 == end || line[tgidEnd + 1] != ' ') {
+                return false;
+            }
+            position = tgidEnd + 2;
+        }
+
+        // [<cpu>]
+        if (position == end || line[position] != '[') {
+            return false;
+        }
+        int cpuEnd = skipDigits(line, position + 1, end);
+        if (cpuEnd == position + 1 || cpuEnd == end || line[cpuEnd] != ']') {
+            return false;
+        }
+        position = cpuEnd + 1;
+        if (position == end || line[position] != ' ') {
+            return false;
+        }
+        position++;
+
+        // Optional flags, such as d..3
+        if (position + 4 <= end && isFlag(line[position]) && line[position + 4] == ' ') {
+            position += 4;
+        }
+        position = skipSpaces(line, position, end);
+
+        // <seconds>.<microseconds>:
+        int secondsEnd = skipDigits(line, position, end);
+        long timestampUs = parseLong(line, position, secondsEnd) * 1000000;
+        position = secondsEnd;
+        if (position < end && line[position] == '.') {
+            int fractionEnd = skipDigits(line, position + 1, end);
+            long fraction = 0;
+            long scale = 1000000;
+            for (int i = position + 1; i < fractionEnd; i++) {
+                scale /= 10;
+                fraction += (line[i] - '0') * scale;
+            }
+            timestampUs += fraction;
+            position = fractionEnd;
+        }
+        if (position == end || line[position] != ':') {
+            return false;
+        }
+
+        mTid = tid;
+        mTimestampUs = timestampUs;
+        mPosition = skipSpaces(line, position + 1, end);
+        return true;
+    }
+
+    /**
+     * Parses the details of a tracing_mark_write event, which are B|pid|name, E or E|pid,
+     * C|pid|name|value, or async and other markers which are ignored.
+     */
+    private void parseTraceMarker(byte[] line, int start, int end) {
+        if (end - start < 1 || (end - start > 1 && line[start + 1] != '|')) {
+            return;
+        }
+        byte type = line[start];
+        if (type == 'E') {
+            Integer pid = mOpenSectionPids.get(mTid);
+            if (pid == null) {
+                return;
+            }
+            int count = mOpenSectionCounts.get(mTid) - 1;
+            if (count == 0) {
+                mOpenSectionPids.remove(mTid);
+                mOpenSectionCounts.remove(mTid);
+            } else {
+                mOpenSectionCounts.put(mTid, count);
+            }
+            mListener.onEnd(pid, mTid, mTimestampUs);
+            return;
+        }
+        if (type != 'B' && type != 'C') {
+            return;
+        }
+
+        int pidStart = start + 2;
+        int pidEnd = skipDigits(line, pidStart, end);
+        if (pidEnd == pidStart || pidEnd == end || line[pidEnd] != '|') {
+            return;
+        }
+        int pid = parseInt(line, pidStart, pidEnd);
+        if (!isPidOfInterest(pid)) {
+            return;
+        }
+        int nameStart = pidEnd + 1;
+        if (type == 'B') {
+            String name = new String(line, nameStart, end - nameStart, StandardCharsets.UTF_8);
+            mOpenSectionPids.put(mTid, pid);
+            mOpenSectionCounts.merge(mTid, 1, Integer::sum);
+            mListener.onBegin(pid, mTid, mTimestampUs, name);
+        } else {
+            int nameEnd = lastIndexOf(line, nameStart, end, (byte) '|');
+            if (nameEnd < 0) {
+                return;
+            }
+            int valueStart = nameEnd + 1;
+            boolean negative = valueStart < end && line[valueStart] == '-';
+            int digitsStart = negative ? valueStart + 1 : valueStart;
+            int valueEnd = skipDigits(line, digitsStart, end);
+            if (valueEnd == digitsStart) {
+                return;
+            }
+            long value = parseLong(line, digitsStart, valueEnd);
+            String name = new String(line, nameStart, nameEnd - nameStart, StandardCharsets.UTF_8);
+            mListener.onCounter(pid, mTid, mTimestampUs, name, negative ? -value : value);
+        }
+    }
+
+    private boolean isPidOfInterest(int pid) {
+        if (mPids.length == 0) {
+            return true;
+        }
+        for (int p : mPids) {
+            if (p == pid) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isFlag(byte b) {
+        return b == 'd' || b == 'X' || b == '.';
+    }
+
+    private static int skipSpaces(byte[] line, int position, int end) {
+        while (position < end && line[position] == ' ') {
+            position++;
+        }
+        return position;
+    }
+
+    private static int skipDigits(byte[] line, int position, int end) {
+        while (position < end && line[position] >= '0' && line[position] <= '9') {
+            position++;
+        }
+        return position;
+    }
+
+    private static int indexOf(byte[] line, int start, int end, byte b) {
+        for (int i = start; i < end; i++) {
+            if (line[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int lastIndexOf(byte[] line, int start, int end, byte b) {
+        for (int i = end - 1; i >= start; i--) {
+            if (line[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean regionEquals(byte[] line, int start, int end, byte[] expected) {
+        if (end - start != expected.length) {
+            return false;
+        }
+        for (int i = 0; i < expected.length; i++) {
+            if (line[start + i] != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int parseInt(byte[] line, int start, int end) {
+        return (int) parseLong(line, start, end);
+    }
+
+    private static long parseLong(byte[] line, int start, int end) {
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            value = value * 10 + (line[i] - '0');
+        }
+        return value;
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.atrace.cts;
+
+import junit.framework.TestCase;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Host-only tests of {@link FtraceTokenizer}, which feed it sample traces in chunks of one byte
+ * and in a single buffer.
+ */
+public class FtraceTokenizerTest extends TestCase {
+    private static final int PID = 1234;
+
+    private static final String[] TRACE = {
+        "# tracer: nop",
+        "#",
+        "#           TASK-PID    TGID   CPU#  ||||    TIMESTAMP  FUNCTION",
+        "#              | |        |      |   ||||       |         |",
+        "  atrace-test-1240  ( 1234) [002] ...1  1234.567890: tracing_mark_write: B|1234|outer",
+        "  my-dashed-name-1241  ( 1234) [003] d..3  1234.567900: tracing_mark_write: B|1234|a-b",
+        "  thread-12-1242 (-----) [000] ...1  1234.568000: tracing_mark_write: C|1234|counter|42",
+        "  atrace-test-1240 [002] ...1  1234.569000: tracing_mark_write: B|1234|no tgid",
+        "  surfaceflinger-600  (  600) [001] ...1  1234.569500: tracing_mark_write: B|600|other",
+        "  surfaceflinger-600  (  600) [001] ...1  1234.569600: tracing_mark_write: E|600",
+        "  atrace-test-1240  ( 1234) [002] ...1  1234.570000: tracing_mark_write: E|1234",
+        "  my-dashed-name-1241  ( 1234) [003] d..3  1234.571000: sched_waking: comm=x pid=1",
+        "  my-dashed-name-1241  ( 1234) [003] d..3  1234.572000: tracing_mark_write: E",
+        "  thread-12-1242 ( 1234) [000] 1234.573000: tracing_mark_write: C|1234|counter|-7",
+        "  atrace-test-1240  ( 1234) [002] ...1  1234.574000: tracing_mark_write: E|1234",
+    };
+
+    private static final int COMMENT_LINES = 4;
+
+    private static final List<String> EVENTS_OF_PID = Arrays.asList(
+            "B 1234 1240 1234567890 outer",
+            "B 1234 1241 1234567900 a-b",
+            "C 1234 1242 1234568000 counter 42",
+            "B 1234 1240 1234569000 no tgid",
+            "E 1234 1240 1234570000",
+            "E 1234 1241 1234572000",
+            "C 1234 1242 1234573000 counter -7",
+            "E 1234 1240 1234574000");
+
+    public void testWholeBuffer() {
+        assertEvents(EVENTS_OF_PID, tokenize(join("\n") + "\n", Integer.MAX_VALUE, PID));
+    }
+
+    public void testOneByteChunks() {
+        assertEvents(EVENTS_OF_PID, tokenize(join("\n") + "\n", 1, PID));
+    }
+
+    public void testOddChunks() {
+        assertEvents(EVENTS_OF_PID, tokenize(join("\n") + "\n", 7, PID));
+    }
+
+    public void testCrLfLineEndings() {
+        String trace = join("\r\n") + "\r\n";
+        assertEvents(EVENTS_OF_PID, tokenize(trace, Integer.MAX_VALUE, PID));
+        assertEvents(EVENTS_OF_PID, tokenize(trace, 1, PID));
+    }
+
+    public void testLastLineWithoutLineBreak() {
+        byte[] trace = join("\n").getBytes(StandardCharsets.UTF_8);
+        for (int chunkSize : new int[] {1, Integer.MAX_VALUE}) {
+            RecordingListener listener = new RecordingListener();
+            FtraceTokenizer tokenizer = new FtraceTokenizer(listener, PID);
+            addOutput(tokenizer, trace, chunkSize);
+            assertEquals(EVENTS_OF_PID.subList(0, EVENTS_OF_PID.size() - 1), listener.mEvents);
+            assertEquals(TRACE.length - 1, tokenizer.getLineCount());
+
+            tokenizer.flush();
+            assertEvents(EVENTS_OF_PID, tokenizer, listener);
+
+            // Flushing again does not parse the last line again.
+            tokenizer.flush();
+            assertEvents(EVENTS_OF_PID, tokenizer, listener);
+        }
+    }
+
+    public void testAllPids() {
+        List<String> expected = new ArrayList<>(EVENTS_OF_PID);
+        expected.add(4, "B 600 600 1234569500 other");
+        expected.add(5, "E 600 600 1234569600");
+        assertEvents(expected, tokenize(join("\n") + "\n", 1));
+    }
+
+    public void testOtherPid() {
+        Result result = tokenize(join("\n") + "\n", Integer.MAX_VALUE, 600);
+        assertEquals(Arrays.asList("B 600 600 1234569500 other", "E 600 600 1234569600"),
+                result.mEvents);
+    }
+
+    public void testEndWithoutBegin() {
+        Result result = tokenize(
+                "  atrace-test-1240  ( 1234) [002] ...1  1.000000: tracing_mark_write: E|1234\n",
+                Integer.MAX_VALUE, PID);
+        assertTrue(result.mEvents.isEmpty());
+        assertEquals(1, result.mLineCount);
+        assertEquals(0, result.mSkippedLineCount);
+    }
+
+    public void testMalformedLines() {
+        String trace = "garbage\n"
+                + "  atrace-test-x  ( 1234) [002] ...1  1.000000: tracing_mark_write: B|1234|a\n"
+                + "  atrace-test-1240  ( 1234) 002 ...1  1.000000: tracing_mark_write: B|1234|a\n"
+                + "  atrace-test-1240  ( 1234) [002] ...1  1.000000 tracing_mark_write: B|1234|a\n"
+                + "  atrace-test-1240  ( 1234) [002] ...1  1.000000: tracing_mark_write: B|x|a\n"
+                + "  atrace-test-1240  ( 1234) [002] ...1  1.000000: tracing_mark_write: C|1234|c\n"
+                + "\n";
+        Result result = tokenize(trace, 1, PID);
+        assertTrue(result.mEvents.toString(), result.mEvents.isEmpty());
+        assertEquals(7, result.mLineCount);
+        assertEquals(5, result.mSkippedLineCount);
+    }
+
+    private static String join(String lineBreak) {
+        return String.join(lineBreak, TRACE);
+    }
+
+    private static void assertEvents(List<String> expected, Result result) {
+        assertEquals(expected, result.mEvents);
+        assertEquals(TRACE.length, result.mLineCount);
+        assertEquals(COMMENT_LINES, result.mSkippedLineCount);
+    }
+
+    private static void assertEvents(List<String> expected, FtraceTokenizer tokenizer,
+            RecordingListener listener) {
+        assertEvents(expected, new Result(tokenizer, listener));
+    }
+
+    /** Feeds the trace to a new tokenizer in chunks of the given size, then flushes it. */
+    private static Result tokenize(String trace, int chunkSize, int... pids) {
+        RecordingListener listener = new RecordingListener();
+        FtraceTokenizer tokenizer = new FtraceTokenizer(listener, pids);
+        addOutput(tokenizer, trace.getBytes(StandardCharsets.UTF_8), chunkSize);
+        tokenizer.flush();
+        return new Result(tokenizer, listener);
+    }
+
+    /**
+     * Adds the output in chunks of the given size. The chunks are copied into a larger buffer at
+     * an offset, like the buffers of the shell output.
+     */
+    private static void addOutput(FtraceTokenizer tokenizer, byte[] output, int chunkSize) {
+        for (int start = 0; start < output.length; start += chunkSize) {
+            int length = Math.min(chunkSize, output.length - start);
+            byte[] buffer = new byte[length + 4];
+            Arrays.fill(buffer, (byte) '\n');
+            System.arraycopy(output, start, buffer, 2, length);
+            tokenizer.addOutput(buffer, 2, length);
+        }
+    }
+
+    private static final class Result {
+        final List<String> mEvents;
+        final int mLineCount;
+        final int mSkippedLineCount;
+
+        Result(FtraceTokenizer tokenizer, RecordingListener listener) {
+            mEvents = listener.mEvents;
+            mLineCount = tokenizer.getLineCount();
+            mSkippedLineCount = tokenizer.getSkippedLineCount();
+        }
+    }
+
+    private static final class RecordingListener implements FtraceTokenizer.Listener {
+        final List<String> mEvents = new ArrayList<>();
+
+        @Override
+        public void onBegin(int pid, int tid, long timestampUs, String name) {
+            mEvents.add("B " + pid + " " + tid + " " + timestampUs + " " + name);
+        }
+
+        @Override
+        public void onEnd(int pid, int tid, long timestampUs) {
+            mEvents.add("E " + pid + " " + tid + " " + timestampUs);
+        }
+
+        @Override
+        public void onCounter(int pid, int tid, long timestampUs, String name, long value) {
+            mEvents.add("C " + pid + " " + tid + " " + timestampUs + " " + name + " " + value);
+        }
+    }
+}
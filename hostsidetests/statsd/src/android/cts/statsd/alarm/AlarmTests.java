@@ -57,9 +57,10 @@ public class AlarmTests extends AtomTestCase {
         uploadConfig(config);
 
         String markTime = getCurrentLogcatDate();
-        Thread.sleep(9_000);
 
-        if (INCIDENTD_TESTS_ENABLED) assertTrue("No incident", didIncidentdFireSince(markTime));
+        if (INCIDENTD_TESTS_ENABLED) {
+            assertTrue("No incident", waitForIncidentdFiredSince(markTime, REPORT_WAIT_TIMEOUT));
+        }
     }
 
 
@@ -93,30 +93,31 @@ public class AnomalyDetectionTests extends AtomTestCase {
         String markTime = getCurrentLogcatDate();
         // count(label=6) -> 1 (not an anomaly, since not "greater than 2")
         doAppBreadcrumbReportedStart(6);
-        Thread.sleep(500);
+        waitForAtomMatches(APP_BREADCRUMB_REPORTED_MATCH_START_ID, 1);
         assertEquals("Premature anomaly", 0, getEventMetricDataList().size());
         if (INCIDENTD_TESTS_ENABLED) assertFalse("Incident", didIncidentdFireSince(markTime));
 
         // count(label=6) -> 2 (not an anomaly, since not "greater than 2")
         doAppBreadcrumbReportedStart(6);
-        Thread.sleep(500);
+        waitForAtomMatches(APP_BREADCRUMB_REPORTED_MATCH_START_ID, 2);
         assertEquals("Premature anomaly", 0, getEventMetricDataList().size());
         if (INCIDENTD_TESTS_ENABLED) assertFalse("Incident", didIncidentdFireSince(markTime));
 
         // count(label=12) -> 1 (not an anomaly, since not "greater than 2")
         doAppBreadcrumbReportedStart(12);
-        Thread.sleep(1000);
+        waitForAtomMatches(APP_BREADCRUMB_REPORTED_MATCH_START_ID, 3);
         assertEquals("Premature anomaly", 0, getEventMetricDataList().size());
         if (INCIDENTD_TESTS_ENABLED) assertFalse("Incident", didIncidentdFireSince(markTime));
 
         doAppBreadcrumbReportedStart(6); // count(label=6) -> 3 (anomaly, since "greater than 2"!)
-        Thread.sleep(WAIT_AFTER_BREADCRUMB_MS);
 
-        List<EventMetricData> data = getEventMetricDataList();
+        List<EventMetricData> data = waitForEventMetricDataCount(1);
         assertEquals("Expected 1 anomaly", 1, data.size());
         AnomalyDetected a = data.get(0).getAtom().getAnomalyDetected();
         assertEquals("Wrong alert_id", ALERT_ID, a.getAlertId());
-        if (INCIDENTD_TESTS_ENABLED) assertTrue("No incident", didIncidentdFireSince(markTime));
+        if (INCIDENTD_TESTS_ENABLED) {
+            assertTrue("No incident", waitForIncidentdFiredSince(markTime, REPORT_WAIT_TIMEOUT));
+        }
     }
 
     // Tests that anomaly detection for duration works.
@@ -157,8 +158,8 @@ public class AnomalyDetectionTests extends AtomTestCase {
 
         // Test that alarm does fire when it is supposed to (after 4s, plus up to 5s alarm delay).
         doAppBreadcrumbReportedStart(1);
-        Thread.sleep(9_000);  // Recorded duration at end: 13s
-        List<EventMetricData> data = getEventMetricDataList();
+        // Recorded duration at end: up to 13s
+        List<EventMetricData> data = waitForEventMetricDataCount(1, 9_000);
         assertEquals("Expected an anomaly,", 1, data.size());
         assertEquals(ALERT_ID, data.get(0).getAtom().getAnomalyDetected().getAlertId());
 
@@ -174,12 +175,14 @@ public class AnomalyDetectionTests extends AtomTestCase {
         doAppBreadcrumbReportedStop(1);
         Thread.sleep(8_000);  // Recorded duration at end: 9s
         doAppBreadcrumbReportedStart(1);
-        Thread.sleep(15_000);  // Recorded duration at end: 15s
-        // We can do an incidentd test now that all the timing issues are done.
-        data = getEventMetricDataList();
+        // Recorded duration at end: up to 15s
+        data = waitForEventMetricDataCount(1, 15_000);
         assertEquals("Expected another anomaly,", 1, data.size());
         assertEquals(ALERT_ID, data.get(0).getAtom().getAnomalyDetected().getAlertId());
-        if (INCIDENTD_TESTS_ENABLED) assertTrue("No incident", didIncidentdFireSince(markTime));
+        // We can do an incidentd test now that all the timing issues are done.
+        if (INCIDENTD_TESTS_ENABLED) {
+            assertTrue("No incident", waitForIncidentdFiredSince(markTime, REPORT_WAIT_TIMEOUT));
+        }
 
         doAppBreadcrumbReportedStop(1);
     }
@@ -222,8 +225,7 @@ public class AnomalyDetectionTests extends AtomTestCase {
         Thread.sleep(1_200);
         // Anomaly should be detected here if the alarm didn't fire yet.
         doAppBreadcrumbReportedStop(1);
-        Thread.sleep(200);
-        List<EventMetricData> data = getEventMetricDataList();
+        List<EventMetricData> data = waitForEventMetricDataCount(1);
         if (data.size() == 2) {
             // Although we expect that the alarm won't fire, we certainly cannot demand that.
             CLog.w(TAG, "The anomaly was detected twice. Presumably the alarm did manage to fire.");
@@ -255,18 +257,19 @@ public class AnomalyDetectionTests extends AtomTestCase {
 
         String markTime = getCurrentLogcatDate();
         doAppBreadcrumbReportedStart(6); // value = 6, which is NOT > trigger
-        Thread.sleep(WAIT_AFTER_BREADCRUMB_MS);
+        waitForAtomMatches(APP_BREADCRUMB_REPORTED_MATCH_START_ID, 1);
         assertEquals("Premature anomaly", 0, getEventMetricDataList().size());
         if (INCIDENTD_TESTS_ENABLED) assertFalse("Incident", didIncidentdFireSince(markTime));
 
         doAppBreadcrumbReportedStart(14); // value = 14 > trigger
-        Thread.sleep(WAIT_AFTER_BREADCRUMB_MS);
 
-        List<EventMetricData> data = getEventMetricDataList();
+        List<EventMetricData> data = waitForEventMetricDataCount(1);
         assertEquals("Expected 1 anomaly", 1, data.size());
         AnomalyDetected a = data.get(0).getAtom().getAnomalyDetected();
         assertEquals("Wrong alert_id", ALERT_ID, a.getAlertId());
-        if (INCIDENTD_TESTS_ENABLED) assertTrue("No incident", didIncidentdFireSince(markTime));
+        if (INCIDENTD_TESTS_ENABLED) {
+            assertTrue("No incident", waitForIncidentdFiredSince(markTime, REPORT_WAIT_TIMEOUT));
+        }
     }
 
     // Test that anomaly detection integrates with perfetto properly.
@@ -305,18 +308,17 @@ public class AnomalyDetectionTests extends AtomTestCase {
 
         String markTime = getCurrentLogcatDate();
         doAppBreadcrumbReportedStart(6); // value = 6, which is NOT > trigger
-        Thread.sleep(WAIT_AFTER_BREADCRUMB_MS);
+        waitForAtomMatches(APP_BREADCRUMB_REPORTED_MATCH_START_ID, 1);
         assertEquals("Premature anomaly", 0, getEventMetricDataList().size());
         if (PERFETTO_TESTS_ENABLED) assertFalse(isSystemTracingEnabled());
 
         doAppBreadcrumbReportedStart(14); // value = 14 > trigger
-        Thread.sleep(WAIT_AFTER_BREADCRUMB_MS);
 
-        List<EventMetricData> data = getEventMetricDataList();
+        List<EventMetricData> data = waitForEventMetricDataCount(1);
         assertEquals("Expected 1 anomaly", 1, data.size());
         AnomalyDetected a = data.get(0).getAtom().getAnomalyDetected();
         assertEquals("Wrong alert_id", ALERT_ID, a.getAlertId());
-        if (PERFETTO_TESTS_ENABLED) assertTrue(isSystemTracingEnabled());
+        if (PERFETTO_TESTS_ENABLED) assertTrue(waitForSystemTracingEnabled());
     }
 
     // Tests that anomaly detection for gauge works.
@@ -348,13 +350,14 @@ public class AnomalyDetectionTests extends AtomTestCase {
 
         // We waited for >1s above, so we are now in the next bucket (which is essential).
         doAppBreadcrumbReportedStart(14); // gauge = 14 > trigger
-        Thread.sleep(WAIT_AFTER_BREADCRUMB_MS);
 
-        List<EventMetricData> data = getEventMetricDataList();
+        List<EventMetricData> data = waitForEventMetricDataCount(1);
         assertEquals("Expected 1 anomaly", 1, data.size());
         AnomalyDetected a = data.get(0).getAtom().getAnomalyDetected();
         assertEquals("Wrong alert_id", ALERT_ID, a.getAlertId());
-        if (INCIDENTD_TESTS_ENABLED) assertTrue("No incident", didIncidentdFireSince(markTime));
+        if (INCIDENTD_TESTS_ENABLED) {
+            assertTrue("No incident", waitForIncidentdFiredSince(markTime, REPORT_WAIT_TIMEOUT));
+        }
     }
 
     // Test that anomaly detection for pulled metrics work.
@@ -395,9 +398,8 @@ public class AnomalyDetectionTests extends AtomTestCase {
                 );
         uploadConfig(config);
 
-        Thread.sleep(6_000); // Wait long enough to ensure AlarmManager signals >= 1 pull
-
-        List<EventMetricData> data = getEventMetricDataList();
+        // Wait long enough for AlarmManager to signal >= 1 pull.
+        List<EventMetricData> data = waitForEventMetricDataCount(1);
         // There will likely be many anomalies (one for each dimension). There must be at least one.
         assertTrue("Expected >=1 anomaly", data.size() >= 1);
         AnomalyDetected a = data.get(0).getAtom().getAnomalyDetected();
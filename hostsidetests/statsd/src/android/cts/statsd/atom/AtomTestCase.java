@@ -48,6 +48,9 @@ import com.android.os.StatsLog.EventMetricData;
 import com.android.os.StatsLog.GaugeMetricData;
 import com.android.os.StatsLog.CountMetricData;
 import com.android.os.StatsLog.StatsLogReport;
+import com.android.os.StatsLog.StatsdStatsReport;
+import com.android.os.StatsLog.StatsdStatsReport.ConfigStats;
+import com.android.os.StatsLog.StatsdStatsReport.MatcherStats;
 import com.android.os.StatsLog.ValueMetricData;
 import com.android.tradefed.device.DeviceNotAvailableException;
 import com.android.tradefed.log.LogUtil;
@@ -87,6 +90,7 @@ public class AtomTestCase extends BaseTestCase {
     public static final String DUMPSYS_STATS_CMD = "dumpsys stats";
     public static final String DUMP_PROCSTATS_CMD = "dumpsys procstats";
     public static final String REMOVE_CONFIG_CMD = "cmd stats config remove";
+    public static final String DUMP_METADATA_CMD = "cmd stats print-stats";
     /** ID of the config, which evaluates to -1572883457. */
     public static final long CONFIG_ID = "cts_config".hashCode();
 
@@ -108,6 +112,15 @@ public class AtomTestCase extends BaseTestCase {
     protected static final int WAIT_TIME_SHORT = 500;
     protected static final int WAIT_TIME_LONG = 2_000;
 
+    /** Id of the atom matcher of {@link #setAppBreadcrumbPredicate} in {@link #addGaugeAtom}. */
+    protected static final long APP_BREADCRUMB_PREDICATE_START_MATCHER_ID =
+            "APP_BREADCRUMB_1".hashCode();
+
+    /** Longest time the waitFor methods poll statsd for the expected data, by default. */
+    protected static final long REPORT_WAIT_TIMEOUT = 10_000;
+    private static final long REPORT_POLLING_INITIAL_INTERVAL = 50;
+    private static final long REPORT_POLLING_MAX_INTERVAL = 1_000;
+
     protected static final long SCREEN_STATE_CHANGE_TIMEOUT = 4000;
     protected static final long SCREEN_STATE_POLLING_INTERVAL = 500;
 
@@ -144,6 +157,19 @@ public class AtomTestCase extends BaseTestCase {
         return log.contains(INCIDENTD_STARTED_STRING);
     }
 
+    /**
+     * Returns whether incidentd has been started since the given date, polling the logcat until
+     * it has, or until the given timeout has passed.
+     */
+    protected boolean waitForIncidentdFiredSince(String date, long timeoutMs) throws Exception {
+        final String INCIDENTD_TAG = "incidentd";
+        final String INCIDENTD_STARTED_STRING = "reportIncident";
+        String log = poll(() -> getLogcatSince(date, String.format(
+                "-s %s -e %s", INCIDENTD_TAG, INCIDENTD_STARTED_STRING)),
+                l -> l.contains(INCIDENTD_STARTED_STRING), timeoutMs, "incidentd");
+        return log.contains(INCIDENTD_STARTED_STRING);
+    }
+
     protected boolean checkDeviceFor(String methodName) throws Exception {
         try {
             installPackage(DEVICE_SIDE_TEST_APK, true);
@@ -196,6 +222,15 @@ public class AtomTestCase extends BaseTestCase {
         throw new Exception(String.format("Unexpected state for %s = %s", path, tracing_on));
     }
 
+    /**
+     * Returns whether perfetto enabled the kernel ftrace tracer, polling it until it has, or until
+     * {@link #REPORT_WAIT_TIMEOUT} has passed.
+     */
+    protected boolean waitForSystemTracingEnabled() throws Exception {
+        return poll(this::isSystemTracingEnabled, enabled -> enabled, REPORT_WAIT_TIMEOUT,
+                "system tracing");
+    }
+
     protected static StatsdConfig.Builder createConfigBuilder() {
         return StatsdConfig.newBuilder().setId(CONFIG_ID)
                 .addAllowedLogSource("AID_SYSTEM")
@@ -235,8 +270,34 @@ public class AtomTestCase extends BaseTestCase {
 
     /** Gets the statsd report and sorts it. Note that this also deletes that report from statsd. */
     protected List<EventMetricData> getEventMetricDataList() throws Exception {
-        ConfigMetricsReportList reportList = getReportList();
-        return getEventMetricDataList(reportList);
+        return getEventMetricDataList(null, 0);
+    }
+
+    /**
+     * Gets the event metric data of the given atom from the statsd report and sorts it, skipping
+     * the data of other atoms while the report is decoded. Note that this also deletes that report
+     * from statsd.
+     *
+     * @param atomTag the tag of the atom, or 0 for all atoms
+     */
+    protected List<EventMetricData> getEventMetricDataList(int atomTag) throws Exception {
+        return getEventMetricDataList(null, atomTag);
+    }
+
+    /**
+     * Gets the event metric data of the given metrics and atom from the statsd report and sorts
+     * it, skipping the data of other metrics and atoms while the report is decoded. Note that this
+     * also deletes that report from statsd.
+     *
+     * @param metricIds the ids of the metrics, or null for all metrics
+     * @param atomTag the tag of the atom, or 0 for all atoms
+     */
+    protected List<EventMetricData> getEventMetricDataList(Set<Long> metricIds, int atomTag)
+            throws Exception {
+        ReportStreamDecoder decoder = new ReportStreamDecoder(metricIds, atomTag);
+        decodeReportList(decoder);
+        assertTrue("Expected one report", decoder.getReportCount() == 1);
+        return sortEventMetricData(decoder.getEventMetricData());
     }
 
     /**
@@ -258,10 +319,10 @@ public class AtomTestCase extends BaseTestCase {
         assertTrue("Expected one report", reportList.getReportsCount() == 1);
         ConfigMetricsReport report = reportList.getReports(0);
 
-        List<EventMetricData> data = new ArrayList<>();
-        for (StatsLogReport metric : report.getMetricsList()) {
-            data.addAll(metric.getEventMetrics().getDataList());
-        }
+        return sortEventMetricData(getUnsortedEventMetricData(report));
+    }
+
+    private static List<EventMetricData> sortEventMetricData(List<EventMetricData> data) {
         data.sort(Comparator.comparing(EventMetricData::getElapsedTimestampNanos));
 
         LogUtil.CLog.d("Get EventMetricDataList as following:\n");
@@ -272,15 +333,14 @@ public class AtomTestCase extends BaseTestCase {
     }
 
     protected List<Atom> getGaugeMetricDataList() throws Exception {
-        ConfigMetricsReportList reportList = getReportList();
-        assertTrue("Expected one report.", reportList.getReportsCount() == 1);
+        ReportStreamDecoder decoder = new ReportStreamDecoder(null, 0);
+        decodeReportList(decoder);
+        assertTrue("Expected one report.", decoder.getReportCount() == 1);
         // only config
-        ConfigMetricsReport report = reportList.getReports(0);
-        assertEquals("Expected one metric in the report.", 1, report.getMetricsCount());
+        assertEquals("Expected one metric in the report.", 1, decoder.getMetricCount());
 
         List<Atom> data = new ArrayList<>();
-        for (GaugeMetricData gaugeMetricData :
-                report.getMetrics(0).getGaugeMetrics().getDataList()) {
+        for (GaugeMetricData gaugeMetricData : decoder.getGaugeMetricData()) {
             assertTrue("Expected one bucket.", gaugeMetricData.getBucketInfoCount() == 1);
             for (Atom atom : gaugeMetricData.getBucketInfo(0).getAtomList()) {
                 data.add(atom);
@@ -385,6 +445,292 @@ public class AtomTestCase extends BaseTestCase {
         }
     }
 
+    /**
+     * Decodes the statsd report while it is dumped, keeping only the data the decoder filters.
+     * Note that this also deletes that report from statsd.
+     */
+    private void decodeReportList(ReportStreamDecoder decoder) throws Exception {
+        try {
+            decoder.decode(getDevice(), String.join(" ", DUMP_REPORT_CMD,
+                    String.valueOf(CONFIG_ID), "--include_current_bucket", "--proto"));
+        } catch (com.google.protobuf.InvalidProtocolBufferException e) {
+            LogUtil.CLog.e("Failed to fetch and parse the statsd output report. "
+                    + "Perhaps there is not a valid statsd config for the requested "
+                    + "uid=" + getHostUid() + ", id=" + CONFIG_ID + ".");
+            throw (e);
+        }
+    }
+
+    /**
+     * Gets the statsd report once the given condition holds for it, or once
+     * {@link #REPORT_WAIT_TIMEOUT} has passed. Note that this also deletes that report from
+     * statsd.
+     *
+     * <p>Until then, the report is dumped without deleting it and without the current bucket, so
+     * that polling does not split the buckets of the metrics. The interval between dumps starts
+     * short and doubles up to {@link #REPORT_POLLING_MAX_INTERVAL}. The condition is not asserted;
+     * the caller checks the returned report as it would check {@link #getReportList()}.
+     *
+     * @param description what is waited for, for the log
+     */
+    protected ConfigMetricsReportList waitForReportList(
+            java.util.function.Predicate<ConfigMetricsReportList> condition, String description)
+            throws Exception {
+        return waitForReportList(condition, REPORT_WAIT_TIMEOUT, description);
+    }
+
+    /**
+     * Gets the statsd report once the given condition holds for it, or once the given timeout
+     * has passed. See {@link #waitForReportList(java.util.function.Predicate, String)}.
+     */
+    protected ConfigMetricsReportList waitForReportList(
+            java.util.function.Predicate<ConfigMetricsReportList> condition, long timeoutMs,
+            String description) throws Exception {
+        String command = String.join(" ", DUMP_REPORT_CMD, String.valueOf(CONFIG_ID),
+                "--keep_data", "--proto");
+        poll(() -> getDump(ConfigMetricsReportList.parser(), command), condition, timeoutMs,
+                description);
+        return getReportList();
+    }
+
+    /**
+     * Gets a value until the given condition holds for it, or until the given timeout has passed,
+     * and returns the last value. The interval between tries starts short and doubles up to
+     * {@link #REPORT_POLLING_MAX_INTERVAL}.
+     */
+    private static <T> T poll(java.util.concurrent.Callable<T> getter,
+            java.util.function.Predicate<T> condition, long timeoutMs, String description)
+            throws Exception {
+        long start = System.currentTimeMillis();
+        long deadline = start + timeoutMs;
+        long interval = REPORT_POLLING_INITIAL_INTERVAL;
+        int tries = 0;
+        boolean found;
+        T value;
+        while (true) {
+            value = getter.call();
+            tries++;
+            found = condition.test(value);
+            long now = System.currentTimeMillis();
+            if (found || now >= deadline) {
+                break;
+            }
+            Thread.sleep(Math.min(interval, deadline - now));
+            interval = Math.min(interval * 2, REPORT_POLLING_MAX_INTERVAL);
+        }
+        LogUtil.CLog.i((found ? "Found " : "Timed out waiting for ") + description + " after "
+                + (System.currentTimeMillis() - start) + " ms and " + tries + " tries");
+        return value;
+    }
+
+    /**
+     * Gets the sorted EventMetricData of the statsd report once the given condition holds for
+     * it. See {@link #waitForReportList}.
+     */
+    protected List<EventMetricData> waitForEventMetricDataList(
+            java.util.function.Predicate<List<EventMetricData>> condition, String description)
+            throws Exception {
+        return waitForEventMetricDataList(condition, REPORT_WAIT_TIMEOUT, description);
+    }
+
+    /**
+     * Gets the sorted EventMetricData of the statsd report once the given condition holds for
+     * it, or once the given timeout has passed. See {@link #waitForReportList}.
+     */
+    protected List<EventMetricData> waitForEventMetricDataList(
+            java.util.function.Predicate<List<EventMetricData>> condition, long timeoutMs,
+            String description) throws Exception {
+        ConfigMetricsReportList reportList = waitForReportList(
+                reports -> reports.getReportsCount() == 1
+                        && condition.test(getUnsortedEventMetricData(reports.getReports(0))),
+                timeoutMs, description);
+        return getEventMetricDataList(reportList);
+    }
+
+    /**
+     * Gets the sorted EventMetricData of the statsd report once it has at least the given number
+     * of events. See {@link #waitForReportList}.
+     */
+    protected List<EventMetricData> waitForEventMetricDataCount(int count) throws Exception {
+        return waitForEventMetricDataCount(count, REPORT_WAIT_TIMEOUT);
+    }
+
+    /**
+     * Gets the sorted EventMetricData of the statsd report once it has at least the given number
+     * of events, or once the given timeout has passed. See {@link #waitForReportList}.
+     */
+    protected List<EventMetricData> waitForEventMetricDataCount(int count, long timeoutMs)
+            throws Exception {
+        return waitForEventMetricDataList(data -> data.size() >= count, timeoutMs,
+                count + " events");
+    }
+
+    /**
+     * Gets the sorted EventMetricData of the statsd report once its events went through all the
+     * state sets, in the order expected by {@link #assertStatesOccurred}. See
+     * {@link #waitForReportList}.
+     */
+    protected List<EventMetricData> waitForStatesOccurred(List<Set<Integer>> stateSets,
+            Function<Atom, Integer> getStateFromAtom) throws Exception {
+        return waitForEventMetricDataList(
+                data -> haveStatesOccurred(stateSets, data, getStateFromAtom),
+                stateSets.size() + " state sets");
+    }
+
+    /**
+     * Gets the sorted EventMetricData of the statsd report once its events went through all the
+     * state sets after the first event in the given initial state set, as expected when the
+     * caller pops the initial states with {@link #popUntilFind}. See {@link #waitForReportList}.
+     */
+    protected List<EventMetricData> waitForStatesOccurred(Set<Integer> initialStates,
+            List<Set<Integer>> stateSets, Function<Atom, Integer> getStateFromAtom, long timeoutMs)
+            throws Exception {
+        return waitForEventMetricDataList(data -> {
+            data.sort(Comparator.comparing(EventMetricData::getElapsedTimestampNanos));
+            int i = 0;
+            while (i < data.size()
+                    && !initialStates.contains(getStateFromAtom.apply(data.get(i).getAtom()))) {
+                i++;
+            }
+            return haveStatesOccurred(stateSets, data.subList(i, data.size()), getStateFromAtom);
+        }, timeoutMs, stateSets.size() + " state sets");
+    }
+
+    /**
+     * Returns whether the events, in the order they occurred, went through all the state sets as
+     * expected by {@link #assertStatesOccurred}, or went to an unexpected state, which
+     * assertStatesOccurred reports.
+     */
+    private static boolean haveStatesOccurred(List<Set<Integer>> stateSets,
+            List<EventMetricData> data, Function<Atom, Integer> getStateFromAtom) {
+        data.sort(Comparator.comparing(EventMetricData::getElapsedTimestampNanos));
+        int stateSetIndex = 0;
+        for (EventMetricData d : data) {
+            int state = getStateFromAtom.apply(d.getAtom());
+            if (!stateSets.get(stateSetIndex).contains(state)) {
+                if (stateSetIndex + 1 == stateSets.size()
+                        || !stateSets.get(stateSetIndex + 1).contains(state)) {
+                    // Let assertStatesOccurred report the unexpected state.
+                    return true;
+                }
+                stateSetIndex++;
+            }
+        }
+        return !data.isEmpty() && stateSetIndex == stateSets.size() - 1;
+    }
+
+    /**
+     * Gets the statsd metadata, which counts what statsd has received and done. Unlike the
+     * report, dumping it does not change it.
+     */
+    protected StatsdStatsReport getStatsdStatsReport() throws Exception {
+        try {
+            StatsdStatsReport report = getDump(StatsdStatsReport.parser(),
+                    String.join(" ", DUMP_METADATA_CMD, "--proto"));
+            return report;
+        } catch (com.google.protobuf.InvalidProtocolBufferException e) {
+            LogUtil.CLog.e("Failed to fetch and parse the statsdstats output report.");
+            throw (e);
+        }
+    }
+
+    /**
+     * Gets the statsd metadata once the given condition holds for it, or once the given timeout
+     * has passed. The condition is not asserted.
+     *
+     * @param description what is waited for, for the log
+     */
+    protected StatsdStatsReport waitForStatsdStats(
+            java.util.function.Predicate<StatsdStatsReport> condition, long timeoutMs,
+            String description) throws Exception {
+        return poll(this::getStatsdStatsReport, condition, timeoutMs, description);
+    }
+
+    /**
+     * Returns how many atoms the atom matcher with the given id of the uploaded config has
+     * matched since the config was uploaded.
+     */
+    protected int getAtomMatches(long matcherId) throws Exception {
+        return getAtomMatches(getStatsdStatsReport(), getHostUid(), matcherId);
+    }
+
+    /**
+     * Waits until the atom matcher with the given id of the uploaded config has matched at least
+     * the given number of atoms since the config was uploaded, or until
+     * {@link #REPORT_WAIT_TIMEOUT} has passed.
+     *
+     * <p>The matches are counted in the statsd metadata, so unlike {@link #waitForReportList},
+     * this also works for the metrics whose data stays in the current bucket, and it leaves the
+     * report in statsd. statsd counts a match while it processes the atom, and only dumps the
+     * report once it has processed it for all the metrics, including the pulls it triggers.
+     */
+    protected void waitForAtomMatches(long matcherId, int count) throws Exception {
+        int uid = getHostUid();
+        waitForStatsdStats(report -> getAtomMatches(report, uid, matcherId) >= count,
+                REPORT_WAIT_TIMEOUT, count + " matches of atom matcher " + matcherId);
+    }
+
+    /**
+     * Waits until the atom matchers of the uploaded config have matched at least the given
+     * number of atoms in all, such as the events of a config made by
+     * {@link #createAndUploadConfig}. See {@link #waitForAtomMatches(long, int)}.
+     */
+    protected void waitForAllAtomMatches(int count) throws Exception {
+        waitForAllAtomMatches(count, REPORT_WAIT_TIMEOUT);
+    }
+
+    /**
+     * Waits until the atom matchers of the uploaded config have matched at least the given
+     * number of atoms in all, or until the given timeout has passed.
+     */
+    protected void waitForAllAtomMatches(int count, long timeoutMs) throws Exception {
+        int uid = getHostUid();
+        waitForStatsdStats(report -> getAllAtomMatches(report, uid) >= count, timeoutMs,
+                count + " atom matches");
+    }
+
+    private static int getAtomMatches(StatsdStatsReport report, int uid, long matcherId) {
+        ConfigStats stats = getActiveConfigStats(report, uid);
+        if (stats != null) {
+            for (MatcherStats matcherStats : stats.getMatcherStatsList()) {
+                if (matcherStats.getId() == matcherId) {
+                    return matcherStats.getMatchedTimes();
+                }
+            }
+        }
+        return 0;
+    }
+
+    private static int getAllAtomMatches(StatsdStatsReport report, int uid) {
+        ConfigStats stats = getActiveConfigStats(report, uid);
+        int matches = 0;
+        if (stats != null) {
+            for (MatcherStats matcherStats : stats.getMatcherStatsList()) {
+                matches += matcherStats.getMatchedTimes();
+            }
+        }
+        return matches;
+    }
+
+    /** Returns the metadata of the uploaded config, or null if statsd has not received it. */
+    private static ConfigStats getActiveConfigStats(StatsdStatsReport report, int uid) {
+        for (ConfigStats stats : report.getConfigStatsList()) {
+            if (stats.getId() == CONFIG_ID && stats.getUid() == uid
+                    && !stats.hasDeletionTimeSec()) {
+                return stats;
+            }
+        }
+        return null;
+    }
+
+    private static List<EventMetricData> getUnsortedEventMetricData(ConfigMetricsReport report) {
+        List<EventMetricData> data = new ArrayList<>();
+        for (StatsLogReport metric : report.getMetricsList()) {
+            data.addAll(metric.getEventMetrics().getDataList());
+        }
+        return data;
+    }
+
     protected BatteryStatsProto getBatteryStatsProto() throws Exception {
         try {
             BatteryStatsProto batteryStatsProto = getDump(BatteryStatsServiceDumpProto.parser(),
@@ -548,10 +894,9 @@ public class AtomTestCase extends BaseTestCase {
         conf.addAtomMatcher(AtomMatcher.newBuilder()
                 .setId(atomName.hashCode())
                 .setSimpleAtomMatcher(sam));
-        final String predicateTrueName = "APP_BREADCRUMB_1";
         final String predicateFalseName = "APP_BREADCRUMB_2";
         conf.addAtomMatcher(AtomMatcher.newBuilder()
-                .setId(predicateTrueName.hashCode())
+                .setId(APP_BREADCRUMB_PREDICATE_START_MATCHER_ID)
                 .setSimpleAtomMatcher(SimpleAtomMatcher.newBuilder()
                         .setAtomId(Atom.APP_BREADCRUMB_REPORTED_FIELD_NUMBER)
                         .addFieldValueMatcher(FieldValueMatcher.newBuilder()
@@ -574,7 +919,7 @@ public class AtomTestCase extends BaseTestCase {
         conf.addPredicate(Predicate.newBuilder()
                 .setId(predicateName.hashCode())
                 .setSimplePredicate(SimplePredicate.newBuilder()
-                        .setStart(predicateTrueName.hashCode())
+                        .setStart(APP_BREADCRUMB_PREDICATE_START_MATCHER_ID)
                         .setStop(predicateFalseName.hashCode())
                         .setCountNesting(false)
                 )
@@ -802,6 +1147,16 @@ public class AtomTestCase extends BaseTestCase {
         doAppBreadcrumbReportedStart(1);
     }
 
+    /**
+     * Sets the predicate of the gauge metrics added by {@link #addGaugeAtom}, and waits until
+     * statsd has processed it, and so pulled the atoms of the gauge metrics.
+     */
+    public void setAppBreadcrumbPredicateAndWait() throws Exception {
+        int count = getAtomMatches(APP_BREADCRUMB_PREDICATE_START_MATCHER_ID);
+        setAppBreadcrumbPredicate();
+        waitForAtomMatches(APP_BREADCRUMB_PREDICATE_START_MATCHER_ID, count + 1);
+    }
+
     public void clearAppBreadcrumbPredicate() throws Exception {
         doAppBreadcrumbReportedStart(2);
     }
@@ -89,10 +89,10 @@ public class HostAtomTests extends AtomTestCase {
         turnScreenOn();
         Thread.sleep(WAIT_TIME_LONG);
         turnScreenOff();
-        Thread.sleep(WAIT_TIME_LONG);
 
         // Sorted list of events in order in which they occurred.
-        List<EventMetricData> data = getEventMetricDataList();
+        List<EventMetricData> data = waitForStatesOccurred(stateSet,
+                atom -> atom.getScreenStateChanged().getState().getNumber());
         // reset screen to on
         turnScreenOn();
         // Restores AoD to initial state.
@@ -141,10 +141,10 @@ public class HostAtomTests extends AtomTestCase {
         setChargingState(4);
         Thread.sleep(WAIT_TIME_SHORT);
         setChargingState(5);
-        Thread.sleep(WAIT_TIME_SHORT);
 
         // Sorted list of events in order in which they occurred.
-        List<EventMetricData> data = getEventMetricDataList();
+        List<EventMetricData> data = waitForStatesOccurred(stateSet,
+                atom -> atom.getChargingStateChanged().getState().getNumber());
 
         // Unfreeze battery state after test
         resetBatteryStatus();
@@ -194,10 +194,10 @@ public class HostAtomTests extends AtomTestCase {
         plugInWireless();
         Thread.sleep(WAIT_TIME_SHORT);
         unplugDevice();
-        Thread.sleep(WAIT_TIME_SHORT);
 
         // Sorted list of events in order in which they occurred.
-        List<EventMetricData> data = getEventMetricDataList();
+        List<EventMetricData> data = waitForStatesOccurred(stateSet,
+                atom -> atom.getPluggedStateChanged().getState().getNumber());
 
         // Unfreeze battery state after test
         resetBatteryStatus();
@@ -242,10 +242,10 @@ public class HostAtomTests extends AtomTestCase {
         setBatteryLevel(75);
         Thread.sleep(WAIT_TIME_SHORT);
         setBatteryLevel(100);
-        Thread.sleep(WAIT_TIME_SHORT);
 
         // Sorted list of events in order in which they occurred.
-        List<EventMetricData> data = getEventMetricDataList();
+        List<EventMetricData> data = waitForStatesOccurred(stateSet,
+                atom -> atom.getBatteryLevelChanged().getBatteryLevel());
 
         // Unfreeze battery state after test
         resetBatteryStatus();
@@ -285,10 +285,10 @@ public class HostAtomTests extends AtomTestCase {
         enterDozeModeDeep();
         Thread.sleep(WAIT_TIME_SHORT);
         leaveDozeMode();
-        Thread.sleep(WAIT_TIME_SHORT);
 
         // Sorted list of events in order in which they occurred.
-        List<EventMetricData> data = getEventMetricDataList();;
+        List<EventMetricData> data = waitForStatesOccurred(stateSet,
+                atom -> atom.getDeviceIdleModeStateChanged().getState().getNumber());
 
         // Assert that the events happened in the expected order.
         assertStatesOccurred(stateSet, data, WAIT_TIME_SHORT,
@@ -321,10 +321,10 @@ public class HostAtomTests extends AtomTestCase {
         turnBatterySaverOn();
         Thread.sleep(WAIT_TIME_LONG);
         turnBatterySaverOff();
-        Thread.sleep(WAIT_TIME_LONG);
 
         // Sorted list of events in order in which they occurred.
-        List<EventMetricData> data = getEventMetricDataList();
+        List<EventMetricData> data = waitForStatesOccurred(stateSet,
+                atom -> atom.getBatterySaverModeStateChanged().getState().getNumber());
 
         // Assert that the events happened in the expected order.
         assertStatesOccurred(stateSet, data, WAIT_TIME_LONG,
@@ -344,8 +344,7 @@ public class HostAtomTests extends AtomTestCase {
         uploadConfig(config);
 
         Thread.sleep(WAIT_TIME_LONG);
-        setAppBreadcrumbPredicate();
-        Thread.sleep(WAIT_TIME_LONG);
+        setAppBreadcrumbPredicateAndWait();
 
         List<Atom> data = getGaugeMetricDataList();
 
@@ -370,8 +369,7 @@ public class HostAtomTests extends AtomTestCase {
         uploadConfig(config);
 
         Thread.sleep(WAIT_TIME_LONG);
-        setAppBreadcrumbPredicate();
-        Thread.sleep(WAIT_TIME_LONG);
+        setAppBreadcrumbPredicateAndWait();
 
         List<Atom> data = getGaugeMetricDataList();
 
@@ -394,8 +392,7 @@ public class HostAtomTests extends AtomTestCase {
         uploadConfig(config);
 
         Thread.sleep(WAIT_TIME_LONG);
-        setAppBreadcrumbPredicate();
-        Thread.sleep(WAIT_TIME_LONG);
+        setAppBreadcrumbPredicateAndWait();
 
         List<Atom> data = getGaugeMetricDataList();
 
@@ -419,8 +416,7 @@ public class HostAtomTests extends AtomTestCase {
         uploadConfig(config);
 
         Thread.sleep(WAIT_TIME_LONG);
-        setAppBreadcrumbPredicate();
-        Thread.sleep(WAIT_TIME_LONG);
+        setAppBreadcrumbPredicateAndWait();
 
         List<Atom> data = getGaugeMetricDataList();
 
@@ -445,8 +441,7 @@ public class HostAtomTests extends AtomTestCase {
         uploadConfig(config);
 
         Thread.sleep(WAIT_TIME_LONG);
-        setAppBreadcrumbPredicate();
-        Thread.sleep(WAIT_TIME_LONG);
+        setAppBreadcrumbPredicateAndWait();
 
         List<Atom> data = getGaugeMetricDataList();
 
@@ -468,8 +463,7 @@ public class HostAtomTests extends AtomTestCase {
         uploadConfig(config);
 
         Thread.sleep(WAIT_TIME_LONG);
-        setAppBreadcrumbPredicate();
-        Thread.sleep(WAIT_TIME_LONG);
+        setAppBreadcrumbPredicateAndWait();
 
         List<Atom> data = getGaugeMetricDataList();
 
@@ -504,8 +498,7 @@ public class HostAtomTests extends AtomTestCase {
         uploadConfig(config);
 
         Thread.sleep(WAIT_TIME_LONG);
-        setAppBreadcrumbPredicate();
-        Thread.sleep(WAIT_TIME_LONG);
+        setAppBreadcrumbPredicateAndWait();
 
         List<Atom> dataList = getGaugeMetricDataList();
 
@@ -529,8 +522,7 @@ public class HostAtomTests extends AtomTestCase {
         uploadConfig(config);
 
         Thread.sleep(WAIT_TIME_LONG);
-        setAppBreadcrumbPredicate();
-        Thread.sleep(WAIT_TIME_LONG);
+        setAppBreadcrumbPredicateAndWait();
 
         List<Atom> data = getGaugeMetricDataList();
         assertTrue(data.size() > 0);
@@ -557,8 +549,7 @@ public class HostAtomTests extends AtomTestCase {
         uploadConfig(config);
 
         Thread.sleep(WAIT_TIME_LONG);
-        setAppBreadcrumbPredicate();
-        Thread.sleep(WAIT_TIME_LONG);
+        setAppBreadcrumbPredicateAndWait();
 
         List<Atom> dataList = getGaugeMetricDataList();
 
@@ -578,9 +569,8 @@ public class HostAtomTests extends AtomTestCase {
         Thread.sleep(WAIT_TIME_SHORT);
 
         doAppBreadcrumbReportedStart(1);
-        Thread.sleep(WAIT_TIME_SHORT);
 
-        List<EventMetricData> data = getEventMetricDataList();
+        List<EventMetricData> data = waitForEventMetricDataCount(1);
         AppBreadcrumbReported atom = data.get(0).getAtom().getAppBreadcrumbReported();
         assertTrue(atom.getLabel() == 1);
         assertTrue(atom.getState().getNumber() == AppBreadcrumbReported.State.START_VALUE);
@@ -596,7 +586,8 @@ public class HostAtomTests extends AtomTestCase {
         Thread.sleep(WAIT_TIME_SHORT);
 
         doAppBreadcrumbReportedStart(1);
-        Thread.sleep(WAIT_TIME_SHORT);
+        // Wait without taking the report, which the incident section also dumps.
+        waitForAllAtomMatches(1);
 
         // Get the stats incident section.
         List<ConfigMetricsReportList> listList = getReportsFromStatsDataDumpProto();
@@ -638,11 +629,16 @@ public class HostAtomTests extends AtomTestCase {
         Thread.sleep(1_200);
         turnOffAirplaneMode();
         // wait long enough for the device to restore connection
-        Thread.sleep(13_000);
+        List<EventMetricData> data = waitForEventMetricDataList(
+                HostAtomTests::hasDisconnectAndConnectEvents, 13_000,
+                "disconnect and connect events");
 
-        List<EventMetricData> data = getEventMetricDataList();
         // at least 1 disconnect and 1 connect
         assertThat(data.size()).isAtLeast(2);
+        assertTrue(hasDisconnectAndConnectEvents(data));
+    }
+
+    private static boolean hasDisconnectAndConnectEvents(List<EventMetricData> data) {
         boolean foundDisconnectEvent = false;
         boolean foundConnectEvent = false;
         for (EventMetricData d : data) {
@@ -656,6 +652,6 @@ public class HostAtomTests extends AtomTestCase {
                 foundConnectEvent = true;
             }
         }
-        assertTrue(foundConnectEvent && foundDisconnectEvent);
+        return foundConnectEvent && foundDisconnectEvent;
     }
 }
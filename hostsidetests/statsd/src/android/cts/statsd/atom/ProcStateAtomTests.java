@@ -21,6 +21,7 @@ import com.android.os.AtomsProto.Atom;
 import com.android.os.StatsLog.EventMetricData;
 
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -39,7 +40,6 @@ public class ProcStateAtomTests extends ProcStateTestCase {
     // ActivityManager can take a while to register screen state changes, mandating an extra delay.
     private static final int WAIT_TIME_FOR_CONFIG_AND_SCREEN_MS = 1_000;
     private static final int EXTRA_WAIT_TIME_MS = 1_000; // as buffer when proc state changing.
-    private static final int STATSD_REPORT_WAIT_TIME_MS = 500; // make sure statsd finishes log.
 
     private static final String FEATURE_WATCH = "android.hardware.type.watch";
 
@@ -107,9 +107,8 @@ public class ProcStateAtomTests extends ProcStateTestCase {
 
         executeForegroundService();
         final int waitTime = SLEEP_OF_FOREGROUND_SERVICE + EXTRA_WAIT_TIME_MS;
-        Thread.sleep(waitTime + STATSD_REPORT_WAIT_TIME_MS);
-
-        List<EventMetricData> data = getEventMetricDataList();
+        List<EventMetricData> data = waitForStatesOccurred(onStates, stateSet,
+                PROC_STATE_FUNCTION, waitTime + REPORT_WAIT_TIMEOUT);
         popUntilFind(data, onStates, PROC_STATE_FUNCTION); // clear out initial proc states.
         assertStatesOccurred(stateSet, data, waitTime, PROC_STATE_FUNCTION);
     }
@@ -129,9 +128,8 @@ public class ProcStateAtomTests extends ProcStateTestCase {
 
         executeForegroundActivity(ACTION_SHOW_APPLICATION_OVERLAY);
         final int waitTime = EXTRA_WAIT_TIME_MS + 5_000; // Overlay may need to sit there a while.
-        Thread.sleep(waitTime + STATSD_REPORT_WAIT_TIME_MS);
-
-        List<EventMetricData> data = getEventMetricDataList();
+        List<EventMetricData> data = waitForStatesOccurred(onStates, stateSet,
+                PROC_STATE_FUNCTION, waitTime + REPORT_WAIT_TIMEOUT);
         popUntilFind(data, onStates, PROC_STATE_FUNCTION); // clear out initial proc states.
         assertStatesOccurred(stateSet, data, 0, PROC_STATE_FUNCTION);
     }
@@ -149,9 +147,8 @@ public class ProcStateAtomTests extends ProcStateTestCase {
 
         executeBackgroundService(ACTION_BACKGROUND_SLEEP);
         final int waitTime = SLEEP_OF_ACTION_BACKGROUND_SLEEP + EXTRA_WAIT_TIME_MS;
-        Thread.sleep(waitTime + STATSD_REPORT_WAIT_TIME_MS);
-
-        List<EventMetricData> data = getEventMetricDataList();
+        List<EventMetricData> data = waitForStatesOccurred(onStates, stateSet,
+                PROC_STATE_FUNCTION, waitTime + REPORT_WAIT_TIMEOUT);
         popUntilFind(data, onStates, PROC_STATE_FUNCTION); // clear out initial proc states.
         assertStatesOccurred(stateSet, data, waitTime, PROC_STATE_FUNCTION);
     }
@@ -171,9 +168,8 @@ public class ProcStateAtomTests extends ProcStateTestCase {
 
         executeForegroundActivity(ACTION_SLEEP_WHILE_TOP);
         final int waitTime = SLEEP_OF_ACTION_SLEEP_WHILE_TOP + EXTRA_WAIT_TIME_MS;
-        Thread.sleep(waitTime + STATSD_REPORT_WAIT_TIME_MS);
-
-        List<EventMetricData> data = getEventMetricDataList();
+        List<EventMetricData> data = waitForStatesOccurred(onStates, stateSet,
+                PROC_STATE_FUNCTION, waitTime + REPORT_WAIT_TIMEOUT);
         popUntilFind(data, onStates, PROC_STATE_FUNCTION); // clear out initial proc states.
         assertStatesOccurred(stateSet, data, waitTime, PROC_STATE_FUNCTION);
     }
@@ -197,9 +193,8 @@ public class ProcStateAtomTests extends ProcStateTestCase {
         // ASAP, turn off the screen to make proc state -> top_sleeping.
         turnScreenOff();
         final int waitTime = SLEEP_OF_ACTION_SLEEP_WHILE_TOP + EXTRA_WAIT_TIME_MS;
-        Thread.sleep(waitTime + STATSD_REPORT_WAIT_TIME_MS);
-
-        List<EventMetricData> data = getEventMetricDataList();
+        List<EventMetricData> data = waitForStatesOccurred(onStates, stateSet,
+                PROC_STATE_FUNCTION, waitTime + REPORT_WAIT_TIMEOUT);
         popUntilFind(data, new HashSet<>(Arrays.asList(ProcessStateEnum.PROCESS_STATE_TOP_VALUE)),
                 PROC_STATE_FUNCTION); // clear out anything prior to it entering TOP.
         popUntilFind(data, onStates, PROC_STATE_FUNCTION); // clear out TOP itself.
@@ -235,7 +230,13 @@ public class ProcStateAtomTests extends ProcStateTestCase {
         executeForegroundActivity(ACTION_SHOW_APPLICATION_OVERLAY);
         // Now check the data *before* the app enters cache again (to avoid another cache event).
 
-        List<EventMetricData> data = getEventMetricDataList();
+        List<EventMetricData> data = waitForEventMetricDataList(steps -> {
+            steps.sort(Comparator.comparing(EventMetricData::getElapsedTimestampNanos));
+            popUntilFind(steps, BG_STATES, PROC_STATE_FUNCTION);
+            popUntilFind(steps, onStates, PROC_STATE_FUNCTION);
+            return steps.stream()
+                    .anyMatch(d -> offStates.contains(PROC_STATE_FUNCTION.apply(d.getAtom())));
+        }, "the app to leave the cached state");
         // First, clear out any incidental cached states of step #1, prior to step #2.
         popUntilFind(data, BG_STATES, PROC_STATE_FUNCTION);
         // Now clear out the bg state from step #2 (since we are interested in the cache after it).
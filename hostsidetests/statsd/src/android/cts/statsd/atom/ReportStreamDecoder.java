@@ -0,0 +1,284 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.cts.statsd.atom;
+
+import com.android.ddmlib.IShellOutputReceiver;
+import com.android.os.StatsLog.ConfigMetricsReport;
+import com.android.os.StatsLog.ConfigMetricsReportList;
+import com.android.os.StatsLog.EventMetricData;
+import com.android.os.StatsLog.GaugeMetricData;
+import com.android.os.StatsLog.StatsLogReport;
+import com.android.tradefed.device.ITestDevice;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.WireFormat;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Decodes the ConfigMetricsReportList written by a {@code cmd stats dump-report --proto} shell
+ * command while the command runs, and keeps only the event metric data and gauge metric data of
+ * the metrics and atoms asked for.
+ *
+ * <p>The shell output is piped to the decoder instead of being collected, and the reports are
+ * walked field by field, so that neither the output nor a whole report is held in memory. Only
+ * the EventMetricData and GaugeMetricData which pass the filters are parsed into messages.
+ */
+final class ReportStreamDecoder {
+    private static final int PIPE_SIZE = 64 * 1024;
+
+    private static final int REPORTS_TAG =
+            lengthDelimitedTag(ConfigMetricsReportList.REPORTS_FIELD_NUMBER);
+    private static final int METRICS_TAG =
+            lengthDelimitedTag(ConfigMetricsReport.METRICS_FIELD_NUMBER);
+    private static final int METRIC_ID_TAG = WireFormat.WIRETYPE_VARINT
+            | (StatsLogReport.METRIC_ID_FIELD_NUMBER << 3);
+    private static final int EVENT_METRICS_TAG =
+            lengthDelimitedTag(StatsLogReport.EVENT_METRICS_FIELD_NUMBER);
+    private static final int GAUGE_METRICS_TAG =
+            lengthDelimitedTag(StatsLogReport.GAUGE_METRICS_FIELD_NUMBER);
+    private static final int EVENT_METRIC_DATA_TAG =
+            lengthDelimitedTag(StatsLogReport.EventMetricDataWrapper.DATA_FIELD_NUMBER);
+    private static final int GAUGE_METRIC_DATA_TAG =
+            lengthDelimitedTag(StatsLogReport.GaugeMetricDataWrapper.DATA_FIELD_NUMBER);
+    private static final int ATOM_TAG = lengthDelimitedTag(EventMetricData.ATOM_FIELD_NUMBER);
+
+    private final Set<Long> mMetricIds;
+    private final int mAtomTag;
+
+    private int mReportCount;
+    private int mMetricCount;
+    private final List<EventMetricData> mEventMetricData = new ArrayList<>();
+    private final List<GaugeMetricData> mGaugeMetricData = new ArrayList<>();
+
+    /**
+     * @param metricIds the ids of the metrics to keep the data of, or null for all metrics
+     * @param atomTag the tag of the atoms to keep the event metric data of, or 0 for all atoms
+     */
+    ReportStreamDecoder(Set<Long> metricIds, int atomTag) {
+        mMetricIds = metricIds;
+        mAtomTag = atomTag;
+    }
+
+    /** Runs the shell command on the device and decodes its output. */
+    void decode(ITestDevice device, String command) throws Exception {
+        PipedInputStream in = new PipedInputStream(PIPE_SIZE);
+        PipeReceiver receiver = new PipeReceiver(new PipedOutputStream(in));
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<?> shellCommand = executor.submit(() -> {
+            try {
+                device.executeShellCommand(command, receiver);
+            } finally {
+                receiver.close();
+            }
+            return null;
+        });
+        try {
+            decode(in);
+        } finally {
+            // Let the shell command finish without a reader if the decoding failed.
+            receiver.cancel();
+            in.close();
+            executor.shutdown();
+        }
+        try {
+            shellCommand.get();
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        }
+    }
+
+    /** Decodes a serialized ConfigMetricsReportList. */
+    void decode(InputStream in) throws IOException {
+        CodedInputStream input = CodedInputStream.newInstance(in);
+        input.setSizeLimit(Integer.MAX_VALUE);
+        decodeReportList(input);
+    }
+
+    /** Returns the number of reports in the report list. */
+    int getReportCount() {
+        return mReportCount;
+    }
+
+    /** Returns the number of metrics in all the reports, including the filtered out ones. */
+    int getMetricCount() {
+        return mMetricCount;
+    }
+
+    /** Returns the kept event metric data, in the order of the reports. */
+    List<EventMetricData> getEventMetricData() {
+        return mEventMetricData;
+    }
+
+    /** Returns the kept gauge metric data, in the order of the reports. */
+    List<GaugeMetricData> getGaugeMetricData() {
+        return mGaugeMetricData;
+    }
+
+    private void decodeReportList(CodedInputStream input) throws IOException {
+        int tag;
+        while ((tag = input.readTag()) != 0) {
+            if (tag == REPORTS_TAG) {
+                mReportCount++;
+                int limit = input.pushLimit(input.readRawVarint32());
+                decodeReport(input);
+                input.popLimit(limit);
+            } else {
+                input.skipField(tag);
+            }
+        }
+    }
+
+    private void decodeReport(CodedInputStream input) throws IOException {
+        int tag;
+        while ((tag = input.readTag()) != 0) {
+            if (tag == METRICS_TAG) {
+                mMetricCount++;
+                int limit = input.pushLimit(input.readRawVarint32());
+                decodeMetric(input);
+                input.popLimit(limit);
+            } else {
+                input.skipField(tag);
+            }
+        }
+    }
+
+    private void decodeMetric(CodedInputStream input) throws IOException {
+        // The metric id may come after the data, so keep the data until the metric is read.
+        Long metricId = null;
+        List<EventMetricData> eventMetricData = new ArrayList<>();
+        List<GaugeMetricData> gaugeMetricData = new ArrayList<>();
+        int tag;
+        while ((tag = input.readTag()) != 0) {
+            if (tag == METRIC_ID_TAG) {
+                metricId = input.readInt64();
+            } else if (tag == EVENT_METRICS_TAG) {
+                int limit = input.pushLimit(input.readRawVarint32());
+                decodeEventMetrics(input, eventMetricData);
+                input.popLimit(limit);
+            } else if (tag == GAUGE_METRICS_TAG) {
+                int limit = input.pushLimit(input.readRawVarint32());
+                decodeGaugeMetrics(input, gaugeMetricData);
+                input.popLimit(limit);
+            } else {
+                input.skipField(tag);
+            }
+        }
+        if (mMetricIds == null || (metricId != null && mMetricIds.contains(metricId))) {
+            mEventMetricData.addAll(eventMetricData);
+            mGaugeMetricData.addAll(gaugeMetricData);
+        }
+    }
+
+    private void decodeEventMetrics(CodedInputStream input, List<EventMetricData> data)
+            throws IOException {
+        int tag;
+        while ((tag = input.readTag()) != 0) {
+            if (tag == EVENT_METRIC_DATA_TAG) {
+                ByteString bytes = input.readBytes();
+                if (mAtomTag == 0 || getAtomTag(bytes) == mAtomTag) {
+                    data.add(EventMetricData.parseFrom(bytes));
+                }
+            } else {
+                input.skipField(tag);
+            }
+        }
+    }
+
+    private void decodeGaugeMetrics(CodedInputStream input, List<GaugeMetricData> data)
+            throws IOException {
+        int tag;
+        while ((tag = input.readTag()) != 0) {
+            if (tag == GAUGE_METRIC_DATA_TAG) {
+                data.add(GaugeMetricData.parseFrom(input.readBytes()));
+            } else {
+                input.skipField(tag);
+            }
+        }
+    }
+
+    /**
+     * Returns the tag of the atom of an encoded EventMetricData without parsing it, which is the
+     * number of the only field set in the Atom message, or 0 if there is no atom.
+     */
+    private static int getAtomTag(ByteString eventMetricData) throws IOException {
+        CodedInputStream input = eventMetricData.newCodedInput();
+        int tag;
+        while ((tag = input.readTag()) != 0) {
+            if (tag == ATOM_TAG) {
+                input.pushLimit(input.readRawVarint32());
+                return WireFormat.getTagFieldNumber(input.readTag());
+            }
+            input.skipField(tag);
+        }
+        return 0;
+    }
+
+    private static int lengthDelimitedTag(int fieldNumber) {
+        return (fieldNumber << 3) | WireFormat.WIRETYPE_LENGTH_DELIMITED;
+    }
+
+    /** Writes the shell output to the pipe read by the decoder, until it is cancelled. */
+    private static final class PipeReceiver implements IShellOutputReceiver {
+        private final PipedOutputStream mOut;
+        private volatile boolean mCancelled;
+
+        PipeReceiver(PipedOutputStream out) {
+            mOut = out;
+        }
+
+        @Override
+        public void addOutput(byte[] data, int offset, int length) {
+            if (mCancelled) {
+                return;
+            }
+            try {
+                mOut.write(data, offset, length);
+            } catch (IOException e) {
+                // The decoder closed the pipe.
+                mCancelled = true;
+            }
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return mCancelled;
+        }
+
+        void cancel() {
+            mCancelled = true;
+        }
+
+        void close() throws IOException {
+            mOut.close();
+        }
+    }
+}
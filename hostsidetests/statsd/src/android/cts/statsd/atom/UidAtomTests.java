@@ -97,7 +97,10 @@ public class UidAtomTests extends DeviceAtomTestCase {
         Thread.sleep(WAIT_TIME_SHORT);
 
         executeBackgroundService(ACTION_LMK);
-        Thread.sleep(5_000);
+        waitForAllAtomMatches(1);
+        // Keep the report until lmkd had time to log another kill, so that the report is final
+        // when it is checked for exactly one kill. A second kill ends the wait early.
+        waitForAllAtomMatches(2, WAIT_TIME_LONG);
 
         // Sorted list of events in order in which they occurred.
         List<EventMetricData> data = getEventMetricDataList();
@@ -120,9 +123,8 @@ public class UidAtomTests extends DeviceAtomTestCase {
 
         runActivity("StatsdCtsForegroundActivity", "action", "action.crash");
 
-        Thread.sleep(WAIT_TIME_SHORT);
         // Sorted list of events in order in which they occurred.
-        List<EventMetricData> data = getEventMetricDataList();
+        List<EventMetricData> data = waitForEventMetricDataCount(1);
 
         AppCrashOccurred atom = data.get(0).getAtom().getAppCrashOccurred();
         assertEquals("crash", atom.getEventType());
@@ -144,7 +146,7 @@ public class UidAtomTests extends DeviceAtomTestCase {
         runActivity("StatsdCtsForegroundActivity", "action", "action.sleep_top");
 
         // Sorted list of events in order in which they occurred.
-        List<EventMetricData> data = getEventMetricDataList();
+        List<EventMetricData> data = waitForEventMetricDataCount(1);
 
         AppStartOccurred atom = data.get(0).getAtom().getAppStartOccurred();
         assertEquals("com.android.server.cts.device.statsd", atom.getPkgName());
@@ -177,9 +179,9 @@ public class UidAtomTests extends DeviceAtomTestCase {
 
         runDeviceTests(DEVICE_SIDE_TEST_PACKAGE, ".AtomTests", name);
 
-        Thread.sleep(WAIT_TIME_SHORT);
         // Sorted list of events in order in which they occurred.
-        List<EventMetricData> data = getEventMetricDataList();
+        List<EventMetricData> data = waitForStatesOccurred(stateSet,
+                atom -> atom.getAudioStateChanged().getState().getNumber());
 
         // AudioStateChanged timestamp is fuzzed to 5min buckets
         assertStatesOccurred(stateSet, data, 0,
@@ -288,7 +290,7 @@ public class UidAtomTests extends DeviceAtomTestCase {
             runActivity("HiddenApiUsedActivity", null, null);
 
 
-            List<EventMetricData> data = getEventMetricDataList();
+            List<EventMetricData> data = waitForEventMetricDataCount(1);
             assertTrue(data.size() == 1);
 
             HiddenApiUsed atom = data.get(0).getAtom().getHiddenApiUsed();
@@ -327,7 +329,8 @@ public class UidAtomTests extends DeviceAtomTestCase {
         runDeviceTests(DEVICE_SIDE_TEST_PACKAGE, ".AtomTests", "testCameraState");
 
         // Sorted list of events in order in which they occurred.
-        List<EventMetricData> data = getEventMetricDataList();
+        List<EventMetricData> data = waitForStatesOccurred(stateSet,
+                atom -> atom.getCameraStateChanged().getState().getNumber());
 
         // Assert that the events happened in the expected order.
         assertStatesOccurred(stateSet, data, WAIT_TIME_LONG,
@@ -347,8 +350,7 @@ public class UidAtomTests extends DeviceAtomTestCase {
         runDeviceTests(DEVICE_SIDE_TEST_PACKAGE, ".AtomTests", "testSimpleCpu");
 
         Thread.sleep(WAIT_TIME_SHORT);
-        setAppBreadcrumbPredicate();
-        Thread.sleep(WAIT_TIME_LONG);
+        setAppBreadcrumbPredicateAndWait();
 
         List<Atom> atomList = getGaugeMetricDataList();
 
@@ -380,8 +382,7 @@ public class UidAtomTests extends DeviceAtomTestCase {
         Thread.sleep(WAIT_TIME_LONG);
         runDeviceTests(DEVICE_SIDE_TEST_PACKAGE, ".AtomTests", "testSimpleCpu");
         Thread.sleep(WAIT_TIME_SHORT);
-        setAppBreadcrumbPredicate();
-        Thread.sleep(WAIT_TIME_LONG);
+        setAppBreadcrumbPredicateAndWait();
 
         Atom atom = getGaugeMetricDataList().get(0);
         assertTrue(atom.getDeviceCalculatedPowerUse().getComputedPowerNanoAmpSecs() > 0);
@@ -403,8 +404,7 @@ public class UidAtomTests extends DeviceAtomTestCase {
         Thread.sleep(WAIT_TIME_LONG);
         runDeviceTests(DEVICE_SIDE_TEST_PACKAGE, ".AtomTests", "testSimpleCpu");
         Thread.sleep(WAIT_TIME_SHORT);
-        setAppBreadcrumbPredicate();
-        Thread.sleep(WAIT_TIME_LONG);
+        setAppBreadcrumbPredicateAndWait();
 
         List<Atom> atomList = getGaugeMetricDataList();
         boolean uidFound = false;
@@ -434,7 +434,7 @@ public class UidAtomTests extends DeviceAtomTestCase {
 
         runActivity("DaveyActivity", null, null);
 
-        List<EventMetricData> data = getEventMetricDataList();
+        List<EventMetricData> data = waitForEventMetricDataCount(1);
         assertTrue(data.size() == 1);
         long duration = data.get(0).getAtom().getDaveyOccurred().getJankDurationMillis();
         assertTrue("Jank duration of " + duration + "ms was less than " + MIN_DURATION + "ms",
@@ -466,7 +466,8 @@ public class UidAtomTests extends DeviceAtomTestCase {
         runDeviceTests(DEVICE_SIDE_TEST_PACKAGE, ".AtomTests", name);
 
         // Sorted list of events in order in which they occurred.
-        List<EventMetricData> data = getEventMetricDataList();
+        List<EventMetricData> data = waitForStatesOccurred(stateSet,
+                atom -> atom.getFlashlightStateChanged().getState().getNumber());
 
         // Assert that the events happened in the expected order.
         assertStatesOccurred(stateSet, data, WAIT_TIME_SHORT,
@@ -494,7 +495,8 @@ public class UidAtomTests extends DeviceAtomTestCase {
         runDeviceTests(DEVICE_SIDE_TEST_PACKAGE, ".AtomTests", name);
 
         // Sorted list of events in order in which they occurred.
-        List<EventMetricData> data = getEventMetricDataList();
+        List<EventMetricData> data = waitForStatesOccurred(stateSet,
+                atom -> atom.getForegroundServiceStateChanged().getState().getNumber());
 
         // Assert that the events happened in the expected order.
         assertStatesOccurred(stateSet, data, WAIT_TIME_SHORT,
@@ -561,7 +563,8 @@ public class UidAtomTests extends DeviceAtomTestCase {
         runActivity("VideoPlayerActivity", "action", "action.play_video");
 
         // Sorted list of events in order in which they occurred.
-        List<EventMetricData> data = getEventMetricDataList();
+        List<EventMetricData> data = waitForStatesOccurred(stateSet,
+                atom -> atom.getMediaCodecStateChanged().getState().getNumber());
 
         // Assert that the events happened in the expected order.
         assertStatesOccurred(stateSet, data, WAIT_TIME_LONG,
@@ -589,7 +592,8 @@ public class UidAtomTests extends DeviceAtomTestCase {
                 3_000);
 
         // Sorted list of events in order in which they occurred.
-        List<EventMetricData> data = getEventMetricDataList();
+        List<EventMetricData> data = waitForStatesOccurred(stateSet,
+                atom -> atom.getOverlayStateChanged().getState().getNumber());
 
         // Assert that the events happened in the expected order.
         // The overlay box should appear about 2sec after the app start
@@ -623,7 +627,8 @@ public class UidAtomTests extends DeviceAtomTestCase {
         runActivity("VideoPlayerActivity", "action", "action.play_video_picture_in_picture_mode");
 
         // Sorted list of events in order in which they occurred.
-        List<EventMetricData> data = getEventMetricDataList();
+        List<EventMetricData> data = waitForStatesOccurred(stateSet,
+                atom -> atom.getPictureInPictureStateChanged().getState().getNumber());
 
         // Assert that the events happened in the expected order.
         assertStatesOccurred(stateSet, data, WAIT_TIME_LONG,
@@ -651,7 +656,8 @@ public class UidAtomTests extends DeviceAtomTestCase {
         runDeviceTests(DEVICE_SIDE_TEST_PACKAGE, ".AtomTests", "testScheduledJob");
 
         // Sorted list of events in order in which they occurred.
-        List<EventMetricData> data = getEventMetricDataList();
+        List<EventMetricData> data = waitForStatesOccurred(stateSet,
+                atom -> atom.getScheduledJobStateChanged().getState().getNumber());
 
         assertStatesOccurred(stateSet, data, 0,
                 atom -> atom.getScheduledJobStateChanged().getState().getNumber());
@@ -687,7 +693,8 @@ public class UidAtomTests extends DeviceAtomTestCase {
         runDeviceTests(DEVICE_SIDE_TEST_PACKAGE, ".AtomTests", "testScreenBrightness");
 
         // Sorted list of events in order in which they occurred.
-        List<EventMetricData> data = getEventMetricDataList();
+        List<EventMetricData> data = waitForStatesOccurred(screenMin, stateSet,
+                atom -> atom.getScreenBrightnessChanged().getLevel(), REPORT_WAIT_TIMEOUT);
 
         // Restore initial screen brightness
         setScreenBrightness(initialBrightness);
@@ -715,7 +722,8 @@ public class UidAtomTests extends DeviceAtomTestCase {
         runDeviceTests(DEVICE_SIDE_TEST_PACKAGE, ".AtomTests", "testSyncState");
 
         // Sorted list of events in order in which they occurred.
-        List<EventMetricData> data = getEventMetricDataList();
+        List<EventMetricData> data = waitForStatesOccurred(stateSet,
+                atom -> atom.getSyncStateChanged().getState().getNumber());
 
         // Assert that the events happened in the expected order.
         assertStatesOccurred(stateSet, data, WAIT_TIME_SHORT,
@@ -744,9 +752,9 @@ public class UidAtomTests extends DeviceAtomTestCase {
 
         runDeviceTests(DEVICE_SIDE_TEST_PACKAGE, ".AtomTests", name);
 
-        Thread.sleep(WAIT_TIME_LONG);
         // Sorted list of events in order in which they occurred.
-        List<EventMetricData> data = getEventMetricDataList();
+        List<EventMetricData> data = waitForStatesOccurred(stateSet,
+                atom -> atom.getVibratorStateChanged().getState().getNumber());
 
         assertStatesOccurred(stateSet, data, 300,
                 atom -> atom.getVibratorStateChanged().getState().getNumber());
@@ -774,7 +782,8 @@ public class UidAtomTests extends DeviceAtomTestCase {
         runDeviceTests(DEVICE_SIDE_TEST_PACKAGE, ".AtomTests", "testWakelockState");
 
         // Sorted list of events in order in which they occurred.
-        List<EventMetricData> data = getEventMetricDataList();
+        List<EventMetricData> data = waitForStatesOccurred(stateSet,
+                atom -> atom.getWakelockStateChanged().getState().getNumber());
 
         // Assert that the events happened in the expected order.
         assertStatesOccurred(stateSet, data, WAIT_TIME_SHORT,
@@ -829,7 +838,8 @@ public class UidAtomTests extends DeviceAtomTestCase {
         runDeviceTests(DEVICE_SIDE_TEST_PACKAGE, ".AtomTests", "testWifiLockHighPerf");
 
         // Sorted list of events in order in which they occurred.
-        List<EventMetricData> data = getEventMetricDataList();
+        List<EventMetricData> data = waitForStatesOccurred(stateSet,
+                atom -> atom.getWifiLockStateChanged().getState().getNumber());
 
         // Assert that the events happened in the expected order.
         assertStatesOccurred(stateSet, data, WAIT_TIME_SHORT,
@@ -859,7 +869,8 @@ public class UidAtomTests extends DeviceAtomTestCase {
         runDeviceTests(DEVICE_SIDE_TEST_PACKAGE, ".AtomTests", "testWifiLockLowLatency");
 
         // Sorted list of events in order in which they occurred.
-        List<EventMetricData> data = getEventMetricDataList();
+        List<EventMetricData> data = waitForStatesOccurred(stateSet,
+                atom -> atom.getWifiLockStateChanged().getState().getNumber());
 
         // Assert that the events happened in the expected order.
         assertStatesOccurred(stateSet, data, WAIT_TIME_SHORT,
@@ -893,7 +904,8 @@ public class UidAtomTests extends DeviceAtomTestCase {
         runDeviceTests(DEVICE_SIDE_TEST_PACKAGE, ".AtomTests", "testWifiMulticastLock");
 
         // Sorted list of events in order in which they occurred.
-        List<EventMetricData> data = getEventMetricDataList();
+        List<EventMetricData> data = waitForStatesOccurred(stateSet,
+                atom -> atom.getWifiMulticastLockStateChanged().getState().getNumber());
 
         // Assert that the events happened in the expected order.
         assertStatesOccurred(stateSet, data, WAIT_TIME_SHORT,
@@ -948,8 +960,7 @@ public class UidAtomTests extends DeviceAtomTestCase {
 
             runActivity("StatsdCtsForegroundActivity", "action", "action.show_notification",3_000);
 
-            setAppBreadcrumbPredicate();
-            Thread.sleep(WAIT_TIME_SHORT);
+            setAppBreadcrumbPredicateAndWait();
 
             boolean found = false;
             int uid = getUid();
@@ -998,8 +1009,7 @@ public class UidAtomTests extends DeviceAtomTestCase {
 
             runActivity("StatsdCtsForegroundActivity", "action", "action.show_notification", 3_000);
 
-            setAppBreadcrumbPredicate();
-            Thread.sleep(WAIT_TIME_SHORT);
+            setAppBreadcrumbPredicateAndWait();
 
             List<Atom> atomList = getGaugeMetricDataList();
 
@@ -1067,8 +1077,7 @@ public class UidAtomTests extends DeviceAtomTestCase {
                 "action.show_notification")) {
             Thread.sleep(WAIT_TIME_SHORT);
             // Trigger a pull and wait for new pull before killing the process.
-            setAppBreadcrumbPredicate();
-            Thread.sleep(WAIT_TIME_LONG);
+            setAppBreadcrumbPredicateAndWait();
         }
 
         // Assert about ProcessMemoryState for the test app.
@@ -1107,8 +1116,7 @@ public class UidAtomTests extends DeviceAtomTestCase {
         Thread.sleep(WAIT_TIME_SHORT);
 
         // Trigger new pull.
-        setAppBreadcrumbPredicate();
-        Thread.sleep(WAIT_TIME_LONG);
+        setAppBreadcrumbPredicateAndWait();
 
         // Assert about NativeProcessMemoryState for statsd.
         List<Atom> atoms = getGaugeMetricDataList();
@@ -1144,8 +1152,7 @@ public class UidAtomTests extends DeviceAtomTestCase {
         // Start test app and trigger a pull while its running.
         try (AutoCloseable a = withActivity("StatsdCtsForegroundActivity", "action",
                 "action.show_notification")) {
-            setAppBreadcrumbPredicate();
-            Thread.sleep(WAIT_TIME_LONG);
+            setAppBreadcrumbPredicateAndWait();
         }
 
         // Assert about ProcessMemoryHighWaterMark for the test app, statsd and system server.
@@ -1208,8 +1215,7 @@ public class UidAtomTests extends DeviceAtomTestCase {
         boolean verifiedKnowRoleState = false;
 
         // Pull a report
-        setAppBreadcrumbPredicate();
-        Thread.sleep(WAIT_TIME_SHORT);
+        setAppBreadcrumbPredicateAndWait();
 
         int testAppId = getAppId(getUid());
 
@@ -1249,8 +1255,7 @@ public class UidAtomTests extends DeviceAtomTestCase {
         boolean verifiedKnowPermissionState = false;
 
         // Pull a report
-        setAppBreadcrumbPredicate();
-        Thread.sleep(WAIT_TIME_SHORT);
+        setAppBreadcrumbPredicateAndWait();
 
         int testAppId = getAppId(getUid());
 
@@ -1291,7 +1296,8 @@ public class UidAtomTests extends DeviceAtomTestCase {
             Thread.sleep(WAIT_TIME_SHORT);
             getDevice().executeShellCommand(
                     "am broadcast -a action_anr -p " + DEVICE_SIDE_TEST_PACKAGE);
-            Thread.sleep(11_000);
+            // Keep the activity until the ANR is reported.
+            waitForAllAtomMatches(1, 11_000);
         }
 
         // Sorted list of events in order in which they occurred.
@@ -1317,9 +1323,8 @@ public class UidAtomTests extends DeviceAtomTestCase {
 
         runDeviceTests(DEVICE_SIDE_TEST_PACKAGE, ".AtomTests", "testWriteRawTestAtom");
 
-        Thread.sleep(WAIT_TIME_SHORT);
         // Sorted list of events in order in which they occurred.
-        List<EventMetricData> data = getEventMetricDataList();
+        List<EventMetricData> data = waitForEventMetricDataCount(4);
         assertEquals(data.size(), 4);
 
         TestAtomReported atom = data.get(0).getAtom().getTestAtomReported();
@@ -20,23 +20,8 @@ import android.cts.statsd.atom.AtomTestCase;
 import com.android.internal.os.StatsdConfigProto;
 import com.android.internal.os.StatsdConfigProto.StatsdConfig;
 import com.android.os.AtomsProto.Atom;
-import com.android.os.StatsLog.StatsdStatsReport;
-import com.android.tradefed.log.LogUtil;
 
 public class MetadataTestCase extends AtomTestCase {
-    public static final String DUMP_METADATA_CMD = "cmd stats print-stats";
-
-    protected StatsdStatsReport getStatsdStatsReport() throws Exception {
-        try {
-            StatsdStatsReport report = getDump(StatsdStatsReport.parser(),
-                    String.join(" ", DUMP_METADATA_CMD, "--proto"));
-            return report;
-        } catch (com.google.protobuf.InvalidProtocolBufferException e) {
-            LogUtil.CLog.e("Failed to fetch and parse the statsdstats output report.");
-            throw (e);
-        }
-    }
-
     protected final StatsdConfig.Builder getBaseConfig() throws Exception {
         StatsdConfig.Builder builder =  StatsdConfig.newBuilder().setId(CONFIG_ID)
                 .addAllowedLogSource("AID_SHELL")
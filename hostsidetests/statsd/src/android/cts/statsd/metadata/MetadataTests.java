@@ -53,7 +53,7 @@ public class MetadataTests extends MetadataTestCase {
         long startTime = System.currentTimeMillis();
         Thread.sleep(WAIT_TIME_SHORT);
         doAppBreadcrumbReportedStart(/* irrelevant val */ 6); // Event, within < TTL_TIME_SEC secs.
-        Thread.sleep(WAIT_TIME_SHORT);
+        waitForAllAtomMatches(1);
         StatsdStatsReport report = getStatsdStatsReport(); // Has only been 1 second
         LogUtil.CLog.d("got following statsdstats report: " + report.toString());
         boolean foundActiveConfig = false;
@@ -73,7 +73,13 @@ public class MetadataTests extends MetadataTestCase {
             Thread.sleep(10);
         }
         doAppBreadcrumbReportedStart(/* irrelevant val */ 6); // Event, after TTL_TIME_SEC secs.
-        report = getStatsdStatsReport();
+        final int originalCreationTime = creationTime;
+        final int hostUid = getHostUid();
+        report = waitForStatsdStats(r -> r.getConfigStatsList().stream().anyMatch(
+                stats -> stats.getId() == CONFIG_ID && stats.getUid() == hostUid
+                        && stats.getCreationTimeSec() == originalCreationTime
+                        && stats.hasDeletionTimeSec()),
+                REPORT_WAIT_TIMEOUT, "the config to TTL");
         LogUtil.CLog.d("got following statsdstats report: " + report.toString());
         foundActiveConfig = false;
         int expectedTime = creationTime + TTL_TIME_SEC;
@@ -49,7 +49,7 @@ public class CountMetricsTests extends DeviceAtomTestCase {
 
         doAppBreadcrumbReportedStart(0);
         doAppBreadcrumbReportedStop(0);
-        Thread.sleep(2000);  // Wait for the metrics to propagate to statsd.
+        waitForAtomMatches(matcherId, 2);  // Wait for the metrics to propagate to statsd.
 
         StatsLogReport metricReport = getStatsLogReport();
         LogUtil.CLog.d("Got the following stats log report: \n" + metricReport.toString());
@@ -109,7 +109,7 @@ public class CountMetricsTests extends DeviceAtomTestCase {
         doAppBreadcrumbReportedStop(0);
         Thread.sleep(10);
         doAppBreadcrumbReported(0, AppBreadcrumbReported.State.UNSPECIFIED.ordinal());
-        Thread.sleep(2000);  // Wait for the metrics to propagate to statsd.
+        waitForAtomMatches(whatMatcherId, 3);  // Wait for the metrics to propagate to statsd.
 
         StatsLogReport metricReport = getStatsLogReport();
         assertEquals(MetricsUtils.COUNT_METRIC_ID, metricReport.getMetricId());
@@ -230,10 +230,9 @@ public class CountMetricsTests extends DeviceAtomTestCase {
 
         // Log an event that should not be counted.
         doAppBreadcrumbReported(whatMatcherLabel);
-        Thread.sleep(10);
 
         // Wait for the metrics to propagate to statsd.
-        Thread.sleep(2000);
+        waitForAtomMatches(whatMatcherId, 7);
 
         StatsLogReport metricReport = getStatsLogReport();
         assertEquals(MetricsUtils.COUNT_METRIC_ID, metricReport.getMetricId());
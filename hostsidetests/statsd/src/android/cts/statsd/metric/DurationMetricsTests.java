@@ -91,7 +91,7 @@ public class DurationMetricsTests extends DeviceAtomTestCase {
         doAppBreadcrumbReportedStop(label);
 
         // Wait for the metrics to propagate to statsd.
-        Thread.sleep(2000);
+        waitForAtomMatches(APP_BREADCRUMB_REPORTED_A_MATCH_STOP_ID, 1);
 
         StatsLogReport metricReport = getStatsLogReport();
         assertThat(metricReport.getMetricId()).isEqualTo(MetricsUtils.DURATION_METRIC_ID);
@@ -200,9 +200,9 @@ public class DurationMetricsTests extends DeviceAtomTestCase {
 
         // Stop uncounted duration.
         doAppBreadcrumbReportedStop(durationLabel);
-        Thread.sleep(10);
 
-        Thread.sleep(2_000);
+        // Wait for the metrics to propagate to statsd.
+        waitForAtomMatches(APP_BREADCRUMB_REPORTED_A_MATCH_STOP_ID, 3);
         StatsLogReport metricReport = getStatsLogReport();
         assertThat(metricReport.getMetricId()).isEqualTo(MetricsUtils.DURATION_METRIC_ID);
         LogUtil.CLog.d("Received the following data: " + metricReport.toString());
@@ -293,9 +293,9 @@ public class DurationMetricsTests extends DeviceAtomTestCase {
 
         // Stop counted duration.
         doAppBreadcrumbReportedStop(durationLabel);
-        Thread.sleep(10);
 
-        Thread.sleep(2_000);
+        // Wait for the metrics to propagate to statsd.
+        waitForAtomMatches(APP_BREADCRUMB_REPORTED_A_MATCH_STOP_ID, 2);
         StatsLogReport metricReport = getStatsLogReport();
         assertThat(metricReport.getMetricId()).isEqualTo(MetricsUtils.DURATION_METRIC_ID);
         LogUtil.CLog.d("Received the following data: " + metricReport.toString());
@@ -471,7 +471,7 @@ public class DurationMetricsTests extends DeviceAtomTestCase {
         Thread.sleep(10);
 
         // Wait for the metrics to propagate to statsd.
-        Thread.sleep(2000);
+        waitForAtomMatches(APP_BREADCRUMB_REPORTED_A_MATCH_STOP_ID, 6);
 
         StatsLogReport metricReport = getStatsLogReport();
         LogUtil.CLog.d("Received the following data: " + metricReport.toString());
@@ -566,7 +566,7 @@ public class DurationMetricsTests extends DeviceAtomTestCase {
         doAppBreadcrumbReportedStop(2);
 
         // Wait for the metrics to propagate to statsd.
-        Thread.sleep(2000);
+        waitForAtomMatches(APP_BREADCRUMB_REPORTED_A_MATCH_STOP_ID, 2);
 
         StatsLogReport metricReport = getStatsLogReport();
         assertThat(metricReport.getMetricId()).isEqualTo(MetricsUtils.DURATION_METRIC_ID);
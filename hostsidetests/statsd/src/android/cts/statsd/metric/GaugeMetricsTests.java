@@ -118,7 +118,7 @@ public class GaugeMetricsTests extends DeviceAtomTestCase {
       doAppBreadcrumbReportedStop(1);
 
       // Wait for the metrics to propagate to statsd.
-      Thread.sleep(2000);
+      waitForAtomMatches(APP_BREADCRUMB_REPORTED_A_MATCH_STOP_ID, 5);
 
       StatsLogReport metricReport = getStatsLogReport();
       LogUtil.CLog.d("Got the following gauge metric data: " + metricReport.toString());
@@ -318,10 +318,9 @@ public class GaugeMetricsTests extends DeviceAtomTestCase {
 
         // Value not collected.
         doAppBreadcrumbReported(70);
-        Thread.sleep(10);
 
         // Wait for the metrics to propagate to statsd.
-        Thread.sleep(2000);
+        waitForAtomMatches(whatMatcherId, 7);
 
         StatsLogReport metricReport = getStatsLogReport();
         LogUtil.CLog.d("Received the following data: " + metricReport.toString());
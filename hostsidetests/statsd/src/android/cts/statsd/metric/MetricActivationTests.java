@@ -225,7 +225,7 @@ public class MetricActivationTests extends DeviceAtomTestCase {
 
         // First logged event for Metric 3.
         doAppBreadcrumbReported(metric3MatcherId);
-        Thread.sleep(10L);
+        waitForAtomMatches(metric3MatcherId, 1);
 
         ConfigMetricsReportList reportList = getReportList();
         List<ConfigMetricsReport> reports = getSortedConfigMetricsReports(reportList);
@@ -370,7 +370,7 @@ public class MetricActivationTests extends DeviceAtomTestCase {
         // Metric 1 event ignored.
         // Metric 2 event ignored.
         // Eighth logged event for Metric 3.
-        logAllMetrics();
+        logAllMetricsAndWait();
 
         ConfigMetricsReportList reportList = getReportList();
         List<ConfigMetricsReport> reports = getSortedConfigMetricsReports(reportList);
@@ -506,7 +506,7 @@ public class MetricActivationTests extends DeviceAtomTestCase {
         // Metric 1 event ignored.
         // Metric 2 event ignored.
         // Seventh logged event for Metric 3.
-        logAllMetrics();
+        logAllMetricsAndWait();
 
         ConfigMetricsReportList reportList = getReportList();
         List<ConfigMetricsReport> reports = getSortedConfigMetricsReports(reportList);
@@ -536,6 +536,14 @@ public class MetricActivationTests extends DeviceAtomTestCase {
         Thread.sleep(10L);
     }
 
+    /** Logs an event for each metric, and waits until statsd has processed them. */
+    private void logAllMetricsAndWait() throws Exception {
+        // Metric 3 is never deactivated, and its events are the last ones logged.
+        int metric3Matches = getAtomMatches(metric3MatcherId);
+        logAllMetrics();
+        waitForAtomMatches(metric3MatcherId, metric3Matches + 1);
+    }
+
     private void verifyMetrics(ConfigMetricsReport report, int metric1Count, int metric2Count,
             int metric3Count) throws Exception {
         assertEquals(3, report.getMetricsCount());
@@ -90,7 +90,7 @@ public class ValueMetricsTests extends DeviceAtomTestCase {
     doAppBreadcrumbReportedStop(3);
 
     // Wait for the metrics to propagate to statsd.
-    Thread.sleep(1000);
+    waitForAtomMatches(APP_BREADCRUMB_REPORTED_A_MATCH_STOP_ID, 2);
 
     StatsLogReport metricReport = getStatsLogReport();
     LogUtil.CLog.d("Got the following value metric data: " + metricReport.toString());
@@ -168,7 +168,7 @@ public class ValueMetricsTests extends DeviceAtomTestCase {
     doAppBreadcrumbReportedStop(1);
 
     // Wait for the metrics to propagate to statsd.
-    Thread.sleep(1_000);
+    waitForAtomMatches(APP_BREADCRUMB_REPORTED_A_MATCH_STOP_ID, 1);
 
     StatsLogReport metricReport = getStatsLogReport();
     LogUtil.CLog.d("Got the following value metric data: " + metricReport.toString());
@@ -252,7 +252,7 @@ public class ValueMetricsTests extends DeviceAtomTestCase {
     }
 
     // Wait for the metrics to propagate to statsd.
-    Thread.sleep(1_000);
+    waitForAtomMatches(APP_BREADCRUMB_REPORTED_A_MATCH_STOP_ID, NUM_EVENTS);
 
     StatsLogReport metricReport = getStatsLogReport();
     LogUtil.CLog.d("Got the following value metric data: " + metricReport.toString());
@@ -449,10 +449,9 @@ public class ValueMetricsTests extends DeviceAtomTestCase {
 
         // Log an event that should not be counted.
         doAppBreadcrumbReported(70_000_000);
-        Thread.sleep(10);
 
         // Wait for the metrics to propagate to statsd.
-        Thread.sleep(2000);
+        waitForAtomMatches(whatMatcherId, 7);
 
         StatsLogReport metricReport = getStatsLogReport();
         LogUtil.CLog.d("Received the following data: " + metricReport.toString());
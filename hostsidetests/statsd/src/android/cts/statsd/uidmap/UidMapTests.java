@@ -65,6 +65,20 @@ public class UidMapTests extends DeviceAtomTestCase {
         return false;
     }
 
+    /** Returns the number of uid map changes which statsd keeps for the reports. */
+    private int getUidMapChanges() throws Exception {
+        return getStatsdStatsReport().getUidMapStats().getChanges();
+    }
+
+    /**
+     * Waits until statsd has received an uid map change since it had the given number of changes,
+     * without taking the report, which would consume the change.
+     */
+    private void waitForUidMapChanges(int changes) throws Exception {
+        waitForStatsdStats(report -> report.getUidMapStats().getChanges() > changes,
+                REPORT_WAIT_TIMEOUT, "a uid map change");
+    }
+
     // Tests that delta event included during app installation.
     public void testChangeFromInstallation() throws Exception {
         if (statsdDisabled()) {
@@ -72,13 +86,14 @@ public class UidMapTests extends DeviceAtomTestCase {
         }
         getDevice().uninstallPackage(DEVICE_SIDE_TEST_PACKAGE);
         createAndUploadConfig(AtomsProto.Atom.UID_PROCESS_STATE_CHANGED_FIELD_NUMBER);
+        int changes = getUidMapChanges();
         // Install the package after the config is sent to statsd. The uid map is not guaranteed to
         // be updated if there's no config in statsd.
         CompatibilityBuildHelper buildHelper = new CompatibilityBuildHelper(mCtsBuild);
         final String result = getDevice().installPackage(
                 buildHelper.getTestFile(DEVICE_SIDE_TEST_APK), false, true);
 
-        Thread.sleep(WAIT_TIME_SHORT);
+        waitForUidMapChanges(changes);
 
         ConfigMetricsReportList reports = getReportList();
         assertTrue(reports.getReportsCount() > 0);
@@ -102,10 +117,11 @@ public class UidMapTests extends DeviceAtomTestCase {
         CompatibilityBuildHelper buildHelper = new CompatibilityBuildHelper(mCtsBuild);
         getDevice().installPackage(buildHelper.getTestFile(DEVICE_SIDE_TEST_APK), false, true);
         createAndUploadConfig(AtomsProto.Atom.UID_PROCESS_STATE_CHANGED_FIELD_NUMBER);
+        int changes = getUidMapChanges();
         // Now enable re-installation.
         getDevice().installPackage(buildHelper.getTestFile(DEVICE_SIDE_TEST_APK), true, true);
 
-        Thread.sleep(WAIT_TIME_SHORT);
+        waitForUidMapChanges(changes);
 
         ConfigMetricsReportList reports = getReportList();
         assertTrue(reports.getReportsCount() > 0);
@@ -129,9 +145,10 @@ public class UidMapTests extends DeviceAtomTestCase {
         getDevice().installPackage(buildHelper.getTestFile(DEVICE_SIDE_TEST_APK), true, true);
         createAndUploadConfig(AtomsProto.Atom.UID_PROCESS_STATE_CHANGED_FIELD_NUMBER);
         int uid = getUid();
+        int changes = getUidMapChanges();
         getDevice().uninstallPackage(DEVICE_SIDE_TEST_PACKAGE);
 
-        Thread.sleep(WAIT_TIME_SHORT);
+        waitForUidMapChanges(changes);
 
         ConfigMetricsReportList reports = getReportList();
         assertTrue(reports.getReportsCount() > 0);
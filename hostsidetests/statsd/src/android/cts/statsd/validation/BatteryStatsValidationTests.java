@@ -96,9 +96,8 @@ public class BatteryStatsValidationTests extends DeviceAtomTestCase {
         runDeviceTests(DEVICE_SIDE_TEST_PACKAGE, ".AtomTests", "testSimpleCpu");
         Thread.sleep(WAIT_TIME_LONG);
 
-        setAppBreadcrumbPredicate();
+        setAppBreadcrumbPredicateAndWait();
         BatteryStatsProto batterystatsProto = getBatteryStatsProto();
-        Thread.sleep(WAIT_TIME_LONG);
         List<Atom> atomList = getGaugeMetricDataList();
 
         // Extract statsd data
@@ -139,9 +138,8 @@ public class BatteryStatsValidationTests extends DeviceAtomTestCase {
         runDeviceTests(DEVICE_SIDE_TEST_PACKAGE, ".AtomTests", "testSimpleCpu");
         Thread.sleep(WAIT_TIME_LONG);
 
-        setAppBreadcrumbPredicate();
+        setAppBreadcrumbPredicateAndWait();
         BatteryStatsProto batterystatsProto = getBatteryStatsProto();
-        Thread.sleep(WAIT_TIME_LONG);
         List<Atom> atomList = getGaugeMetricDataList();
 
         // Extract statsd data
@@ -281,8 +281,7 @@ public class ProcStatsValidationTests extends ProcStateTestCase {
         LogUtil.CLog.d("Updating the following config:\n" + config.toString());
         uploadConfig(config);
         Thread.sleep(WAIT_TIME_SHORT);
-        setAppBreadcrumbPredicate();
-        Thread.sleep(WAIT_TIME_SHORT);
+        setAppBreadcrumbPredicateAndWait();
 
         List<Atom> statsdData = getGaugeMetricDataList();
 
@@ -386,8 +385,7 @@ public class ProcStatsValidationTests extends ProcStateTestCase {
         LogUtil.CLog.d("Updating the following config:\n" + config.toString());
         uploadConfig(config);
         Thread.sleep(WAIT_TIME_SHORT);
-        setAppBreadcrumbPredicate();
-        Thread.sleep(WAIT_TIME_SHORT);
+        setAppBreadcrumbPredicateAndWait();
 
         List<Atom> statsdData = getGaugeMetricDataList();
         assertTrue(statsdData.size() > 0);
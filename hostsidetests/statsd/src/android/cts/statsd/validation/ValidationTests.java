@@ -106,7 +106,8 @@ public class ValidationTests extends DeviceAtomTestCase {
         runDeviceTests(DEVICE_SIDE_TEST_PACKAGE, ".AtomTests", "testWakelockState");
 
         // Sorted list of events in order in which they occurred.
-        List<EventMetricData> data = getEventMetricDataList();
+        List<EventMetricData> data = waitForStatesOccurred(stateSet,
+                atom -> atom.getWakelockStateChanged().getState().getNumber());
 
         BatteryStatsProto batterystatsProto = getBatteryStatsProto();
 
@@ -0,0 +1,223 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.cts.statsd.atom;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.android.os.AtomsProto.AppBreadcrumbReported;
+import com.android.os.AtomsProto.Atom;
+import com.android.os.AtomsProto.BatteryLevelChanged;
+import com.android.os.StatsLog.ConfigMetricsReport;
+import com.android.os.StatsLog.ConfigMetricsReportList;
+import com.android.os.StatsLog.EventMetricData;
+import com.android.os.StatsLog.GaugeBucketInfo;
+import com.android.os.StatsLog.GaugeMetricData;
+import com.android.os.StatsLog.StatsLogReport;
+import com.android.os.StatsLog.UidMapping;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Host-only tests of {@link ReportStreamDecoder}, which check that it keeps the same event metric
+ * and gauge metric data as {@link ConfigMetricsReportList#parseFrom}.
+ */
+public class ReportStreamDecoderTest extends TestCase {
+    private static final long EVENT_METRIC_ID = 1;
+    private static final long GAUGE_METRIC_ID = 2;
+
+    public void testDecodesAllAtoms() throws Exception {
+        ConfigMetricsReportList reportList = createReportList();
+
+        ReportStreamDecoder decoder = decode(reportList, null, 0, false);
+
+        ConfigMetricsReportList parsed =
+                ConfigMetricsReportList.parseFrom(reportList.toByteArray());
+        assertThat(decoder.getReportCount()).isEqualTo(parsed.getReportsCount());
+        assertThat(decoder.getMetricCount()).isEqualTo(getMetricCount(parsed));
+        assertThat(decoder.getEventMetricData()).containsExactlyElementsIn(
+                getEventMetricData(parsed, null, 0)).inOrder();
+        assertThat(decoder.getGaugeMetricData()).containsExactlyElementsIn(
+                getGaugeMetricData(parsed, null)).inOrder();
+    }
+
+    public void testKeepsOnlyTheAtomAskedFor() throws Exception {
+        ConfigMetricsReportList reportList = createReportList();
+        int atomTag = Atom.APP_BREADCRUMB_REPORTED_FIELD_NUMBER;
+
+        ReportStreamDecoder decoder = decode(reportList, null, atomTag, false);
+
+        ConfigMetricsReportList parsed =
+                ConfigMetricsReportList.parseFrom(reportList.toByteArray());
+        List<EventMetricData> expected = getEventMetricData(parsed, null, atomTag);
+        assertThat(expected).hasSize(3);
+        assertThat(decoder.getEventMetricData()).containsExactlyElementsIn(expected).inOrder();
+    }
+
+    public void testKeepsOnlyTheMetricsAskedFor() throws Exception {
+        ConfigMetricsReportList reportList = createReportList();
+
+        for (long metricId : new long[] {EVENT_METRIC_ID, GAUGE_METRIC_ID}) {
+            Set<Long> metricIds = Collections.singleton(metricId);
+            ReportStreamDecoder decoder = decode(reportList, metricIds, 0, false);
+
+            ConfigMetricsReportList parsed =
+                    ConfigMetricsReportList.parseFrom(reportList.toByteArray());
+            // The filtered out metrics are still counted.
+            assertThat(decoder.getMetricCount()).isEqualTo(getMetricCount(parsed));
+            assertThat(decoder.getEventMetricData()).containsExactlyElementsIn(
+                    getEventMetricData(parsed, metricIds, 0)).inOrder();
+            assertThat(decoder.getGaugeMetricData()).containsExactlyElementsIn(
+                    getGaugeMetricData(parsed, metricIds)).inOrder();
+        }
+    }
+
+    public void testDecodesOneByteAtATime() throws Exception {
+        ConfigMetricsReportList reportList = createReportList();
+
+        ReportStreamDecoder decoder = decode(reportList, null, 0, true);
+
+        ConfigMetricsReportList parsed =
+                ConfigMetricsReportList.parseFrom(reportList.toByteArray());
+        assertThat(decoder.getReportCount()).isEqualTo(parsed.getReportsCount());
+        assertThat(decoder.getEventMetricData()).containsExactlyElementsIn(
+                getEventMetricData(parsed, null, 0)).inOrder();
+        assertThat(decoder.getGaugeMetricData()).containsExactlyElementsIn(
+                getGaugeMetricData(parsed, null)).inOrder();
+    }
+
+    public void testDecodesEmptyReportList() throws Exception {
+        ReportStreamDecoder decoder =
+                decode(ConfigMetricsReportList.getDefaultInstance(), null, 0, false);
+
+        assertThat(decoder.getReportCount()).isEqualTo(0);
+        assertThat(decoder.getMetricCount()).isEqualTo(0);
+        assertThat(decoder.getEventMetricData()).isEmpty();
+        assertThat(decoder.getGaugeMetricData()).isEmpty();
+    }
+
+    private static ReportStreamDecoder decode(ConfigMetricsReportList reportList,
+            Set<Long> metricIds, int atomTag, boolean oneByteAtATime) throws IOException {
+        InputStream in = new ByteArrayInputStream(reportList.toByteArray());
+        if (oneByteAtATime) {
+            in = new OneByteInputStream(in);
+        }
+        ReportStreamDecoder decoder = new ReportStreamDecoder(metricIds, atomTag);
+        decoder.decode(in);
+        return decoder;
+    }
+
+    /** A report list with two reports, each with an event metric, a gauge metric and a uid map. */
+    private static ConfigMetricsReportList createReportList() {
+        ConfigMetricsReportList.Builder builder = ConfigMetricsReportList.newBuilder();
+        long timestampNs = 1_000_000L;
+        for (int i = 0; i < 2; i++) {
+            StatsLogReport.EventMetricDataWrapper.Builder events =
+                    StatsLogReport.EventMetricDataWrapper.newBuilder();
+            for (int j = 0; j < 3; j++) {
+                Atom atom = (i + j) % 2 == 0
+                        ? Atom.newBuilder().setAppBreadcrumbReported(
+                                AppBreadcrumbReported.newBuilder()
+                                        .setLabel(j)
+                                        .setState(AppBreadcrumbReported.State.START))
+                                .build()
+                        : Atom.newBuilder().setBatteryLevelChanged(
+                                BatteryLevelChanged.newBuilder().setBatteryLevel(50 + j))
+                                .build();
+                events.addData(EventMetricData.newBuilder()
+                        .setElapsedTimestampNanos(timestampNs++)
+                        .setAtom(atom));
+            }
+            Atom gaugeAtom = Atom.newBuilder().setBatteryLevelChanged(
+                    BatteryLevelChanged.newBuilder().setBatteryLevel(42)).build();
+            builder.addReports(ConfigMetricsReport.newBuilder()
+                    .addMetrics(StatsLogReport.newBuilder()
+                            .setMetricId(EVENT_METRIC_ID)
+                            .setEventMetrics(events))
+                    .addMetrics(StatsLogReport.newBuilder()
+                            .setMetricId(GAUGE_METRIC_ID)
+                            .setGaugeMetrics(StatsLogReport.GaugeMetricDataWrapper.newBuilder()
+                                    .addData(GaugeMetricData.newBuilder()
+                                            .addBucketInfo(GaugeBucketInfo.newBuilder()
+                                                    .addAtom(gaugeAtom)))))
+                    .setUidMap(UidMapping.newBuilder()
+                            .addChanges(UidMapping.Change.newBuilder()
+                                    .setUid(10000 + i)
+                                    .setDeletion(false)))
+                    .setCurrentReportWallClockNanos(timestampNs++));
+        }
+        return builder.build();
+    }
+
+    private static int getMetricCount(ConfigMetricsReportList reportList) {
+        int count = 0;
+        for (ConfigMetricsReport report : reportList.getReportsList()) {
+            count += report.getMetricsCount();
+        }
+        return count;
+    }
+
+    private static List<EventMetricData> getEventMetricData(ConfigMetricsReportList reportList,
+            Set<Long> metricIds, int atomTag) {
+        List<EventMetricData> data = new ArrayList<>();
+        for (ConfigMetricsReport report : reportList.getReportsList()) {
+            for (StatsLogReport metric : report.getMetricsList()) {
+                if (metricIds != null && !metricIds.contains(metric.getMetricId())) {
+                    continue;
+                }
+                for (EventMetricData d : metric.getEventMetrics().getDataList()) {
+                    if (atomTag == 0 || d.getAtom().getPushedCase().getNumber() == atomTag) {
+                        data.add(d);
+                    }
+                }
+            }
+        }
+        return data;
+    }
+
+    private static List<GaugeMetricData> getGaugeMetricData(ConfigMetricsReportList reportList,
+            Set<Long> metricIds) {
+        List<GaugeMetricData> data = new ArrayList<>();
+        for (ConfigMetricsReport report : reportList.getReportsList()) {
+            for (StatsLogReport metric : report.getMetricsList()) {
+                if (metricIds == null || metricIds.contains(metric.getMetricId())) {
+                    data.addAll(metric.getGaugeMetrics().getDataList());
+                }
+            }
+        }
+        return data;
+    }
+
+    /** Returns at most one byte per read, like a pipe which the shell output trickles into. */
+    private static final class OneByteInputStream extends FilterInputStream {
+        OneByteInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return super.read(b, off, Math.min(len, 1));
+        }
+    }
+}
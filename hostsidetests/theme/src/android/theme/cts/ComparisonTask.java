@@ -22,9 +22,15 @@ import com.android.tradefed.util.Pair;
 
 import java.awt.Color;
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.lang.String;
+import java.lang.ref.SoftReference;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.concurrent.Callable;
 
 import javax.imageio.ImageIO;
@@ -43,22 +49,81 @@ public class ComparisonTask implements Callable<Pair<String, File>> {
     /** Maximum allowable number of consecutive failed pixels. */
     private static final int MAX_CONSECUTIVE_FAILURES = 2;
 
+    /**
+     * Maximum number of pixels of the decoded reference images kept in memory. The tasks of a run
+     * read the whole reference set of a density in the same order, so the cache only hits if it
+     * holds a full set, which has up to 25M pixels. It is capped at a quarter of the heap.
+     */
+    private static final int MAX_CACHED_REFERENCE_PIXELS = (int) Math.min(32 * 1024 * 1024,
+            Runtime.getRuntime().maxMemory() / 4 / Integer.BYTES);
+
+    /**
+     * Decoded reference images shared by all the tasks of the process, by the name of their
+     * asset, in least recently used order.
+     *
+     * <p>A run reads each reference image once, so the cache only saves the decoding when the
+     * test is retried or run on another device of the same density. That is why it outlives the
+     * test, and why it holds the images softly: the garbage collector frees them once they are
+     * unused for a while or when the heap runs low, at the cost of decoding them again.
+     */
+    private static final LinkedHashMap<String, CachedReference> sReferenceCache =
+            new LinkedHashMap<>(16, 0.75f, true);
+    private static int sCachedReferencePixels;
+    private static int sReferenceCacheHits;
+
+    /** A softly held reference image, which remembers its size once it is collected. */
+    private static final class CachedReference extends SoftReference<ReferenceImage> {
+        final int pixelCount;
+
+        CachedReference(ReferenceImage image) {
+            super(image);
+            pixelCount = image.pixels.length;
+        }
+    }
+
+    /** The alpha-scaled pixels of a reference image. */
+    private static final class ReferenceImage {
+        final int width;
+        final int height;
+        final int[] pixels;
+
+        ReferenceImage(BufferedImage image) {
+            width = image.getWidth();
+            height = image.getHeight();
+            pixels = getAlphaScaledPixels(image);
+        }
+    }
+
     private final String mName;
+    private final String mReferenceName;
     private final File mExpected;
     private final File mActual;
 
-    public ComparisonTask(String name, File expected, File actual) {
+    /**
+     * @param referenceName the name of the reference image asset, such as
+     *        {@code /xhdpi.zip/holo_button.png}, which identifies its content across runs
+     */
+    public ComparisonTask(String name, String referenceName, File expected, File actual) {
         mName = name;
+        mReferenceName = referenceName;
         mExpected = expected;
         mActual = actual;
     }
 
     public Pair<String, File> call() {
         try {
-            final BufferedImage expected = ImageIO.read(mExpected);
-            final BufferedImage actual = ImageIO.read(mActual);
-            if (!compare(expected, actual, IMAGE_THRESHOLD)) {
+            final byte[] expectedPng = Files.readAllBytes(mExpected.toPath());
+            final byte[] actualPng = Files.readAllBytes(mActual.toPath());
+            if (Arrays.equals(expectedPng, actualPng)) {
+                // Same encoded image, no need to decode it.
+                return null;
+            }
+
+            final ReferenceImage reference = getReferenceImage(mReferenceName, expectedPng);
+            final BufferedImage actual = ImageIO.read(new ByteArrayInputStream(actualPng));
+            if (!compare(reference, actual, IMAGE_THRESHOLD)) {
                 final File diff = File.createTempFile("diff_" + mExpected.getName(), ".png");
+                final BufferedImage expected = ImageIO.read(new ByteArrayInputStream(expectedPng));
                 createDiff(expected, actual, diff);
                 return new Pair<>(mName, diff);
             }
@@ -87,24 +152,94 @@ public class ComparisonTask implements Callable<Pair<String, File>> {
         return (color & 0xFF000000) >>> 24;
     }
 
-    private static boolean checkNeighbors(int x, int y, BufferedImage reference,
-            BufferedImage generated, int threshold) {
-        final int w = generated.getWidth();
-        final int h = generated.getHeight();
+    /**
+     * Returns the decoded reference image from the cache, decoding and caching it if needed.
+     * Images larger than the cache are decoded but not cached.
+     */
+    private static ReferenceImage getReferenceImage(String key, byte[] png) throws IOException {
+        synchronized (sReferenceCache) {
+            final CachedReference cached = sReferenceCache.get(key);
+            if (cached != null) {
+                final ReferenceImage image = cached.get();
+                if (image != null) {
+                    sReferenceCacheHits++;
+                    return image;
+                }
+                sReferenceCache.remove(key);
+                sCachedReferencePixels -= cached.pixelCount;
+            }
+        }
+
+        // Decode outside of the lock; two tasks may decode the same image at worst.
+        final ReferenceImage reference =
+                new ReferenceImage(ImageIO.read(new ByteArrayInputStream(png)));
+        if (reference.pixels.length > MAX_CACHED_REFERENCE_PIXELS) {
+            return reference;
+        }
+        synchronized (sReferenceCache) {
+            final CachedReference previous =
+                    sReferenceCache.put(key, new CachedReference(reference));
+            if (previous != null) {
+                sCachedReferencePixels -= previous.pixelCount;
+            }
+            sCachedReferencePixels += reference.pixels.length;
+            final Iterator<CachedReference> eldest = sReferenceCache.values().iterator();
+            while (sCachedReferencePixels > MAX_CACHED_REFERENCE_PIXELS) {
+                sCachedReferencePixels -= eldest.next().pixelCount;
+                eldest.remove();
+            }
+        }
+        return reference;
+    }
+
+    /** Drops the decoded reference images and resets the count of cache hits. */
+    static void clearReferenceCache() {
+        synchronized (sReferenceCache) {
+            sReferenceCache.clear();
+            sCachedReferencePixels = 0;
+            sReferenceCacheHits = 0;
+        }
+    }
+
+    /** Returns how many times a decoded reference image was found in the cache. */
+    static int getReferenceCacheHits() {
+        synchronized (sReferenceCache) {
+            return sReferenceCacheHits;
+        }
+    }
+
+    /**
+     * Returns the pixels of the image as alpha-scaled colors, with the red, green and blue
+     * channels in bits 16-23, 8-15 and 0-7, in row-major order.
+     */
+    private static int[] getAlphaScaledPixels(BufferedImage image) {
+        final int w = image.getWidth();
+        final int h = image.getHeight();
+        final int[] pixels = image.getRGB(0, 0, w, h, null, 0, w);
+        for (int k = 0; k < pixels.length; k++) {
+            final int color = pixels[k];
+            pixels[k] = getAlphaScaledRed(color) << 16
+                    | getAlphaScaledGreen(color) << 8
+                    | getAlphaScaledBlue(color);
+        }
+        return pixels;
+    }
+
+    /** Returns whether each channel of two alpha-scaled colors differs by at most threshold. */
+    private static boolean isSimilar(int p1, int p2, int threshold) {
+        return Math.abs((p1 & 0xFF) - (p2 & 0xFF)) <= threshold
+                && Math.abs(((p1 >> 8) & 0xFF) - ((p2 >> 8) & 0xFF)) <= threshold
+                && Math.abs(((p1 >> 16) & 0xFF) - ((p2 >> 16) & 0xFF)) <= threshold;
+    }
+
+    private static boolean checkNeighbors(int x, int y, int w, int h, int[] reference,
+            int[] generated, int threshold) {
         for (int i = x - MAX_CONSECUTIVE_FAILURES; i <= x + MAX_CONSECUTIVE_FAILURES; i++) {
             if (i >= 0 && i != x && i < w) {
                 for (int j = y - MAX_CONSECUTIVE_FAILURES; j <= y + MAX_CONSECUTIVE_FAILURES; j++) {
                     if (j >= 0 && j != y && j < h) {
-                        final int p1 = reference.getRGB(i, j);
-                        final int p2 = generated.getRGB(i, j);
-
-                        final int dr = getAlphaScaledRed(p1) - getAlphaScaledRed(p2);
-                        final int dg = getAlphaScaledGreen(p1) - getAlphaScaledGreen(p2);
-                        final int db = getAlphaScaledBlue(p1) - getAlphaScaledBlue(p2);
-
-                        if (Math.abs(db) <= threshold &&
-                            Math.abs(dg) <= threshold &&
-                            Math.abs(dr) <= threshold) {
+                        final int k = j * w + i;
+                        if (isSimilar(reference[k], generated[k], threshold)) {
                             // If we find at least one matching neighbor, we assume the difference
                             // is in antialiasing.
                             return true;
@@ -121,38 +256,44 @@ public class ComparisonTask implements Callable<Pair<String, File>> {
      * Verifies that the pixels of reference and generated images are similar
      * within a specified threshold.
      *
+     * <p>The pixels of the generated image are read once into an array of alpha-scaled colors like
+     * the one of the reference image, and the arrays are also used for checking the neighbors of
+     * the pixels which differ.
+     *
      * @param reference expected image
      * @param generated actual image
      * @param threshold maximum difference per channel
      * @return {@code true} if the images are similar, false otherwise
      */
-    private static boolean compare(BufferedImage reference, BufferedImage generated,
+    private static boolean compare(ReferenceImage reference, BufferedImage generated,
             int threshold) {
         final int w = generated.getWidth();
         final int h = generated.getHeight();
-        if (w != reference.getWidth() || h != reference.getHeight()) {
+        if (w != reference.width || h != reference.height) {
             return false;
         }
 
-        double maxDist = 0;
-        for (int i = 0; i < w; i++) {
-
-            for (int j = 0; j < h; j++) {
-                final int p1 = reference.getRGB(i, j);
-                final int p2 = generated.getRGB(i, j);
-
-                final int dr = getAlphaScaledRed(p1) - getAlphaScaledRed(p2);
-                final int dg = getAlphaScaledGreen(p1) - getAlphaScaledGreen(p2);
-                final int db = getAlphaScaledBlue(p1) - getAlphaScaledBlue(p2);
+        final int[] referencePixels = reference.pixels;
+        final int[] generatedPixels = getAlphaScaledPixels(generated);
+        if (Arrays.equals(referencePixels, generatedPixels)) {
+            return true;
+        }
+        for (int j = 0; j < h; j++) {
+            final int rowStart = j * w;
+            for (int i = 0; i < w; i++) {
+                final int p1 = referencePixels[rowStart + i];
+                final int p2 = generatedPixels[rowStart + i];
+                if (p1 == p2 || isSimilar(p1, p2, threshold)) {
+                    continue;
+                }
 
-                if (Math.abs(db) > threshold ||
-                    Math.abs(dg) > threshold ||
-                    Math.abs(dr) > threshold) {
-                    System.err.println("fail dr=" + dr+ " dg=" + dg+ " db=" + db);
-                    if (!checkNeighbors(i, j, reference, generated, threshold)) {
-                        System.err.println("consecutive fail");
-                        return false;
-                    }
+                final int dr = ((p1 >> 16) & 0xFF) - ((p2 >> 16) & 0xFF);
+                final int dg = ((p1 >> 8) & 0xFF) - ((p2 >> 8) & 0xFF);
+                final int db = (p1 & 0xFF) - (p2 & 0xFF);
+                System.err.println("fail dr=" + dr+ " dg=" + dg+ " db=" + db);
+                if (!checkNeighbors(i, j, w, h, referencePixels, generatedPixels, threshold)) {
+                    System.err.println("consecutive fail");
+                    return false;
                 }
             }
         }
@@ -171,36 +312,41 @@ public class ComparisonTask implements Callable<Pair<String, File>> {
         // The diff will contain image1, image2 and the difference between the two.
         final BufferedImage diff = new BufferedImage(
                 width * 3, height, BufferedImage.TYPE_INT_ARGB);
+        final int[] expectedPixels = expected.getRGB(0, 0, w1, h1, null, 0, w1);
+        final int[] actualPixels = actual.getRGB(0, 0, w2, h2, null, 0, w2);
+        final int[] diffPixels = new int[width * 3 * height];
 
-        for (int i = 0; i < width; i++) {
-            for (int j = 0; j < height; j++) {
+        for (int j = 0; j < height; j++) {
+            final int rowStart = j * width * 3;
+            for (int i = 0; i < width; i++) {
                 final boolean inBounds1 = i < w1 && j < h1;
                 final boolean inBounds2 = i < w2 && j < h2;
                 int colorExpected = Color.WHITE.getRGB();
                 int colorActual = Color.WHITE.getRGB();
                 int colorDiff;
                 if (inBounds1 && inBounds2) {
-                    colorExpected = expected.getRGB(i, j);
-                    colorActual = actual.getRGB(i, j);
+                    colorExpected = expectedPixels[j * w1 + i];
+                    colorActual = actualPixels[j * w2 + i];
                     colorDiff = colorExpected == colorActual ? colorExpected : Color.RED.getRGB();
                 } else if (inBounds1 && !inBounds2) {
-                    colorExpected = expected.getRGB(i, j);
+                    colorExpected = expectedPixels[j * w1 + i];
                     colorDiff = Color.BLUE.getRGB();
                 } else if (!inBounds1 && inBounds2) {
-                    colorActual = actual.getRGB(i, j);
+                    colorActual = actualPixels[j * w2 + i];
                     colorDiff = Color.GREEN.getRGB();
                 } else {
                     colorDiff = Color.MAGENTA.getRGB();
                 }
 
-                int x = i;
-                diff.setRGB(x, j, colorExpected);
+                int x = rowStart + i;
+                diffPixels[x] = colorExpected;
                 x += width;
-                diff.setRGB(x, j, colorActual);
+                diffPixels[x] = colorActual;
                 x += width;
-                diff.setRGB(x, j, colorDiff);
+                diffPixels[x] = colorDiff;
             }
         }
+        diff.setRGB(0, 0, width * 3, height, diffPixels, 0, width * 3);
 
         ImageIO.write(diff, "png", out);
     }
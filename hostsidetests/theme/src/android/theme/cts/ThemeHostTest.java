@@ -74,6 +74,9 @@ public class ThemeHostTest extends DeviceTestCase {
     /** Overall test timeout is 30 minutes. Should only take about 5. */
     private static final int TEST_RESULT_TIMEOUT = 30 * 60 * 1000;
 
+    /** Path of the asset with the reference images for the density of the device. */
+    private String mReferenceZipAssetPath;
+
     /** Map of reference image names and files. */
     private Map<String, File> mReferences;
 
@@ -95,8 +98,8 @@ public class ThemeHostTest extends DeviceTestCase {
         mDevice = getDevice();
         mRestoreDensity = resetDensityIfNeeded(mDevice);
         final String density = getDensityBucketForDevice(mDevice);
-        final String referenceZipAssetPath = String.format("/%s.zip", density);
-        mReferences = extractReferenceImages(referenceZipAssetPath);
+        mReferenceZipAssetPath = String.format("/%s.zip", density);
+        mReferences = extractReferenceImages(mReferenceZipAssetPath);
 
         final int numCores = Runtime.getRuntime().availableProcessors();
         mExecutionService = Executors.newFixedThreadPool(numCores * 2);
@@ -208,7 +211,8 @@ public class ThemeHostTest extends DeviceTestCase {
                     }
 
                     final String shortName = name.substring(0, name.indexOf('.'));
-                    mCompletionService.submit(new ComparisonTask(shortName, expected, actual));
+                    mCompletionService.submit(new ComparisonTask(shortName,
+                            mReferenceZipAssetPath + "/" + name, expected, actual));
                     numTasks++;
                 } else {
                     Log.logAndDisplay(LogLevel.INFO, LOG_TAG,
@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.theme.cts;
+
+import com.android.tradefed.util.Pair;
+
+import junit.framework.TestCase;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Host-only tests of the reference image cache of {@link ComparisonTask}.
+ */
+public class ComparisonTaskTest extends TestCase {
+    private static final int SIZE = 64;
+
+    private final List<File> mFiles = new ArrayList<>();
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        ComparisonTask.clearReferenceCache();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        // Do not leave the made up reference images to other tests of the process.
+        ComparisonTask.clearReferenceCache();
+        for (File file : mFiles) {
+            file.delete();
+        }
+        super.tearDown();
+    }
+
+    public void testSecondRunHitsCache() throws Exception {
+        final String[] names = {"/xhdpi.zip/first.png", "/xhdpi.zip/second.png"};
+
+        // Each run extracts the reference images and pulls the generated images to new files.
+        final int hitsBeforeFirstRun = ComparisonTask.getReferenceCacheHits();
+        for (String name : names) {
+            assertNull(runTask(name, 0));
+        }
+        final int hitsAfterFirstRun = ComparisonTask.getReferenceCacheHits();
+        assertEquals(hitsBeforeFirstRun, hitsAfterFirstRun);
+
+        for (String name : names) {
+            assertNull(runTask(name, 0));
+        }
+        assertEquals(hitsAfterFirstRun + names.length, ComparisonTask.getReferenceCacheHits());
+    }
+
+    public void testCachedReferenceStillFindsDifferences() throws Exception {
+        final String name = "/mdpi.zip/different.png";
+        assertNull(runTask(name, 0));
+        final int hits = ComparisonTask.getReferenceCacheHits();
+
+        assertNotNull(runTask(name, 0x00808080));
+        assertEquals(hits + 1, ComparisonTask.getReferenceCacheHits());
+    }
+
+    public void testClearReferenceCache() throws Exception {
+        final String name = "/hdpi.zip/cleared.png";
+        assertNull(runTask(name, 0));
+        ComparisonTask.clearReferenceCache();
+
+        assertNull(runTask(name, 0));
+        assertEquals(0, ComparisonTask.getReferenceCacheHits());
+    }
+
+    /**
+     * Compares a new copy of the reference image with a generated image which differs from it by
+     * one pixel within the threshold, and by the given color in the other pixels.
+     */
+    private Pair<String, File> runTask(String referenceName, int difference) throws IOException {
+        final BufferedImage reference = createImage(0);
+        final BufferedImage generated = createImage(difference);
+        generated.setRGB(0, 0, reference.getRGB(0, 0) ^ 0x00000001);
+        final File expected = writeImage("ref_", reference);
+        final File actual = writeImage("actual_", generated);
+        final Pair<String, File> result =
+                new ComparisonTask("name", referenceName, expected, actual).call();
+        if (result != null) {
+            mFiles.add(result.second);
+        }
+        return result;
+    }
+
+    private static BufferedImage createImage(int difference) {
+        final BufferedImage image = new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < SIZE; y++) {
+            for (int x = 0; x < SIZE; x++) {
+                image.setRGB(x, y, (0xFF000000 | (x * 4) << 16 | (y * 4) << 8) ^ difference);
+            }
+        }
+        return image;
+    }
+
+    private File writeImage(String prefix, BufferedImage image) throws IOException {
+        final File file = File.createTempFile(prefix, ".png");
+        mFiles.add(file);
+        ImageIO.write(image, "png", file);
+        return file;
+    }
+}
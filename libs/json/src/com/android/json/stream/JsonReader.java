@@ -19,6 +19,11 @@ package com.android.json.stream;
 import java.io.IOException;
 import java.io.Reader;
 import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -172,9 +177,30 @@ public final class JsonReader implements Closeable {
     private static final String TRUE = "true";
     private static final String FALSE = "false";
 
-    /** The input JSON. */
+    /** The largest number of names kept in {@link #nameTable}. */
+    private static final int MAX_NAME_COUNT = 1024;
+
+    /** The powers of ten which are exactly represented as doubles. */
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    /** The input JSON, or null if it is read from {@link #bytes}. */
     private final Reader in;
 
+    /**
+     * The UTF-8 encoded input JSON, or null if it is read from {@link #in}.
+     * Its characters are decoded straight into {@link #buffer}.
+     */
+    private final ByteBuffer bytes;
+    private final CharsetDecoder decoder;
+    private final byte[] byteBuffer;
+    private final CharBuffer decoderOutput;
+    private CharBuffer surrogatePair;
+    /** The low surrogate of a pair that did not fit in the buffer, or 0. */
+    private char pendingLowSurrogate;
+
     /** True to accept non-spec compliant JSON */
     private boolean lenient = false;
 
@@ -188,6 +214,14 @@ public final class JsonReader implements Closeable {
     private int pos = 0;
     private int limit = 0;
 
+    /**
+     * The names read so far, in an open addressing hash table indexed by their
+     * hash codes. Objects in a document tend to repeat the same names, which
+     * are then returned without creating a new string each time.
+     */
+    private String[] nameTable = new String[64];
+    private int nameCount = 0;
+
     private final List<JsonScope> stack = new ArrayList<JsonScope>();
     {
         push(JsonScope.EMPTY_DOCUMENT);
@@ -210,6 +244,10 @@ public final class JsonReader implements Closeable {
     private int valuePos;
     private int valueLength;
 
+    /** The result of {@link #parseIntegerLiteral} or {@link #parseDoubleLiteral}. */
+    private long literalLong;
+    private double literalDouble;
+
     /** True if we're currently handling a skipValue() call. */
     private boolean skipping = false;
 
@@ -221,6 +259,33 @@ public final class JsonReader implements Closeable {
             throw new NullPointerException("in == null");
         }
         this.in = in;
+        this.bytes = null;
+        this.decoder = null;
+        this.byteBuffer = null;
+        this.decoderOutput = null;
+    }
+
+    /**
+     * Returns a new instance that reads a UTF-8 encoded JSON stream from the
+     * remaining bytes of {@code utf8}, such as a memory mapped file. The bytes
+     * are decoded directly into the buffer of the reader. The position of
+     * {@code utf8} is not changed.
+     */
+    public static JsonReader fromUtf8(ByteBuffer utf8) {
+        if (utf8 == null) {
+            throw new NullPointerException("utf8 == null");
+        }
+        return new JsonReader(utf8.slice());
+    }
+
+    private JsonReader(ByteBuffer utf8) {
+        this.in = null;
+        this.bytes = utf8;
+        this.decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.byteBuffer = new byte[buffer.length];
+        this.decoderOutput = CharBuffer.wrap(buffer);
     }
 
     /**
@@ -379,7 +444,7 @@ public final class JsonReader implements Closeable {
             throw new IllegalStateException("Expected a string but was " + peek());
         }
 
-        String result = value;
+        String result = getValueString();
         advance();
         return result;
     }
@@ -431,7 +496,9 @@ public final class JsonReader implements Closeable {
             throw new IllegalStateException("Expected a double but was " + token);
         }
 
-        double result = Double.parseDouble(value);
+        double result = parseDoubleLiteral()
+                ? literalDouble
+                : Double.parseDouble(getValueString());
         advance();
         return result;
     }
@@ -453,13 +520,18 @@ public final class JsonReader implements Closeable {
         }
 
         long result;
-        try {
-            result = Long.parseLong(value);
-        } catch (NumberFormatException ignored) {
-            double asDouble = Double.parseDouble(value); // don't catch this NumberFormatException
-            result = (long) asDouble;
-            if ((double) result != asDouble) {
-                throw new NumberFormatException(value);
+        if (parseIntegerLiteral()) {
+            result = literalLong;
+        } else {
+            String text = getValueString();
+            try {
+                result = Long.parseLong(text);
+            } catch (NumberFormatException ignored) {
+                double asDouble = Double.parseDouble(text); // don't catch this NumberFormatException
+                result = (long) asDouble;
+                if ((double) result != asDouble) {
+                    throw new NumberFormatException(text);
+                }
             }
         }
 
@@ -484,13 +556,18 @@ public final class JsonReader implements Closeable {
         }
 
         int result;
-        try {
-            result = Integer.parseInt(value);
-        } catch (NumberFormatException ignored) {
-            double asDouble = Double.parseDouble(value); // don't catch this NumberFormatException
-            result = (int) asDouble;
-            if ((double) result != asDouble) {
-                throw new NumberFormatException(value);
+        if (parseIntegerLiteral() && (int) literalLong == literalLong) {
+            result = (int) literalLong;
+        } else {
+            String text = getValueString();
+            try {
+                result = Integer.parseInt(text);
+            } catch (NumberFormatException ignored) {
+                double asDouble = Double.parseDouble(text); // don't catch this NumberFormatException
+                result = (int) asDouble;
+                if ((double) result != asDouble) {
+                    throw new NumberFormatException(text);
+                }
             }
         }
 
@@ -498,6 +575,114 @@ public final class JsonReader implements Closeable {
         return result;
     }
 
+    /**
+     * Returns the text of the current literal value. The text of a number is
+     * only created here, as it is usually parsed straight from the buffer.
+     */
+    private String getValueString() {
+        if (value == null && token == JsonToken.NUMBER) {
+            value = new String(buffer, valuePos, valueLength);
+        }
+        return value;
+    }
+
+    /**
+     * Parses the current number as a long without creating its text, and
+     * stores it in {@link #literalLong}. Returns false if it is not an integer
+     * of at most 18 digits, which the string parsing handles.
+     */
+    private boolean parseIntegerLiteral() {
+        if (token != JsonToken.NUMBER) {
+            return false;
+        }
+        int i = valuePos;
+        int end = valuePos + valueLength;
+        boolean negative = buffer[i] == '-';
+        if (negative) {
+            i++;
+        }
+        if (end - i > 18) {
+            return false;
+        }
+        long result = 0;
+        for (; i < end; i++) {
+            char c = buffer[i];
+            if (c < '0' || c > '9') {
+                return false;
+            }
+            result = result * 10 + (c - '0');
+        }
+        literalLong = negative ? -result : result;
+        return true;
+    }
+
+    /**
+     * Parses the current number as a double without creating its text, and
+     * stores it in {@link #literalDouble}. This is only done when the digits
+     * fit in the mantissa of a double and the power of ten is exact, so that a
+     * single multiplication or division rounds the result correctly. Returns
+     * false otherwise.
+     */
+    private boolean parseDoubleLiteral() {
+        if (token != JsonToken.NUMBER) {
+            return false;
+        }
+        int i = valuePos;
+        int end = valuePos + valueLength;
+        boolean negative = buffer[i] == '-';
+        if (negative) {
+            i++;
+        }
+
+        long digits = 0;
+        int exponent = 0;
+        boolean fraction = false;
+        for (; i < end; i++) {
+            char c = buffer[i];
+            if (c == '.') {
+                fraction = true;
+            } else if (c >= '0' && c <= '9') {
+                if (digits >= 1L << 49) {
+                    return false;
+                }
+                digits = digits * 10 + (c - '0');
+                if (fraction) {
+                    exponent--;
+                }
+            } else {
+                break;
+            }
+        }
+
+        if (i < end) {
+            // skip the 'e' or 'E', the grammar was checked by decodeNumber()
+            i++;
+            boolean negativeExponent = buffer[i] == '-';
+            if (negativeExponent || buffer[i] == '+') {
+                i++;
+            }
+            int explicitExponent = 0;
+            for (; i < end; i++) {
+                explicitExponent = explicitExponent * 10 + (buffer[i] - '0');
+                if (explicitExponent > POWERS_OF_TEN.length * 2) {
+                    return false;
+                }
+            }
+            exponent += negativeExponent ? -explicitExponent : explicitExponent;
+        }
+
+        double result = digits;
+        if (exponent >= 0 && exponent < POWERS_OF_TEN.length) {
+            result *= POWERS_OF_TEN[exponent];
+        } else if (exponent < 0 && -exponent < POWERS_OF_TEN.length) {
+            result /= POWERS_OF_TEN[-exponent];
+        } else {
+            return false;
+        }
+        literalDouble = negative ? -result : result;
+        return true;
+    }
+
     /**
      * Closes this JSON reader and the underlying {@link Reader}.
      */
@@ -506,7 +691,9 @@ public final class JsonReader implements Closeable {
         token = null;
         stack.clear();
         stack.add(JsonScope.CLOSED);
-        in.close();
+        if (in != null) {
+            in.close();
+        }
     }
 
     /**
@@ -622,7 +809,7 @@ public final class JsonReader implements Closeable {
             case '\'':
                 checkLenient(); // fall-through
             case '"':
-                name = nextString((char) quote);
+                name = nextString((char) quote, true);
                 break;
             default:
                 checkLenient();
@@ -673,7 +860,7 @@ public final class JsonReader implements Closeable {
             case '\'':
                 checkLenient(); // fall-through
             case '"':
-                value = nextString((char) c);
+                value = nextString((char) c, false);
                 return token = JsonToken.STRING;
 
             default:
@@ -696,6 +883,9 @@ public final class JsonReader implements Closeable {
         }
 
         pos = 0;
+        if (in == null) {
+            return decodeBytes(minimum);
+        }
         int total;
         while ((total = in.read(buffer, limit, buffer.length - limit)) != -1) {
             limit += total;
@@ -706,6 +896,55 @@ public final class JsonReader implements Closeable {
         return false;
     }
 
+    /**
+     * Decodes bytes into the buffer after {@code limit}, like {@link
+     * #fillBuffer} reads characters. ASCII bytes are copied directly, the
+     * others are decoded as UTF-8.
+     */
+    private boolean decodeBytes(int minimum) {
+        while (limit < minimum) {
+            if (pendingLowSurrogate != 0) {
+                buffer[limit++] = pendingLowSurrogate;
+                pendingLowSurrogate = 0;
+                continue;
+            }
+            if (!bytes.hasRemaining()) {
+                return false;
+            }
+
+            int start = bytes.position();
+            int count = Math.min(bytes.remaining(), buffer.length - limit);
+            bytes.get(byteBuffer, 0, count);
+            int ascii = 0;
+            while (ascii < count && byteBuffer[ascii] >= 0) {
+                buffer[limit + ascii] = (char) byteBuffer[ascii];
+                ascii++;
+            }
+            bytes.position(start + ascii);
+            limit += ascii;
+            if (ascii == count) {
+                continue;
+            }
+
+            decoderOutput.limit(buffer.length);
+            decoderOutput.position(limit);
+            decoder.decode(bytes, decoderOutput, true);
+            if (decoderOutput.position() > limit) {
+                limit = decoderOutput.position();
+            } else {
+                // Only one char is left for a surrogate pair.
+                if (surrogatePair == null) {
+                    surrogatePair = CharBuffer.allocate(2);
+                }
+                surrogatePair.clear();
+                decoder.decode(bytes, surrogatePair, true);
+                buffer[limit++] = surrogatePair.get(0);
+                pendingLowSurrogate = surrogatePair.get(1);
+            }
+        }
+        return true;
+    }
+
     private int nextNonWhitespace() throws IOException {
         while (pos < limit || fillBuffer(1)) {
             int c = buffer[pos++];
@@ -801,10 +1040,11 @@ public final class JsonReader implements Closeable {
      * not include it in the returned string.
      *
      * @param quote either ' or ".
+     * @param isName true to return the same string for repeated names.
      * @throws NumberFormatException if any unicode escape sequences are
      *     malformed.
      */
-    private String nextString(char quote) throws IOException {
+    private String nextString(char quote, boolean isName) throws IOException {
         StringBuilder builder = null;
         do {
             /* the index of the first character not yet appended to the builder. */
@@ -815,6 +1055,8 @@ public final class JsonReader implements Closeable {
                 if (c == quote) {
                     if (skipping) {
                         return "skipped!";
+                    } else if (builder == null && isName) {
+                        return internName(start, pos - start - 1);
                     } else if (builder == null) {
                         return new String(buffer, start, pos - start - 1);
                     } else {
@@ -841,6 +1083,65 @@ public final class JsonReader implements Closeable {
         throw syntaxError("Unterminated string");
     }
 
+    /**
+     * Returns the name in the buffer at {@code start}, which is the same
+     * string as the last time the name was read, unless too many different
+     * names have been read.
+     */
+    private String internName(int start, int length) {
+        int hash = 0;
+        for (int i = start; i < start + length; i++) {
+            hash = 31 * hash + buffer[i];
+        }
+        int mask = nameTable.length - 1;
+        int index = (hash ^ (hash >>> 16)) & mask;
+        String candidate;
+        while ((candidate = nameTable[index]) != null) {
+            if (candidate.hashCode() == hash && nameEquals(candidate, start, length)) {
+                return candidate;
+            }
+            index = (index + 1) & mask;
+        }
+
+        String name = new String(buffer, start, length);
+        if (nameCount < MAX_NAME_COUNT) {
+            nameTable[index] = name;
+            nameCount++;
+            if (nameCount * 2 > nameTable.length) {
+                rehashNames();
+            }
+        }
+        return name;
+    }
+
+    private boolean nameEquals(String name, int start, int length) {
+        if (name.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (name.charAt(i) != buffer[start + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void rehashNames() {
+        String[] oldTable = nameTable;
+        nameTable = new String[oldTable.length * 2];
+        int mask = nameTable.length - 1;
+        for (String name : oldTable) {
+            if (name != null) {
+                int hash = name.hashCode();
+                int index = (hash ^ (hash >>> 16)) & mask;
+                while (nameTable[index] != null) {
+                    index = (index + 1) & mask;
+                }
+                nameTable[index] = name;
+            }
+        }
+    }
+
     /**
      * Reads the value up to but not including any delimiter characters. This
      * does not consume the delimiter character.
@@ -1020,8 +1321,12 @@ public final class JsonReader implements Closeable {
             value = FALSE;
             return JsonToken.BOOLEAN;
         } else {
-            value = new String(buffer, valuePos, valueLength);
-            return decodeNumber(buffer, valuePos, valueLength);
+            // The text of a number is only created when it is read as a string.
+            JsonToken result = decodeNumber(buffer, valuePos, valueLength);
+            if (result == JsonToken.STRING) {
+                value = new String(buffer, valuePos, valueLength);
+            }
+            return result;
         }
     }
 
@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.json.stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Tests that {@link JsonReader#fromUtf8} reads the same values as a {@link JsonReader} of a
+ * {@link java.io.Reader}.
+ */
+@RunWith(JUnit4.class)
+public class JsonReaderTest {
+
+    /** The size of the character buffer of {@link JsonReader}, and of its byte buffer. */
+    private static final int READER_BUFFER_SIZE = 1024;
+
+    /** U+1F600, which is a surrogate pair in UTF-16 and four bytes in UTF-8. */
+    private static final String SURROGATE_PAIR = "😀";
+
+    @Test
+    public void testMultiByteUtf8() throws IOException {
+        String[] strings = {
+            "café", // 2 bytes
+            "日本語", // 3 bytes
+            SURROGATE_PAIR + "x" + SURROGATE_PAIR, // 4 bytes
+            "aé€" + SURROGATE_PAIR, // all of them
+        };
+        for (String string : strings) {
+            String json = "{\"" + string + "\": [\"" + string + "\"]}";
+            for (JsonReader reader : new JsonReader[] {fromString(json), fromUtf8(json)}) {
+                reader.beginObject();
+                assertEquals(string, reader.nextName());
+                reader.beginArray();
+                assertEquals(string, reader.nextString());
+                reader.endArray();
+                reader.endObject();
+                assertEquals(JsonToken.END_DOCUMENT, reader.peek());
+            }
+        }
+    }
+
+    @Test
+    public void testSurrogatePairAcrossBufferBoundary() throws IOException {
+        // The one and two byte prefixes move the pair across the boundaries of the character
+        // buffer and of the byte buffer at different offsets.
+        for (String prefixCharacter : new String[] {"a", "é"}) {
+            for (int length = READER_BUFFER_SIZE - 8; length <= READER_BUFFER_SIZE + 8; length++) {
+                String string = repeat(prefixCharacter, length) + SURROGATE_PAIR + "z";
+                String json = "[\"" + string + "\", 1]";
+                for (JsonReader reader : new JsonReader[] {fromString(json), fromUtf8(json)}) {
+                    reader.beginArray();
+                    assertEquals("Prefix of " + length, string, reader.nextString());
+                    assertEquals(1, reader.nextInt());
+                    reader.endArray();
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testDoublesPastFastPath() throws IOException {
+        String[] numbers = {
+            "0.1", "-0.0", "1e22", "1e23", "123456789012345678", "9007199254740993",
+            "12345678901234567890.5", "3.141592653589793238462643383279", "1.7976931348623157e308",
+            "4.9e-324", "2.2250738585072014E-308", "-1.5e-7", "123.456e-30",
+        };
+        StringBuilder json = new StringBuilder("[");
+        for (String number : numbers) {
+            json.append(json.length() == 1 ? "" : ",").append(number);
+        }
+        json.append("]");
+        for (JsonReader reader
+                : new JsonReader[] {fromString(json.toString()), fromUtf8(json.toString())}) {
+            reader.beginArray();
+            for (String number : numbers) {
+                assertEquals(number, Double.doubleToLongBits(Double.parseDouble(number)),
+                        Double.doubleToLongBits(reader.nextDouble()));
+            }
+            reader.endArray();
+        }
+    }
+
+    @Test
+    public void testFromUtf8KeepsPosition() throws IOException {
+        ByteBuffer bytes = ByteBuffer.wrap("xx[\"é\"]".getBytes(StandardCharsets.UTF_8));
+        bytes.position(2);
+        JsonReader reader = JsonReader.fromUtf8(bytes);
+        reader.beginArray();
+        assertEquals("é", reader.nextString());
+        reader.endArray();
+        assertEquals(2, bytes.position());
+    }
+
+    @Test
+    public void testFromUtf8Null() {
+        try {
+            JsonReader.fromUtf8(null);
+            fail();
+        } catch (NullPointerException expected) {
+        }
+    }
+
+    private static JsonReader fromString(String json) {
+        return new JsonReader(new StringReader(json));
+    }
+
+    /** Reads the JSON from a direct buffer, like a memory mapped file. */
+    private static JsonReader fromUtf8(String json) {
+        byte[] utf8 = json.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer bytes = ByteBuffer.allocateDirect(utf8.length);
+        bytes.put(utf8).flip();
+        return JsonReader.fromUtf8(bytes);
+    }
+
+    private static String repeat(String string, int count) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            builder.append(string);
+        }
+        return builder.toString();
+    }
+}
@@ -21,12 +21,14 @@ import com.google.common.base.Joiner;
 import com.google.common.base.Splitter;
 import com.google.common.collect.Iterables;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
@@ -165,15 +167,22 @@ public final class ExpectationStore {
     public void parse(File expectationsFile, ModeId mode) throws IOException {
         Log.verbose("loading expectations file " + expectationsFile);
 
-        try (Reader fileReader = new FileReader(expectationsFile)) {
+        // Map the file and let the JSON reader decode it, rather than reading it through a Reader.
+        try (FileChannel channel = FileChannel.open(expectationsFile.toPath(),
+                StandardOpenOption.READ)) {
+            ByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
             String source = expectationsFile.toString();
-            parse(fileReader, source, mode);
+            parse(JsonReader.fromUtf8(bytes), source, mode);
         }
     }
 
     private void parse(Reader reader, String source, ModeId mode) throws IOException {
+        parse(new JsonReader(reader), source, mode);
+    }
+
+    private void parse(JsonReader reader, String source, ModeId mode) throws IOException {
         int count = 0;
-        try (JsonReader jsonReader = new JsonReader(reader)) {
+        try (JsonReader jsonReader = reader) {
             jsonReader.setLenient(true);
             jsonReader.beginArray();
             while (jsonReader.hasNext()) {
@@ -34,7 +34,9 @@ LOCAL_JNI_SHARED_LIBRARIES += libclassdescriptors
 LOCAL_MULTILIB := both
 
 LOCAL_ADDITIONAL_DEPENDENCIES += \
-    $(addprefix $(COMPATIBILITY_TESTCASES_OUT_cts)/,$(LOCAL_SIGNATURE_API_FILES))
+    $(addprefix $(COMPATIBILITY_TESTCASES_OUT_cts)/,$(LOCAL_SIGNATURE_API_FILES)) \
+    $(addprefix $(COMPATIBILITY_TESTCASES_OUT_cts)/,\
+        $(addsuffix .snapshot,$(filter %.api,$(LOCAL_SIGNATURE_API_FILES))))
 
 # Add dependencies needed to build/run the test with atest.
 #
@@ -61,6 +63,11 @@ cts_signature_module_deps := $(subst .,-,$(cts_signature_module_deps))
 cts_signature_module_deps := $(addprefix cts-,$(cts_signature_module_deps))
 cts_signature_module_deps := $(subst -all-api-zip,-all.api,$(cts_signature_module_deps))
 
+# The .api files also have a snapshot, e.g. current.api.snapshot is built by
+# cts-current-api-snapshot.
+cts_signature_module_deps += \
+    $(addsuffix -snapshot,$(filter %-api,$(cts_signature_module_deps)))
+
 LOCAL_REQUIRED_MODULES := $(cts_signature_module_deps)
 
 LOCAL_DEX_PREOPT := false
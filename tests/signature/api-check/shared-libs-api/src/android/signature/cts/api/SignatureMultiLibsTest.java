@@ -43,13 +43,16 @@ public class SignatureMultiLibsTest extends SignatureTest {
     public void testSignature() {
         runWithTestResultObserver(mResultObserver -> {
 
-            ApiComplianceChecker complianceChecker =
-                    new ApiComplianceChecker(mResultObserver, classProvider);
+            ParallelClassChecker parallelChecker = new ParallelClassChecker(mResultObserver);
+            ApiComplianceChecker complianceChecker = new ApiComplianceChecker(
+                    parallelChecker.getResultObserver(), classProvider);
 
             ApiDocumentParser apiDocumentParser = new ApiDocumentParser(TAG);
 
-            parseApiFilesAsStream(apiDocumentParser, expectedApiFiles)
-                    .forEach(complianceChecker::checkSignatureCompliance);
+            parallelChecker.checkAll(
+                    parseApiFilesAsStream(apiDocumentParser, expectedApiFiles),
+                    complianceChecker::checkSignatureCompliance,
+                    complianceChecker::isCheckOrderDependent);
 
             // After done parsing all expected API files, perform any deferred checks.
             complianceChecker.checkDeferred();
@@ -17,6 +17,7 @@ package android.signature.cts.api;
 
 import android.os.Bundle;
 import android.signature.cts.ApiDocumentParser;
+import android.signature.cts.ApiSnapshot;
 import android.signature.cts.ClassProvider;
 import android.signature.cts.ExcludingClassProvider;
 import android.signature.cts.FailureType;
@@ -159,13 +160,21 @@ public class AbstractApiTest extends InstrumentationTestCase {
             ApiDocumentParser apiDocumentParser, String[] apiFiles) {
         return Stream.of(apiFiles)
                 .map(name -> new File(API_FILE_DIRECTORY + "/" + name))
-                .flatMap(this::readFile)
-                .flatMap(stream -> {
-                    try {
-                        return apiDocumentParser.parseAsStream(stream);
-                    } catch (IOException | XmlPullParserException e) {
-                        throw new RuntimeException(e);
+                .flatMap(file -> {
+                    // Prefers a snapshot precompiled from the API file, its classes are decoded
+                    // from a memory mapping as they are needed instead of parsing the XML.
+                    File snapshotFile = new File(file.getPath() + ApiSnapshot.FILE_SUFFIX);
+                    if (snapshotFile.isFile()) {
+                        return readFileOptimized(snapshotFile)
+                                .flatMap(buffer -> new ApiSnapshot((ByteBuffer) buffer).stream());
                     }
+                    return readFile(file).flatMap(stream -> {
+                        try {
+                            return apiDocumentParser.parseAsStream(stream);
+                        } catch (IOException | XmlPullParserException e) {
+                            throw new RuntimeException(e);
+                        }
+                    });
                 });
     }
 }
@@ -20,6 +20,7 @@ import java.util.function.Predicate;
 
 import android.os.Bundle;
 import android.provider.Settings;
+import android.signature.cts.ClassMembersCache;
 import android.signature.cts.DexField;
 import android.signature.cts.DexMember;
 import android.signature.cts.DexMemberChecker;
@@ -71,6 +72,7 @@ public abstract class BaseKillswitchTest extends AbstractApiTest {
     private void doTestKillswitchMechanism(Predicate<DexMember> memberFilter, boolean reflection,
             boolean jni) {
         runWithTestResultObserver(resultObserver -> {
+            ClassMembersCache classMembersCache = DexMemberChecker.createClassMembersCache();
             DexMemberChecker.Observer observer = new DexMemberChecker.Observer() {
                 @Override
                 public void classAccessible(boolean accessible, DexMember member) {
@@ -137,7 +139,8 @@ public abstract class BaseKillswitchTest extends AbstractApiTest {
                 classProvider.getAllMembers(klass)
                         .filter(memberFilter)
                         .forEach(member -> {
-                            DexMemberChecker.checkSingleMember(member, reflection, jni, observer);
+                            DexMemberChecker.checkSingleMember(
+                                    member, classMembersCache, reflection, jni, observer);
                         });
             });
         });
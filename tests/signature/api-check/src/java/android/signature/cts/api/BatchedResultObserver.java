@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.signature.cts.api;
+
+import android.signature.cts.FailureType;
+import android.signature.cts.ResultObserver;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Collects failures reported from multiple threads without locking, and passes them on to
+ * another {@link ResultObserver} in one batch.
+ *
+ * <p>Failures are passed on sorted by name, so the report does not depend on the order in which
+ * the threads found them.
+ */
+class BatchedResultObserver implements ResultObserver {
+
+    private static final Comparator<Failure> FAILURE_ORDER =
+            Comparator.comparing((Failure failure) -> failure.name)
+                    .thenComparing(failure -> failure.type)
+                    .thenComparing(failure -> failure.errorMessage);
+
+    private static class Failure {
+        final FailureType type;
+        final String name;
+        final String errorMessage;
+
+        Failure(FailureType type, String name, String errorMessage) {
+            this.type = type;
+            this.name = name;
+            this.errorMessage = errorMessage;
+        }
+    }
+
+    private final ConcurrentLinkedQueue<Failure> mFailures = new ConcurrentLinkedQueue<>();
+
+    @Override
+    public void notifyFailure(FailureType type, String name, String errorMessage) {
+        mFailures.add(new Failure(type, name, errorMessage));
+    }
+
+    /**
+     * Passes the collected failures on to the given observer, and forgets them.
+     *
+     * <p>Must not be called while other threads are still reporting failures.
+     */
+    void flushTo(ResultObserver resultObserver) {
+        List<Failure> failures = new ArrayList<>(mFailures);
+        mFailures.clear();
+        failures.sort(FAILURE_ORDER);
+        for (Failure failure : failures) {
+            resultObserver.notifyFailure(failure.type, failure.name, failure.errorMessage);
+        }
+    }
+}
@@ -19,6 +19,7 @@ package android.signature.cts.api;
 import static android.signature.cts.CurrentApi.API_FILE_DIRECTORY;
 
 import android.os.Bundle;
+import android.signature.cts.ClassMembersCache;
 import android.signature.cts.DexApiDocumentParser;
 import android.signature.cts.DexField;
 import android.signature.cts.DexMember;
@@ -26,14 +27,8 @@ import android.signature.cts.DexMemberChecker;
 import android.signature.cts.DexMethod;
 import android.signature.cts.FailureType;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
-import java.io.IOException;
-import java.text.ParseException;
 import java.util.function.Predicate;
-import java.util.stream.Stream;
 
 /**
  * Checks that it is not possible to access hidden APIs.
@@ -84,10 +79,15 @@ public class HiddenApiTest extends AbstractApiTest {
      * DEX signatures.
      *
      * Will check the entire API, and then report the complete list of failures
+     *
+     * <p>The lists are memory mapped and their members checked on a parallel stream. Failures are
+     * collected without locking and reported in one batch once all members have been checked.
      */
     private void doTestSignature(Predicate<DexMember> memberFilter, boolean reflection,
             boolean jni) {
         runWithTestResultObserver(resultObserver -> {
+            BatchedResultObserver failures = new BatchedResultObserver();
+            ClassMembersCache classMembersCache = DexMemberChecker.createClassMembersCache();
             DexMemberChecker.Observer observer = new DexMemberChecker.Observer() {
                 @Override
                 public void classAccessible(boolean accessible, DexMember member) {
@@ -96,65 +96,60 @@ public class HiddenApiTest extends AbstractApiTest {
                 @Override
                 public void fieldAccessibleViaReflection(boolean accessible, DexField field) {
                     if (accessible) {
-                        synchronized(resultObserver) {
-                            resultObserver.notifyFailure(
-                                    FailureType.EXTRA_FIELD,
-                                    field.toString(),
-                                    "Hidden field accessible through reflection");
-                        }
+                        failures.notifyFailure(
+                                FailureType.EXTRA_FIELD,
+                                field.toString(),
+                                "Hidden field accessible through reflection");
                     }
                 }
 
                 @Override
                 public void fieldAccessibleViaJni(boolean accessible, DexField field) {
                     if (accessible) {
-                        synchronized(resultObserver) {
-                            resultObserver.notifyFailure(
-                                    FailureType.EXTRA_FIELD,
-                                    field.toString(),
-                                    "Hidden field accessible through JNI");
-                        }
+                        failures.notifyFailure(
+                                FailureType.EXTRA_FIELD,
+                                field.toString(),
+                                "Hidden field accessible through JNI");
                     }
                 }
 
                 @Override
                 public void methodAccessibleViaReflection(boolean accessible, DexMethod method) {
                     if (accessible) {
-                        synchronized(resultObserver) {
-                            resultObserver.notifyFailure(
-                                    FailureType.EXTRA_METHOD,
-                                    method.toString(),
-                                    "Hidden method accessible through reflection");
-                        }
+                        failures.notifyFailure(
+                                FailureType.EXTRA_METHOD,
+                                method.toString(),
+                                "Hidden method accessible through reflection");
                     }
                 }
 
                 @Override
                 public void methodAccessibleViaJni(boolean accessible, DexMethod method) {
                     if (accessible) {
-                        synchronized(resultObserver) {
-                            resultObserver.notifyFailure(
-                                    FailureType.EXTRA_METHOD,
-                                    method.toString(),
-                                    "Hidden method accessible through JNI");
-                        }
+                        failures.notifyFailure(
+                                FailureType.EXTRA_METHOD,
+                                method.toString(),
+                                "Hidden method accessible through JNI");
                     }
                 }
             };
-            for (String apiFile : hiddenapiFiles) {
-                BufferedReader reader = new BufferedReader(
-                        new FileReader(API_FILE_DIRECTORY + "/" + apiFile));
-                int lineIndex = 1;
-                String line = reader.readLine();
-                while (line != null) {
-                    DexMember dexMember = DexApiDocumentParser.parseLine(line, lineIndex);
-                    if (memberFilter.test(dexMember) && shouldTestMember(dexMember)) {
-                        DexMemberChecker.checkSingleMember(dexMember, reflection, jni,
-                                observer);
-                    }
-                    line = reader.readLine();
-                    lineIndex++;
+            DexApiDocumentParser dexApiDocumentParser = new DexApiDocumentParser();
+            try {
+                for (String apiFile : hiddenapiFiles) {
+                    // Each file is split into its own parallel stream, as flatMap would consume
+                    // the lines of a file sequentially.
+                    readFileOptimized(new File(API_FILE_DIRECTORY + "/" + apiFile))
+                            .forEach(input -> dexApiDocumentParser.parseAsStream(input)
+                                    .parallel()
+                                    .filter(memberFilter)
+                                    .filter(this::shouldTestMember)
+                                    .forEach(dexMember -> DexMemberChecker.checkSingleMember(
+                                            dexMember, classMembersCache, reflection, jni,
+                                            observer)));
                 }
+            } finally {
+                // Also reports the failures found before an exception stopped the check.
+                failures.flushTo(resultObserver);
             }
         });
     }
@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.signature.cts.api;
+
+import android.signature.cts.FailureType;
+import android.signature.cts.JDiffClassDescription;
+import android.signature.cts.ResultObserver;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * Checks the classes of an API on a pool of worker threads.
+ *
+ * <p>The thread which parses the API files hands each class over to the pool and waits once too
+ * many classes are in flight. The failures found while checking a class are kept with the class
+ * and reported in the order in which the classes were parsed, so the report is the same as if the
+ * classes had been checked one after another.
+ */
+class ParallelClassChecker {
+
+    private static final int MAX_PENDING_CLASSES_PER_THREAD = 8;
+
+    private final ResultObserver mResultObserver;
+    private final int mThreadCount;
+    private final int mMaxPendingClasses;
+
+    // The failures of the class checked by the current thread, null outside of a check.
+    private final ThreadLocal<List<Runnable>> mClassFailures = new ThreadLocal<>();
+
+    private final ResultObserver mRoutingObserver = this::notifyFailure;
+
+    ParallelClassChecker(ResultObserver resultObserver) {
+        this(resultObserver, Runtime.getRuntime().availableProcessors());
+    }
+
+    ParallelClassChecker(ResultObserver resultObserver, int threadCount) {
+        mResultObserver = resultObserver;
+        mThreadCount = threadCount;
+        mMaxPendingClasses = threadCount * MAX_PENDING_CLASSES_PER_THREAD;
+    }
+
+    /**
+     * Gets the observer which the checker of a class must report its failures to.
+     *
+     * <p>Failures reported outside of {@link #checkAll} go straight to the wrapped observer.
+     */
+    ResultObserver getResultObserver() {
+        return mRoutingObserver;
+    }
+
+    /**
+     * Checks all classes and reports their failures in the order of the stream.
+     *
+     * @param classes the classes to check, consumed on the calling thread.
+     * @param checker checks a single class.
+     * @param checkInOrder selects the classes whose check has side effects that depend on the
+     *     order of the classes. They are checked on the calling thread in stream order.
+     */
+    void checkAll(Stream<JDiffClassDescription> classes, Consumer<JDiffClassDescription> checker,
+            Predicate<JDiffClassDescription> checkInOrder) {
+        ExecutorService executor = Executors.newFixedThreadPool(mThreadCount);
+        ArrayDeque<Future<List<Runnable>>> pending = new ArrayDeque<>();
+        try {
+            Iterator<JDiffClassDescription> iterator = classes.iterator();
+            while (iterator.hasNext()) {
+                JDiffClassDescription classDescription = iterator.next();
+                Callable<List<Runnable>> check = () -> checkClass(checker, classDescription);
+                if (checkInOrder.test(classDescription)) {
+                    FutureTask<List<Runnable>> task = new FutureTask<>(check);
+                    task.run();
+                    pending.add(task);
+                } else {
+                    pending.add(executor.submit(check));
+                }
+
+                // Report whatever is already done, and wait when too much is in flight.
+                while (!pending.isEmpty()
+                        && (pending.size() > mMaxPendingClasses || pending.peek().isDone())) {
+                    report(pending.poll());
+                }
+            }
+            while (!pending.isEmpty()) {
+                report(pending.poll());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private List<Runnable> checkClass(Consumer<JDiffClassDescription> checker,
+            JDiffClassDescription classDescription) {
+        List<Runnable> failures = new ArrayList<>();
+        mClassFailures.set(failures);
+        try {
+            checker.accept(classDescription);
+        } finally {
+            mClassFailures.remove();
+        }
+        return failures;
+    }
+
+    private void notifyFailure(FailureType type, String name, String errorMessage) {
+        List<Runnable> failures = mClassFailures.get();
+        if (failures == null) {
+            mResultObserver.notifyFailure(type, name, errorMessage);
+        } else {
+            failures.add(() -> mResultObserver.notifyFailure(type, name, errorMessage));
+        }
+    }
+
+    private static void report(Future<List<Runnable>> future) {
+        List<Runnable> failures;
+        try {
+            failures = future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+        failures.forEach(Runnable::run);
+    }
+}
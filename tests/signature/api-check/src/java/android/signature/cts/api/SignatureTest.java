@@ -67,17 +67,22 @@ public class SignatureTest extends AbstractApiTest {
                 }
             }
 
-            ApiComplianceChecker complianceChecker =
-                    new ApiComplianceChecker(mResultObserver, classProvider);
+            ParallelClassChecker parallelChecker = new ParallelClassChecker(mResultObserver);
+            ApiComplianceChecker complianceChecker = new ApiComplianceChecker(
+                    parallelChecker.getResultObserver(), classProvider);
 
             // Load classes from any API files that form the base which the expected APIs extend.
             loadBaseClasses(complianceChecker);
 
             ApiDocumentParser apiDocumentParser = new ApiDocumentParser(TAG);
 
-            parseApiFilesAsStream(apiDocumentParser, expectedApiFiles)
-                    .filter(not(unexpectedClasses::contains))
-                    .forEach(complianceChecker::checkSignatureCompliance);
+            // The parser feeds the classes to a pool of checkers, the failures are still
+            // reported in API file order.
+            parallelChecker.checkAll(
+                    parseApiFilesAsStream(apiDocumentParser, expectedApiFiles)
+                            .filter(not(unexpectedClasses::contains)),
+                    complianceChecker::checkSignatureCompliance,
+                    complianceChecker::isCheckOrderDependent);
 
             // After done parsing all expected API files, perform any deferred checks.
             complianceChecker.checkDeferred();
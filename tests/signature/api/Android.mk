@@ -16,6 +16,14 @@
 
 LOCAL_PATH := $(call my-dir)
 
+CTS_API_SNAPSHOT_CONVERTER := $(HOST_OUT_EXECUTABLES)/cts-api-snapshot-converter
+CTS_API_SNAPSHOT_CONVERTER_DEPS := $(CTS_API_SNAPSHOT_CONVERTER) \
+    $(HOST_OUT_JAVA_LIBRARIES)/cts-api-snapshot-converter.jar
+
+# Builds the xml file, and the snapshot of it which the signature tests read when it is pushed
+# next to the xml file, see AbstractApiTest. The snapshot is checked against the xml file before
+# it is installed.
+#
 # $(1) name of the xml file to be created
 # $(2) path to the api text file
 define build_xml_api_file
@@ -29,6 +37,21 @@ $$(LOCAL_BUILT_MODULE): $(2) | $(APICHECK)
 	@echo "Convert API file $$< -> $$@"
 	@mkdir -p $$(dir $$@)
 	$(hide) $(APICHECK_COMMAND) -convert2xmlnostrip $$< $$@
+cts_api_xml_file := $$(LOCAL_BUILT_MODULE)
+
+include $(CLEAR_VARS)
+LOCAL_MODULE := cts-$(subst .,-,$(1))-snapshot
+LOCAL_MODULE_STEM := $(1).snapshot
+LOCAL_MODULE_CLASS := ETC
+LOCAL_COMPATIBILITY_SUITE := arcts cts vts general-tests
+include $(BUILD_SYSTEM)/base_rules.mk
+$$(LOCAL_BUILT_MODULE): $$(cts_api_xml_file) $(CTS_API_SNAPSHOT_CONVERTER_DEPS)
+	@echo "Convert API file $$< -> $$@"
+	@mkdir -p $$(dir $$@)
+	$(hide) $(CTS_API_SNAPSHOT_CONVERTER) $$< $$@.tmp
+	$(hide) $(CTS_API_SNAPSHOT_CONVERTER) -verify $$< $$@.tmp
+	$(hide) mv $$@.tmp $$@
+cts_api_xml_file :=
 endef
 
 # NOTE: the output XML file is also used
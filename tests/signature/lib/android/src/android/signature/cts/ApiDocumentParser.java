@@ -28,7 +28,6 @@ import static android.signature.cts.CurrentApi.TAG_PACKAGE;
 import static android.signature.cts.CurrentApi.TAG_PARAM;
 import static android.signature.cts.CurrentApi.TAG_ROOT;
 
-import android.util.Log;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Collections;
@@ -221,6 +220,6 @@ public class ApiDocumentParser {
     }
 
     private void logd(String msg) {
-        Log.d(tag, msg);
+        LogHelper.logd(tag, msg);
     }
 }
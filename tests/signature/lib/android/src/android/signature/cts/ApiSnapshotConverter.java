@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.signature.cts;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+import org.xmlpull.v1.XmlPullParserException;
+
+/**
+ * Converts an XML API file into an {@link ApiSnapshot}, and checks that a snapshot describes the
+ * same classes as the XML API file.
+ *
+ * <p>Usage: ApiSnapshotConverter [-verify] API_XML SNAPSHOT
+ */
+public class ApiSnapshotConverter {
+
+    private static final String TAG = ApiSnapshotConverter.class.getSimpleName();
+
+    private ApiSnapshotConverter() {}
+
+    /**
+     * Converts the classes of an XML API file.
+     *
+     * @param xmlInput the XML API file.
+     * @param snapshotOutput receives the snapshot.
+     */
+    public static void convert(InputStream xmlInput, OutputStream snapshotOutput)
+            throws IOException, XmlPullParserException {
+        write(new ApiDocumentParser(TAG).parseAsStream(xmlInput), snapshotOutput);
+    }
+
+    /**
+     * Checks that a snapshot decodes to the same classes, in the same order, as an XML API file.
+     *
+     * <p>The classes decoded from the snapshot are compared with the classes parsed from the XML
+     * attribute by attribute, so that an attribute which {@link ApiSnapshotWriter} does not write,
+     * or which {@link ApiSnapshot} does not decode back, is reported.
+     *
+     * @return a description of the first difference, or null if there is none.
+     */
+    public static String verify(InputStream xmlInput, ByteBuffer snapshot)
+            throws IOException, XmlPullParserException {
+        Iterator<JDiffClassDescription> xmlClasses =
+                new ApiDocumentParser(TAG).parseAsStream(xmlInput).iterator();
+        Iterator<JDiffClassDescription> snapshotClasses = new ApiSnapshot(snapshot).stream()
+                .iterator();
+        int index = 0;
+        while (xmlClasses.hasNext() && snapshotClasses.hasNext()) {
+            JDiffClassDescription xmlClass = xmlClasses.next();
+            JDiffClassDescription snapshotClass = snapshotClasses.next();
+            List<Object> xmlModel = getModel(xmlClass);
+            List<Object> snapshotModel = getModel(snapshotClass);
+            if (!xmlModel.equals(snapshotModel)) {
+                return "Class " + index + " differs: " + xmlModel + " in XML, " + snapshotModel
+                        + " in snapshot";
+            }
+            index++;
+        }
+        if (xmlClasses.hasNext() || snapshotClasses.hasNext()) {
+            return "Different number of classes, " + index + " are the same";
+        }
+        return null;
+    }
+
+    private static void write(Stream<JDiffClassDescription> classes, OutputStream output)
+            throws IOException {
+        ApiSnapshotWriter writer = new ApiSnapshotWriter();
+        Iterator<JDiffClassDescription> iterator = classes.iterator();
+        while (iterator.hasNext()) {
+            writer.addClass(iterator.next());
+        }
+        writer.writeTo(output);
+    }
+
+    /** Lists the attributes of a class and of its members, in the order they were added. */
+    private static List<Object> getModel(JDiffClassDescription classDescription) {
+        List<Object> fields = new ArrayList<>();
+        for (JDiffClassDescription.JDiffField field : classDescription.getFields()) {
+            fields.add(Arrays.asList(field.mName, field.mFieldType, field.mModifier,
+                    field.getValueString()));
+        }
+        List<Object> constructors = new ArrayList<>();
+        for (JDiffClassDescription.JDiffConstructor constructor
+                : classDescription.getConstructors()) {
+            constructors.add(getModel(constructor));
+        }
+        List<Object> methods = new ArrayList<>();
+        for (JDiffClassDescription.JDiffMethod method : classDescription.getMethods()) {
+            methods.add(getModel(method));
+        }
+        return Arrays.asList(classDescription.getPackageName(),
+                classDescription.getShortClassName(), classDescription.getModifier(),
+                classDescription.getClassType(), classDescription.getExtendedClass(),
+                classDescription.getImplInterfaces(), fields, constructors, methods);
+    }
+
+    private static List<Object> getModel(JDiffClassDescription.JDiffMethod method) {
+        return Arrays.asList(method.mName, method.mModifier, method.mReturnType,
+                method.mParamList, method.mExceptionList);
+    }
+
+    public static void main(String[] args) throws Exception {
+        boolean verify = args.length == 3 && "-verify".equals(args[0]);
+        if (args.length != (verify ? 3 : 2)) {
+            System.err.println("Usage: ApiSnapshotConverter [-verify] API_XML SNAPSHOT");
+            System.exit(1);
+        }
+        // The build runs this for every API file, so skip the debug output of the parser.
+        LogHelper.setDebug(false);
+        String xmlFile = args[args.length - 2];
+        String snapshotFile = args[args.length - 1];
+        if (verify) {
+            String difference;
+            try (InputStream xmlInput = new FileInputStream(xmlFile);
+                    FileChannel snapshotChannel = new FileInputStream(snapshotFile).getChannel()) {
+                difference = verify(xmlInput, snapshotChannel.map(
+                        FileChannel.MapMode.READ_ONLY, 0, snapshotChannel.size()));
+            }
+            if (difference != null) {
+                System.err.println(snapshotFile + " does not match " + xmlFile + ": "
+                        + difference);
+                System.exit(1);
+            }
+        } else {
+            try (InputStream xmlInput = new FileInputStream(xmlFile);
+                    OutputStream snapshotOutput = new FileOutputStream(snapshotFile)) {
+                convert(xmlInput, snapshotOutput);
+            }
+        }
+    }
+}
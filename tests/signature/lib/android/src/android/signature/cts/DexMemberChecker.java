@@ -73,19 +73,41 @@ public class DexMemberChecker {
       }
     }
 
-    public static void checkSingleMember(DexMember dexMember, DexMemberChecker.Observer observer) {
-        checkSingleMember(dexMember, /* reflection= */ true, /* jni= */ true, observer);
+    /**
+     * Creates a cache of the classes and members checked by a test. The members are reflected by
+     * this class, which is the one exempt from the hidden API checks.
+     */
+    public static ClassMembersCache createClassMembersCache() {
+        return new ClassMembersCache(new ClassMembersCache.Reflector() {
+            @Override
+            public Method[] getDeclaredMethods(Class<?> klass) {
+                return getDeclaredMethods_Reflection(klass);
+            }
+
+            @Override
+            public Constructor<?>[] getDeclaredConstructors(Class<?> klass) {
+                return getDeclaredConstructors_Reflection(klass);
+            }
+        });
     }
 
-    public static void checkSingleMember(DexMember dexMember, boolean reflection, boolean jni,
+    public static void checkSingleMember(DexMember dexMember,
+            ClassMembersCache classMembersCache, DexMemberChecker.Observer observer) {
+        checkSingleMember(dexMember, classMembersCache, /* reflection= */ true, /* jni= */ true,
+                observer);
+    }
+
+    public static void checkSingleMember(DexMember dexMember,
+            ClassMembersCache classMembersCache, boolean reflection, boolean jni,
             DexMemberChecker.Observer observer) {
-        Class<?> klass = findClass(dexMember);
-        if (klass == null) {
+        ClassMembersCache.ClassMembers classMembers = findClass(classMembersCache, dexMember);
+        if (classMembers == null) {
             // Class not found. Therefore its members are not visible.
             observer.classAccessible(false, dexMember);
             return;
         }
         observer.classAccessible(true, dexMember);
+        Class<?> klass = classMembers.getType();
 
         if (dexMember instanceof DexField) {
             DexField field = (DexField) dexMember;
@@ -112,8 +134,8 @@ public class DexMemberChecker {
         } else if (dexMember instanceof DexMethod) {
             DexMethod method = (DexMethod) dexMember;
             if (reflection) {
-                observer.methodAccessibleViaReflection(hasMatchingMethod_Reflection(klass, method),
-                        method);
+                observer.methodAccessibleViaReflection(
+                        hasMatchingMethod_Reflection(classMembers, method), method);
             }
             if (jni) {
                 try {
@@ -135,27 +157,21 @@ public class DexMemberChecker {
         }
     }
 
-    private static boolean typesMatch(Class<?>[] classes, List<String> typeNames) {
-        if (classes.length != typeNames.size()) {
-            return false;
-        }
-        for (int i = 0; i < classes.length; ++i) {
-            if (!classes[i].getTypeName().equals(typeNames.get(i))) {
-                return false;
-            }
-        }
-        return true;
+    private static ClassMembersCache.ClassMembers findClass(ClassMembersCache classMembersCache,
+            DexMember dexMember) {
+        // Try to find the class. Do not initialize it - we do not want to run
+        // static initializers. The class is resolved once for all of its members.
+        return classMembersCache.forName(dexMember.getJavaClassName(),
+                DexMemberChecker.class.getClassLoader());
     }
 
-    private static Class<?> findClass(DexMember dexMember) {
-        try {
-            // Try to find the class. Do not initialize it - we do not want to run
-            // static initializers.
-            return Class.forName(dexMember.getJavaClassName(), /* initialize */ false,
-                DexMemberChecker.class.getClassLoader());
-        } catch (ClassNotFoundException ex) {
-            return null;
-        }
+    // Called from this class for the hidden API exemption of requestExemptionFromHiddenApiChecks.
+    private static Method[] getDeclaredMethods_Reflection(Class<?> klass) {
+        return klass.getDeclaredMethods();
+    }
+
+    private static Constructor<?>[] getDeclaredConstructors_Reflection(Class<?> klass) {
+        return klass.getDeclaredConstructors();
     }
 
     private static boolean hasMatchingField_Reflection(Class<?> klass, DexField dexField) {
@@ -189,26 +205,17 @@ public class DexMemberChecker {
         return false;
     }
 
-    private static boolean hasMatchingMethod_Reflection(Class<?> klass, DexMethod dexMethod) {
+    private static boolean hasMatchingMethod_Reflection(
+            ClassMembersCache.ClassMembers classMembers, DexMethod dexMethod) {
         List<String> methodParams = dexMethod.getJavaParameterTypes();
 
         if (dexMethod.isConstructor()) {
-            for (Constructor<?> constructor : klass.getDeclaredConstructors()) {
-                if (typesMatch(constructor.getParameterTypes(), methodParams)) {
-                    return true;
-                }
-            }
+            return classMembers.getDeclaredConstructor(
+                    ClassMembersCache.getConstructorKey(methodParams)) != null;
         } else {
-            String methodReturnType = dexMethod.getJavaType();
-            for (Method method : klass.getDeclaredMethods()) {
-                if (method.getName().equals(dexMethod.getName())
-                        && method.getReturnType().getTypeName().equals(methodReturnType)
-                        && typesMatch(method.getParameterTypes(), methodParams)) {
-                    return true;
-                }
-            }
+            return classMembers.getDeclaredMethod(ClassMembersCache.getMethodKey(
+                    dexMethod.getName(), methodParams, dexMethod.getJavaType())) != null;
         }
-        return false;
     }
 
     private static boolean hasMatchingMethod_JNI(Class<?> klass, DexMethod dexMethod) {
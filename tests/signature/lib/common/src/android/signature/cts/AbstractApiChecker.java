@@ -31,6 +31,9 @@ public abstract class AbstractApiChecker {
 
     final ClassProvider classProvider;
 
+    // The reflected members of the classes checked by this checker.
+    final ClassMembersCache classMembersCache = new ClassMembersCache();
+
     AbstractApiChecker(ClassProvider classProvider, ResultObserver resultObserver) {
         this.classProvider = classProvider;
         this.resultObserver = resultObserver;
@@ -39,6 +42,9 @@ public abstract class AbstractApiChecker {
     /**
      * Checks test class's name, modifier, fields, constructors, and
      * methods.
+     *
+     * <p>May be called from multiple threads at once for classes which are not
+     * {@link #isCheckOrderDependent(JDiffClassDescription) order dependent}.
      */
     public void checkSignatureCompliance(JDiffClassDescription classDescription) {
         Class<?> runtimeClass = checkClassCompliance(classDescription);
@@ -87,6 +93,18 @@ public abstract class AbstractApiChecker {
         }
     }
 
+    /**
+     * Checks whether checking the class has side effects which depend on the order in which the
+     * classes are checked. Such classes must be checked one after another, in API file order.
+     *
+     * @param classDescription the class description to check
+     * @return true if the class must not be checked concurrently with other order dependent
+     *     classes.
+     */
+    public boolean isCheckOrderDependent(JDiffClassDescription classDescription) {
+        return false;
+    }
+
     /**
      * Perform any additional checks that can only be done after all api files have been processed.
      */
@@ -189,7 +207,8 @@ public abstract class AbstractApiChecker {
             Class<?> runtimeClass) {
         for (JDiffClassDescription.JDiffConstructor con : classDescription.getConstructors()) {
             try {
-                Constructor<?> c = ReflectionHelper.findMatchingConstructor(runtimeClass, con);
+                Constructor<?> c = ReflectionHelper.findMatchingConstructor(
+                        classMembersCache, runtimeClass, con);
                 if (c == null) {
                     resultObserver.notifyFailure(FailureType.MISSING_CONSTRUCTOR,
                             con.toReadableString(classDescription.getAbsoluteClassName()),
@@ -223,7 +242,8 @@ public abstract class AbstractApiChecker {
         for (JDiffClassDescription.JDiffMethod method : classDescription.getMethods()) {
             try {
 
-                Method m = ReflectionHelper.findMatchingMethod(runtimeClass, method);
+                Method m = ReflectionHelper.findMatchingMethod(
+                        classMembersCache, runtimeClass, method);
                 if (m == null) {
                     resultObserver.notifyFailure(FailureType.MISSING_METHOD,
                             method.toReadableString(classDescription.getAbsoluteClassName()),
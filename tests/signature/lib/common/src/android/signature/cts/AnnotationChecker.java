@@ -48,12 +48,13 @@ public class AnnotationChecker extends AbstractApiChecker {
             if (clazz.isAnnotationPresent(annotationClass)) {
                 annotatedClassesMap.put(clazz.getName(), clazz);
             }
-            Set<Constructor<?>> constructors = ReflectionHelper.getAnnotatedConstructors(clazz,
-                    annotationClass);
+            Set<Constructor<?>> constructors = ReflectionHelper.getAnnotatedConstructors(
+                    classMembersCache, clazz, annotationClass);
             if (!constructors.isEmpty()) {
                 annotatedConstructorsMap.put(clazz.getName(), constructors);
             }
-            Set<Method> methods = ReflectionHelper.getAnnotatedMethods(clazz, annotationClass);
+            Set<Method> methods = ReflectionHelper.getAnnotatedMethods(
+                    classMembersCache, clazz, annotationClass);
             if (!methods.isEmpty()) {
                 annotatedMethodsMap.put(clazz.getName(), methods);
             }
@@ -68,6 +68,13 @@ public class ApiComplianceChecker extends AbstractApiChecker {
         interfaceChecker = new InterfaceChecker(resultObserver, classProvider);
     }
 
+    @Override
+    public boolean isCheckOrderDependent(JDiffClassDescription classDescription) {
+        // Interfaces are queued for the deferred check, which merges the methods of an interface
+        // found in multiple API files into the first description of it.
+        return JDiffClassDescription.JDiffType.INTERFACE.equals(classDescription.getClassType());
+    }
+
     @Override
     public void checkDeferred() {
         interfaceChecker.checkQueued();
@@ -0,0 +1,202 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.signature.cts;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Reads a binary snapshot of an API, as written by {@link ApiSnapshotWriter}.
+ *
+ * <p>A snapshot holds the same {@link JDiffClassDescription}s as the XML API file it was
+ * converted from. All strings are stored once in a table and referenced by index, and an index of
+ * class offsets allows each class to be decoded on demand straight from a memory mapped buffer.
+ *
+ * <p>Layout, all integers are big endian:
+ * <pre>
+ *   int magic, int version, int stringCount, int classCount
+ *   int[stringCount] absolute offsets of the strings
+ *   int[classCount] absolute offsets of the classes
+ *   strings: int length, UTF-8 bytes
+ *   classes: see {@link ApiSnapshotWriter}
+ * </pre>
+ */
+public class ApiSnapshot {
+
+    /** Suffix of a snapshot file next to the XML API file it was converted from. */
+    public static final String FILE_SUFFIX = ".snapshot";
+
+    static final int MAGIC = 0x41504953; // "APIS"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 16;
+
+    /** Index of a null string. */
+    static final int NULL_INDEX = -1;
+
+    static final byte TYPE_CLASS = 0;
+    static final byte TYPE_INTERFACE = 1;
+
+    private final ByteBuffer mBuffer;
+    private final int mStringCount;
+    private final int mClassCount;
+    private final int mClassOffsetsStart;
+
+    // Strings decoded so far, races only decode the same string twice.
+    private final String[] mStrings;
+
+    /**
+     * Opens a snapshot. Only the header is read, classes are decoded as they are requested.
+     *
+     * @param buffer the snapshot, typically memory mapped. Must not be modified while in use.
+     */
+    public ApiSnapshot(ByteBuffer buffer) {
+        mBuffer = buffer;
+        if (!isSnapshot(buffer)) {
+            throw new IllegalArgumentException("Not an API snapshot");
+        }
+        int version = buffer.getInt(4);
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported API snapshot version " + version);
+        }
+        mStringCount = buffer.getInt(8);
+        mClassCount = buffer.getInt(12);
+        mClassOffsetsStart = HEADER_SIZE + 4 * mStringCount;
+        mStrings = new String[mStringCount];
+    }
+
+    /**
+     * Checks whether the buffer starts like a snapshot.
+     */
+    public static boolean isSnapshot(ByteBuffer buffer) {
+        return buffer.limit() >= HEADER_SIZE && buffer.getInt(0) == MAGIC;
+    }
+
+    public int getClassCount() {
+        return mClassCount;
+    }
+
+    /**
+     * Decodes all classes, in the order of the API file the snapshot was converted from.
+     */
+    public Stream<JDiffClassDescription> stream() {
+        return IntStream.range(0, mClassCount).mapToObj(this::getClassDescription);
+    }
+
+    /**
+     * Decodes a single class.
+     *
+     * @param index of the class, between 0 and {@link #getClassCount()}.
+     * @return a new description of the class.
+     */
+    public JDiffClassDescription getClassDescription(int index) {
+        if (index < 0 || index >= mClassCount) {
+            throw new IndexOutOfBoundsException("Class " + index + " of " + mClassCount);
+        }
+        Reader reader = new Reader(mBuffer.getInt(mClassOffsetsStart + 4 * index));
+
+        String packageName = reader.readString();
+        String className = reader.readString();
+        JDiffClassDescription classDescription = new JDiffClassDescription(packageName, className);
+        classDescription.setModifier(reader.readInt());
+        classDescription.setType(reader.readByte() == TYPE_INTERFACE
+                ? JDiffClassDescription.JDiffType.INTERFACE
+                : JDiffClassDescription.JDiffType.CLASS);
+        classDescription.setExtendsClass(reader.readString());
+
+        for (int count = reader.readInt(); count > 0; count--) {
+            classDescription.addImplInterface(reader.readString());
+        }
+        for (int count = reader.readInt(); count > 0; count--) {
+            String name = reader.readString();
+            String type = reader.readString();
+            int modifier = reader.readInt();
+            String value = reader.readString();
+            classDescription.addField(
+                    new JDiffClassDescription.JDiffField(name, type, modifier, value));
+        }
+        for (int count = reader.readInt(); count > 0; count--) {
+            String name = reader.readString();
+            int modifier = reader.readInt();
+            JDiffClassDescription.JDiffConstructor constructor =
+                    new JDiffClassDescription.JDiffConstructor(name, modifier);
+            readParamsAndExceptions(reader, constructor);
+            classDescription.addConstructor(constructor);
+        }
+        for (int count = reader.readInt(); count > 0; count--) {
+            String name = reader.readString();
+            int modifier = reader.readInt();
+            String returnType = reader.readString();
+            JDiffClassDescription.JDiffMethod method =
+                    new JDiffClassDescription.JDiffMethod(name, modifier, returnType);
+            readParamsAndExceptions(reader, method);
+            classDescription.addMethod(method);
+        }
+        return classDescription;
+    }
+
+    private static void readParamsAndExceptions(Reader reader,
+            JDiffClassDescription.JDiffMethod method) {
+        for (int count = reader.readInt(); count > 0; count--) {
+            method.addParam(reader.readString());
+        }
+        for (int count = reader.readInt(); count > 0; count--) {
+            method.addException(reader.readString());
+        }
+    }
+
+    private String getString(int index) {
+        if (index == NULL_INDEX) {
+            return null;
+        }
+        String string = mStrings[index];
+        if (string == null) {
+            int offset = mBuffer.getInt(HEADER_SIZE + 4 * index);
+            int length = mBuffer.getInt(offset);
+            ByteBuffer bytes = mBuffer.duplicate();
+            bytes.position(offset + 4).limit(offset + 4 + length);
+            string = StandardCharsets.UTF_8.decode(bytes).toString();
+            mStrings[index] = string;
+        }
+        return string;
+    }
+
+    /**
+     * Reads one class with absolute gets, so classes can be decoded from multiple threads.
+     */
+    private class Reader {
+        private int mOffset;
+
+        Reader(int offset) {
+            mOffset = offset;
+        }
+
+        int readInt() {
+            int value = mBuffer.getInt(mOffset);
+            mOffset += 4;
+            return value;
+        }
+
+        byte readByte() {
+            return mBuffer.get(mOffset++);
+        }
+
+        String readString() {
+            return getString(readInt());
+        }
+    }
+}
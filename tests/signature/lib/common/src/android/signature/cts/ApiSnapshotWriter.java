@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.signature.cts;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes {@link JDiffClassDescription}s as a binary snapshot which is read by
+ * {@link ApiSnapshot}.
+ *
+ * <p>Each class is written as:
+ * <pre>
+ *   string package, string name, int modifier, byte type, string extends
+ *   int count, string[count] interfaces
+ *   int count, fields: string name, string type, int modifier, string value
+ *   int count, constructors: string name, int modifier, parameters and exceptions
+ *   int count, methods: string name, int modifier, string return type, parameters and exceptions
+ * </pre>
+ * where a string is an int index into the string table, -1 for null, and the parameters and
+ * exceptions are each an int count followed by that many strings.
+ */
+public class ApiSnapshotWriter {
+
+    private final Map<String, Integer> mStringIndexes = new HashMap<>();
+    private final List<byte[]> mStrings = new ArrayList<>();
+    private final List<Integer> mClassOffsets = new ArrayList<>();
+    private final ByteArrayOutputStream mClassBytes = new ByteArrayOutputStream();
+    private final DataOutputStream mClassData = new DataOutputStream(mClassBytes);
+
+    /**
+     * Adds a class to the snapshot. Classes are read back in the order they were added.
+     */
+    public void addClass(JDiffClassDescription classDescription) throws IOException {
+        mClassOffsets.add(mClassData.size());
+
+        writeString(classDescription.getPackageName());
+        writeString(classDescription.getShortClassName());
+        mClassData.writeInt(classDescription.getModifier());
+        mClassData.writeByte(
+                JDiffClassDescription.JDiffType.INTERFACE.equals(classDescription.getClassType())
+                        ? ApiSnapshot.TYPE_INTERFACE
+                        : ApiSnapshot.TYPE_CLASS);
+        writeString(classDescription.getExtendedClass());
+
+        writeStrings(classDescription.getImplInterfaces());
+
+        mClassData.writeInt(classDescription.getFields().size());
+        for (JDiffClassDescription.JDiffField field : classDescription.getFields()) {
+            writeString(field.mName);
+            writeString(field.mFieldType);
+            mClassData.writeInt(field.mModifier);
+            writeString(field.getValueString());
+        }
+
+        mClassData.writeInt(classDescription.getConstructors().size());
+        for (JDiffClassDescription.JDiffConstructor constructor :
+                classDescription.getConstructors()) {
+            writeString(constructor.mName);
+            mClassData.writeInt(constructor.mModifier);
+            writeStrings(constructor.mParamList);
+            writeStrings(constructor.mExceptionList);
+        }
+
+        mClassData.writeInt(classDescription.getMethods().size());
+        for (JDiffClassDescription.JDiffMethod method : classDescription.getMethods()) {
+            writeString(method.mName);
+            mClassData.writeInt(method.mModifier);
+            writeString(method.mReturnType);
+            writeStrings(method.mParamList);
+            writeStrings(method.mExceptionList);
+        }
+    }
+
+    /**
+     * Writes the snapshot of all classes added so far.
+     */
+    public void writeTo(OutputStream outputStream) throws IOException {
+        int stringCount = mStrings.size();
+        int classCount = mClassOffsets.size();
+        int stringDataStart = ApiSnapshot.HEADER_SIZE + 4 * stringCount + 4 * classCount;
+        int stringDataSize = 0;
+        for (byte[] string : mStrings) {
+            stringDataSize += 4 + string.length;
+        }
+        int classDataStart = stringDataStart + stringDataSize;
+
+        DataOutputStream output = new DataOutputStream(outputStream);
+        output.writeInt(ApiSnapshot.MAGIC);
+        output.writeInt(ApiSnapshot.VERSION);
+        output.writeInt(stringCount);
+        output.writeInt(classCount);
+        int stringOffset = stringDataStart;
+        for (byte[] string : mStrings) {
+            output.writeInt(stringOffset);
+            stringOffset += 4 + string.length;
+        }
+        for (int classOffset : mClassOffsets) {
+            output.writeInt(classDataStart + classOffset);
+        }
+        for (byte[] string : mStrings) {
+            output.writeInt(string.length);
+            output.write(string);
+        }
+        mClassBytes.writeTo(output);
+        output.flush();
+    }
+
+    private void writeStrings(List<String> strings) throws IOException {
+        mClassData.writeInt(strings.size());
+        for (String string : strings) {
+            writeString(string);
+        }
+    }
+
+    private void writeString(String string) throws IOException {
+        if (string == null) {
+            mClassData.writeInt(ApiSnapshot.NULL_INDEX);
+            return;
+        }
+        Integer index = mStringIndexes.get(string);
+        if (index == null) {
+            index = mStrings.size();
+            mStringIndexes.put(string, index);
+            mStrings.add(string.getBytes(StandardCharsets.UTF_8));
+        }
+        mClassData.writeInt(index);
+    }
+}
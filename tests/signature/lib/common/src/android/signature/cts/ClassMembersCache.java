@@ -0,0 +1,252 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.signature.cts;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A bounded cache of resolved classes and their reflected members.
+ *
+ * <p>Members of the same class are usually checked one after another, so keeping the most
+ * recently used classes means that each class is loaded and reflected only once per check instead
+ * of once per member. Each check creates its own cache, which is safe to be used from multiple
+ * threads.
+ */
+public class ClassMembersCache {
+
+    private static final int DEFAULT_MAX_CLASSES = 1024;
+
+    /**
+     * Reflects the declared members of a class.
+     *
+     * <p>The hidden API checks of {@link Class#getDeclaredMethods()} and
+     * {@link Class#getDeclaredConstructors()} depend on the calling class, so a checker which is
+     * exempt from them has to make these calls itself.
+     */
+    public interface Reflector {
+        Method[] getDeclaredMethods(Class<?> klass);
+
+        Constructor<?>[] getDeclaredConstructors(Class<?> klass);
+    }
+
+    private static final Reflector DEFAULT_REFLECTOR = new Reflector() {
+        @Override
+        public Method[] getDeclaredMethods(Class<?> klass) {
+            return klass.getDeclaredMethods();
+        }
+
+        @Override
+        public Constructor<?>[] getDeclaredConstructors(Class<?> klass) {
+            return klass.getDeclaredConstructors();
+        }
+    };
+
+    // Marks a class name which could not be resolved.
+    private static final ClassMembers NOT_FOUND = new ClassMembers(null, null);
+
+    private final Reflector mReflector;
+    private final Map<String, ClassMembers> mMembersByClassName;
+    private final Map<Class<?>, ClassMembers> mMembersByClass;
+
+    public ClassMembersCache() {
+        this(DEFAULT_REFLECTOR);
+    }
+
+    /**
+     * @param reflector reflects the declared members of the cached classes.
+     */
+    public ClassMembersCache(Reflector reflector) {
+        this(DEFAULT_MAX_CLASSES, reflector);
+    }
+
+    ClassMembersCache(int maxClasses, Reflector reflector) {
+        mReflector = reflector;
+        mMembersByClassName = createLruMap(maxClasses);
+        mMembersByClass = createLruMap(maxClasses);
+    }
+
+    private static <K> Map<K, ClassMembers> createLruMap(int maxSize) {
+        return Collections.synchronizedMap(
+                new LinkedHashMap<K, ClassMembers>(16, 0.75f, /* accessOrder= */ true) {
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<K, ClassMembers> eldest) {
+                        return size() > maxSize;
+                    }
+                });
+    }
+
+    /**
+     * Finds a class by name, without initializing it.
+     *
+     * @param className the binary name of the class.
+     * @param classLoader the loader to load the class with.
+     * @return the members of the class, or null if the class was not found.
+     */
+    public ClassMembers forName(String className, ClassLoader classLoader) {
+        ClassMembers members = mMembersByClassName.get(className);
+        if (members == null) {
+            try {
+                members = forClass(Class.forName(className, /* initialize */ false, classLoader));
+            } catch (ClassNotFoundException e) {
+                members = NOT_FOUND;
+            }
+            mMembersByClassName.put(className, members);
+        }
+        return members == NOT_FOUND ? null : members;
+    }
+
+    /**
+     * Gets the members of a class which has already been resolved.
+     */
+    public ClassMembers forClass(Class<?> klass) {
+        ClassMembers members = mMembersByClass.get(klass);
+        if (members == null) {
+            // Racing threads may reflect the same class, the members are the same either way.
+            members = new ClassMembers(klass, mReflector);
+            mMembersByClass.put(klass, members);
+        }
+        return members;
+    }
+
+    /**
+     * Gets the key of a method in {@link ClassMembers#getDeclaredMethod(String)}.
+     *
+     * @param name the name of the method.
+     * @param parameterTypeNames the {@link Class#getTypeName()} of each parameter.
+     * @param returnTypeName the {@link Class#getTypeName()} of the return type.
+     */
+    public static String getMethodKey(String name, List<String> parameterTypeNames,
+            String returnTypeName) {
+        return name + getConstructorKey(parameterTypeNames) + returnTypeName;
+    }
+
+    /**
+     * Gets the key of a constructor in {@link ClassMembers#getDeclaredConstructor(String)}.
+     *
+     * @param parameterTypeNames the {@link Class#getTypeName()} of each parameter.
+     */
+    public static String getConstructorKey(List<String> parameterTypeNames) {
+        return "(" + String.join(",", parameterTypeNames) + ")";
+    }
+
+    private static List<String> getTypeNames(Class<?>[] types) {
+        List<String> typeNames = new ArrayList<>(types.length);
+        for (Class<?> type : types) {
+            typeNames.add(type.getTypeName());
+        }
+        return typeNames;
+    }
+
+    /**
+     * The declared members of a class, reflected on first use.
+     *
+     * <p>The returned arrays are shared and must not be modified.
+     */
+    public static class ClassMembers {
+        private final Class<?> mClass;
+        private final Reflector mReflector;
+
+        private Method[] mDeclaredMethods;
+        private Constructor<?>[] mDeclaredConstructors;
+        private Map<String, List<Method>> mMethodsByName;
+        private Map<String, Method> mMethodsByKey;
+        private Map<String, Constructor<?>> mConstructorsByKey;
+
+        ClassMembers(Class<?> klass, Reflector reflector) {
+            mClass = klass;
+            mReflector = reflector;
+        }
+
+        public Class<?> getType() {
+            return mClass;
+        }
+
+        public synchronized Method[] getDeclaredMethods() {
+            if (mDeclaredMethods == null) {
+                mDeclaredMethods = mReflector.getDeclaredMethods(mClass);
+            }
+            return mDeclaredMethods;
+        }
+
+        public synchronized Constructor<?>[] getDeclaredConstructors() {
+            if (mDeclaredConstructors == null) {
+                mDeclaredConstructors = mReflector.getDeclaredConstructors(mClass);
+            }
+            return mDeclaredConstructors;
+        }
+
+        /**
+         * Gets the declared methods with the given name, in the order of
+         * {@link Class#getDeclaredMethods()}.
+         */
+        public synchronized List<Method> getDeclaredMethods(String name) {
+            if (mMethodsByName == null) {
+                mMethodsByName = new HashMap<>();
+                for (Method method : getDeclaredMethods()) {
+                    mMethodsByName.computeIfAbsent(method.getName(), k -> new ArrayList<>())
+                            .add(method);
+                }
+            }
+            List<Method> methods = mMethodsByName.get(name);
+            return methods == null ? Collections.emptyList() : methods;
+        }
+
+        /**
+         * Gets a declared method by its erased signature.
+         *
+         * @param key the key from {@link ClassMembersCache#getMethodKey(String, List, String)}.
+         * @return the method, or null if the class declares no such method.
+         */
+        public synchronized Method getDeclaredMethod(String key) {
+            if (mMethodsByKey == null) {
+                mMethodsByKey = new HashMap<>();
+                for (Method method : getDeclaredMethods()) {
+                    mMethodsByKey.putIfAbsent(
+                            getMethodKey(method.getName(),
+                                    getTypeNames(method.getParameterTypes()),
+                                    method.getReturnType().getTypeName()),
+                            method);
+                }
+            }
+            return mMethodsByKey.get(key);
+        }
+
+        /**
+         * Gets a declared constructor by its erased signature.
+         *
+         * @param key the key from {@link ClassMembersCache#getConstructorKey(List)}.
+         * @return the constructor, or null if the class declares no such constructor.
+         */
+        public synchronized Constructor<?> getDeclaredConstructor(String key) {
+            if (mConstructorsByKey == null) {
+                mConstructorsByKey = new HashMap<>();
+                for (Constructor<?> constructor : getDeclaredConstructors()) {
+                    mConstructorsByKey.putIfAbsent(
+                            getConstructorKey(getTypeNames(constructor.getParameterTypes())),
+                            constructor);
+                }
+            }
+            return mConstructorsByKey.get(key);
+        }
+    }
+}
@@ -19,7 +19,23 @@ package android.signature.cts;
  */
 public class LogHelper {
 
+    /**
+     * Enables the verbose debug logging, such as every event of the parsed API files. It is on,
+     * as it was with android.util.Log, but the host tools turn it off to keep the build quiet.
+     */
+    private static volatile boolean sDebug = true;
+
+    static void setDebug(boolean debug) {
+        sDebug = debug;
+    }
+
     static void loge(String message, Exception exception) {
         System.out.println(String.format("%s: %s", message, exception));
     }
+
+    static void logd(String tag, String message) {
+        if (sDebug) {
+            System.out.println(String.format("%s: %s", tag, message));
+        }
+    }
 }
@@ -121,13 +121,15 @@ public class ReflectionHelper {
     /**
      * Searches available constructor.
      *
+     * @param classMembersCache the cache of the reflected members of classes.
      * @param runtimeClass the class in which to search.
      * @param jdiffDes constructor description to find.
      * @return reflected constructor, or null if not found.
      */
-    static Constructor<?> findMatchingConstructor(Class<?> runtimeClass,
-            JDiffClassDescription.JDiffConstructor jdiffDes) {
-        for (Constructor<?> c : runtimeClass.getDeclaredConstructors()) {
+    static Constructor<?> findMatchingConstructor(ClassMembersCache classMembersCache,
+            Class<?> runtimeClass, JDiffClassDescription.JDiffConstructor jdiffDes) {
+        for (Constructor<?> c :
+                classMembersCache.forClass(runtimeClass).getDeclaredConstructors()) {
             Type[] params = c.getGenericParameterTypes();
             boolean isStaticClass = ((runtimeClass.getModifiers() & Modifier.STATIC) != 0);
 
@@ -202,21 +204,23 @@ public class ReflectionHelper {
     /**
      * Finds the reflected method specified by the method description.
      *
+     * @param classMembersCache the cache of the reflected members of classes.
      * @param runtimeClass the class in which to search.
      * @param method description of the method to find
      * @return the reflected method, or null if not found.
      */
-    static Method findMatchingMethod(Class<?> runtimeClass,
+    static Method findMatchingMethod(ClassMembersCache classMembersCache, Class<?> runtimeClass,
             JDiffClassDescription.JDiffMethod method) {
 
         // Search through the class to find the methods just in case the method was actually
         // declared in a superclass which is not part of the API and so was made to appear as if
         // it was declared in each of the hidden class' subclasses. Cannot use getMethods() as that
         // will only return public methods and the API includes protected methods.
+        // The declared methods of each class are reflected once and looked up by name, as the
+        // same super classes are searched again for every method of their subclasses.
         while (runtimeClass != null) {
-            Method[] methods = runtimeClass.getDeclaredMethods();
-
-            for (Method m : methods) {
+            for (Method m :
+                    classMembersCache.forClass(runtimeClass).getDeclaredMethods(method.mName)) {
                 if (matches(method, m)) {
                     return m;
                 }
@@ -400,11 +404,12 @@ public class ReflectionHelper {
     /**
      * Returns a list of constructors which are annotated with the given annotation class.
      */
-    public static Set<Constructor<?>> getAnnotatedConstructors(Class<?> clazz,
+    public static Set<Constructor<?>> getAnnotatedConstructors(
+            ClassMembersCache classMembersCache, Class<?> clazz,
             Class<? extends Annotation> annotation) {
         Set<Constructor<?>> result = new HashSet<>();
         if (annotation != null) {
-            for (Constructor<?> c : clazz.getDeclaredConstructors()) {
+            for (Constructor<?> c : classMembersCache.forClass(clazz).getDeclaredConstructors()) {
                 if (c.isAnnotationPresent(annotation)) {
                     // TODO(b/71630695): currently, some API members are not annotated, because
                     // a member is automatically added to the API set if it is in a class with
@@ -423,11 +428,11 @@ public class ReflectionHelper {
     /**
      * Returns a list of methods which are annotated with the given annotation class.
      */
-    public static Set<Method> getAnnotatedMethods(Class<?> clazz,
-            Class<? extends Annotation> annotation) {
+    public static Set<Method> getAnnotatedMethods(ClassMembersCache classMembersCache,
+            Class<?> clazz, Class<? extends Annotation> annotation) {
         Set<Method> result = new HashSet<>();
         if (annotation != null) {
-            for (Method m : clazz.getDeclaredMethods()) {
+            for (Method m : classMembersCache.forClass(clazz).getDeclaredMethods()) {
                 if (m.isAnnotationPresent(annotation)) {
                     // TODO(b/71630695): see getAnnotatedConstructors for details
                     result.add(m);
@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.signature.cts.tests;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.signature.cts.ApiSnapshot;
+import android.signature.cts.ApiSnapshotWriter;
+import android.signature.cts.JDiffClassDescription;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+import org.junit.runners.JUnit4;
+import org.junit.runner.RunWith;
+
+/**
+ * Test class for {@link android.signature.cts.ApiSnapshot}.
+ */
+@RunWith(JUnit4.class)
+public class ApiSnapshotTest {
+
+    private static final String PACKAGE = "android.signature.cts.tests.data";
+
+    private static List<JDiffClassDescription> createClasses() {
+        JDiffClassDescription clz = new JDiffClassDescription(PACKAGE, "NormalClass");
+        clz.setType(JDiffClassDescription.JDiffType.CLASS);
+        clz.setModifier(Modifier.PUBLIC);
+        clz.addImplInterface(PACKAGE + ".NormalInterface");
+        clz.addField(new JDiffClassDescription.JDiffField("VALUE_FIELD", "java.lang.String",
+                Modifier.PUBLIC | Modifier.STATIC, "\"\u00e9\""));
+        clz.addField(new JDiffClassDescription.JDiffField(
+                "finalField", "int", Modifier.PUBLIC | Modifier.FINAL, null));
+        JDiffClassDescription.JDiffConstructor constructor =
+                new JDiffClassDescription.JDiffConstructor("NormalClass", Modifier.PUBLIC);
+        constructor.addParam("java.lang.String");
+        constructor.addException(PACKAGE + ".NormalException");
+        clz.addConstructor(constructor);
+        JDiffClassDescription.JDiffMethod method = new JDiffClassDescription.JDiffMethod(
+                "genericMethod", Modifier.PUBLIC, "java.util.List<? extends java.lang.Object>");
+        method.addParam("java.util.Map<? super java.lang.Object, java.lang.String>");
+        method.addParam("int...");
+        clz.addMethod(method);
+        clz.addMethod(new JDiffClassDescription.JDiffMethod(
+                "voidMethod", Modifier.PUBLIC | Modifier.SYNCHRONIZED, null));
+
+        JDiffClassDescription iface = new JDiffClassDescription(PACKAGE, "NormalInterface");
+        iface.setType(JDiffClassDescription.JDiffType.INTERFACE);
+        iface.setModifier(Modifier.PUBLIC | Modifier.ABSTRACT);
+        iface.addMethod(new JDiffClassDescription.JDiffMethod(
+                "doSomething", Modifier.PUBLIC | Modifier.ABSTRACT, "void"));
+
+        JDiffClassDescription empty = new JDiffClassDescription(PACKAGE, "Outer.Empty");
+        empty.setType(JDiffClassDescription.JDiffType.CLASS);
+
+        return Arrays.asList(clz, iface, empty);
+    }
+
+    private static byte[] write(List<JDiffClassDescription> classes) throws IOException {
+        ApiSnapshotWriter writer = new ApiSnapshotWriter();
+        for (JDiffClassDescription classDescription : classes) {
+            writer.addClass(classDescription);
+        }
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        writer.writeTo(output);
+        return output.toByteArray();
+    }
+
+    private static List<String> toSignatureStrings(List<JDiffClassDescription> classes) {
+        return classes.stream().map(clz -> {
+            StringBuilder sb = new StringBuilder(clz.toSignatureString());
+            clz.getFieldList().forEach(field -> sb.append('\n').append(field.toSignatureString())
+                    .append(" = ").append(field.getValueString()));
+            return sb.toString();
+        }).collect(Collectors.toList());
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        List<JDiffClassDescription> classes = createClasses();
+        byte[] snapshot = write(classes);
+
+        List<JDiffClassDescription> decoded =
+                new ApiSnapshot(ByteBuffer.wrap(snapshot)).stream().collect(Collectors.toList());
+
+        assertEquals(toSignatureStrings(classes), toSignatureStrings(decoded));
+        // Writing the decoded classes again covers every member of every class.
+        assertArrayEquals(snapshot, write(decoded));
+    }
+
+    @Test
+    public void testDirectBufferDecodedOnDemand() throws IOException {
+        List<JDiffClassDescription> classes = createClasses();
+        byte[] bytes = write(classes);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+        buffer.put(bytes).flip();
+
+        ApiSnapshot snapshot = new ApiSnapshot(buffer);
+        assertEquals(classes.size(), snapshot.getClassCount());
+        for (int i = classes.size() - 1; i >= 0; i--) {
+            JDiffClassDescription decoded = snapshot.getClassDescription(i);
+            assertEquals(classes.get(i).getAbsoluteClassName(), decoded.getAbsoluteClassName());
+            assertEquals(classes.get(i).toSignatureString(), decoded.toSignatureString());
+        }
+    }
+
+    @Test
+    public void testIsSnapshot() throws IOException {
+        assertTrue(ApiSnapshot.isSnapshot(ByteBuffer.wrap(write(createClasses()))));
+        assertFalse(ApiSnapshot.isSnapshot(ByteBuffer.wrap(
+                "<?xml version=\"1.0\" encoding=\"utf-8\"?>\n<api>\n</api>\n"
+                        .getBytes(StandardCharsets.UTF_8))));
+    }
+}
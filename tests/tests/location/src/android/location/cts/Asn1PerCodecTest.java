@@ -0,0 +1,260 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.location.cts;
+
+import android.location.cts.asn1.base.Asn1Object;
+import android.location.cts.asn1.base.BitStream;
+import android.location.cts.asn1.base.BitStreamReader;
+import android.location.cts.asn1.base.PacketBuilder;
+import android.location.cts.asn1.supl2.rrlp_components.Almanac;
+import android.location.cts.asn1.supl2.rrlp_components.AlmanacElement;
+import android.location.cts.asn1.supl2.rrlp_components.NavModel_KeplerianSet;
+import android.location.cts.asn1.supl2.rrlp_components.SeqOfGANSSRefOrbit;
+import android.location.cts.asn1.supl2.rrlp_components.UncompressedEphemeris;
+import android.util.Log;
+
+import androidx.test.filters.LargeTest;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Tests the bit streams of the ASN.1 PER codec used by the SUPL client, and the lazy decoding
+ * of RRLP navigation models. The large tests measure the throughput of encoding and decoding
+ * the navigation models.
+ */
+public class Asn1PerCodecTest extends TestCase {
+    private static final String TAG = "Asn1PerCodecTest";
+
+    private static final int WARMUP_ITERATIONS = 2000;
+    private static final int MEASURED_ITERATIONS = 20000;
+
+    public void testBitStreamRoundTrip() {
+        Random random = new Random(0);
+        int[] sizes = new int[1000];
+        long[] values = new long[sizes.length];
+        BitStream bitStream = new BitStream();
+        int bitCount = 0;
+        for (int i = 0; i < sizes.length; i++) {
+            sizes[i] = random.nextInt(65);
+            values[i] = random.nextLong();
+            bitStream.appendBits(sizes[i], values[i]);
+            bitCount += sizes[i];
+        }
+        byte[] tail = new byte[37];
+        random.nextBytes(tail);
+        bitStream.appendBytes(tail, 0, tail.length);
+        assertEquals(bitCount + 8 * tail.length, bitStream.getBitCount());
+
+        BitStreamReader reader = new BitStreamReader(bitStream.getPaddedBytes());
+        for (int i = 0; i < sizes.length; i++) {
+            long mask = sizes[i] == 64 ? -1 : (1L << sizes[i]) - 1;
+            assertEquals("Value " + i, values[i] & mask, reader.readBits(sizes[i]));
+        }
+        byte[] readTail = new byte[tail.length];
+        reader.readBytes(readTail);
+        assertTrue(Arrays.equals(tail, readTail));
+    }
+
+    public void testBitStreamMatchesSingleBits() {
+        Random random = new Random(1);
+        BitStream bulk = new BitStream();
+        BitStream single = new BitStream();
+        for (int i = 0; i < 200; i++) {
+            int size = random.nextInt(65);
+            long value = random.nextLong();
+            bulk.appendBits(size, value);
+            for (int bit = size - 1; bit >= 0; bit--) {
+                single.appendBit(((value >>> bit) & 1) != 0);
+            }
+            if (i % 7 == 0) {
+                bulk.spoolToByteBoundary();
+                single.spoolToByteBoundary();
+            }
+        }
+        assertEquals(single.getBitCount(), bulk.getBitCount());
+        assertTrue(Arrays.equals(single.getPaddedBytes(), bulk.getPaddedBytes()));
+    }
+
+    public void testPacketBuilderAlignsFragments() {
+        BitStream unaligned = new BitStream();
+        unaligned.appendLowBits(3, (byte) 0x5);
+        BitStream aligned = new BitStream();
+        aligned.setBeginByteAligned();
+        aligned.appendByte((byte) 0xA5);
+
+        PacketBuilder builder = new PacketBuilder();
+        builder.append(unaligned);
+        builder.append(aligned);
+        builder.append(unaligned);
+        assertEquals(19, builder.getBitCount());
+        assertTrue(Arrays.equals(new byte[] {(byte) 0xA0, (byte) 0xA5, (byte) 0xA0},
+                builder.getPaddedBytes()));
+
+        builder.reset();
+        builder.append(aligned);
+        assertTrue(Arrays.equals(new byte[] {(byte) 0xA5}, builder.getPaddedBytes()));
+    }
+
+    public void testEncodeIntoBuilderMatchesFragments() {
+        for (boolean aligned : new boolean[] {false, true}) {
+            for (Asn1Object message : createMessages(aligned)) {
+                // Start unaligned, so that the padding before aligned fragments matters.
+                BitStream prefix = new BitStream();
+                prefix.appendLowBits(5, (byte) 0x1F);
+
+                PacketBuilder fromFragments = new PacketBuilder();
+                fromFragments.append(prefix);
+                fromFragments.appendAll(
+                        aligned ? message.encodePerAligned() : message.encodePerUnaligned());
+
+                PacketBuilder direct = new PacketBuilder();
+                direct.append(prefix);
+                if (aligned) {
+                    message.encodePerAligned(direct);
+                } else {
+                    message.encodePerUnaligned(direct);
+                }
+
+                assertEquals(fromFragments.getBitCount(), direct.getBitCount());
+                assertTrue(message.getClass().getSimpleName(),
+                        Arrays.equals(fromFragments.getPaddedBytes(), direct.getPaddedBytes()));
+            }
+        }
+    }
+
+    public void testLazyDecodeMatchesEager() {
+        // A repeated 0x7C decodes to an almanac with 32 elements.
+        byte[] encoding = new byte[4096];
+        Arrays.fill(encoding, (byte) 0x7C);
+        Almanac eager = new Almanac();
+        eager.decodePerUnaligned(new BitStreamReader(encoding));
+        Almanac lazy = new Almanac();
+        lazy.decodePerUnaligned(new BitStreamReader(encoding, true));
+
+        int elements = 0;
+        for (AlmanacElement element : lazy.getAlmanacList().getValues()) {
+            elements++;
+        }
+        assertEquals(32, elements);
+        assertEquals(eager.toString(), lazy.toString());
+        assertTrue(Arrays.equals(encode(new PacketBuilder(), eager),
+                encode(new PacketBuilder(), lazy)));
+    }
+
+    public void testLazyDecodeChecksExtensions() {
+        // An element has an extension addition whose open type field does not decode, which the
+        // eager decoding rejects, so the lazy decoding has to reject it while skipping.
+        byte[] encoding = parseHex(
+                "0151b9db50726d6895874f382b30280fce7382eba5488de4f92d3e23f5e56f68f597a679"
+                + "f2b16a918289f24326579b16adda27da636f8114192720df49e98bc5f788f9bf9a1dbba0"
+                + "e828dd1f54ae7c9323e8aa95e42cfd7888ac0323f7396fcc9782d793ada8a11f5eefc027"
+                + "38f8ff75d3fcc8383682708341d5c7a43fd91012afb6f2c084");
+        assertDecodeFails(encoding, false);
+        assertDecodeFails(encoding, true);
+    }
+
+    /**
+     * Only logs the throughput, which depends too much on the device to be checked.
+     */
+    @LargeTest
+    public void testEncodeThroughput() {
+        Asn1Object[] messages = createMessages(false);
+        PacketBuilder builder = new PacketBuilder();
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            encode(builder, messages[i % messages.length]);
+        }
+        int bytes = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+            bytes += encode(builder, messages[i % messages.length]).length;
+        }
+        logThroughput("Encode", System.nanoTime() - start, bytes);
+    }
+
+    @LargeTest
+    public void testDecodeThroughput() {
+        Asn1Object[] messages = createMessages(false);
+        byte[][] encodings = new byte[messages.length][];
+        for (int i = 0; i < messages.length; i++) {
+            encodings[i] = encode(new PacketBuilder(), messages[i]);
+        }
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            decode(i % messages.length, encodings);
+        }
+        int bytes = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+            bytes += decode(i % messages.length, encodings);
+        }
+        logThroughput("Decode", System.nanoTime() - start, bytes);
+    }
+
+    /**
+     * Returns navigation models decoded from a repeated byte which gives every field a valid
+     * value.
+     */
+    private static Asn1Object[] createMessages(boolean aligned) {
+        Asn1Object[] messages = {new UncompressedEphemeris(), new NavModel_KeplerianSet()};
+        byte[] encoding = new byte[128];
+        Arrays.fill(encoding, (byte) 0x01);
+        for (Asn1Object message : messages) {
+            BitStreamReader reader = new BitStreamReader(encoding);
+            if (aligned) {
+                message.decodePerAligned(reader);
+            } else {
+                message.decodePerUnaligned(reader);
+            }
+        }
+        return messages;
+    }
+
+    private static byte[] encode(PacketBuilder builder, Asn1Object message) {
+        builder.reset();
+        message.encodePerUnaligned(builder);
+        return builder.getPaddedBytes();
+    }
+
+    private static int decode(int index, byte[][] encodings) {
+        Asn1Object message = index == 0 ? new UncompressedEphemeris() : new NavModel_KeplerianSet();
+        message.decodePerUnaligned(new BitStreamReader(encodings[index]));
+        return encodings[index].length;
+    }
+
+    private static void logThroughput(String operation, long nanos, int bytes) {
+        Log.i(TAG, operation + ": " + (nanos / MEASURED_ITERATIONS) + " ns/message, "
+                + (bytes * 1000L / Math.max(1, nanos / 1000)) + " KB/s");
+    }
+
+    private static void assertDecodeFails(byte[] encoding, boolean lazy) {
+        try {
+            new SeqOfGANSSRefOrbit().decodePerAligned(new BitStreamReader(encoding, lazy));
+            fail("Decoded an invalid extension addition, lazy: " + lazy);
+        } catch (RuntimeException expected) {
+        }
+    }
+
+    private static byte[] parseHex(String hex) {
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.location.cts;
+
+import android.location.cts.pseudorange.WeightedLeastSquareSolver;
+import java.util.Random;
+import junit.framework.TestCase;
+import org.apache.commons.math.linear.Array2DRowRealMatrix;
+import org.apache.commons.math.linear.LUDecompositionImpl;
+import org.apache.commons.math.linear.MatrixUtils;
+import org.apache.commons.math.linear.QRDecompositionImpl;
+import org.apache.commons.math.linear.RealMatrix;
+
+/**
+ * Checks {@link WeightedLeastSquareSolver} against the general matrix decompositions of Apache
+ * Commons Math.
+ */
+public class WeightedLeastSquareSolverTest extends TestCase {
+    private static final int MAX_NUMBER_OF_SATELLITES = 32;
+    private static final double EARTH_RADIUS_METERS = 6.4e6;
+    private static final double GPS_ORBIT_RADIUS_METERS = 2.66e7;
+    private static final double TOLERANCE = 1e-9;
+
+    private final Random random = new Random(0);
+
+    public void testSolveNormalEquations() {
+        WeightedLeastSquareSolver solver = new WeightedLeastSquareSolver(MAX_NUMBER_OF_SATELLITES);
+        double[] solution = new double[WeightedLeastSquareSolver.NUMBER_OF_UNKNOWNS];
+        for (int satellites = 4; satellites <= MAX_NUMBER_OF_SATELLITES; satellites++) {
+            double[] userPosition = randomUserPosition();
+            double[][] satellitePositions = randomSatellitePositions(satellites);
+            double[] weights = randomVector(satellites, 0.01, 1);
+            double[] residuals = randomVector(satellites, -50, 50);
+
+            solver.setGeometryMatrix(satellitePositions, userPosition);
+            solver.decomposeNormalMatrix(weights);
+            solver.solveNormalEquations(weights, residuals, solution);
+
+            // H * G^T * W * residuals, with H = (G^T * W * G) ^ -1
+            RealMatrix geometryMatrix = getGeometryMatrix(solver);
+            RealMatrix weightMatrix = diagonalMatrix(weights);
+            RealMatrix hMatrix = getHMatrix(geometryMatrix, weightMatrix);
+            double[] expected = hMatrix.multiply(geometryMatrix.transpose()).multiply(weightMatrix)
+                    .operate(residuals);
+            assertVectorEquals(expected, solution);
+
+            // Ordinary least square
+            solver.decomposeNormalMatrix(null);
+            solver.solveNormalEquations(null, residuals, solution);
+            hMatrix = getHMatrix(geometryMatrix, MatrixUtils.createRealIdentityMatrix(satellites));
+            assertVectorEquals(
+                    hMatrix.multiply(geometryMatrix.transpose()).operate(residuals), solution);
+        }
+    }
+
+    public void testVariance() {
+        WeightedLeastSquareSolver solver = new WeightedLeastSquareSolver(MAX_NUMBER_OF_SATELLITES);
+        for (int satellites = 4; satellites <= MAX_NUMBER_OF_SATELLITES; satellites++) {
+            double[] weights = randomVector(satellites, 0.01, 1);
+            solver.setGeometryMatrix(randomSatellitePositions(satellites), randomUserPosition());
+            solver.decomposeNormalMatrix(weights);
+
+            RealMatrix hMatrix = getHMatrix(getGeometryMatrix(solver), diagonalMatrix(weights));
+            double[] v = randomVector(WeightedLeastSquareSolver.NUMBER_OF_UNKNOWNS, -1, 1);
+            double expected =
+                    new Array2DRowRealMatrix(v).transpose().multiply(hMatrix).operate(v)[0];
+            assertEquals(expected, solver.getVariance(v[0], v[1], v[2], v[3]),
+                    TOLERANCE * Math.abs(expected));
+        }
+    }
+
+    public void testSolveByQrDecomposition() {
+        WeightedLeastSquareSolver solver = new WeightedLeastSquareSolver(MAX_NUMBER_OF_SATELLITES);
+        double[] solution = new double[WeightedLeastSquareSolver.NUMBER_OF_UNKNOWNS];
+        for (int satellites = 4; satellites <= MAX_NUMBER_OF_SATELLITES; satellites++) {
+            double[] rowScales = randomVector(satellites, 1, 100);
+            double[] observations = randomVector(satellites, -500, 500);
+            solver.setGeometryMatrix(randomSatellitePositions(satellites), randomUserPosition());
+            solver.solveByQrDecomposition(rowScales, observations, solution);
+
+            RealMatrix scaleMatrix = diagonalMatrix(rowScales);
+            RealMatrix expected =
+                    new QRDecompositionImpl(scaleMatrix.multiply(getGeometryMatrix(solver)))
+                    .getSolver()
+                    .solve(scaleMatrix.multiply(new Array2DRowRealMatrix(observations)));
+            assertVectorEquals(expected.getColumn(0), solution);
+        }
+    }
+
+    public void testSingularGeometry() {
+        WeightedLeastSquareSolver solver = new WeightedLeastSquareSolver(MAX_NUMBER_OF_SATELLITES);
+        // All satellites in the same direction
+        double[][] satellitePositions = new double[5][];
+        for (int i = 0; i < satellitePositions.length; i++) {
+            satellitePositions[i] = new double[] {0, 0, GPS_ORBIT_RADIUS_METERS + i};
+        }
+        solver.setGeometryMatrix(satellitePositions, new double[] {0, 0, EARTH_RADIUS_METERS, 0});
+        try {
+            solver.decomposeNormalMatrix(null);
+            fail("Expected an ArithmeticException");
+        } catch (ArithmeticException expected) {
+        }
+    }
+
+    private double[] randomUserPosition() {
+        double latitude = (random.nextDouble() - 0.5) * Math.PI;
+        double longitude = (random.nextDouble() * 2 - 1) * Math.PI;
+        return new double[] {
+                EARTH_RADIUS_METERS * Math.cos(latitude) * Math.cos(longitude),
+                EARTH_RADIUS_METERS * Math.cos(latitude) * Math.sin(longitude),
+                EARTH_RADIUS_METERS * Math.sin(latitude),
+                random.nextDouble() * 1000};
+    }
+
+    private double[][] randomSatellitePositions(int satellites) {
+        double[][] positions = new double[satellites][];
+        for (int i = 0; i < satellites; i++) {
+            double latitude = (random.nextDouble() - 0.5) * Math.PI;
+            double longitude = (random.nextDouble() * 2 - 1) * Math.PI;
+            positions[i] = new double[] {
+                    GPS_ORBIT_RADIUS_METERS * Math.cos(latitude) * Math.cos(longitude),
+                    GPS_ORBIT_RADIUS_METERS * Math.cos(latitude) * Math.sin(longitude),
+                    GPS_ORBIT_RADIUS_METERS * Math.sin(latitude)};
+        }
+        return positions;
+    }
+
+    private double[] randomVector(int length, double min, double max) {
+        double[] vector = new double[length];
+        for (int i = 0; i < length; i++) {
+            vector[i] = min + random.nextDouble() * (max - min);
+        }
+        return vector;
+    }
+
+    private static RealMatrix getGeometryMatrix(WeightedLeastSquareSolver solver) {
+        RealMatrix geometryMatrix = new Array2DRowRealMatrix(solver.getRowCount(),
+                WeightedLeastSquareSolver.NUMBER_OF_UNKNOWNS);
+        for (int row = 0; row < solver.getRowCount(); row++) {
+            for (int column = 0; column < WeightedLeastSquareSolver.NUMBER_OF_UNKNOWNS; column++) {
+                geometryMatrix.setEntry(row, column, solver.getGeometryMatrixEntry(row, column));
+            }
+        }
+        return geometryMatrix;
+    }
+
+    private static RealMatrix diagonalMatrix(double[] diagonal) {
+        RealMatrix matrix = new Array2DRowRealMatrix(diagonal.length, diagonal.length);
+        for (int i = 0; i < diagonal.length; i++) {
+            matrix.setEntry(i, i, diagonal[i]);
+        }
+        return matrix;
+    }
+
+    private static RealMatrix getHMatrix(RealMatrix geometryMatrix, RealMatrix weightMatrix) {
+        return new LUDecompositionImpl(
+                geometryMatrix.transpose().multiply(weightMatrix).multiply(geometryMatrix))
+                .getSolver().getInverse();
+    }
+
+    private static void assertVectorEquals(double[] expected, double[] actual) {
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals("Entry " + i, expected[i], actual[i],
+                    TOLERANCE * Math.max(1, Math.abs(expected[i])));
+        }
+    }
+}
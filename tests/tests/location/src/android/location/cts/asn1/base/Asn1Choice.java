@@ -17,7 +17,6 @@
 package android.location.cts.asn1.base;
 
 import com.google.common.base.Preconditions;
-import com.google.common.collect.ImmutableList;
 
 import java.nio.ByteBuffer;
 
@@ -189,12 +188,11 @@ public abstract class Asn1Choice extends Asn1Object {
     decodeBerValue(buf);
   }
 
-  private Iterable<BitStream> encodePerImpl(boolean aligned) {
-    ImmutableList.Builder<BitStream> listBuilder = ImmutableList.builder();
+  private void encodePerImpl(PacketBuilder builder, boolean aligned) {
     if (isExtensible()) {
       BitStream extensionMarker = new BitStream();
       extensionMarker.appendBit(hasExtensionValue());
-      listBuilder.add(extensionMarker);
+      builder.append(extensionMarker);
     }
 
     int optionCount = getOptionCount();
@@ -203,20 +201,20 @@ public abstract class Asn1Choice extends Asn1Object {
                              "No value set.");
     if (hasExtensionValue()) {
       if (aligned) {
-        listBuilder.addAll(
+        builder.appendAll(
             PerAlignedUtils.encodeNormallySmallWholeNumber(selectionOrdinal));
       } else {
-        listBuilder.addAll(
+        builder.appendAll(
             PerUnalignedUtils.encodeNormallySmallWholeNumber(
               selectionOrdinal));
       }
     } else if (optionCount > 1) {
       if (aligned) {
-        listBuilder.add(
+        builder.append(
             PerAlignedUtils.encodeSmallConstrainedWholeNumber(
                 selectionOrdinal, 0, optionCount - 1));
       } else {
-        listBuilder.add(
+        builder.append(
             PerUnalignedUtils.encodeConstrainedWholeNumber(
                 selectionOrdinal, 0, optionCount - 1));
       }
@@ -226,51 +224,72 @@ public abstract class Asn1Choice extends Asn1Object {
       Asn1Object value = getValue();
       if (hasExtensionValue()) {
         if (aligned) {
-          listBuilder.addAll(PerAlignedUtils.encodeOpenTypeField(value));
+          builder.appendAll(PerAlignedUtils.encodeOpenTypeField(value));
         } else {
-          listBuilder.addAll(
+          builder.appendAll(
               PerUnalignedUtils.encodeOpenTypeField(value));
         }
       } else {
         if (aligned) {
-          listBuilder.addAll(value.encodePerAligned());
+          value.encodePerAligned(builder);
         } else {
-          listBuilder.addAll(value.encodePerUnaligned());
+          value.encodePerUnaligned(builder);
         }
       }
     }
-    return listBuilder.build();
   }
 
   @Override public Iterable<BitStream> encodePerUnaligned() {
-    return encodePerImpl(false);
+    PacketBuilder fragments = PacketBuilder.newFragmentCollector();
+    encodePerImpl(fragments, false);
+    return fragments.getFragments();
   }
 
   @Override public Iterable<BitStream> encodePerAligned() {
-    return encodePerImpl(true);
+    PacketBuilder fragments = PacketBuilder.newFragmentCollector();
+    encodePerImpl(fragments, true);
+    return fragments.getFragments();
   }
 
-  private void decodePerImpl(BitStreamReader reader, boolean aligned) {
-    boolean extensionValued = false;
-    Integer selectionOrdinal = 0;
-    if (isExtensible()) {
-      extensionValued = reader.readBit();
-    }
+  @Override public void encodePerUnaligned(PacketBuilder builder) {
+    encodePerImpl(builder, false);
+  }
+
+  @Override public void encodePerAligned(PacketBuilder builder) {
+    encodePerImpl(builder, true);
+  }
+
+  /**
+   * Decodes the ordinal of the selected option, which follows the extension
+   * bit read by the caller.
+   */
+  private int decodeSelectionOrdinal(BitStreamReader reader, boolean aligned,
+                                     boolean extensionValued) {
     if (extensionValued) {
       if (aligned) {
-        selectionOrdinal = PerAlignedUtils.decodeNormallySmallWholeNumber(reader);
+        return PerAlignedUtils.decodeNormallySmallWholeNumber(reader);
       } else {
-        selectionOrdinal = PerUnalignedUtils.decodeNormallySmallWholeNumber(reader);
+        return PerUnalignedUtils.decodeNormallySmallWholeNumber(reader);
       }
     } else if (getOptionCount() > 1) {
       if (aligned) {
-        selectionOrdinal = PerAlignedUtils.decodeSmallConstrainedWholeNumber(
+        return PerAlignedUtils.decodeSmallConstrainedWholeNumber(
             reader, 0, getOptionCount() - 1);
       } else {
-        selectionOrdinal = PerUnalignedUtils.decodeConstrainedWholeNumber(
+        return PerUnalignedUtils.decodeConstrainedWholeNumber(
             reader, 0, getOptionCount() - 1);
       }
     }
+    return 0;
+  }
+
+  private void decodePerImpl(BitStreamReader reader, boolean aligned) {
+    boolean extensionValued = false;
+    if (isExtensible()) {
+      extensionValued = reader.readBit();
+    }
+    int selectionOrdinal =
+        decodeSelectionOrdinal(reader, aligned, extensionValued);
     if (extensionValued) {
       Asn1Object element = createAndSetValue(extensionValued, selectionOrdinal);
       if (aligned) {
@@ -288,6 +307,38 @@ public abstract class Asn1Choice extends Asn1Object {
     }
   }
 
+  /**
+   * Skips the selected option, reusing the current value as its prototype if
+   * the same option was selected before, see {@link Asn1Object#skipPer}. An
+   * extension is decoded from its open type field like in
+   * {@link #decodePerImpl}, so that it is checked the same way.
+   */
+  @Override void skipPer(BitStreamReader reader, boolean aligned) {
+    boolean extensionValued = false;
+    if (isExtensible()) {
+      extensionValued = reader.readBit();
+    }
+    int selectionOrdinal =
+        decodeSelectionOrdinal(reader, aligned, extensionValued);
+    if (extensionValued) {
+      Asn1Object element = createAndSetValue(true, selectionOrdinal);
+      if (aligned) {
+        PerAlignedUtils.decodeOpenTypeField(reader, element);
+      } else {
+        PerUnalignedUtils.decodeOpenTypeField(reader, element);
+      }
+    } else if (getOptionCount() > 0) {
+      Asn1Object prototype;
+      if (!hasExtensionValue() && getSelectedComponent() != null
+          && getSelectionOrdinal() == selectionOrdinal) {
+        prototype = getValue();
+      } else {
+        prototype = createAndSetValue(false, selectionOrdinal);
+      }
+      prototype.skipPer(reader, aligned);
+    }
+  }
+
   @Override public void decodePerUnaligned(BitStreamReader reader) {
     decodePerImpl(reader, false);
   }
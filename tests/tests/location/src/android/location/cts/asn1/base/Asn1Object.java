@@ -187,6 +187,23 @@ public abstract class Asn1Object {
 
   public abstract Iterable<BitStream> encodePerUnaligned();
 
+  /**
+   * Appends the aligned PER encoding of this object to {@code builder}, giving
+   * the same bits as appending all of {@link #encodePerAligned()}. Constructed
+   * types override this to encode their components straight into the builder.
+   */
+  public void encodePerAligned(PacketBuilder builder) {
+    builder.appendAll(encodePerAligned());
+  }
+
+  /**
+   * Appends the unaligned PER encoding of this object to {@code builder},
+   * giving the same bits as appending all of {@link #encodePerUnaligned()}.
+   */
+  public void encodePerUnaligned(PacketBuilder builder) {
+    builder.appendAll(encodePerUnaligned());
+  }
+
   /**
    * This method should only be called on a newly created instance to avoid
    * having residue state in it.
@@ -200,6 +217,23 @@ public abstract class Asn1Object {
    */
   public abstract void decodePerAligned(BitStreamReader reader);
 
+  /**
+   * Reads past a PER encoded value of this type without keeping it, to find
+   * where the next value starts. The default implementation decodes into this
+   * object, which suits types that replace their whole value when decoding.
+   * Types with components override this to reuse prototypes for them instead
+   * of building a tree of new objects.
+   *
+   * <p>This object must only be used for skipping afterwards.
+   */
+  void skipPer(BitStreamReader reader, boolean aligned) {
+    if (aligned) {
+      decodePerAligned(reader);
+    } else {
+      decodePerUnaligned(reader);
+    }
+  }
+
   public String toIndentedString(String indent) {
     return indent + toString();
   }
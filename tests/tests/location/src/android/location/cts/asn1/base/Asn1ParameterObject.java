@@ -62,6 +62,16 @@ public class Asn1ParameterObject extends Asn1Object {
     return realObject.encodePerAligned();
   }
 
+  @Override
+  public void encodePerUnaligned(PacketBuilder builder) {
+    realObject.encodePerUnaligned(builder);
+  }
+
+  @Override
+  public void encodePerAligned(PacketBuilder builder) {
+    realObject.encodePerAligned(builder);
+  }
+
   @Override
   public void decodePerUnaligned(BitStreamReader reader) {
     realObject.decodePerUnaligned(reader);
@@ -71,4 +81,8 @@ public class Asn1ParameterObject extends Asn1Object {
   public void decodePerAligned(BitStreamReader reader) {
     realObject.decodePerAligned(reader);
   }
+
+  @Override void skipPer(BitStreamReader reader, boolean aligned) {
+    realObject.skipPer(reader, aligned);
+  }
 }
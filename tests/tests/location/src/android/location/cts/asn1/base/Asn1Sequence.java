@@ -19,7 +19,9 @@ package android.location.cts.asn1.base;
 import com.google.common.collect.ImmutableList;
 
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.NoSuchElementException;
 
 /**
@@ -150,8 +152,7 @@ public abstract class Asn1Sequence extends Asn1Object {
     throw new NoSuchElementException("SEQUENCE=" + this + ", tag=" + tag);
   }
 
-  private Iterable<BitStream> encodePerImpl(boolean aligned) {
-    ImmutableList.Builder<BitStream> listBuilder = ImmutableList.builder();
+  private void encodePerImpl(PacketBuilder builder, boolean aligned) {
     BitStream prefix = new BitStream();
 
     if (isExtensible()) {
@@ -172,18 +173,16 @@ public abstract class Asn1Sequence extends Asn1Object {
                                         + " not set.");
       }
     }
-    listBuilder.add(prefix);
+    builder.append(prefix);
 
     for (SequenceComponent component : components) {
       if (component.isExplicitlySet()) {
         Asn1Object value = component.getComponentValue();
-        Iterable<BitStream> encodedValue = null;
         if (aligned) {
-          encodedValue = value.encodePerAligned();
+          value.encodePerAligned(builder);
         } else {
-          encodedValue = value.encodePerUnaligned();
+          value.encodePerUnaligned(builder);
         }
-        listBuilder.addAll(encodedValue);
       }
     }
 
@@ -211,11 +210,11 @@ public abstract class Asn1Sequence extends Asn1Object {
         BitStream lengthDeterminant = new BitStream();
         lengthDeterminant.appendBit(false);
         lengthDeterminant.appendLowBits(6, (byte) (extensionBitFieldSize - 1));
-        listBuilder.add(lengthDeterminant);
+        builder.append(lengthDeterminant);
       } else {
         BitStream marker = new BitStream();
         marker.appendBit(true);
-        listBuilder.add(marker);
+        builder.append(marker);
         BitStream lengthDeterminant = null;
         if (aligned) {
           lengthDeterminant =
@@ -225,9 +224,9 @@ public abstract class Asn1Sequence extends Asn1Object {
           lengthDeterminant =
               PerUnalignedUtils.encodeSemiConstrainedLength(extensionBitFieldSize);
         }
-        listBuilder.add(lengthDeterminant);
+        builder.append(lengthDeterminant);
       }
-      listBuilder.add(extensions);
+      builder.append(extensions);
       for (SequenceComponent component : extensionComponents) {
         if (component.isExplicitlySet()) {
           Iterable<BitStream> extensionValues = null;
@@ -237,20 +236,31 @@ public abstract class Asn1Sequence extends Asn1Object {
           } else {
             extensionValues = PerUnalignedUtils.encodeOpenTypeField(component.getComponentValue());
           }
-          listBuilder.addAll(extensionValues);
+          builder.appendAll(extensionValues);
         }
       }
     }
-    return listBuilder.build();
   }
 
   @Override public Iterable<BitStream> encodePerUnaligned() {
-    return encodePerImpl(false);
+    PacketBuilder fragments = PacketBuilder.newFragmentCollector();
+    encodePerImpl(fragments, false);
+    return fragments.getFragments();
   }
 
   @Override
   public Iterable<BitStream> encodePerAligned() {
-    return encodePerImpl(true);
+    PacketBuilder fragments = PacketBuilder.newFragmentCollector();
+    encodePerImpl(fragments, true);
+    return fragments.getFragments();
+  }
+
+  @Override public void encodePerUnaligned(PacketBuilder builder) {
+    encodePerImpl(builder, false);
+  }
+
+  @Override public void encodePerAligned(PacketBuilder builder) {
+    encodePerImpl(builder, true);
   }
 
   private int calculateBitFieldSize(
@@ -330,11 +340,11 @@ public abstract class Asn1Sequence extends Asn1Object {
           if (aligned) {
             byte[] encodedComponent =
                 PerAlignedUtils.decodeSemiConstrainedLengthOfBytes(reader);
-            component.getComponentValue().decodePerAligned(new BitStreamReader(encodedComponent));
+            component.getComponentValue().decodePerAligned(reader.createReader(encodedComponent));
           } else {
             byte[] encodedComponent =
                 PerUnalignedUtils.decodeSemiConstrainedLengthOfBytes(reader);
-            component.getComponentValue().decodePerUnaligned(new BitStreamReader(encodedComponent));
+            component.getComponentValue().decodePerUnaligned(reader.createReader(encodedComponent));
           }
         }
       }
@@ -350,6 +360,85 @@ public abstract class Asn1Sequence extends Asn1Object {
     }
   }
 
+  /**
+   * Skips the components with prototypes kept in this object, see
+   * {@link Asn1Object#skipPer}. Known extension additions are decoded from
+   * their open type fields into prototypes, so that they are checked like in
+   * {@link #decodePerImpl}, and unknown ones are skipped by their length.
+   */
+  @Override void skipPer(BitStreamReader reader, boolean aligned) {
+    boolean hasExtensionValuesToSkip = false;
+    if (isExtensible()) {
+      hasExtensionValuesToSkip = reader.readBit();
+    }
+
+    Iterable<? extends SequenceComponent> components = getComponents();
+    int bitFieldSize = calculateBitFieldSize(components);
+    if (bitFieldSize >= PerAlignedUtils.SIXTYFOUR_K) {
+      throw new UnsupportedOperationException("unimplemented");
+    }
+    List<Asn1Object> presentComponents = new ArrayList<>();
+    for (SequenceComponent component : components) {
+      if (!(component.isOptional() || component.hasDefaultValue()) || reader.readBit()) {
+        if (!component.isExplicitlySet()) {
+          component.setToNewInstance();
+        }
+        presentComponents.add(component.getComponentValue());
+      }
+    }
+    for (Asn1Object prototype : presentComponents) {
+      prototype.skipPer(reader, aligned);
+    }
+
+    if (hasExtensionValuesToSkip) {
+      int extensionBitFieldSize;
+      if (reader.readBit()) {
+        if (aligned) {
+          reader.spoolToByteBoundary();
+          extensionBitFieldSize =
+              PerAlignedUtils.decodeSemiConstrainedLength(reader);
+        } else {
+          extensionBitFieldSize =
+              PerUnalignedUtils.decodeSemiConstrainedLength(reader);
+        }
+      } else {
+        extensionBitFieldSize = 1 + reader.readLowBits(6);
+      }
+      List<Asn1Object> presentExtensions = new ArrayList<>();
+      for (SequenceComponent component : getExtensionComponents()) {
+        if (extensionBitFieldSize > 0) {
+          --extensionBitFieldSize;
+          if (reader.readBit()) {
+            if (!component.isExplicitlySet()) {
+              component.setToNewInstance();
+            }
+            presentExtensions.add(component.getComponentValue());
+          }
+        }
+      }
+      int unknownExtensionCount = 0;
+      for (; extensionBitFieldSize > 0; --extensionBitFieldSize) {
+        if (reader.readBit()) {
+          ++unknownExtensionCount;
+        }
+      }
+      for (Asn1Object prototype : presentExtensions) {
+        if (aligned) {
+          PerAlignedUtils.decodeOpenTypeField(reader, prototype);
+        } else {
+          PerUnalignedUtils.decodeOpenTypeField(reader, prototype);
+        }
+      }
+      for (; unknownExtensionCount > 0; --unknownExtensionCount) {
+        if (aligned) {
+          PerAlignedUtils.decodeSemiConstrainedLengthOfBytes(reader);
+        } else {
+          PerUnalignedUtils.decodeSemiConstrainedLengthOfBytes(reader);
+        }
+      }
+    }
+  }
+
   @Override public void decodePerUnaligned(BitStreamReader reader) {
     decodePerImpl(reader, false);
   }
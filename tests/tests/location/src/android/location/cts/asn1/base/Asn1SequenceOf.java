@@ -23,6 +23,8 @@ import java.nio.ByteBuffer;
 import java.util.Collection;
 import java.util.LinkedList;
 
+import javax.annotation.Nullable;
+
 /**
  * Implements ASN.1 functionality.
  *
@@ -35,6 +37,16 @@ public abstract class Asn1SequenceOf<T extends Asn1Object> extends Asn1Object {
   private int minimumSize = 0;
   private Integer maximumSize = null; // Null is unbounded.
 
+  /**
+   * The elements not decoded yet, null once they are in {@link #sequence}.
+   * See {@link BitStreamReader#BitStreamReader(byte[], boolean)}.
+   */
+  @Nullable private LazyElements lazyElements = null;
+  /**
+   * An element used to skip the encoded elements, see {@link Asn1Object#skipPer}.
+   */
+  @Nullable private T elementPrototype = null;
+
   public static Collection<Asn1Tag> getPossibleFirstTags() {
     return possibleFirstTags;
   }
@@ -48,10 +60,12 @@ public abstract class Asn1SequenceOf<T extends Asn1Object> extends Asn1Object {
   }
 
   public void add(T component) {
+    materialize();
     sequence.addLast(component);
   }
 
   public Iterable<T> getValues() {
+    materialize();
     return sequence;
   }
 
@@ -66,6 +80,7 @@ public abstract class Asn1SequenceOf<T extends Asn1Object> extends Asn1Object {
   }
 
   @Override int getBerValueLength() {
+    materialize();
     int length = 0;
     for (Asn1Object component : sequence) {
       length += component.getBerLength();
@@ -74,6 +89,7 @@ public abstract class Asn1SequenceOf<T extends Asn1Object> extends Asn1Object {
   }
 
   @Override void encodeBerValue(ByteBuffer buf) {
+    materialize();
     for (Asn1Object component : sequence) {
       component.encodeBer(buf);
     }
@@ -103,49 +119,60 @@ public abstract class Asn1SequenceOf<T extends Asn1Object> extends Asn1Object {
     }
   }
 
-  private Iterable<BitStream> encodePerImpl(boolean aligned) {
+  private void encodePerImpl(PacketBuilder builder, boolean aligned) {
+    materialize();
     Preconditions.checkState(sequence.size() >= minimumSize,
                              "Too few components.");
     Preconditions.checkState(maximumSize == null
                              || sequence.size() <= maximumSize,
                              "Too many components.");
-    ImmutableList.Builder<BitStream> listBuilder = ImmutableList.builder();
     if (maximumSize == null || maximumSize >= PerAlignedUtils.SIXTYFOUR_K) {
       if (aligned) {
-        listBuilder.add(PerAlignedUtils.encodeSemiConstrainedLength(sequence.size()));
+        builder.append(PerAlignedUtils.encodeSemiConstrainedLength(sequence.size()));
       } else {
-        listBuilder.add(PerUnalignedUtils.encodeSemiConstrainedLength(sequence.size()));
+        builder.append(PerUnalignedUtils.encodeSemiConstrainedLength(sequence.size()));
       }
     } else if (maximumSize != minimumSize) {
       if (aligned) {
-        listBuilder.add(
+        builder.append(
             PerAlignedUtils.encodeSmallConstrainedWholeNumber(
                 sequence.size(), minimumSize, maximumSize));
       } else {
-        listBuilder.add(
+        builder.append(
             PerUnalignedUtils.encodeConstrainedWholeNumber(
                 sequence.size(), minimumSize, maximumSize));
       }
     }
     for (Asn1Object component : sequence) {
       if (aligned) {
-        listBuilder.addAll(component.encodePerAligned());
+        component.encodePerAligned(builder);
       } else {
-        listBuilder.addAll(component.encodePerUnaligned());
+        component.encodePerUnaligned(builder);
       }
     }
-    return listBuilder.build();
   }
 
   @Override public Iterable<BitStream> encodePerUnaligned() {
-    return encodePerImpl(false);
+    PacketBuilder fragments = PacketBuilder.newFragmentCollector();
+    encodePerImpl(fragments, false);
+    return fragments.getFragments();
   }
 
   @Override public Iterable<BitStream> encodePerAligned() {
-    return encodePerImpl(true);
+    PacketBuilder fragments = PacketBuilder.newFragmentCollector();
+    encodePerImpl(fragments, true);
+    return fragments.getFragments();
   }
 
-  private void decodePerImpl(BitStreamReader reader, boolean aligned) {
+  @Override public void encodePerUnaligned(PacketBuilder builder) {
+    encodePerImpl(builder, false);
+  }
+
+  @Override public void encodePerAligned(PacketBuilder builder) {
+    encodePerImpl(builder, true);
+  }
+
+  private int decodeSize(BitStreamReader reader, boolean aligned) {
     int size = minimumSize;
     if (maximumSize == null || maximumSize >= PerAlignedUtils.SIXTYFOUR_K) {
       if (aligned) {
@@ -162,16 +189,87 @@ public abstract class Asn1SequenceOf<T extends Asn1Object> extends Asn1Object {
             reader, minimumSize, maximumSize);
       }
     }
+    return size;
+  }
+
+  private void decodePerImpl(BitStreamReader reader, boolean aligned) {
+    int size = decodeSize(reader, aligned);
+    if (reader.isLazy() && size > 0) {
+      // The elements have no length, so they are skipped to find each one.
+      T prototype = getElementPrototype();
+      int[] bitPositions = new int[size];
+      for (int i = 0; i < size; i++) {
+        bitPositions[i] = reader.getBitPosition();
+        prototype.skipPer(reader, aligned);
+      }
+      lazyElements = new LazyElements(reader, bitPositions, aligned);
+      return;
+    }
     for (int i = 0; i < size; i++) {
       T value = createAndAddValue();
-      if (aligned) {
-        value.decodePerAligned(reader);
-      } else {
-        value.decodePerUnaligned(reader);
+      decodeValue(value, reader, aligned);
+    }
+  }
+
+  private static void decodeValue(Asn1Object value, BitStreamReader reader,
+                                  boolean aligned) {
+    if (aligned) {
+      value.decodePerAligned(reader);
+    } else {
+      value.decodePerUnaligned(reader);
+    }
+  }
+
+  @Override void skipPer(BitStreamReader reader, boolean aligned) {
+    int size = decodeSize(reader, aligned);
+    if (size > 0) {
+      T prototype = getElementPrototype();
+      for (int i = 0; i < size; i++) {
+        prototype.skipPer(reader, aligned);
       }
     }
   }
 
+  private T getElementPrototype() {
+    if (elementPrototype == null) {
+      // Only generated subclasses know how to create an element.
+      elementPrototype = createAndAddValue();
+      sequence.removeLast();
+    }
+    return elementPrototype;
+  }
+
+  /**
+   * Decodes the elements recorded by a lazy decode.
+   */
+  void materialize() {
+    if (lazyElements == null) {
+      return;
+    }
+    LazyElements elements = lazyElements;
+    lazyElements = null;
+    for (int bitPosition : elements.bitPositions) {
+      T value = createAndAddValue();
+      decodeValue(value, elements.reader.createReaderAt(bitPosition),
+                  elements.aligned);
+    }
+  }
+
+  /**
+   * Where the elements of a lazily decoded sequence are encoded.
+   */
+  private static class LazyElements {
+    final BitStreamReader reader;
+    final int[] bitPositions;
+    final boolean aligned;
+
+    LazyElements(BitStreamReader reader, int[] bitPositions, boolean aligned) {
+      this.reader = reader;
+      this.bitPositions = bitPositions;
+      this.aligned = aligned;
+    }
+  }
+
   @Override public void decodePerUnaligned(BitStreamReader reader) {
     decodePerImpl(reader, false);
   }
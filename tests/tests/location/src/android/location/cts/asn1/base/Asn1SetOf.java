@@ -31,26 +31,19 @@ public abstract class Asn1SetOf<T extends Asn1Object>
     return Asn1Tag.SET;
   }
 
-  private Iterable<BitStream> encodePerImpl(final boolean aligned) {
+  /**
+   * Sorts the components by their encoding, as required by canonical PER.
+   */
+  private void sortCanonically(final boolean aligned) {
     // Encode according to canonical PER, always works.
+    materialize();
+    final PacketBuilder keyMaker = new PacketBuilder();
     Collections.sort(sequence,
                      new Comparator<T>() {
                        @Override
                        public int compare(T lhsT, T rhsT) {
-                         PacketBuilder keyMaker = new PacketBuilder();
-                         if (aligned) {
-                           keyMaker.appendAll(lhsT.encodePerAligned());
-                         } else {
-                           keyMaker.appendAll(lhsT.encodePerUnaligned());
-                         }
-                         byte[] lhs = keyMaker.getPaddedBytes();
-                         keyMaker = new PacketBuilder();
-                         if (aligned) {
-                           keyMaker.appendAll(rhsT.encodePerAligned());
-                         } else {
-                           keyMaker.appendAll(rhsT.encodePerUnaligned());
-                         }
-                         byte[] rhs = keyMaker.getPaddedBytes();
+                         byte[] lhs = encodeKey(lhsT);
+                         byte[] rhs = encodeKey(rhsT);
                          for (int i = 0; i < lhs.length && i < rhs.length;
                               ++i) {
                            if ((lhs[i] & 0xFF) < (rhs[i] & 0xFF)) {
@@ -68,21 +61,37 @@ public abstract class Asn1SetOf<T extends Asn1Object>
                          }
                          return 0;
                        }
+
+                       private byte[] encodeKey(T t) {
+                         keyMaker.reset();
+                         if (aligned) {
+                           t.encodePerAligned(keyMaker);
+                         } else {
+                           t.encodePerUnaligned(keyMaker);
+                         }
+                         return keyMaker.getPaddedBytes();
+                       }
                      }
     );
-
-    if (aligned) {
-      return super.encodePerAligned();
-    } else {
-      return super.encodePerUnaligned();
-    }
   }
 
   @Override public Iterable<BitStream> encodePerUnaligned() {
-    return encodePerImpl(false);
+    sortCanonically(false);
+    return super.encodePerUnaligned();
   }
 
   @Override public Iterable<BitStream> encodePerAligned() {
-    return encodePerImpl(true);
+    sortCanonically(true);
+    return super.encodePerAligned();
+  }
+
+  @Override public void encodePerUnaligned(PacketBuilder builder) {
+    sortCanonically(false);
+    super.encodePerUnaligned(builder);
+  }
+
+  @Override public void encodePerAligned(PacketBuilder builder) {
+    sortCanonically(true);
+    super.encodePerAligned(builder);
   }
 }
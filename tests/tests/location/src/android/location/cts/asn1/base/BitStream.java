@@ -16,7 +16,6 @@
 
 package android.location.cts.asn1.base;
 
-import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 
 import java.util.Arrays;
@@ -29,49 +28,46 @@ import java.util.Arrays;
  */
 public final class BitStream {
 
-  /**
-   * The number of bytes that is initially allocated and by which the buffer
-   * gets expanded when necessary.
-   */
-  static final int BUFFER_CHUNK = 50;
   private static final int BITS_IN_BYTE = 8;
+  private static final int BITS_IN_LONG = 64;
+  private static final int INITIAL_CAPACITY = 16;
+  private static final byte[] EMPTY_BUFFER = new byte[0];
 
-  private byte[] buffer = new byte[BUFFER_CHUNK];
   /**
-   * The position in the buffer of the unfinished byte in progress.
+   * The completed bytes. Allocated once the first bytes leave the accumulator
+   * and doubled when full.
+   */
+  private byte[] buffer = EMPTY_BUFFER;
+  /**
+   * The number of completed bytes in the buffer.
    */
   private int position = 0;
   /**
-   *   The number of high bits accumulated in the unfinished byte.
+   * The bits not yet written to the buffer, in the low {@code setBits} bits.
+   */
+  private long accumulator = 0;
+  /**
+   * The number of bits in the accumulator, always less than 64.
    */
   private int setBits = 0;
 
   public byte[] getPaddedBytes() {
-    return Arrays.copyOf(buffer, position + (setBits == 0 ? 0 : 1));
+    int accumulatedBytes = (setBits + BITS_IN_BYTE - 1) / BITS_IN_BYTE;
+    byte[] result = Arrays.copyOf(buffer, position + accumulatedBytes);
+    // Left align the accumulated bits, leaving the padding bits clear.
+    long bits = setBits == 0 ? 0 : accumulator << (BITS_IN_LONG - setBits);
+    for (int i = 0; i < accumulatedBytes; i++) {
+      result[position + i] = (byte) (bits >>> (BITS_IN_LONG - BITS_IN_BYTE * (i + 1)));
+    }
+    return result;
   }
 
   public void appendByte(byte data) {
-    buffer[position] = (byte) (buffer[position] | (data & 0xFF) >> setBits);
-    incrementPosition();
-    buffer[position] = (byte) (buffer[position] | (data << (BITS_IN_BYTE - setBits)) & 0xFF);
-  }
-
-  private void incrementPosition() {
-    position++;
-    if (position >= buffer.length) {
-      buffer = Arrays.copyOf(buffer, buffer.length + BUFFER_CHUNK);
-    }
+    appendBits(BITS_IN_BYTE, data);
   }
 
   public void appendBit(boolean one) {
-    if (one) {
-      buffer[position] = (byte) (buffer[position] | 1 << (BITS_IN_BYTE - 1 - setBits));
-    }
-    setBits++;
-    if (setBits == BITS_IN_BYTE) {
-      incrementPosition();
-      setBits = 0;
-    }
+    appendBits(1, one ? 1 : 0);
   }
 
   public int getBitCount() {
@@ -84,13 +80,93 @@ public final class BitStream {
    */
   public void appendLowBits(int howManyBits, byte data) {
     Preconditions.checkArgument(howManyBits < BITS_IN_BYTE);
-    int lowMask = (1 << howManyBits) - 1;
-    int highMask = ~lowMask;
-    int maskedData = data;
-    while (highMask < -1) {
-      maskedData &= ~highMask;
-      highMask >>= 1;
-      appendBit((maskedData & highMask) != 0);
+    appendBits(howManyBits, data);
+  }
+
+  /**
+   * Appends the lowest {@code howManyBits}, up to 64, from the {@code data} in
+   * order from most significant to least significant.
+   */
+  public void appendBits(int howManyBits, long data) {
+    Preconditions.checkArgument(howManyBits >= 0 && howManyBits <= BITS_IN_LONG,
+                                "howManyBits out of range: %s", howManyBits);
+    if (howManyBits < BITS_IN_LONG) {
+      data &= (1L << howManyBits) - 1;
+    }
+    int freeBits = BITS_IN_LONG - setBits;
+    if (howManyBits < freeBits) {
+      // Shifting a long by 64 is a no-op, but then howManyBits is 0.
+      accumulator = howManyBits == 0 ? accumulator : (accumulator << howManyBits) | data;
+      setBits += howManyBits;
+      return;
+    }
+    // Complete the accumulator and keep the remaining low bits.
+    int remainingBits = howManyBits - freeBits;
+    long word = (setBits == 0 ? 0 : accumulator << freeBits) | (data >>> remainingBits);
+    writeLong(word);
+    accumulator = remainingBits == 0 ? 0 : data & ((1L << remainingBits) - 1);
+    setBits = remainingBits;
+  }
+
+  /**
+   * Appends {@code length} bytes of {@code data} starting at {@code offset}.
+   */
+  public void appendBytes(byte[] data, int offset, int length) {
+    if (setBits % BITS_IN_BYTE == 0) {
+      flushAccumulatorBytes();
+      ensureCapacity(length);
+      System.arraycopy(data, offset, buffer, position, length);
+      position += length;
+      return;
+    }
+    int end = offset + length;
+    int i = offset;
+    for (; i + 7 <= end; i += 7) {
+      long word = 0;
+      for (int j = 0; j < 7; j++) {
+        word = (word << BITS_IN_BYTE) | (data[i + j] & 0xFF);
+      }
+      appendBits(7 * BITS_IN_BYTE, word);
+    }
+    for (; i < end; i++) {
+      appendBits(BITS_IN_BYTE, data[i]);
+    }
+  }
+
+  /**
+   * Appends all bits of {@code appendix}. Its alignment is not considered, see
+   * {@link PacketBuilder#append(BitStream)}.
+   */
+  public void append(BitStream appendix) {
+    appendBytes(appendix.buffer, 0, appendix.position);
+    appendBits(appendix.setBits, appendix.accumulator);
+  }
+
+  private void writeLong(long word) {
+    ensureCapacity(BITS_IN_LONG / BITS_IN_BYTE);
+    for (int shift = BITS_IN_LONG - BITS_IN_BYTE; shift >= 0; shift -= BITS_IN_BYTE) {
+      buffer[position++] = (byte) (word >>> shift);
+    }
+  }
+
+  /**
+   * Moves the whole bytes of the accumulator to the buffer.
+   */
+  private void flushAccumulatorBytes() {
+    int bytes = setBits / BITS_IN_BYTE;
+    ensureCapacity(bytes);
+    while (setBits >= BITS_IN_BYTE) {
+      setBits -= BITS_IN_BYTE;
+      buffer[position++] = (byte) (accumulator >>> setBits);
+    }
+    accumulator &= (1L << setBits) - 1;
+  }
+
+  private void ensureCapacity(int extraBytes) {
+    int required = position + extraBytes;
+    if (required > buffer.length) {
+      buffer = Arrays.copyOf(buffer,
+          Math.max(required, Math.max(INITIAL_CAPACITY, buffer.length * 2)));
     }
   }
 
@@ -105,9 +181,19 @@ public final class BitStream {
   }
 
   public void spoolToByteBoundary() {
-    if (setBits != 0) {
-      setBits = 0;
-      incrementPosition();
+    int partialBits = setBits % BITS_IN_BYTE;
+    if (partialBits != 0) {
+      appendBits(BITS_IN_BYTE - partialBits, 0);
     }
   }
+
+  /**
+   * Clears all bits and the alignment, keeping the allocated buffer for reuse.
+   */
+  public void reset() {
+    position = 0;
+    accumulator = 0;
+    setBits = 0;
+    beginByteAligned = false;
+  }
 }
@@ -24,13 +24,54 @@ package android.location.cts.asn1.base;
  */
 public class BitStreamReader {
   private static final int BITS_IN_BYTE = 8;
+  private static final int BITS_IN_LONG = 64;
 
   private final byte[] buffer;
-  private int position = 0;
-  private int bitsRead = 0;
+  /**
+   * The number of bits read so far, counted from the start of the buffer.
+   */
+  private int bitPosition;
+  private final boolean lazy;
 
   public BitStreamReader(byte[] bytes) {
+    this(bytes, false);
+  }
+
+  /**
+   * Creates a reader which, if {@code lazy}, makes SEQUENCE OF types only
+   * record where their elements are and decode them when their values are
+   * first accessed. The bytes must not change while such elements remain.
+   */
+  public BitStreamReader(byte[] bytes, boolean lazy) {
+    this(bytes, 0, lazy);
+  }
+
+  private BitStreamReader(byte[] bytes, int bitPosition, boolean lazy) {
     buffer = bytes;
+    this.bitPosition = bitPosition;
+    this.lazy = lazy;
+  }
+
+  boolean isLazy() {
+    return lazy;
+  }
+
+  int getBitPosition() {
+    return bitPosition;
+  }
+
+  /**
+   * Returns a new reader of the same kind at a bit position of this stream.
+   */
+  BitStreamReader createReaderAt(int bitPosition) {
+    return new BitStreamReader(buffer, bitPosition, lazy);
+  }
+
+  /**
+   * Returns a new reader of the same kind for nested data, e.g. an open type.
+   */
+  BitStreamReader createReader(byte[] bytes) {
+    return new BitStreamReader(bytes, 0, lazy);
   }
 
   /**
@@ -38,28 +79,21 @@ public class BitStreamReader {
    * @throws IndexOutOfBoundsException if there is no more data.
    */
   public boolean readBit() {
-    bitsRead++;
-    if (bitsRead > BITS_IN_BYTE) {
-      position++;
-      bitsRead = 1;
-    }
-    return ((buffer[position] >> (BITS_IN_BYTE - bitsRead)) & 1) == 1;
+    int data = buffer[bitPosition / BITS_IN_BYTE];
+    int shift = BITS_IN_BYTE - 1 - bitPosition % BITS_IN_BYTE;
+    bitPosition++;
+    return ((data >> shift) & 1) == 1;
   }
 
   /**
    * Returns true if there is another readable bit in the stream.
    */
   public boolean hasBit() {
-    return position + 1 < buffer.length
-           || (bitsRead < BITS_IN_BYTE && position < buffer.length);
+    return bitPosition < (long) buffer.length * BITS_IN_BYTE;
   }
 
   public void spoolToByteBoundary() {
-    if (bitsRead == 0) {
-      return;
-    }
-    bitsRead = 0;
-    position++;
+    bitPosition = (bitPosition + BITS_IN_BYTE - 1) & -BITS_IN_BYTE;
   }
 
   /**
@@ -67,13 +101,28 @@ public class BitStreamReader {
    * @throws IndexOutOfBoundsException if there is no more data.
    */
   public byte readByte() {
-    int mask = (1 << (8 - bitsRead)) - 1;
-    byte result = (byte) ((buffer[position] & mask) << bitsRead);
-    position++;
-    if (bitsRead > 0) {
-      result = (byte) (result | (buffer[position] & 0xFF) >>> (8 - bitsRead));
+    return (byte) readBits(BITS_IN_BYTE);
+  }
+
+  /**
+   * Reads {@code result.length} bytes from the stream into {@code result}.
+   * @throws IndexOutOfBoundsException if there is not enough data.
+   */
+  public void readBytes(byte[] result) {
+    if (bitPosition % BITS_IN_BYTE == 0) {
+      int start = bitPosition / BITS_IN_BYTE;
+      if (start + result.length > buffer.length) {
+        throw new IndexOutOfBoundsException("Reading " + result.length
+                                            + " bytes at " + start + " of "
+                                            + buffer.length);
+      }
+      System.arraycopy(buffer, start, result, 0, result.length);
+      bitPosition += result.length * BITS_IN_BYTE;
+      return;
+    }
+    for (int i = 0; i < result.length; i++) {
+      result[i] = readByte();
     }
-    return result;
   }
 
   /**
@@ -81,10 +130,28 @@ public class BitStreamReader {
    * @throws IndexOutOfBoundsException if there is no more data.
    */
   public int readLowBits(int howMany) {
-    int result = 0;
-    for (int i = 0; i < howMany; i++) {
-      result <<= 1;
-      result |= (readBit() ? 1 : 0);
+    return (int) readBits(howMany);
+  }
+
+  /**
+   * Returns next {@code howMany} bits, up to 64, as the low bits of the
+   * returned long. The bits are taken a byte at a time rather than one by one.
+   * @throws IndexOutOfBoundsException if there is no more data.
+   */
+  public long readBits(int howMany) {
+    if (howMany < 0 || howMany > BITS_IN_LONG) {
+      throw new IllegalArgumentException("howMany out of range: " + howMany);
+    }
+    long result = 0;
+    int remaining = howMany;
+    while (remaining > 0) {
+      int data = buffer[bitPosition / BITS_IN_BYTE] & 0xFF;
+      int available = BITS_IN_BYTE - bitPosition % BITS_IN_BYTE;
+      int bits = Math.min(available, remaining);
+      int chunk = (data >>> (available - bits)) & ((1 << bits) - 1);
+      result = (result << bits) | chunk;
+      bitPosition += bits;
+      remaining -= bits;
     }
     return result;
   }
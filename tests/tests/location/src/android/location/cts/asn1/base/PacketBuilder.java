@@ -16,26 +16,52 @@
 
 package android.location.cts.asn1.base;
 
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+
 /**
  */
 public class PacketBuilder {
   private BitStream bitStream = new BitStream();
 
+  /**
+   * The completed fragments if this builder collects fragments rather than
+   * padding them, see {@link #newFragmentCollector()}; null otherwise.
+   */
+  private final ImmutableList.Builder<BitStream> fragments;
+
+  public PacketBuilder() {
+    this(null);
+  }
+
+  private PacketBuilder(ImmutableList.Builder<BitStream> fragments) {
+    this.fragments = fragments;
+  }
+
+  /**
+   * Returns a builder which, instead of padding before a byte aligned
+   * appendix, starts a new byte aligned fragment. Appending its
+   * {@link #getFragments()} to another builder gives the same bits as appending
+   * everything to that builder directly. Used where the position of the
+   * encoding in the final packet is not known yet.
+   */
+  static PacketBuilder newFragmentCollector() {
+    return new PacketBuilder(ImmutableList.<BitStream>builder());
+  }
+
   public void append(BitStream appendix) {
     if (appendix.beginsByteAligned()) {
-      bitStream.spoolToByteBoundary();
-    }
-    int bitsToAppend = appendix.getBitCount();
-    byte[] bytes = appendix.getPaddedBytes();
-    for (int i = 0; bitsToAppend >= 8; i++, bitsToAppend -= 8) {
-      bitStream.appendByte(bytes[i]);
-    }
-    if (bitsToAppend != 0) {
-      byte highBits = bytes[bytes.length - 1];
-      byte lowBits = (byte) ((highBits & 0xFF)
-                             >> (8 - bitsToAppend));
-      bitStream.appendLowBits(bitsToAppend, lowBits);
+      if (fragments == null) {
+        bitStream.spoolToByteBoundary();
+      } else {
+        if (bitStream.getBitCount() != 0 || bitStream.beginsByteAligned()) {
+          fragments.add(bitStream);
+        }
+        bitStream = new BitStream();
+        bitStream.setBeginByteAligned();
+      }
     }
+    bitStream.append(appendix);
   }
 
   public byte[] getPaddedBytes() {
@@ -51,4 +77,25 @@ public class PacketBuilder {
       append(bitStream);
     }
   }
+
+  /**
+   * Clears the packet so the builder can be reused, keeping its buffer.
+   */
+  public void reset() {
+    Preconditions.checkState(fragments == null, "Fragments can't be reset");
+    bitStream.reset();
+  }
+
+  /**
+   * Returns the fragments of a builder from {@link #newFragmentCollector()}.
+   * Nothing may be appended afterwards.
+   */
+  Iterable<BitStream> getFragments() {
+    Preconditions.checkState(fragments != null, "Not a fragment collector");
+    if (bitStream.getBitCount() != 0 || bitStream.beginsByteAligned()) {
+      fragments.add(bitStream);
+    }
+    bitStream = null;
+    return fragments.build();
+  }
 }
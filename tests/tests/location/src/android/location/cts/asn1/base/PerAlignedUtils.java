@@ -75,8 +75,7 @@ public class PerAlignedUtils {
       result.appendByte((byte) (normalizedValue));
       return result;
     }
-    result.appendByte((byte) ((normalizedValue & 0xFF00) >>> 8));
-    result.appendByte((byte) (normalizedValue & 0x00FF));
+    result.appendBits(16, normalizedValue);
     return result;
   }
 
@@ -121,8 +120,7 @@ public class PerAlignedUtils {
     if (range < 256) {
       return (reader.readByte() & 0xFF);
     }
-    return ((reader.readByte() & 0xFF) << 8)
-        + (reader.readByte() & 0xFF);
+    return reader.readLowBits(16);
   }
 
   private static int leastBitsToEncode(byte value) {
@@ -171,9 +169,7 @@ public class PerAlignedUtils {
     }
     BitStream value = new BitStream();
     value.setBeginByteAligned();
-    for (byte aByte : bytes) {
-      value.appendByte(aByte);
-    }
+    value.appendBytes(bytes, 0, bytes.length);
     return ImmutableList.of(lengthDeterminant, value);
     
   }
@@ -194,9 +190,7 @@ public class PerAlignedUtils {
     }
     byte[] result = new byte[length];
     reader.spoolToByteBoundary();
-    for (int i = 0; i < length; i++) {
-      result[i] = reader.readByte();
-    }
+    reader.readBytes(result);
     return result;
   }
 
@@ -210,9 +204,7 @@ public class PerAlignedUtils {
     if (n < SIXTEEN_K) {
       BitStream result = encodeSemiConstrainedLength(n);
       result.setBeginByteAligned();
-      for (byte b : bytes) {
-        result.appendByte(b);
-      }
+      result.appendBytes(bytes, 0, bytes.length);
       return ImmutableList.of(result);
     }
     throw new UnsupportedOperationException("Arrays > 16K unimplemented.");
@@ -236,9 +228,7 @@ public class PerAlignedUtils {
     reader.spoolToByteBoundary();
     int length = decodeSemiConstrainedLength(reader);
     byte[] result = new byte[length];
-    for (int i = 0; i < length; i++) {
-      result[i] = reader.readByte();
-    }
+    reader.readBytes(result);
     return result;
   }
   /**
@@ -315,14 +305,14 @@ public class PerAlignedUtils {
   public static Iterable<BitStream> encodeOpenTypeField(
                                                     Asn1Object object){
     PacketBuilder packetBuilder = new PacketBuilder();
-    packetBuilder.appendAll(object.encodePerAligned());
+    object.encodePerAligned(packetBuilder);
     return encodeSemiConstrainedLengthOfBytes(packetBuilder.getPaddedBytes());
   }
 
   public static Asn1Object decodeOpenTypeField(
                               BitStreamReader reader, Asn1Object asn1Object) {
     byte [] encodedBytes = decodeSemiConstrainedLengthOfBytes(reader);
-    asn1Object.decodePerAligned(new BitStreamReader(encodedBytes));
+    asn1Object.decodePerAligned(reader.createReader(encodedBytes));
     return asn1Object;
   }
 }
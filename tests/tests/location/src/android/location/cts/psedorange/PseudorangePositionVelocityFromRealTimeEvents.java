@@ -20,6 +20,7 @@ import android.location.GnssClock;
 import android.location.GnssMeasurement;
 import android.location.GnssMeasurementsEvent;
 import android.location.GnssStatus;
+import android.os.Debug;
 import android.util.Log;
 import android.location.cts.pseudorange.Ecef2EnuConverter.EnuValues;
 import android.location.cts.pseudorange.Ecef2LlaConverter.GeodeticLlaValues;
@@ -80,6 +81,8 @@ public class PseudorangePositionVelocityFromRealTimeEvents {
   private int mDayOfYear1To366 = 0;
   private int mGpsWeekNumber = 0;
   private long mArrivalTimeSinceGpsEpochNs = 0;
+  private long mLastSolveTimeNanos = 0;
+  private int mLastSolveAllocationCount = 0;
 
   /**
    * Computes Weighted least square position and velocity solutions from a received
@@ -95,56 +98,7 @@ public class PseudorangePositionVelocityFromRealTimeEvents {
       Log.d(TAG, " No reference Location ..... no position is calculated");
       return;
     }
-    for (int i = 0; i < MAX_NUMBER_OF_SATELLITES; i++) {
-      mUsefulSatellitesToReceiverMeasurements[i] = null;
-      mUsefulSatellitesToTowNs[i] = null;
-    }
-    
-      GnssClock gnssClock = event.getClock();
-    mArrivalTimeSinceGpsEpochNs = gnssClock.getTimeNanos() - gnssClock.getFullBiasNanos();
-      for (GnssMeasurement measurement : event.getMeasurements()) {
-      // ignore any measurement if it is not from GPS constellation
-      if (measurement.getConstellationType() != GnssStatus.CONSTELLATION_GPS) {
-          continue;
-        }
-
-      if (isGpsL5FrequencyHz(measurement.getCarrierFrequencyHz())) {
-        continue;
-      }
-
-        // ignore raw data if time is zero, if signal to noise ratio is below threshold or if
-        // TOW is not yet decoded
-        if (measurement.getCn0DbHz() >= C_TO_N0_THRESHOLD_DB_HZ
-            && (measurement.getState() & (1L << TOW_DECODED_MEASUREMENT_STATE_BIT)) != 0) {
-          // calculate day of year and Gps week number needed for the least square
-          GpsTime gpsTime = new GpsTime(mArrivalTimeSinceGpsEpochNs);
-          // Gps weekly epoch in Nanoseconds: defined as of every Sunday night at 00:00:000
-          long gpsWeekEpochNs = GpsTime.getGpsWeekEpochNano(gpsTime);
-          mArrivalTimeSinceGPSWeekNs = mArrivalTimeSinceGpsEpochNs - gpsWeekEpochNs;
-          mGpsWeekNumber = gpsTime.getGpsWeekSecond().first;
-          // calculate day of the year between 1 and 366
-          Calendar cal = gpsTime.getTimeInCalendar();
-          mDayOfYear1To366 = cal.get(Calendar.DAY_OF_YEAR);
-
-          long receivedGPSTowNs = measurement.getReceivedSvTimeNanos();
-          if (receivedGPSTowNs > mLargestTowNs) {
-            mLargestTowNs = receivedGPSTowNs;
-          }
-          mUsefulSatellitesToTowNs[measurement.getSvid() - 1] = receivedGPSTowNs;
-          GpsMeasurement gpsReceiverMeasurement =
-              new GpsMeasurement(
-                  (long) mArrivalTimeSinceGPSWeekNs,
-                  measurement.getAccumulatedDeltaRangeMeters(),
-                  measurement.getAccumulatedDeltaRangeState()
-                      == VALID_ACCUMULATED_DELTA_RANGE_STATE,
-                  measurement.getPseudorangeRateMetersPerSecond(),
-                  measurement.getCn0DbHz(),
-                  measurement.getAccumulatedDeltaRangeUncertaintyMeters(),
-                  measurement.getPseudorangeRateUncertaintyMetersPerSecond());
-          mUsefulSatellitesToReceiverMeasurements[measurement.getSvid() - 1] =
-              gpsReceiverMeasurement;
-        }
-      }
+    collectUsefulMeasurements(event);
 
     Log.d(TAG, "Using navigation message from SUPL server");
     if (mFirstSuplRequestNeeded
@@ -160,7 +114,116 @@ public class PseudorangePositionVelocityFromRealTimeEvents {
       }
     }
 
+    computePositionVelocitySolutionFromUsefulMeasurements();
+  }
+
+  /**
+   * Computes Weighted least square position and velocity solutions from a logged stream of
+   * {@link GnssMeasurementsEvent}s, for example to replay a recorded drive offline. The given
+   * navigation message is used for all events instead of requesting one from the SUPL server, so
+   * no reference position is needed.
+   *
+   * <p>The events are processed in order exactly as by
+   * {@link #computePositionVelocitySolutionsFromRawMeas}, and the time spent in and the objects
+   * allocated by the least square solution of each event are reported with its solution.
+   *
+   * @return the solutions of the events for which a position could be computed, in order
+   */
+  @SuppressWarnings("deprecation")
+  public List<PositionVelocitySolution> computePositionVelocitySolutionsFromLoggedEvents(
+      GpsNavMessageProto navMessageProto, Iterable<GnssMeasurementsEvent> events)
+      throws Exception {
+    mGpsNavMessageProtoUsed = navMessageProto;
+    List<PositionVelocitySolution> solutions = new ArrayList<>();
+    long totalSolveTimeNanos = 0;
+    long totalAllocationCount = 0;
+    Debug.startAllocCounting();
+    try {
+      for (GnssMeasurementsEvent event : events) {
+        collectUsefulMeasurements(event);
+        if (computePositionVelocitySolutionFromUsefulMeasurements()) {
+          solutions.add(new PositionVelocitySolution(mPositionSolutionLatLngDeg.clone(),
+              mVelocitySolutionEnuMps.clone(), mPositionVelocityUncertaintyEnu.clone(),
+              mLastSolveTimeNanos, mLastSolveAllocationCount));
+          totalSolveTimeNanos += mLastSolveTimeNanos;
+          totalAllocationCount += mLastSolveAllocationCount;
+        }
+      }
+    } finally {
+      Debug.stopAllocCounting();
+    }
+    if (!solutions.isEmpty()) {
+      Log.i(TAG, "Solved " + solutions.size() + " epochs, average "
+          + totalSolveTimeNanos / solutions.size() + " ns and "
+          + totalAllocationCount / solutions.size() + " allocations per epoch");
+    }
+    return solutions;
+  }
+
+  /**
+   * Fills {@link #mUsefulSatellitesToReceiverMeasurements} and {@link #mUsefulSatellitesToTowNs}
+   * with the GPS measurements of an event that are useful for the position solution.
+   */
+  private void collectUsefulMeasurements(GnssMeasurementsEvent event) {
+    for (int i = 0; i < MAX_NUMBER_OF_SATELLITES; i++) {
+      mUsefulSatellitesToReceiverMeasurements[i] = null;
+      mUsefulSatellitesToTowNs[i] = null;
+    }
+
+    GnssClock gnssClock = event.getClock();
+    mArrivalTimeSinceGpsEpochNs = gnssClock.getTimeNanos() - gnssClock.getFullBiasNanos();
+    for (GnssMeasurement measurement : event.getMeasurements()) {
+      // ignore any measurement if it is not from GPS constellation
+      if (measurement.getConstellationType() != GnssStatus.CONSTELLATION_GPS) {
+        continue;
+      }
+
+      if (isGpsL5FrequencyHz(measurement.getCarrierFrequencyHz())) {
+        continue;
+      }
 
+      // ignore raw data if time is zero, if signal to noise ratio is below threshold or if
+      // TOW is not yet decoded
+      if (measurement.getCn0DbHz() >= C_TO_N0_THRESHOLD_DB_HZ
+          && (measurement.getState() & (1L << TOW_DECODED_MEASUREMENT_STATE_BIT)) != 0) {
+        // calculate day of year and Gps week number needed for the least square
+        GpsTime gpsTime = new GpsTime(mArrivalTimeSinceGpsEpochNs);
+        // Gps weekly epoch in Nanoseconds: defined as of every Sunday night at 00:00:000
+        long gpsWeekEpochNs = GpsTime.getGpsWeekEpochNano(gpsTime);
+        mArrivalTimeSinceGPSWeekNs = mArrivalTimeSinceGpsEpochNs - gpsWeekEpochNs;
+        mGpsWeekNumber = gpsTime.getGpsWeekSecond().first;
+        // calculate day of the year between 1 and 366
+        Calendar cal = gpsTime.getTimeInCalendar();
+        mDayOfYear1To366 = cal.get(Calendar.DAY_OF_YEAR);
+
+        long receivedGPSTowNs = measurement.getReceivedSvTimeNanos();
+        if (receivedGPSTowNs > mLargestTowNs) {
+          mLargestTowNs = receivedGPSTowNs;
+        }
+        mUsefulSatellitesToTowNs[measurement.getSvid() - 1] = receivedGPSTowNs;
+        GpsMeasurement gpsReceiverMeasurement =
+            new GpsMeasurement(
+                (long) mArrivalTimeSinceGPSWeekNs,
+                measurement.getAccumulatedDeltaRangeMeters(),
+                measurement.getAccumulatedDeltaRangeState()
+                    == VALID_ACCUMULATED_DELTA_RANGE_STATE,
+                measurement.getPseudorangeRateMetersPerSecond(),
+                measurement.getCn0DbHz(),
+                measurement.getAccumulatedDeltaRangeUncertaintyMeters(),
+                measurement.getPseudorangeRateUncertaintyMetersPerSecond());
+        mUsefulSatellitesToReceiverMeasurements[measurement.getSvid() - 1] =
+            gpsReceiverMeasurement;
+      }
+    }
+  }
+
+  /**
+   * Computes the position and velocity solutions from the useful measurements and the navigation
+   * message in {@link #mGpsNavMessageProtoUsed}.
+   *
+   * @return true if a position was computed
+   */
+  private boolean computePositionVelocitySolutionFromUsefulMeasurements() throws Exception {
     // some times the SUPL server returns less satellites than the visible ones, so remove those
     // visible satellites that are not returned by SUPL
     for (int i = 0; i < MAX_NUMBER_OF_SATELLITES; i++) {
@@ -170,103 +233,105 @@ public class PseudorangePositionVelocityFromRealTimeEvents {
         mUsefulSatellitesToTowNs[i] = null;
       }
     }
-      
-      // calculate the number of useful satellites
-      int numberOfUsefulSatellites = 0;
-      for (int i = 0; i < mUsefulSatellitesToReceiverMeasurements.length; i++) {
-        if (mUsefulSatellitesToReceiverMeasurements[i] != null) {
-          numberOfUsefulSatellites++;
-        }
+
+    // calculate the number of useful satellites
+    int numberOfUsefulSatellites = 0;
+    for (int i = 0; i < mUsefulSatellitesToReceiverMeasurements.length; i++) {
+      if (mUsefulSatellitesToReceiverMeasurements[i] != null) {
+        numberOfUsefulSatellites++;
       }
-      if (numberOfUsefulSatellites >= MINIMUM_NUMBER_OF_USEFUL_SATELLITES) {
-        // ignore first set of > 4 satellites as they often result in erroneous position
-        if (!mFirstUsefulMeasurementSet) {
-          // start with last known position and velocity of zero. Following the structure:
-          // [X position, Y position, Z position, clock bias,
-          //  X Velocity, Y Velocity, Z Velocity, clock bias rate]
-          double[] positionVeloctySolutionEcef = {0.0, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0};
-          double[] positionVelocityUncertaintyEnu = new double[] {0.0, 0.0, 0.0, 0.0, 0.0, 0.0};
-          performPositionVelocityComputationEcef(
-              mUserPositionVelocityLeastSquareCalculator,
-              mUsefulSatellitesToReceiverMeasurements,
-              mUsefulSatellitesToTowNs,
-              mLargestTowNs,
-              mArrivalTimeSinceGPSWeekNs,
-              mDayOfYear1To366,
-              mGpsWeekNumber,
-              positionVeloctySolutionEcef,
-              positionVelocityUncertaintyEnu);
-          // convert the position solution from ECEF to latitude, longitude and altitude
-          GeodeticLlaValues latLngAlt =
-              Ecef2LlaConverter.convertECEFToLLACloseForm(
-                  positionVeloctySolutionEcef[0],
-                  positionVeloctySolutionEcef[1],
-                  positionVeloctySolutionEcef[2]);
-          mPositionSolutionLatLngDeg[0] = Math.toDegrees(latLngAlt.latitudeRadians);
-          mPositionSolutionLatLngDeg[1] = Math.toDegrees(latLngAlt.longitudeRadians);
-          mPositionSolutionLatLngDeg[2] = latLngAlt.altitudeMeters;
-          mPositionVelocityUncertaintyEnu[0] = positionVelocityUncertaintyEnu[0];
-          mPositionVelocityUncertaintyEnu[1] = positionVelocityUncertaintyEnu[1];
-          mPositionVelocityUncertaintyEnu[2] = positionVelocityUncertaintyEnu[2];
-          Log.d(TAG,
-              "Position Uncertainty ENU Meters :"
-                  + mPositionVelocityUncertaintyEnu[0]
-                  + " "
-                  + mPositionVelocityUncertaintyEnu[1]
-                  + " "
-                  + mPositionVelocityUncertaintyEnu[2]);
-          Log.d(
-              TAG,
-              "Latitude, Longitude, Altitude: "
-                  + mPositionSolutionLatLngDeg[0]
-                  + " "
-                  + mPositionSolutionLatLngDeg[1]
-                  + " "
-                  + mPositionSolutionLatLngDeg[2]);
-          EnuValues velocityEnu = Ecef2EnuConverter.convertEcefToEnu(
-              positionVeloctySolutionEcef[4],
-              positionVeloctySolutionEcef[5],
-              positionVeloctySolutionEcef[6],
-              latLngAlt.latitudeRadians,
-              latLngAlt.longitudeRadians
-          );
-
-          mVelocitySolutionEnuMps[0] = velocityEnu.enuEast;
-          mVelocitySolutionEnuMps[1] = velocityEnu.enuNorth;
-          mVelocitySolutionEnuMps[2] = velocityEnu.enuUP;
-          Log.d(
-              TAG,
-              "Velocity ENU Mps: "
-                  + mVelocitySolutionEnuMps[0]
-                  + " "
-                  + mVelocitySolutionEnuMps[1]
-                  + " "
-                  + mVelocitySolutionEnuMps[2]);
-          mPositionVelocityUncertaintyEnu[3] = positionVelocityUncertaintyEnu[3];
-          mPositionVelocityUncertaintyEnu[4] = positionVelocityUncertaintyEnu[4];
-          mPositionVelocityUncertaintyEnu[5] = positionVelocityUncertaintyEnu[5];
-          Log.d(TAG,
-              "Velocity Uncertainty ENU Mps :"
-                  + mPositionVelocityUncertaintyEnu[3]
-                  + " "
-                  + mPositionVelocityUncertaintyEnu[4]
-                  + " "
-                  + mPositionVelocityUncertaintyEnu[5]);
-        }
-        mFirstUsefulMeasurementSet = false;
-      } else {
-        Log.d(
-            TAG,
-            "Less than four satellites with SNR above threshold visible ... "
-                + "no position is calculated!");
-
-        mPositionSolutionLatLngDeg[0] = Double.NaN;
-        mPositionSolutionLatLngDeg[1] = Double.NaN;
-        mPositionSolutionLatLngDeg[2] = Double.NaN;
-        mVelocitySolutionEnuMps[0] = Double.NaN;
-        mVelocitySolutionEnuMps[1] = Double.NaN;
-        mVelocitySolutionEnuMps[2] = Double.NaN;
     }
+    if (numberOfUsefulSatellites < MINIMUM_NUMBER_OF_USEFUL_SATELLITES) {
+      Log.d(
+          TAG,
+          "Less than four satellites with SNR above threshold visible ... "
+              + "no position is calculated!");
+
+      mPositionSolutionLatLngDeg[0] = Double.NaN;
+      mPositionSolutionLatLngDeg[1] = Double.NaN;
+      mPositionSolutionLatLngDeg[2] = Double.NaN;
+      mVelocitySolutionEnuMps[0] = Double.NaN;
+      mVelocitySolutionEnuMps[1] = Double.NaN;
+      mVelocitySolutionEnuMps[2] = Double.NaN;
+      return false;
+    }
+    // ignore first set of > 4 satellites as they often result in erroneous position
+    if (mFirstUsefulMeasurementSet) {
+      mFirstUsefulMeasurementSet = false;
+      return false;
+    }
+    // start with last known position and velocity of zero. Following the structure:
+    // [X position, Y position, Z position, clock bias,
+    //  X Velocity, Y Velocity, Z Velocity, clock bias rate]
+    double[] positionVeloctySolutionEcef = {0.0, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0};
+    double[] positionVelocityUncertaintyEnu = new double[] {0.0, 0.0, 0.0, 0.0, 0.0, 0.0};
+    performPositionVelocityComputationEcef(
+        mUserPositionVelocityLeastSquareCalculator,
+        mUsefulSatellitesToReceiverMeasurements,
+        mUsefulSatellitesToTowNs,
+        mLargestTowNs,
+        mArrivalTimeSinceGPSWeekNs,
+        mDayOfYear1To366,
+        mGpsWeekNumber,
+        positionVeloctySolutionEcef,
+        positionVelocityUncertaintyEnu);
+    // convert the position solution from ECEF to latitude, longitude and altitude
+    GeodeticLlaValues latLngAlt =
+        Ecef2LlaConverter.convertECEFToLLACloseForm(
+            positionVeloctySolutionEcef[0],
+            positionVeloctySolutionEcef[1],
+            positionVeloctySolutionEcef[2]);
+    mPositionSolutionLatLngDeg[0] = Math.toDegrees(latLngAlt.latitudeRadians);
+    mPositionSolutionLatLngDeg[1] = Math.toDegrees(latLngAlt.longitudeRadians);
+    mPositionSolutionLatLngDeg[2] = latLngAlt.altitudeMeters;
+    mPositionVelocityUncertaintyEnu[0] = positionVelocityUncertaintyEnu[0];
+    mPositionVelocityUncertaintyEnu[1] = positionVelocityUncertaintyEnu[1];
+    mPositionVelocityUncertaintyEnu[2] = positionVelocityUncertaintyEnu[2];
+    Log.d(TAG,
+        "Position Uncertainty ENU Meters :"
+            + mPositionVelocityUncertaintyEnu[0]
+            + " "
+            + mPositionVelocityUncertaintyEnu[1]
+            + " "
+            + mPositionVelocityUncertaintyEnu[2]);
+    Log.d(
+        TAG,
+        "Latitude, Longitude, Altitude: "
+            + mPositionSolutionLatLngDeg[0]
+            + " "
+            + mPositionSolutionLatLngDeg[1]
+            + " "
+            + mPositionSolutionLatLngDeg[2]);
+    EnuValues velocityEnu = Ecef2EnuConverter.convertEcefToEnu(
+        positionVeloctySolutionEcef[4],
+        positionVeloctySolutionEcef[5],
+        positionVeloctySolutionEcef[6],
+        latLngAlt.latitudeRadians,
+        latLngAlt.longitudeRadians
+    );
+
+    mVelocitySolutionEnuMps[0] = velocityEnu.enuEast;
+    mVelocitySolutionEnuMps[1] = velocityEnu.enuNorth;
+    mVelocitySolutionEnuMps[2] = velocityEnu.enuUP;
+    Log.d(
+        TAG,
+        "Velocity ENU Mps: "
+            + mVelocitySolutionEnuMps[0]
+            + " "
+            + mVelocitySolutionEnuMps[1]
+            + " "
+            + mVelocitySolutionEnuMps[2]);
+    mPositionVelocityUncertaintyEnu[3] = positionVelocityUncertaintyEnu[3];
+    mPositionVelocityUncertaintyEnu[4] = positionVelocityUncertaintyEnu[4];
+    mPositionVelocityUncertaintyEnu[5] = positionVelocityUncertaintyEnu[5];
+    Log.d(TAG,
+        "Velocity Uncertainty ENU Mps :"
+            + mPositionVelocityUncertaintyEnu[3]
+            + " "
+            + mPositionVelocityUncertaintyEnu[4]
+            + " "
+            + mPositionVelocityUncertaintyEnu[5]);
+    return true;
   }
 
   private static boolean isGpsL5FrequencyHz(float carrierFrequencyHz) {
@@ -281,9 +346,7 @@ public class PseudorangePositionVelocityFromRealTimeEvents {
   }
 
   private boolean navMessageProtoContainsSvid(GpsNavMessageProto navMessageProto, int svid) {
-    List<GpsEphemerisProto> ephemeridesList =
-        new ArrayList<GpsEphemerisProto>(Arrays.asList(navMessageProto.ephemerids));
-    for (GpsEphemerisProto ephProtoFromList : ephemeridesList) {
+    for (GpsEphemerisProto ephProtoFromList : navMessageProto.ephemerids) {
       if (ephProtoFromList.prn == svid) {
         return true;
       }
@@ -296,6 +359,7 @@ public class PseudorangePositionVelocityFromRealTimeEvents {
    * {@link GpsMeasurement} in meters and meters per second and store the result in
    * {@code positionVelocitySolutionEcef}
    */
+  @SuppressWarnings("deprecation")
   private void performPositionVelocityComputationEcef(
       UserPositionVelocityWeightedLeastSquare userPositionVelocityLeastSquare,
       GpsMeasurement[] usefulSatellitesToReceiverMeasurements,
@@ -314,7 +378,11 @@ public class PseudorangePositionVelocityFromRealTimeEvents {
             usefulSatellitesToTOWNs,
             largestTowNs);
 
-    // calculate iterative least square position solution and velocity solutions
+    // calculate iterative least square position solution and velocity solutions. The allocation
+    // count is only meaningful while allocations are counted, as for logged events, and is taken
+    // as a difference so that the counters of other users are left alone.
+    int startAllocationCount = Debug.getThreadAllocCount();
+    long startNanos = System.nanoTime();
     userPositionVelocityLeastSquare.calculateUserPositionVelocityLeastSquare(
         mGpsNavMessageProtoUsed,
         usefulSatellitesToPseudorangeMeasurements,
@@ -323,7 +391,11 @@ public class PseudorangePositionVelocityFromRealTimeEvents {
         dayOfYear1To366,
         positionVelocitySolutionEcef,
         positionVelocityUncertaintyEnu);
+    mLastSolveTimeNanos = System.nanoTime() - startNanos;
+    mLastSolveAllocationCount = Debug.getThreadAllocCount() - startAllocationCount;
 
+    Log.d(TAG, "Least square solution computed in " + mLastSolveTimeNanos + " ns and "
+        + mLastSolveAllocationCount + " allocations");
     Log.d(
         TAG,
         "Least Square Position Solution in ECEF meters: "
@@ -385,4 +457,36 @@ public class PseudorangePositionVelocityFromRealTimeEvents {
   public double[] getPositionVelocityUncertaintyEnu() {
     return mPositionVelocityUncertaintyEnu;
   }
+
+  /** Position and velocity solution computed from one logged {@link GnssMeasurementsEvent} */
+  public static class PositionVelocitySolution {
+    /** Latitude and longitude in degrees, and altitude in meters */
+    public final double[] positionSolutionLatLngDeg;
+
+    /** Velocity in meters per second in the local ENU system */
+    public final double[] velocitySolutionEnuMps;
+
+    /**
+     * Position and velocity uncertainties, as returned by
+     * {@link PseudorangePositionVelocityFromRealTimeEvents#getPositionVelocityUncertaintyEnu()}
+     */
+    public final double[] positionVelocityUncertaintyEnu;
+
+    /** Time spent in the least square solution in nanoseconds */
+    public final long solveTimeNanos;
+
+    /** Number of objects allocated by the least square solution */
+    public final int solveAllocationCount;
+
+    /** Constructor */
+    public PositionVelocitySolution(double[] positionSolutionLatLngDeg,
+        double[] velocitySolutionEnuMps, double[] positionVelocityUncertaintyEnu,
+        long solveTimeNanos, int solveAllocationCount) {
+      this.positionSolutionLatLngDeg = positionSolutionLatLngDeg;
+      this.velocitySolutionEnuMps = velocitySolutionEnuMps;
+      this.positionVelocityUncertaintyEnu = positionVelocityUncertaintyEnu;
+      this.solveTimeNanos = solveTimeNanos;
+      this.solveAllocationCount = solveAllocationCount;
+    }
+  }
 }
@@ -35,10 +35,6 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
-import org.apache.commons.math.linear.Array2DRowRealMatrix;
-import org.apache.commons.math.linear.LUDecompositionImpl;
-import org.apache.commons.math.linear.QRDecompositionImpl;
-import org.apache.commons.math.linear.RealMatrix;
 
 /**
  * Computes an iterative least square receiver position solution given the pseudorange (meters) and
@@ -70,7 +66,14 @@ class UserPositionVelocityWeightedLeastSquare {
   private PseudorangeSmoother pseudorangeSmoother = null;
   private double geoidHeightMeters;
   private boolean calculateGeoidMeters = true;
-  private RealMatrix geometryMatrix;
+  /** Solves the least squares of every iteration and epoch in preallocated arrays */
+  private final WeightedLeastSquareSolver leastSquareSolver =
+      new WeightedLeastSquareSolver(MAX_NUMBER_OF_SATELLITES);
+  private final double[] deltaPositionMeters = new double[4];
+  private final double[] pseudorangeWeightsMetersMinus2 = new double[MAX_NUMBER_OF_SATELLITES];
+  private final double[] deltaPseudoRangeRateMps = new double[MAX_NUMBER_OF_SATELLITES];
+  private final double[] pseudorangeRateWeights = new double[MAX_NUMBER_OF_SATELLITES];
+  private final double[] velocityMps = new double[4];
 
   /** Default Constructor */
   public UserPositionVelocityWeightedLeastSquare() {
@@ -131,7 +134,6 @@ class UserPositionVelocityWeightedLeastSquare {
       double[] positionVelocityUncertaintyEnu)
       throws Exception {
 
-    double[] deltaPositionMeters;
     // make a copy of usefulSatellitesToReceiverMeasurements, to keep the original list the same
     List<GpsMeasurementWithRangeAndUncertainty> satellitesToReceiverMeasurements =
       new ArrayList<GpsMeasurementWithRangeAndUncertainty>(usefulSatellitesToReceiverMeasurements);
@@ -162,35 +164,33 @@ class UserPositionVelocityWeightedLeastSquare {
 
       // Calcualte the geometry matrix according to "Global Positioning System: Theory and
       // Applications", Parkinson and Spilker page 413
-      RealMatrix covarianceMatrixM2 =
-          new Array2DRowRealMatrix(satPosPseudorangeResidualAndWeight.covarianceMatrixMetersSquare);
-      geometryMatrix = new Array2DRowRealMatrix(calculateGeometryMatrix(
+      leastSquareSolver.setGeometryMatrix(
           satPosPseudorangeResidualAndWeight.satellitesPositionsMeters,
-          positionVelocitySolutionECEF));
-      RealMatrix weightedGeometryMatrix;
-      RealMatrix weightMatrixMetersMinus2 = null;
+          positionVelocitySolutionECEF);
+      double[] weightsMetersMinus2 = null;
       // Apply weighted least square only if the covariance matrix is not singular (has a non-zero
       // determinant), otherwise apply ordinary least square. The reason is to ignore reported
-      // signal to noise ratios by the receiver that can lead to such singularities
-      LUDecompositionImpl ludCovMatrixM2 = new LUDecompositionImpl(covarianceMatrixM2);
-      double det = ludCovMatrixM2.getDeterminant();
-
-      if (det <= DOUBLE_ROUND_OFF_TOLERANCE) {
-        // Do not weight the geometry matrix if covariance matrix is singular.
-        weightedGeometryMatrix = geometryMatrix;
-      } else {
-        weightMatrixMetersMinus2 = ludCovMatrixM2.getSolver().getInverse();
-        RealMatrix hMatrix =
-            calculateHMatrix(weightMatrixMetersMinus2, geometryMatrix);
-        weightedGeometryMatrix = hMatrix.multiply(geometryMatrix.transpose())
-            .multiply(weightMatrixMetersMinus2);
+      // signal to noise ratios by the receiver that can lead to such singularities. The
+      // covariance matrix is diagonal, so its determinant is the product of the variances.
+      double[] variancesMetersSquare =
+          satPosPseudorangeResidualAndWeight.pseudorangeVariancesMetersSquare;
+      double det = 1;
+      for (int i = 0; i < variancesMetersSquare.length; i++) {
+        det *= variancesMetersSquare[i];
+      }
+
+      if (det > DOUBLE_ROUND_OFF_TOLERANCE) {
+        weightsMetersMinus2 = pseudorangeWeightsMetersMinus2;
+        for (int i = 0; i < variancesMetersSquare.length; i++) {
+          weightsMetersMinus2[i] = 1 / variancesMetersSquare[i];
+        }
       }
 
       // Equation 9 page 413 from "Global Positioning System: Theory and Applicaitons", Parkinson
       // and Spilker
-      deltaPositionMeters =
-          GpsMathOperations.matrixByColVectMultiplication(weightedGeometryMatrix.getData(),
-          satPosPseudorangeResidualAndWeight.pseudorangeResidualsMeters);
+      leastSquareSolver.decomposeNormalMatrix(weightsMetersMinus2);
+      leastSquareSolver.solveNormalEquations(weightsMetersMinus2,
+          satPosPseudorangeResidualAndWeight.pseudorangeResidualsMeters, deltaPositionMeters);
 
       // Apply corrections to the position estimate
       positionVelocitySolutionECEF[0] += deltaPositionMeters[0];
@@ -206,10 +206,9 @@ class UserPositionVelocityWeightedLeastSquare {
               receiverGPSWeek,
               dayOfYear1To366,
               positionVelocitySolutionECEF,
-              deltaPositionMeters,
               doAtmosphericCorrections,
               satPosPseudorangeResidualAndWeight,
-              weightMatrixMetersMinus2);
+              weightsMetersMinus2);
       repeatLeastSquare = false;
       int satsWithResidualBelowThreshold =
           satPosPseudorangeResidualAndWeight.pseudorangeResidualsMeters.length;
@@ -232,15 +231,6 @@ class UserPositionVelocityWeightedLeastSquare {
     // Reference: Pratap Misra and Per Enge
     // "Global Positioning System: Signals, Measurements, and Performance" Page 218.
 
-    // Gets the number of satellite used in Geometry Matrix
-    numberOfUsefulSatellites = geometryMatrix.getRowDimension();
-
-    RealMatrix rangeRateMps = new Array2DRowRealMatrix(numberOfUsefulSatellites, 1);
-    RealMatrix deltaPseudoRangeRateMps =
-        new Array2DRowRealMatrix(numberOfUsefulSatellites, 1);
-    RealMatrix pseudorangeRateWeight
-        = new Array2DRowRealMatrix(numberOfUsefulSatellites, numberOfUsefulSatellites);
-
     // Correct the receiver time of week with the estimated receiver clock bias
     receiverGPSTowAtReceptionSeconds =
         receiverGPSTowAtReceptionSeconds - positionVelocitySolutionECEF[3] / SPEED_OF_LIGHT_MPS;
@@ -276,57 +266,48 @@ class UserPositionVelocityWeightedLeastSquare {
                 correctedTowAndWeek.weekNumber);
 
         // Fill in range rates. range rate = satellite velocity (dot product) line-of-sight vector
-        rangeRateMps.setEntry(measurementCount, 0,  -1 * (
+        double rangeRateMps = -1 * (
             satPosECEFMetersVelocityMPS.velocityXMetersPerSec
-                * geometryMatrix.getEntry(measurementCount, 0)
+                * leastSquareSolver.getGeometryMatrixEntry(measurementCount, 0)
                 + satPosECEFMetersVelocityMPS.velocityYMetersPerSec
-                * geometryMatrix.getEntry(measurementCount, 1)
+                * leastSquareSolver.getGeometryMatrixEntry(measurementCount, 1)
                 + satPosECEFMetersVelocityMPS.velocityZMetersPerSec
-                * geometryMatrix.getEntry(measurementCount, 2)));
+                * leastSquareSolver.getGeometryMatrixEntry(measurementCount, 2));
 
-        deltaPseudoRangeRateMps.setEntry(measurementCount, 0,
+        deltaPseudoRangeRateMps[measurementCount] =
             satellitesToReceiverMeasurements.get(i).pseudorangeRateMps
-                - rangeRateMps.getEntry(measurementCount, 0) + satelliteClockErrorRateMps
-                - positionVelocitySolutionECEF[7]);
+                - rangeRateMps + satelliteClockErrorRateMps
+                - positionVelocitySolutionECEF[7];
 
         // Calculate the velocity weight matrix by using 1 / square(Pseudorangerate Uncertainty)
         // along the diagonal
-        pseudorangeRateWeight.setEntry(measurementCount, measurementCount,
+        pseudorangeRateWeights[measurementCount] =
             1 / (satellitesToReceiverMeasurements
                 .get(i).pseudorangeRateUncertaintyMps
                 * satellitesToReceiverMeasurements
-                .get(i).pseudorangeRateUncertaintyMps));
+                .get(i).pseudorangeRateUncertaintyMps);
         measurementCount++;
       }
     }
 
-    RealMatrix weightedGeoMatrix = pseudorangeRateWeight.multiply(geometryMatrix);
-    RealMatrix deltaPseudoRangeRateWeightedMps =
-        pseudorangeRateWeight.multiply(deltaPseudoRangeRateMps);
-    QRDecompositionImpl qrdWeightedGeoMatrix = new QRDecompositionImpl(weightedGeoMatrix);
-    RealMatrix velocityMps
-        = qrdWeightedGeoMatrix.getSolver().solve(deltaPseudoRangeRateWeightedMps);
-    positionVelocitySolutionECEF[4] = velocityMps.getEntry(0, 0);
-    positionVelocitySolutionECEF[5] = velocityMps.getEntry(1, 0);
-    positionVelocitySolutionECEF[6] = velocityMps.getEntry(2, 0);
-    positionVelocitySolutionECEF[7] = velocityMps.getEntry(3, 0);
-
-    RealMatrix pseudorangeWeight
-        = new LUDecompositionImpl(
-            new Array2DRowRealMatrix(satPosPseudorangeResidualAndWeight.covarianceMatrixMetersSquare
-            )
-    ).getSolver().getInverse();
+    leastSquareSolver.solveByQrDecomposition(
+        pseudorangeRateWeights, deltaPseudoRangeRateMps, velocityMps);
+    positionVelocitySolutionECEF[4] = velocityMps[0];
+    positionVelocitySolutionECEF[5] = velocityMps[1];
+    positionVelocitySolutionECEF[6] = velocityMps[2];
+    positionVelocitySolutionECEF[7] = velocityMps[3];
+
+    double[] variancesMetersSquare =
+        satPosPseudorangeResidualAndWeight.pseudorangeVariancesMetersSquare;
+    for (int i = 0; i < variancesMetersSquare.length; i++) {
+      pseudorangeWeightsMetersMinus2[i] = 1 / variancesMetersSquare[i];
+    }
 
     // Calculates and store the uncertainties of position and velocity in local ENU system in meters
     // and meters per second.
-    double[] pvUncertainty =
-        calculatePositionVelocityUncertaintyEnu(pseudorangeRateWeight, pseudorangeWeight,
-            positionVelocitySolutionECEF);
-    System.arraycopy(pvUncertainty,
-        0 /*source starting pos*/,
-        positionVelocityUncertaintyEnu,
-        0 /*destination starting pos*/,
-        6 /*length of elements*/);
+    calculatePositionVelocityUncertaintyEnu(pseudorangeRateWeights,
+        pseudorangeWeightsMetersMinus2, positionVelocitySolutionECEF,
+        positionVelocityUncertaintyEnu);
   }
 
   /**
@@ -336,59 +317,42 @@ class UserPositionVelocityWeightedLeastSquare {
    * <p> Reference: Global Positioning System: Signals, Measurements, and Performance
    * by Pratap Misra, Per Enge, Page 206 - 209.
    *
-   * @param velocityWeightMatrix the velocity weight matrix
-   * @param positionWeightMatrix the position weight matrix
+   * @param velocityWeights the diagonal of the velocity weight matrix
+   * @param positionWeights the diagonal of the position weight matrix
    * @param positionVelocitySolution the position and velocity solution in ECEF
-   * @return an array containing the position and velocity uncertainties in ENU coordinate system.
-   *         [0-2] Enu uncertainty of position solution in meters.
-   *         [3-5] Enu uncertainty of velocity solution in meters per second.
+   * @param positionVelocityUncertaintyEnu receives the position and velocity uncertainties in ENU
+   *        coordinate system.
+   *        [0-2] Enu uncertainty of position solution in meters.
+   *        [3-5] Enu uncertainty of velocity solution in meters per second.
+   * @return false if no geometry matrix has been calculated yet, true otherwise
    */
-  public double[] calculatePositionVelocityUncertaintyEnu(
-      RealMatrix velocityWeightMatrix, RealMatrix positionWeightMatrix,
-      double[] positionVelocitySolution){
+  public boolean calculatePositionVelocityUncertaintyEnu(
+      double[] velocityWeights, double[] positionWeights,
+      double[] positionVelocitySolution, double[] positionVelocityUncertaintyEnu) {
 
-    if (geometryMatrix == null){
-      return null;
+    if (leastSquareSolver.getRowCount() == 0) {
+      return false;
     }
 
-    RealMatrix velocityH = calculateHMatrix(velocityWeightMatrix, geometryMatrix);
-    RealMatrix positionH = calculateHMatrix(positionWeightMatrix, geometryMatrix);
-
     // Calculate the rotation Matrix to convert to local ENU system.
-    RealMatrix rotationMatrix = new Array2DRowRealMatrix(4, 4);
     GeodeticLlaValues llaValues = Ecef2LlaConverter.convertECEFToLLACloseForm
         (positionVelocitySolution[0], positionVelocitySolution[1], positionVelocitySolution[2]);
-    rotationMatrix.setSubMatrix(
-        Ecef2EnuConverter.getRotationMatrix(llaValues.longitudeRadians,
-            llaValues.latitudeRadians).getData(), 0, 0);
-    rotationMatrix.setEntry(3, 3, 1);
-
-    // Convert to local ENU by pre-multiply rotation matrix and multiply rotation matrix transposed
-    velocityH = rotationMatrix.multiply(velocityH).multiply(rotationMatrix.transpose());
-    positionH = rotationMatrix.multiply(positionH).multiply(rotationMatrix.transpose());
-
-    // Return the square root of diagonal entries
-    return new double[] {
-        Math.sqrt(positionH.getEntry(0, 0)), Math.sqrt(positionH.getEntry(1, 1)),
-        Math.sqrt(positionH.getEntry(2, 2)), Math.sqrt(velocityH.getEntry(0, 0)),
-        Math.sqrt(velocityH.getEntry(1, 1)), Math.sqrt(velocityH.getEntry(2, 2))};
-  }
-
-  /**
-   * Calculate the measurement connection matrix H as a function of weightMatrix and
-   * geometryMatrix.
-   *
-   * <p> H = (geometryMatrixTransposed * Weight * geometryMatrix) ^ -1
-   *
-   * <p> Reference: Global Positioning System: Signals, Measurements, and Performance, P207
-   * @param weightMatrix Weights for computing H Matrix
-   * @return H Matrix
-   */
-  private RealMatrix calculateHMatrix
-      (RealMatrix weightMatrix, RealMatrix geometryMatrix){
-
-    RealMatrix tempH = geometryMatrix.transpose().multiply(weightMatrix).multiply(geometryMatrix);
-    return new LUDecompositionImpl(tempH).getSolver().getInverse();
+    double[][] rotationMatrix = Ecef2EnuConverter.getRotationMatrix(llaValues.longitudeRadians,
+        llaValues.latitudeRadians).getData();
+
+    // The ENU variances are the diagonal of Rotation * H * Rotation^T, the variances of the rows
+    // of the rotation matrix.
+    leastSquareSolver.decomposeNormalMatrix(positionWeights);
+    for (int i = 0; i < 3; i++) {
+      positionVelocityUncertaintyEnu[i] = Math.sqrt(leastSquareSolver.getVariance(
+          rotationMatrix[i][0], rotationMatrix[i][1], rotationMatrix[i][2], 0));
+    }
+    leastSquareSolver.decomposeNormalMatrix(velocityWeights);
+    for (int i = 0; i < 3; i++) {
+      positionVelocityUncertaintyEnu[i + 3] = Math.sqrt(leastSquareSolver.getVariance(
+          rotationMatrix[i][0], rotationMatrix[i][1], rotationMatrix[i][2], 0));
+    }
+    return true;
   }
 
   /**
@@ -403,12 +367,10 @@ class UserPositionVelocityWeightedLeastSquare {
       int receiverGPSWeek,
       int dayOfYear1To366,
       double[] positionSolutionECEF,
-      double[] deltaPositionMeters,
       boolean doAtmosphericCorrections,
       SatellitesPositionPseudorangesResidualAndCovarianceMatrix satPosPseudorangeResidualAndWeight,
-      RealMatrix weightMatrixMetersMinus2)
+      double[] weightsMetersMinus2)
       throws Exception {
-    RealMatrix weightedGeometryMatrix;
     int numberOfIterations = 0;
 
     while ((Math.abs(deltaPositionMeters[0]) + Math.abs(deltaPositionMeters[1])
@@ -427,27 +389,18 @@ class UserPositionVelocityWeightedLeastSquare {
 
       // Calculate the geometry matrix according to "Global Positioning System: Theory and
       // Applications", Parkinson and Spilker page 413
-      geometryMatrix = new Array2DRowRealMatrix(calculateGeometryMatrix(
-          satPosPseudorangeResidualAndWeight.satellitesPositionsMeters, positionSolutionECEF));
+      leastSquareSolver.setGeometryMatrix(
+          satPosPseudorangeResidualAndWeight.satellitesPositionsMeters, positionSolutionECEF);
       // Apply weighted least square only if the covariance matrix is
       // not singular (has a non-zero determinant), otherwise apply ordinary least square.
       // The reason is to ignore reported signal to noise ratios by the receiver that can
-      // lead to such singularities
-      if (weightMatrixMetersMinus2 == null) {
-        weightedGeometryMatrix = geometryMatrix;
-      } else {
-        RealMatrix hMatrix =
-            calculateHMatrix(weightMatrixMetersMinus2, geometryMatrix);
-        weightedGeometryMatrix = hMatrix.multiply(geometryMatrix.transpose())
-            .multiply(weightMatrixMetersMinus2);
-      }
+      // lead to such singularities. Null weights stand for the ordinary least square.
 
       // Equation 9 page 413 from "Global Positioning System: Theory and Applicaitons",
       // Parkinson and Spilker
-      deltaPositionMeters =
-          GpsMathOperations.matrixByColVectMultiplication(
-              weightedGeometryMatrix.getData(),
-              satPosPseudorangeResidualAndWeight.pseudorangeResidualsMeters);
+      leastSquareSolver.decomposeNormalMatrix(weightsMetersMinus2);
+      leastSquareSolver.solveNormalEquations(weightsMetersMinus2,
+          satPosPseudorangeResidualAndWeight.pseudorangeResidualsMeters, deltaPositionMeters);
 
       // Apply corrections to the position estimate
       positionSolutionECEF[0] += deltaPositionMeters[0];
@@ -529,9 +482,8 @@ class UserPositionVelocityWeightedLeastSquare {
             navMeassageProto.iono.alpha[2], navMeassageProto.iono.alpha[3]};
     double[] beta = {navMeassageProto.iono.beta[0], navMeassageProto.iono.beta[1],
         navMeassageProto.iono.beta[2], navMeassageProto.iono.beta[3]};
-    // Weight matrix for the weighted least square
-    RealMatrix covarianceMatrixMetersSquare =
-        new Array2DRowRealMatrix(numberOfUsefulSatellites, numberOfUsefulSatellites);
+    // Diagonal of the covariance matrix for the weighted least square
+    double[] pseudorangeVariancesMetersSquare = new double[numberOfUsefulSatellites];
     calculateSatPosAndResiduals(
         navMeassageProto,
         usefulSatellitesToReceiverMeasurements,
@@ -545,18 +497,18 @@ class UserPositionVelocityWeightedLeastSquare {
         satellitePRNs,
         alpha,
         beta,
-        covarianceMatrixMetersSquare);
+        pseudorangeVariancesMetersSquare);
 
     return new SatellitesPositionPseudorangesResidualAndCovarianceMatrix(satellitePRNs,
         satellitesPositionsECEFMeters, deltaPseudorangesMeters,
-        covarianceMatrixMetersSquare.getData());
+        pseudorangeVariancesMetersSquare);
   }
 
   /**
    * Calculates and fill the position of all visible satellites:
    * {@code satellitesPositionsECEFMeters}, pseudorange measurement residual (difference of measured
    * to predicted pseudoranges): {@code deltaPseudorangesMeters} and covariance matrix from the
-   * weighted least square: {@code covarianceMatrixMetersSquare}. An array of the satellite PRNs
+   * weighted least square: {@code pseudorangeVariancesMetersSquare}. An array of the satellite PRNs
    * {@code satellitePRNs} is as well filled.
    */
   private void calculateSatPosAndResiduals(
@@ -572,7 +524,7 @@ class UserPositionVelocityWeightedLeastSquare {
       int[] satellitePRNs,
       double[] alpha,
       double[] beta,
-      RealMatrix covarianceMatrixMetersSquare)
+      double[] pseudorangeVariancesMetersSquare)
       throws Exception {
     // user position without the clock estimate
     double[] userPositionTempECEFMeters =
@@ -592,8 +544,8 @@ class UserPositionVelocityWeightedLeastSquare {
 
         // Assuming uncorrelated pseudorange measurements, the covariance matrix will be diagonal as
         // follows
-        covarianceMatrixMetersSquare.setEntry(satsCounter, satsCounter,
-            pseudorangeUncertaintyMeters * pseudorangeUncertaintyMeters);
+        pseudorangeVariancesMetersSquare[satsCounter] =
+            pseudorangeUncertaintyMeters * pseudorangeUncertaintyMeters;
 
         // Calculate time of week at transmission time corrected with the satellite clock drift
         GpsTimeOfWeekAndWeekNumber correctedTowAndWeek =
@@ -653,11 +605,9 @@ class UserPositionVelocityWeightedLeastSquare {
   /** Searches ephemerides list for the ephemeris associated with current satellite in process */
   private GpsEphemerisProto getEphemerisForSatellite(GpsNavMessageProto navMeassageProto,
       int satPrn) {
-    List<GpsEphemerisProto> ephemeridesList
-        = new ArrayList<GpsEphemerisProto>(Arrays.asList(navMeassageProto.ephemerids));
     GpsEphemerisProto ephemeridesProto = null;
     int ephemerisPrn = 0;
-    for (GpsEphemerisProto ephProtoFromList : ephemeridesList) {
+    for (GpsEphemerisProto ephProtoFromList : navMeassageProto.ephemerids) {
       ephemerisPrn = ephProtoFromList.prn;
       if (ephemerisPrn == satPrn) {
         ephemeridesProto = ephProtoFromList;
@@ -787,42 +737,10 @@ class UserPositionVelocityWeightedLeastSquare {
         receiverGpsWeek);
   }
 
-  /**
-   * Calculates the Geometry matrix (describing user to satellite geometry) given a list of
-   * satellite positions in ECEF coordinates in meters and the user position in ECEF in meters.
-   *
-   * <p>The geometry matrix has four columns, and rows equal to the number of satellites. For each
-   * of the rows (i.e. for each of the satellites used), the columns are filled with the normalized
-   * line–of-sight vectors and 1 s for the fourth column.
-   *
-   * <p>Source: Parkinson, B.W., Spilker Jr., J.J.: ‘Global positioning system: theory and
-   * applications’ page 413
-   */
-  private static double[][] calculateGeometryMatrix(double[][] satellitePositionsECEFMeters,
-      double[] userPositionECEFMeters) {
-
-    double[][] geometeryMatrix = new double[satellitePositionsECEFMeters.length][4];
-    for (int i = 0; i < satellitePositionsECEFMeters.length; i++) {
-      geometeryMatrix[i][3] = 1;
-    }
-    // iterate over all satellites
-    for (int i = 0; i < satellitePositionsECEFMeters.length; i++) {
-      double[] r = {satellitePositionsECEFMeters[i][0] - userPositionECEFMeters[0],
-          satellitePositionsECEFMeters[i][1] - userPositionECEFMeters[1],
-          satellitePositionsECEFMeters[i][2] - userPositionECEFMeters[2]};
-      double norm = Math.sqrt(Math.pow(r[0], 2) + Math.pow(r[1], 2) + Math.pow(r[2], 2));
-      for (int j = 0; j < 3; j++) {
-        geometeryMatrix[i][j] =
-            (userPositionECEFMeters[j] - satellitePositionsECEFMeters[i][j]) / norm;
-      }
-    }
-    return geometeryMatrix;
-  }
-
   /**
    * Class containing satellites' PRNs, satellites' positions in ECEF meters, the peseudorange
-   * residual per visible satellite in meters and the covariance matrix of the pseudoranges in
-   * meters square
+   * residual per visible satellite in meters and the diagonal covariance matrix of the
+   * pseudoranges in meters square
    */
   private static class SatellitesPositionPseudorangesResidualAndCovarianceMatrix {
 
@@ -835,17 +753,19 @@ class UserPositionVelocityWeightedLeastSquare {
     /** Pseudorange measurement residuals (difference of measured to predicted pseudoranges) */
     private final double[] pseudorangeResidualsMeters;
 
-    /** Pseudorange covariance Matrix for the weighted least squares (meters square) */
-    private final double[][] covarianceMatrixMetersSquare;
+    /**
+     * Diagonal of the pseudorange covariance Matrix for the weighted least squares (meters square)
+     */
+    private final double[] pseudorangeVariancesMetersSquare;
 
     /** Constructor */
     private SatellitesPositionPseudorangesResidualAndCovarianceMatrix(int[] satellitePRNs,
         double[][] satellitesPositionsMeters, double[] pseudorangeResidualsMeters,
-        double[][] covarianceMatrixMetersSquare) {
+        double[] pseudorangeVariancesMetersSquare) {
       this.satellitePRNs = satellitePRNs;
       this.satellitesPositionsMeters = satellitesPositionsMeters;
       this.pseudorangeResidualsMeters = pseudorangeResidualsMeters;
-      this.covarianceMatrixMetersSquare = covarianceMatrixMetersSquare;
+      this.pseudorangeVariancesMetersSquare = pseudorangeVariancesMetersSquare;
     }
 
   }
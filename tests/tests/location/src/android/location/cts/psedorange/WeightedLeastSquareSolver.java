@@ -0,0 +1,248 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.location.cts.pseudorange;
+
+/**
+ * Solves the weighted least square problems of the position and velocity solution, where the
+ * geometry matrix has one row per satellite and four columns, and the weight matrix is diagonal.
+ *
+ * <p>All matrices are kept in primitive arrays allocated once for the maximum number of
+ * satellites, and are reused for every iteration and epoch. The normal equations are solved with
+ * a Cholesky decomposition and the weighted geometry matrix is decomposed with Householder
+ * reflections, both in place.
+ *
+ * <p>Source: Golub, G.H., Van Loan, C.F.: 'Matrix Computations', sections 4.2 and 5.2
+ */
+public class WeightedLeastSquareSolver {
+  /** Number of unknowns: three coordinates and the receiver clock term */
+  public static final int NUMBER_OF_UNKNOWNS = 4;
+
+  /** Geometry matrix, only the first {@link #rowCount} rows are used */
+  private final double[][] geometryMatrix;
+  private int rowCount;
+
+  /** Lower triangular Cholesky factor of the normal matrix (G^T * W * G) */
+  private final double[][] choleskyFactor = new double[NUMBER_OF_UNKNOWNS][NUMBER_OF_UNKNOWNS];
+
+  /** Scaled geometry matrix, overwritten by the Householder vectors and R above the diagonal */
+  private final double[][] qrMatrix;
+  private final double[] qrDiagonal = new double[NUMBER_OF_UNKNOWNS];
+  private final double[] qrObservations;
+
+  /** Scratch vector of the size of the unknowns */
+  private final double[] temporaryVector = new double[NUMBER_OF_UNKNOWNS];
+
+  /**
+   * Constructor
+   *
+   * @param maxRowCount the maximum number of satellites of a solution
+   */
+  public WeightedLeastSquareSolver(int maxRowCount) {
+    geometryMatrix = new double[maxRowCount][NUMBER_OF_UNKNOWNS];
+    qrMatrix = new double[maxRowCount][NUMBER_OF_UNKNOWNS];
+    qrObservations = new double[maxRowCount];
+  }
+
+  /**
+   * Calculates the Geometry matrix (describing user to satellite geometry) given a list of
+   * satellite positions in ECEF coordinates in meters and the user position in ECEF in meters.
+   *
+   * <p>For each of the rows (i.e. for each of the satellites used), the columns are filled with the
+   * normalized line–of-sight vectors and 1 s for the fourth column.
+   *
+   * <p>Source: Parkinson, B.W., Spilker Jr., J.J.: ‘Global positioning system: theory and
+   * applications’ page 413
+   */
+  public void setGeometryMatrix(double[][] satellitePositionsECEFMeters,
+      double[] userPositionECEFMeters) {
+    rowCount = satellitePositionsECEFMeters.length;
+    for (int i = 0; i < rowCount; i++) {
+      double[] satellitePosition = satellitePositionsECEFMeters[i];
+      double rX = satellitePosition[0] - userPositionECEFMeters[0];
+      double rY = satellitePosition[1] - userPositionECEFMeters[1];
+      double rZ = satellitePosition[2] - userPositionECEFMeters[2];
+      double norm = Math.sqrt(rX * rX + rY * rY + rZ * rZ);
+      double[] row = geometryMatrix[i];
+      for (int j = 0; j < 3; j++) {
+        row[j] = (userPositionECEFMeters[j] - satellitePosition[j]) / norm;
+      }
+      row[3] = 1;
+    }
+  }
+
+  /** Returns the number of rows of the geometry matrix, or 0 if it has not been set */
+  public int getRowCount() {
+    return rowCount;
+  }
+
+  /** Returns an entry of the geometry matrix */
+  public double getGeometryMatrixEntry(int row, int column) {
+    return geometryMatrix[row][column];
+  }
+
+  /**
+   * Decomposes the normal matrix (G^T * W * G) of the geometry matrix G, which has to be set
+   * first, with the diagonal weight matrix W.
+   *
+   * @param weights the diagonal of the weight matrix, or null for the identity matrix
+   * @throws ArithmeticException if the normal matrix is not positive definite
+   */
+  public void decomposeNormalMatrix(double[] weights) throws ArithmeticException {
+    for (int j = 0; j < NUMBER_OF_UNKNOWNS; j++) {
+      for (int i = j; i < NUMBER_OF_UNKNOWNS; i++) {
+        double sum = 0;
+        for (int row = 0; row < rowCount; row++) {
+          double product = geometryMatrix[row][i] * geometryMatrix[row][j];
+          sum += weights == null ? product : product * weights[row];
+        }
+        for (int k = 0; k < j; k++) {
+          sum -= choleskyFactor[i][k] * choleskyFactor[j][k];
+        }
+        if (i == j) {
+          if (!(sum > 0)) {
+            throw new ArithmeticException("Normal matrix is singular");
+          }
+          choleskyFactor[j][j] = Math.sqrt(sum);
+        } else {
+          choleskyFactor[i][j] = sum / choleskyFactor[j][j];
+        }
+      }
+    }
+  }
+
+  /**
+   * Solves the normal equations (G^T * W * G) * solution = G^T * W * observations, using the
+   * normal matrix from the last call to {@link #decomposeNormalMatrix}.
+   *
+   * <p>This is the weighted least square solution H * G^T * W * observations, with
+   * H = (G^T * W * G) ^ -1, without computing H.
+   *
+   * @param weights the diagonal of the weight matrix, or null for the identity matrix
+   * @param observations one observation per row of the geometry matrix
+   * @param solution receives the four unknowns
+   */
+  public void solveNormalEquations(double[] weights, double[] observations, double[] solution) {
+    for (int i = 0; i < NUMBER_OF_UNKNOWNS; i++) {
+      double sum = 0;
+      for (int row = 0; row < rowCount; row++) {
+        double product = geometryMatrix[row][i] * observations[row];
+        sum += weights == null ? product : product * weights[row];
+      }
+      solution[i] = sum;
+    }
+    forwardSubstitution(solution);
+    for (int i = NUMBER_OF_UNKNOWNS - 1; i >= 0; i--) {
+      double sum = solution[i];
+      for (int k = i + 1; k < NUMBER_OF_UNKNOWNS; k++) {
+        sum -= choleskyFactor[k][i] * solution[k];
+      }
+      solution[i] = sum / choleskyFactor[i][i];
+    }
+  }
+
+  /**
+   * Returns the variance v^T * H * v of a linear combination v of the unknowns, where
+   * H = (G^T * W * G) ^ -1 is computed from the last call to {@link #decomposeNormalMatrix}.
+   *
+   * <p>With H = L^-T * L^-1 for the Cholesky factor L, the variance is the squared norm of
+   * L^-1 * v.
+   */
+  public double getVariance(double v0, double v1, double v2, double v3) {
+    temporaryVector[0] = v0;
+    temporaryVector[1] = v1;
+    temporaryVector[2] = v2;
+    temporaryVector[3] = v3;
+    forwardSubstitution(temporaryVector);
+    double variance = 0;
+    for (int i = 0; i < NUMBER_OF_UNKNOWNS; i++) {
+      variance += temporaryVector[i] * temporaryVector[i];
+    }
+    return variance;
+  }
+
+  /** Solves L * x = vector for the Cholesky factor L, in place */
+  private void forwardSubstitution(double[] vector) {
+    for (int i = 0; i < NUMBER_OF_UNKNOWNS; i++) {
+      double sum = vector[i];
+      for (int k = 0; k < i; k++) {
+        sum -= choleskyFactor[i][k] * vector[k];
+      }
+      vector[i] = sum / choleskyFactor[i][i];
+    }
+  }
+
+  /**
+   * Solves S * G * solution = S * observations in the least square sense with a QR decomposition
+   * of S * G, where G is the geometry matrix and S is a diagonal matrix scaling its rows.
+   *
+   * @param rowScales the diagonal of S
+   * @param observations one observation per row of the geometry matrix
+   * @param solution receives the four unknowns
+   * @throws ArithmeticException if the scaled geometry matrix does not have full rank
+   */
+  public void solveByQrDecomposition(double[] rowScales, double[] observations, double[] solution)
+      throws ArithmeticException {
+    for (int row = 0; row < rowCount; row++) {
+      for (int column = 0; column < NUMBER_OF_UNKNOWNS; column++) {
+        qrMatrix[row][column] = rowScales[row] * geometryMatrix[row][column];
+      }
+      qrObservations[row] = rowScales[row] * observations[row];
+    }
+
+    // Householder reflection per column, each applied to the remaining columns and observations
+    for (int minor = 0; minor < NUMBER_OF_UNKNOWNS; minor++) {
+      double normSquared = 0;
+      for (int row = minor; row < rowCount; row++) {
+        normSquared += qrMatrix[row][minor] * qrMatrix[row][minor];
+      }
+      double a = qrMatrix[minor][minor] > 0 ? -Math.sqrt(normSquared) : Math.sqrt(normSquared);
+      if (a == 0) {
+        throw new ArithmeticException("Geometry matrix is singular");
+      }
+      qrDiagonal[minor] = a;
+      qrMatrix[minor][minor] -= a;
+      double scale = a * qrMatrix[minor][minor];
+      for (int column = minor + 1; column < NUMBER_OF_UNKNOWNS; column++) {
+        double alpha = 0;
+        for (int row = minor; row < rowCount; row++) {
+          alpha -= qrMatrix[row][column] * qrMatrix[row][minor];
+        }
+        alpha /= scale;
+        for (int row = minor; row < rowCount; row++) {
+          qrMatrix[row][column] -= alpha * qrMatrix[row][minor];
+        }
+      }
+      double dotProduct = 0;
+      for (int row = minor; row < rowCount; row++) {
+        dotProduct += qrObservations[row] * qrMatrix[row][minor];
+      }
+      dotProduct /= scale;
+      for (int row = minor; row < rowCount; row++) {
+        qrObservations[row] += dotProduct * qrMatrix[row][minor];
+      }
+    }
+
+    // Back substitution with R
+    for (int i = NUMBER_OF_UNKNOWNS - 1; i >= 0; i--) {
+      double sum = qrObservations[i];
+      for (int k = i + 1; k < NUMBER_OF_UNKNOWNS; k++) {
+        sum -= qrMatrix[i][k] * solution[k];
+      }
+      solution[i] = sum / qrDiagonal[i];
+    }
+  }
+}
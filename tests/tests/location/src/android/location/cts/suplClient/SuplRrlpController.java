@@ -16,6 +16,7 @@
 
 package android.location.cts.suplClient;
 
+import android.location.cts.asn1.base.BitStreamReader;
 import android.location.cts.asn1.supl2.rrlp_components.IonosphericModel;
 import android.location.cts.asn1.supl2.rrlp_components.NavModelElement;
 import android.location.cts.asn1.supl2.rrlp_components.NavigationModel;
@@ -147,7 +148,10 @@ public class SuplRrlpController {
 
     PosPayLoad.rrlpPayloadType rrlpPayload =
         message.getMsSUPLPOS().getPosPayLoad().getRrlpPayload();
-    PDU pdu = PDU.fromPerUnaligned(rrlpPayload.getValue());
+    // Only a few fields and the navigation model list are read, so the other lists such as the
+    // almanac are skipped rather than decoded.
+    PDU pdu = new PDU();
+    pdu.decodePerUnaligned(new BitStreamReader(rrlpPayload.getValue(), true));
     IonosphericModel ionoModel = pdu.getComponent().getAssistanceData().getGps_AssistData()
         .getControlHeader().getIonosphericModel();
     NavigationModel navModel = pdu.getComponent().getAssistanceData().getGps_AssistData()
@@ -254,7 +254,7 @@ public class SuplRrlpMessagesGenerator {
 
     PacketBuilder payloadBuilder = new PacketBuilder();
     try {
-      payloadBuilder.appendAll(pdu.encodePerUnaligned());
+      pdu.encodePerUnaligned(payloadBuilder);
     } catch (IllegalArgumentException | IllegalStateException | IndexOutOfBoundsException
         | UnsupportedOperationException e) {
       throw new RuntimeException(e);
@@ -277,7 +277,7 @@ public class SuplRrlpMessagesGenerator {
     message.setLengthToNewInstance();
     message.getLength().setInteger(BigInteger.ZERO);
     PacketBuilder messageBuilder = new PacketBuilder();
-    messageBuilder.appendAll(message.encodePerUnaligned());
+    message.encodePerUnaligned(messageBuilder);
     byte[] result = messageBuilder.getPaddedBytes();
     ByteBuffer buffer = ByteBuffer.wrap(result);
     buffer.order(ByteOrder.BIG_ENDIAN);
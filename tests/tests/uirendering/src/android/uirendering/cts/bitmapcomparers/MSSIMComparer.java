@@ -18,6 +18,8 @@ package android.uirendering.cts.bitmapcomparers;
 import android.graphics.Color;
 import android.util.Log;
 
+import java.util.stream.IntStream;
+
 /**
  * Image comparison using Structural Similarity Index, developed by Wang, Bovik, Sheikh, and
  * Simoncelli. Details can be read in their paper :
@@ -34,6 +36,17 @@ public class MSSIMComparer extends BitmapComparer {
     public static final double CONSTANT_C2 = Math.pow(CONSTANT_L * CONSTANT_K2, 2);
     public static final int WINDOW_SIZE = 10;
 
+    // Gamma correction of the luminosity formula, see getIntensity().
+    private static final double GAMMA = 1;
+
+    // Images with fewer pixels are compared on the calling thread only.
+    private static final int PARALLEL_MIN_PIXELS = 256 * 256;
+
+    // Intensity of each value of each channel, so that a pixel costs three lookups.
+    private static final double[] RED_INTENSITIES = createChannelIntensities(0.21f);
+    private static final double[] GREEN_INTENSITIES = createChannelIntensities(0.72f);
+    private static final double[] BLUE_INTENSITIES = createChannelIntensities(0.07f);
+
     private double mThreshold;
 
     public MSSIMComparer(double threshold) {
@@ -44,7 +57,7 @@ public class MSSIMComparer extends BitmapComparer {
      * Compute the size of the window. The window defaults to WINDOW_SIZE, but
      * must be contained within dimension.
      */
-    private int computeWindowSize(int coordinateStart, int dimension) {
+    private static int computeWindowSize(int coordinateStart, int dimension) {
         if (coordinateStart + WINDOW_SIZE <= dimension) {
             return WINDOW_SIZE;
         }
@@ -54,44 +67,117 @@ public class MSSIMComparer extends BitmapComparer {
     @Override
     public boolean verifySame(int[] ideal, int[] given, int offset, int stride, int width,
             int height) {
-        double SSIMTotal = 0;
-        int windows = 0;
+        double SSIMTotal = getMSSIM(ideal, given, offset, stride, width, height);
+
+        Log.d(TAG_NAME, "MSSIM = " + SSIMTotal);
 
-        for (int currentWindowY = 0 ; currentWindowY < height ; currentWindowY += WINDOW_SIZE) {
+        return (SSIMTotal >= mThreshold);
+    }
+
+    /**
+     * Computes the mean SSIM of all windows which are not white in both images.
+     *
+     * <p>The rows of windows are computed in parallel for larger images. The SSIM of each window
+     * is kept and summed in window order, so the result does not depend on the number of threads.
+     *
+     * <p>A window of a single pixel, at the bottom right corner of an image whose width and height
+     * are both one more than a multiple of {@link #WINDOW_SIZE}, has a variance of 0 / 0. Unless
+     * it is white in both images, it makes the result NaN, which fails {@link #verifySame}.
+     *
+     * @return the mean SSIM, or 1 if both images are entirely white.
+     */
+    public static double getMSSIM(int[] ideal, int[] given, int offset, int stride, int width,
+            int height) {
+        final int windowColumns = (width + WINDOW_SIZE - 1) / WINDOW_SIZE;
+        final int windowRows = (height + WINDOW_SIZE - 1) / WINDOW_SIZE;
+        final double[] windowSSIMs = new double[windowColumns * windowRows];
+        final boolean[] whiteWindows = new boolean[windowColumns * windowRows];
+
+        IntStream rows = IntStream.range(0, windowRows);
+        if ((long) width * height >= PARALLEL_MIN_PIXELS) {
+            rows = rows.parallel();
+        }
+        rows.forEach(row -> {
+            // Intensities of the current window, reused for the whole row.
+            double[] intensities0 = new double[WINDOW_SIZE * WINDOW_SIZE];
+            double[] intensities1 = new double[WINDOW_SIZE * WINDOW_SIZE];
+            int currentWindowY = row * WINDOW_SIZE;
             int windowHeight = computeWindowSize(currentWindowY, height);
-            for (int currentWindowX = 0 ; currentWindowX < width ; currentWindowX += WINDOW_SIZE) {
+            for (int column = 0; column < windowColumns; column++) {
+                int currentWindowX = column * WINDOW_SIZE;
                 int windowWidth = computeWindowSize(currentWindowX, width);
                 int start = indexFromXAndY(currentWindowX, currentWindowY, stride, offset);
+                int window = row * windowColumns + column;
                 if (isWindowWhite(ideal, start, stride, windowWidth, windowHeight)
                         && isWindowWhite(given, start, stride, windowWidth, windowHeight)) {
+                    whiteWindows[window] = true;
                     continue;
                 }
+                windowSSIMs[window] = getWindowSSIM(ideal, given, start, stride, windowWidth,
+                        windowHeight, intensities0, intensities1);
+            }
+        });
+
+        double SSIMTotal = 0;
+        int windows = 0;
+        for (int window = 0; window < windowSSIMs.length; window++) {
+            if (!whiteWindows[window]) {
                 windows++;
-                double[] means = getMeans(ideal, given, start, stride, windowWidth, windowHeight);
-                double meanX = means[0];
-                double meanY = means[1];
-                double[] variances = getVariances(ideal, given, meanX, meanY, start, stride,
-                        windowWidth, windowHeight);
-                double varX = variances[0];
-                double varY = variances[1];
-                double stdBoth = variances[2];
-                double SSIM = SSIM(meanX, meanY, varX, varY, stdBoth);
-                SSIMTotal += SSIM;
+                SSIMTotal += windowSSIMs[window];
             }
         }
 
         if (windows == 0) {
-            return true;
+            return 1;
         }
+        return SSIMTotal / windows;
+    }
 
-        SSIMTotal /= windows;
+    /**
+     * Computes the SSIM of a window.
+     *
+     * <p>The intensity of each pixel is computed once, into the given buffers, and then used for
+     * the means as well as the variances.
+     */
+    private static double getWindowSSIM(int[] pixels0, int[] pixels1, int start, int stride,
+            int windowWidth, int windowHeight, double[] intensities0, double[] intensities1) {
+        final int count = windowWidth * windowHeight;
+        double mean0 = 0;
+        double mean1 = 0;
+        int i = 0;
+        for (int y = 0; y < windowHeight; y++) {
+            for (int x = 0; x < windowWidth; x++) {
+                int index = indexFromXAndY(x, y, stride, start);
+                double l0 = getIntensity(pixels0[index]);
+                double l1 = getIntensity(pixels1[index]);
+                intensities0[i] = l0;
+                intensities1[i] = l1;
+                mean0 += l0;
+                mean1 += l1;
+                i++;
+            }
+        }
+        mean0 /= count;
+        mean1 /= count;
 
-        Log.d(TAG_NAME, "MSSIM = " + SSIMTotal);
+        double var0 = 0;
+        double var1 = 0;
+        double varBoth = 0;
+        for (i = 0; i < count; i++) {
+            double v0 = intensities0[i] - mean0;
+            double v1 = intensities1[i] - mean1;
+            var0 += v0 * v0;
+            var1 += v1 * v1;
+            varBoth += v0 * v1;
+        }
+        var0 /= count - 1;
+        var1 /= count - 1;
+        varBoth /= count - 1;
 
-        return (SSIMTotal >= mThreshold);
+        return SSIM(mean0, mean1, var0, var1, varBoth);
     }
 
-    private boolean isWindowWhite(int[] colors, int start, int stride,
+    private static boolean isWindowWhite(int[] colors, int start, int stride,
             int windowWidth, int windowHeight) {
         for (int y = 0; y < windowHeight; y++) {
             for (int x = 0; x < windowWidth; x++) {
@@ -103,7 +189,7 @@ public class MSSIMComparer extends BitmapComparer {
         return true;
     }
 
-    private double SSIM(double muX, double muY, double sigX, double sigY, double sigXY) {
+    private static double SSIM(double muX, double muY, double sigX, double sigY, double sigXY) {
         double SSIM = (((2 * muX * muY) + CONSTANT_C1) * ((2 * sigXY) + CONSTANT_C2));
         double denom = ((muX * muX) + (muY * muY) + CONSTANT_C1)
                 * (sigX + sigY + CONSTANT_C2);
@@ -111,54 +197,6 @@ public class MSSIMComparer extends BitmapComparer {
         return SSIM;
     }
 
-
-    /**
-     * This method will find the mean of a window in both sets of pixels. The return is an array
-     * where the first double is the mean of the first set and the second double is the mean of the
-     * second set.
-     */
-    private double[] getMeans(int[] pixels0, int[] pixels1, int start, int stride,
-            int windowWidth, int windowHeight) {
-        double avg0 = 0;
-        double avg1 = 0;
-        for (int y = 0; y < windowHeight; y++) {
-            for (int x = 0; x < windowWidth; x++) {
-                int index = indexFromXAndY(x, y, stride, start);
-                avg0 += getIntensity(pixels0[index]);
-                avg1 += getIntensity(pixels1[index]);
-            }
-        }
-        avg0 /= windowWidth * windowHeight;
-        avg1 /= windowWidth * windowHeight;
-        return new double[] {avg0, avg1};
-    }
-
-    /**
-     * Finds the variance of the two sets of pixels, as well as the covariance of the windows. The
-     * return value is an array of doubles, the first is the variance of the first set of pixels,
-     * the second is the variance of the second set of pixels, and the third is the covariance.
-     */
-    private double[] getVariances(int[] pixels0, int[] pixels1, double mean0, double mean1,
-            int start, int stride, int windowWidth, int windowHeight) {
-        double var0 = 0;
-        double var1 = 0;
-        double varBoth = 0;
-        for (int y = 0; y < windowHeight; y++) {
-            for (int x = 0; x < windowWidth; x++) {
-                int index = indexFromXAndY(x, y, stride, start);
-                double v0 = getIntensity(pixels0[index]) - mean0;
-                double v1 = getIntensity(pixels1[index]) - mean1;
-                var0 += v0 * v0;
-                var1 += v1 * v1;
-                varBoth += v0 * v1;
-            }
-        }
-        var0 /= (windowWidth * windowHeight) - 1;
-        var1 /= (windowWidth * windowHeight) - 1;
-        varBoth /= (windowWidth * windowHeight) - 1;
-        return new double[] {var0, var1, varBoth};
-    }
-
     /**
      * Gets the intensity of a given pixel in RGB using luminosity formula
      *
@@ -166,12 +204,19 @@ public class MSSIMComparer extends BitmapComparer {
      *
      * The prime symbols dictate a gamma correction of 1.
      */
-    private double getIntensity(int pixel) {
-        final double gamma = 1;
+    private static double getIntensity(int pixel) {
         double l = 0;
-        l += (0.21f * Math.pow(Color.red(pixel) / 255f, gamma));
-        l += (0.72f * Math.pow(Color.green(pixel) / 255f, gamma));
-        l += (0.07f * Math.pow(Color.blue(pixel) / 255f, gamma));
+        l += RED_INTENSITIES[Color.red(pixel)];
+        l += GREEN_INTENSITIES[Color.green(pixel)];
+        l += BLUE_INTENSITIES[Color.blue(pixel)];
         return l;
     }
+
+    private static double[] createChannelIntensities(float weight) {
+        double[] intensities = new double[256];
+        for (int value = 0; value < intensities.length; value++) {
+            intensities[value] = weight * Math.pow(value / 255f, GAMMA);
+        }
+        return intensities;
+    }
 }
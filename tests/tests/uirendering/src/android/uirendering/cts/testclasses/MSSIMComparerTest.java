@@ -0,0 +1,239 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.uirendering.cts.testclasses;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.graphics.Color;
+import android.uirendering.cts.bitmapcomparers.MSSIMComparer;
+import android.uirendering.cts.runner.SkipPresubmit;
+import android.util.Log;
+
+import androidx.test.filters.LargeTest;
+import androidx.test.filters.SmallTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Checks {@link MSSIMComparer} against a straightforward implementation of the same algorithm.
+ */
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class MSSIMComparerTest {
+    private static final String TAG = "MSSIMComparerTest";
+
+    private static final int WARMUP_ITERATIONS = 5;
+    private static final int MEASURED_ITERATIONS = 20;
+
+    /**
+     * Fills the pixels with white, and with noisy gray blocks in some places, so that some
+     * windows are skipped and the others are not too similar.
+     */
+    private static int[] createPixels(Random random, int size) {
+        int[] pixels = new int[size];
+        for (int i = 0; i < size; i++) {
+            if ((i / 37) % 3 == 0) {
+                pixels[i] = Color.WHITE;
+            } else {
+                pixels[i] = Color.rgb(random.nextInt(256), random.nextInt(256),
+                        random.nextInt(256));
+            }
+        }
+        return pixels;
+    }
+
+    private static void assertSameMSSIM(int offset, int stride, int width, int height) {
+        Random random = new Random(width * 31 + height);
+        int size = offset + stride * height;
+        int[] ideal = createPixels(random, size);
+        int[] given = createPixels(random, size);
+        // Make the images partially identical.
+        System.arraycopy(ideal, 0, given, 0, size / 2);
+
+        double expected = ReferenceMSSIM.getMSSIM(ideal, given, offset, stride, width, height);
+        double actual = MSSIMComparer.getMSSIM(ideal, given, offset, stride, width, height);
+        assertEquals("MSSIM of " + width + "x" + height, expected, actual, 1e-12);
+    }
+
+    @Test
+    public void testSameAsReference() {
+        assertSameMSSIM(0, 10, 10, 10);
+        assertSameMSSIM(0, 7, 7, 3);
+        assertSameMSSIM(5, 93, 90, 61);
+        assertSameMSSIM(0, 257, 257, 255);
+        assertSameMSSIM(100, 1080, 1000, 720);
+    }
+
+    /**
+     * The 1x1 window at the bottom right corner of a 21x21 image is not white, and is counted
+     * with a NaN SSIM like in the reference, so the images do not compare the same.
+     */
+    @Test
+    public void testSinglePixelWindow() {
+        assertSameMSSIM(0, 21, 21, 21);
+
+        int[] black = new int[21 * 21];
+        Arrays.fill(black, Color.BLACK);
+        assertTrue(Double.isNaN(MSSIMComparer.getMSSIM(black, black, 0, 21, 21, 21)));
+        assertFalse(new MSSIMComparer(0).verifySame(black, black, 0, 21, 21, 21));
+
+        // A white single pixel window is skipped like any other white window.
+        int[] white = new int[21 * 21];
+        Arrays.fill(white, Color.WHITE);
+        Arrays.fill(black, Color.WHITE);
+        black[0] = Color.BLACK;
+        assertEquals(MSSIMComparer.getMSSIM(black, white, 0, 21, 20, 20),
+                MSSIMComparer.getMSSIM(black, white, 0, 21, 21, 21), 0);
+    }
+
+    @Test
+    public void testWhite() {
+        int[] white = new int[100 * 100];
+        Arrays.fill(white, Color.WHITE);
+        assertEquals(1, MSSIMComparer.getMSSIM(white, white, 0, 100, 100, 100), 0);
+        assertTrue(new MSSIMComparer(1).verifySame(white, white, 0, 100, 100, 100));
+    }
+
+    @Test
+    public void testDifferent() {
+        int[] white = new int[100 * 100];
+        int[] black = new int[100 * 100];
+        Arrays.fill(white, Color.WHITE);
+        Arrays.fill(black, Color.BLACK);
+        assertFalse(new MSSIMComparer(0.1).verifySame(white, black, 0, 100, 100, 100));
+        assertTrue(new MSSIMComparer(0.99).verifySame(black, black, 0, 100, 100, 100));
+    }
+
+    /**
+     * Compares the time of both implementations on a screen sized image. Only logs the results,
+     * the timing depends too much on the device to be checked.
+     */
+    @LargeTest
+    @SkipPresubmit
+    @Test
+    public void testBenchmark() {
+        final int width = 1080;
+        final int height = 1920;
+        Random random = new Random(0);
+        int[] ideal = createPixels(random, width * height);
+        int[] given = createPixels(random, width * height);
+
+        double sink = 0;
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            sink += ReferenceMSSIM.getMSSIM(ideal, given, 0, width, width, height);
+            sink += MSSIMComparer.getMSSIM(ideal, given, 0, width, width, height);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+            sink += ReferenceMSSIM.getMSSIM(ideal, given, 0, width, width, height);
+        }
+        long referenceNanos = (System.nanoTime() - start) / MEASURED_ITERATIONS;
+
+        start = System.nanoTime();
+        for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+            sink += MSSIMComparer.getMSSIM(ideal, given, 0, width, width, height);
+        }
+        long comparerNanos = (System.nanoTime() - start) / MEASURED_ITERATIONS;
+
+        Log.d(TAG, "MSSIM of " + width + "x" + height + ": reference " + referenceNanos
+                + " ns/op, MSSIMComparer " + comparerNanos + " ns/op (" + sink + ")");
+    }
+
+    /**
+     * The SSIM computation of MSSIMComparer before its intensities were cached, which computes
+     * the intensity of every pixel for each pass over a window.
+     */
+    private static class ReferenceMSSIM {
+        static double getMSSIM(int[] ideal, int[] given, int offset, int stride, int width,
+                int height) {
+            double SSIMTotal = 0;
+            int windows = 0;
+            for (int windowY = 0; windowY < height; windowY += MSSIMComparer.WINDOW_SIZE) {
+                int windowHeight = Math.min(MSSIMComparer.WINDOW_SIZE, height - windowY);
+                for (int windowX = 0; windowX < width; windowX += MSSIMComparer.WINDOW_SIZE) {
+                    int windowWidth = Math.min(MSSIMComparer.WINDOW_SIZE, width - windowX);
+                    int start = windowY * stride + windowX + offset;
+                    if (isWindowWhite(ideal, start, stride, windowWidth, windowHeight)
+                            && isWindowWhite(given, start, stride, windowWidth, windowHeight)) {
+                        continue;
+                    }
+                    windows++;
+                    int count = windowWidth * windowHeight;
+                    double mean0 = 0;
+                    double mean1 = 0;
+                    for (int y = 0; y < windowHeight; y++) {
+                        for (int x = 0; x < windowWidth; x++) {
+                            int index = start + y * stride + x;
+                            mean0 += getIntensity(ideal[index]);
+                            mean1 += getIntensity(given[index]);
+                        }
+                    }
+                    mean0 /= count;
+                    mean1 /= count;
+                    double var0 = 0;
+                    double var1 = 0;
+                    double varBoth = 0;
+                    for (int y = 0; y < windowHeight; y++) {
+                        for (int x = 0; x < windowWidth; x++) {
+                            int index = start + y * stride + x;
+                            double v0 = getIntensity(ideal[index]) - mean0;
+                            double v1 = getIntensity(given[index]) - mean1;
+                            var0 += v0 * v0;
+                            var1 += v1 * v1;
+                            varBoth += v0 * v1;
+                        }
+                    }
+                    var0 /= count - 1;
+                    var1 /= count - 1;
+                    varBoth /= count - 1;
+                    SSIMTotal += (((2 * mean0 * mean1) + MSSIMComparer.CONSTANT_C1)
+                            * ((2 * varBoth) + MSSIMComparer.CONSTANT_C2))
+                            / (((mean0 * mean0) + (mean1 * mean1) + MSSIMComparer.CONSTANT_C1)
+                                    * (var0 + var1 + MSSIMComparer.CONSTANT_C2));
+                }
+            }
+            return windows == 0 ? Double.NaN : SSIMTotal / windows;
+        }
+
+        private static boolean isWindowWhite(int[] colors, int start, int stride,
+                int windowWidth, int windowHeight) {
+            for (int y = 0; y < windowHeight; y++) {
+                for (int x = 0; x < windowWidth; x++) {
+                    if (colors[start + y * stride + x] != Color.WHITE) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        private static double getIntensity(int pixel) {
+            double l = 0;
+            l += (0.21f * Math.pow(Color.red(pixel) / 255f, 1));
+            l += (0.72f * Math.pow(Color.green(pixel) / 255f, 1));
+            l += (0.07f * Math.pow(Color.blue(pixel) / 255f, 1));
+            return l;
+        }
+    }
+}
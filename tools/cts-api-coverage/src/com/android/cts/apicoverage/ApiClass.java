@@ -20,6 +20,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -46,6 +47,18 @@ class ApiClass implements Comparable<ApiClass>, HasCoverage {
 
     private Map<String, ApiClass> mInterfaceMap = new HashMap<String, ApiClass>();
 
+    // Methods by name and constructors by parameter count, in the order they were added.
+    // Built on first lookup so the order of matching is the same as scanning the lists.
+    private Map<String, List<ApiMethod>> mMethodIndex;
+
+    private Map<Integer, List<ApiConstructor>> mConstructorIndex;
+
+    // This class and its superclasses, to mark constructors covered.
+    private List<ApiClass> mSuperClassChain;
+
+    // This class and all classes reached through superclasses and interfaces, to mark methods.
+    private List<ApiClass> mMethodHierarchy;
+
     /**
      * @param name The name of the class
      * @param deprecated true iff the class is marked as deprecated
@@ -85,7 +98,10 @@ class ApiClass implements Comparable<ApiClass>, HasCoverage {
         return mAbstract;
     }
 
-    public void setSuperClass(ApiClass superClass) { mSuperClass = superClass; }
+    public void setSuperClass(ApiClass superClass) {
+        mSuperClass = superClass;
+        invalidateHierarchy();
+    }
 
     public void addInterface(String interfaceName) {
         mInterfaceMap.put(interfaceName, null);
@@ -93,6 +109,7 @@ class ApiClass implements Comparable<ApiClass>, HasCoverage {
 
     public void resolveInterface(String interfaceName, ApiClass apiInterface) {
         mInterfaceMap.replace(interfaceName, apiInterface);
+        invalidateHierarchy();
     }
 
     public Set<String> getInterfaceNames() {
@@ -101,6 +118,7 @@ class ApiClass implements Comparable<ApiClass>, HasCoverage {
 
     public void addConstructor(ApiConstructor constructor) {
         mApiConstructors.add(constructor);
+        mConstructorIndex = null;
     }
 
     public Collection<ApiConstructor> getConstructors() {
@@ -109,34 +127,72 @@ class ApiClass implements Comparable<ApiClass>, HasCoverage {
 
     public void addMethod(ApiMethod method) {
         mApiMethods.add(method);
+        mMethodIndex = null;
     }
 
     /** Look for a matching constructor and mark it as covered */
     public void markConstructorCovered(List<String> parameterTypes, String coveredbyApk) {
-        if (mSuperClass != null) {
-            // Mark matching constructors in the superclass
-            mSuperClass.markConstructorCovered(parameterTypes, coveredbyApk);
+        // Mark matching constructors in the class and its superclasses
+        for (ApiClass apiClass : getSuperClassChain()) {
+            Optional<ApiConstructor> apiConstructor = apiClass.getConstructor(parameterTypes);
+            apiConstructor.ifPresent(constructor -> constructor.setCovered(coveredbyApk));
         }
-        Optional<ApiConstructor> apiConstructor = getConstructor(parameterTypes);
-        apiConstructor.ifPresent(constructor -> constructor.setCovered(coveredbyApk));
     }
 
     /** Look for a matching method and if found and mark it as covered */
     public void markMethodCovered(String name, List<String> parameterTypes, String coveredbyApk) {
+        // Mark matching methods in the class, its super classes and interfaces
+        for (ApiClass apiClass : getMethodHierarchy()) {
+            Optional<ApiMethod> apiMethod = apiClass.getMethod(name, parameterTypes);
+            apiMethod.ifPresent(method -> method.setCovered(coveredbyApk));
+        }
+    }
+
+    private List<ApiClass> getSuperClassChain() {
+        if (mSuperClassChain == null) {
+            LinkedHashSet<ApiClass> chain = new LinkedHashSet<ApiClass>();
+            ApiClass apiClass = this;
+            // Stops at a cycle in case of a broken API description.
+            while (apiClass != null && chain.add(apiClass)) {
+                apiClass = apiClass.mSuperClass;
+            }
+            mSuperClassChain = new ArrayList<ApiClass>(chain);
+        }
+        return mSuperClassChain;
+    }
+
+    private List<ApiClass> getMethodHierarchy() {
+        if (mMethodHierarchy == null) {
+            LinkedHashSet<ApiClass> hierarchy = new LinkedHashSet<ApiClass>();
+            addToMethodHierarchy(hierarchy);
+            mMethodHierarchy = new ArrayList<ApiClass>(hierarchy);
+        }
+        return mMethodHierarchy;
+    }
+
+    private void addToMethodHierarchy(LinkedHashSet<ApiClass> hierarchy) {
+        // Each class only needs to be marked once, which also stops at cycles.
+        if (!hierarchy.add(this)) {
+            return;
+        }
         if (mSuperClass != null) {
-            // Mark matching methods in the super class
-            mSuperClass.markMethodCovered(name, parameterTypes, coveredbyApk);
+            mSuperClass.addToMethodHierarchy(hierarchy);
         }
-        if (!mInterfaceMap.isEmpty()) {
-            // Mark matching methods in the interfaces
-            for (ApiClass mInterface : mInterfaceMap.values()) {
-                if (mInterface != null) {
-                    mInterface.markMethodCovered(name, parameterTypes, coveredbyApk);
-                }
+        for (ApiClass mInterface : mInterfaceMap.values()) {
+            if (mInterface != null) {
+                mInterface.addToMethodHierarchy(hierarchy);
             }
         }
-        Optional<ApiMethod> apiMethod = getMethod(name, parameterTypes);
-        apiMethod.ifPresent(method -> method.setCovered(coveredbyApk));
+    }
+
+    /**
+     * Drops the memoized hierarchy. Subclasses memoize this class's ancestors too, so hierarchy
+     * changes are expected to be done, e.g. by {@link ApiCoverage#resolveSuperClasses}, before
+     * any coverage is marked.
+     */
+    private void invalidateHierarchy() {
+        mSuperClassChain = null;
+        mMethodHierarchy = null;
     }
 
     public Collection<ApiMethod> getMethods() {
@@ -177,12 +233,19 @@ class ApiClass implements Comparable<ApiClass>, HasCoverage {
     }
 
     private Optional<ApiMethod> getMethod(String name, List<String> parameterTypes) {
-        for (ApiMethod method : mApiMethods) {
-            boolean methodNameMatch = name.equals(method.getName());
-            boolean parameterTypeMatch =
-                    compareParameterTypes(method.getParameterTypes(), parameterTypes);
-            if (methodNameMatch && parameterTypeMatch) {
-                return Optional.of(method);
+        if (mMethodIndex == null) {
+            mMethodIndex = new HashMap<String, List<ApiMethod>>();
+            for (ApiMethod method : mApiMethods) {
+                mMethodIndex.computeIfAbsent(method.getName(), k -> new ArrayList<ApiMethod>())
+                        .add(method);
+            }
+        }
+        List<ApiMethod> methods = mMethodIndex.get(name);
+        if (methods != null) {
+            for (ApiMethod method : methods) {
+                if (compareParameterTypes(method.getParameterTypes(), parameterTypes)) {
+                    return Optional.of(method);
+                }
             }
         }
         return Optional.empty();
@@ -261,7 +324,21 @@ class ApiClass implements Comparable<ApiClass>, HasCoverage {
     }
 
     private Optional<ApiConstructor> getConstructor(List<String> parameterTypes) {
-        for (ApiConstructor constructor : mApiConstructors) {
+        if (mConstructorIndex == null) {
+            mConstructorIndex = new HashMap<Integer, List<ApiConstructor>>();
+            for (ApiConstructor constructor : mApiConstructors) {
+                mConstructorIndex
+                        .computeIfAbsent(
+                                constructor.getParameterTypes().size(),
+                                k -> new ArrayList<ApiConstructor>())
+                        .add(constructor);
+            }
+        }
+        List<ApiConstructor> constructors = mConstructorIndex.get(parameterTypes.size());
+        if (constructors == null) {
+            return Optional.empty();
+        }
+        for (ApiConstructor constructor : constructors) {
             if (compareParameterTypes(constructor.getParameterTypes(), parameterTypes)) {
                 return Optional.of(constructor);
             }
@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.cts.apicoverage;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures how fast constructors and methods are marked as covered in an API.
+ *
+ * <p>Usage: java -cp cts-api-coverage.jar com.android.cts.apicoverage.ApiCoverageBenchmark
+ * API_XML [ROUNDS]
+ *
+ * <p>Every constructor and method of every class in the API is marked as covered once per round,
+ * which is the worst case of a test suite calling all of the API.
+ */
+public class ApiCoverageBenchmark {
+
+    private static final int DEFAULT_ROUNDS = 5;
+
+    private static final String MODULE_NAME = "ApiCoverageBenchmark";
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.out.println("Usage: ApiCoverageBenchmark API_XML [ROUNDS]");
+            System.exit(1);
+        }
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_ROUNDS;
+
+        long startTime = System.nanoTime();
+        ApiCoverage apiCoverage = CtsApiCoverage.getEmptyApiCoverage(args[0]);
+        apiCoverage.resolveSuperClasses();
+        System.out.println(
+                String.format(
+                        "Loaded %s in %d ms", args[0], (System.nanoTime() - startTime) / 1000000));
+
+        List<ApiClass> classes = new ArrayList<ApiClass>();
+        for (ApiPackage apiPackage : apiCoverage.getPackages()) {
+            classes.addAll(apiPackage.getClasses());
+        }
+
+        for (int round = 0; round < rounds; round++) {
+            long calls = 0;
+            startTime = System.nanoTime();
+            for (ApiClass apiClass : classes) {
+                for (ApiConstructor constructor : apiClass.getConstructors()) {
+                    apiClass.markConstructorCovered(constructor.getParameterTypes(), MODULE_NAME);
+                    calls++;
+                }
+                for (ApiMethod method : apiClass.getMethods()) {
+                    apiClass.markMethodCovered(
+                            method.getName(), method.getParameterTypes(), MODULE_NAME);
+                    calls++;
+                }
+            }
+            long elapsedNanos = System.nanoTime() - startTime;
+            System.out.println(
+                    String.format(
+                            "Round %d: %d calls in %d ms, %.0f ns/call",
+                            round, calls, elapsedNanos / 1000000, (double) elapsedNanos / calls));
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.cts.apicoverage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Constructors and methods called by a single test APK. It is collected without touching the
+ * shared {@link ApiCoverage}, so APKs can be scanned concurrently and merged one by one.
+ */
+class ApkCoverage {
+
+    private final String mTestApkName;
+
+    private final List<CoveredMember> mCoveredMembers = new ArrayList<CoveredMember>();
+
+    /** A constructor or method call found in the APK. */
+    private static class CoveredMember {
+        final String mPackageName;
+        final String mClassName;
+        // null for a constructor
+        final String mMethodName;
+        final List<String> mParameterTypes;
+
+        CoveredMember(
+                String packageName,
+                String className,
+                String methodName,
+                List<String> parameterTypes) {
+            mPackageName = packageName;
+            mClassName = className;
+            mMethodName = methodName;
+            mParameterTypes = new ArrayList<String>(parameterTypes);
+        }
+    }
+
+    ApkCoverage(String testApkName) {
+        mTestApkName = testApkName;
+    }
+
+    public String getTestApkName() {
+        return mTestApkName;
+    }
+
+    public void addCoveredConstructor(
+            String packageName, String className, List<String> parameterTypes) {
+        mCoveredMembers.add(new CoveredMember(packageName, className, null, parameterTypes));
+    }
+
+    public void addCoveredMethod(
+            String packageName, String className, String methodName, List<String> parameterTypes) {
+        mCoveredMembers.add(
+                new CoveredMember(packageName, className, methodName, parameterTypes));
+    }
+
+    public int size() {
+        return mCoveredMembers.size();
+    }
+
+    /**
+     * Gets the distinct constructors and methods collected, sorted, e.g.
+     * android.app.Notification.Builder.setContentTitle(java.lang.CharSequence)
+     */
+    List<String> getCoveredMemberSignatures() {
+        Set<String> signatures = new TreeSet<String>();
+        for (CoveredMember member : mCoveredMembers) {
+            String name = member.mMethodName == null ? "<init>" : member.mMethodName;
+            signatures.add(String.format("%s.%s.%s(%s)", member.mPackageName, member.mClassName,
+                    name, String.join(", ", member.mParameterTypes)));
+        }
+        return new ArrayList<String>(signatures);
+    }
+
+    /** Marks all collected constructors and methods as covered by this APK in the API. */
+    public void mergeInto(ApiCoverage apiCoverage) {
+        for (CoveredMember member : mCoveredMembers) {
+            ApiPackage apiPackage = apiCoverage.getPackage(member.mPackageName);
+            if (apiPackage == null) {
+                continue;
+            }
+            ApiClass apiClass = apiPackage.getClass(member.mClassName);
+            if (apiClass == null) {
+                continue;
+            }
+            if (member.mMethodName == null) {
+                apiClass.markConstructorCovered(member.mParameterTypes, mTestApkName);
+            } else {
+                apiClass.markMethodCovered(
+                        member.mMethodName, member.mParameterTypes, mTestApkName);
+            }
+        }
+    }
+}
@@ -45,6 +45,10 @@ import java.util.Collection;
 import java.util.List;
 import java.util.Locale;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.xml.transform.TransformerException;
 
@@ -88,6 +92,7 @@ public class CtsApiCoverage {
         System.out.println("  -o FILE                output file or standard out if not given");
         System.out.println("  -f [txt|xml|html]      format of output");
         System.out.println("  -d PATH                path to dexdeps or expected to be in $PATH");
+        System.out.println("  -i                     scan the APKs in-process instead of running dexdeps");
         System.out.println("  -a PATH                path to the API XML file");
         System.out.println(
                 "  -n PATH                path to the NDK API XML file, which can be updated via ndk-api-report with the ndk target");
@@ -95,6 +100,7 @@ public class CtsApiCoverage {
         System.out.println("  -t TITLE               report title");
         System.out.println("  -a API                 the Android API Level");
         System.out.println("  -b BITS                64 or 32 bits, default 64");
+        System.out.println("  -j JOBS                number of dexdeps to run at once, default: CPUs");
         System.out.println();
         System.exit(1);
     }
@@ -111,6 +117,8 @@ public class CtsApiCoverage {
         int apiLevel = Integer.MAX_VALUE;
         String testCasesFolder = "";
         String bits = "64";
+        int jobs = Runtime.getRuntime().availableProcessors();
+        boolean inProcessDexDeps = false;
 
         List<File> notFoundTestApks = new ArrayList<File>();
         int numTestApkArgs = 0;
@@ -131,6 +139,8 @@ public class CtsApiCoverage {
                     }
                 } else if ("-d".equals(args[i])) {
                     dexDeps = getExpectedArg(args, ++i);
+                } else if ("-i".equals(args[i])) {
+                    inProcessDexDeps = true;
                 } else if ("-a".equals(args[i])) {
                     apiXmlPath = getExpectedArg(args, ++i);
                 } else if ("-n".equals(args[i])) {
@@ -143,6 +153,8 @@ public class CtsApiCoverage {
                     apiLevel = Integer.parseInt(getExpectedArg(args, ++i));
                 } else if ("-b".equals(args[i])) {
                     bits = getExpectedArg(args, ++i);
+                } else if ("-j".equals(args[i])) {
+                    jobs = Integer.parseInt(getExpectedArg(args, ++i));
                 } else {
                     printUsage();
                 }
@@ -171,8 +183,9 @@ public class CtsApiCoverage {
          *    in current.xml. The object will have no information about the coverage for each
          *    constructor or method yet.
          *
-         * 2. For each provided APK, scan it using dexdeps, parse the output of dexdeps, and
-         *    call methods on the ApiCoverage object to cumulatively add coverage stats.
+         * 2. For each provided APK, scan it using dexdeps and parse the output of dexdeps (or, with
+         *    -i, scan its dex references in-process) on a worker thread, then call methods on the
+         *    ApiCoverage object to cumulatively add coverage stats in the order of the APKs.
          *
          * 3. Output a report based on the coverage stats in the ApiCoverage object.
          */
@@ -195,8 +208,8 @@ public class CtsApiCoverage {
 
         // Add superclass information into api coverage.
         apiCoverage.resolveSuperClasses();
+        addApiCoverage(apiCoverage, testApks, inProcessDexDeps ? null : dexDeps, jobs);
         for (File testApk : testApks) {
-            addApiCoverage(apiCoverage, testApk, dexDeps);
             addCddCoverage(cddCoverage, testApk, apiLevel);
         }
 
@@ -238,7 +251,7 @@ public class CtsApiCoverage {
      * @return an {@link ApiCoverage} object representing the API in current.xml without any
      *     coverage statistics yet
      */
-    private static ApiCoverage getEmptyApiCoverage(String apiXmlPath)
+    static ApiCoverage getEmptyApiCoverage(String apiXmlPath)
             throws SAXException, IOException {
         XMLReader xmlReader = XMLReaderFactory.createXMLReader();
         CurrentXmlHandler currentXmlHandler = new CurrentXmlHandler();
@@ -259,17 +272,59 @@ public class CtsApiCoverage {
     }
 
     /**
-     * Adds coverage information gleamed from running dexdeps on the APK to the
-     * {@link ApiCoverage} object.
+     * Adds coverage information gleamed from the dex references of the APKs to the
+     * {@link ApiCoverage} object. Up to {@code jobs} APKs are scanned at once, while the results
+     * are merged on the calling thread in the order of the APKs.
      *
      * @param apiCoverage object to which the coverage statistics will be added to
+     * @param testApks containing the tests that will be scanned
+     * @param dexdeps path to dexdeps to run, or null to scan the APKs in-process
+     * @param jobs number of APKs to scan concurrently
+     */
+    private static void addApiCoverage(
+            ApiCoverage apiCoverage, List<File> testApks, String dexdeps, int jobs)
+            throws SAXException, IOException, InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(jobs, 1));
+        try {
+            List<Future<ApkCoverage>> apkCoverages = new ArrayList<Future<ApkCoverage>>();
+            for (File testApk : testApks) {
+                if (dexdeps == null) {
+                    apkCoverages.add(
+                            executor.submit(() -> DexDepsExtractor.getApkCoverage(testApk)));
+                } else {
+                    apkCoverages.add(executor.submit(() -> getApkCoverage(testApk, dexdeps)));
+                }
+            }
+            for (Future<ApkCoverage> apkCoverage : apkCoverages) {
+                try {
+                    apkCoverage.get().mergeInto(apiCoverage);
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof SAXException) {
+                        throw (SAXException) cause;
+                    } else if (cause instanceof IOException) {
+                        throw (IOException) cause;
+                    }
+                    throw new RuntimeException(cause);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Runs dexdeps on the APK and collects the coverage information without updating the shared
+     * {@link ApiCoverage}, so it can be run on any thread.
+     *
      * @param testApk containing the tests that will be scanned by dexdeps
+     * @return an {@link ApkCoverage} of the constructors and methods called by the APK
      */
-    private static void addApiCoverage(ApiCoverage apiCoverage, File testApk, String dexdeps)
+    static ApkCoverage getApkCoverage(File testApk, String dexdeps)
             throws SAXException, IOException {
         XMLReader xmlReader = XMLReaderFactory.createXMLReader();
-        String testApkName = testApk.getName();
-        DexDepsXmlHandler dexDepsXmlHandler = new DexDepsXmlHandler(apiCoverage, testApkName);
+        ApkCoverage apkCoverage = new ApkCoverage(testApk.getName());
+        DexDepsXmlHandler dexDepsXmlHandler = new DexDepsXmlHandler(apkCoverage);
         xmlReader.setContentHandler(dexDepsXmlHandler);
 
         String apkPath = testApk.getPath();
@@ -281,6 +336,7 @@ public class CtsApiCoverage {
           // where the apk does not contain a classes.dex and therefore parsing won't work.
           System.err.println("warning: dexdeps failed for: " + apkPath);
         }
+        return apkCoverage;
     }
 
     /**
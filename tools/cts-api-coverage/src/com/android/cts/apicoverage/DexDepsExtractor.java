@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.cts.apicoverage;
+
+import org.jf.dexlib2.DexFileFactory;
+import org.jf.dexlib2.Opcodes;
+import org.jf.dexlib2.ReferenceType;
+import org.jf.dexlib2.dexbacked.DexBackedClassDef;
+import org.jf.dexlib2.dexbacked.DexBackedDexFile;
+import org.jf.dexlib2.iface.MultiDexContainer;
+import org.jf.dexlib2.iface.reference.MethodReference;
+import org.jf.dexlib2.iface.reference.Reference;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Extracts the external constructors and methods called by an APK with dexlib2, the same way
+ * dexdeps does, but in-process and without writing and parsing XML. It is used instead of
+ * dexdeps with the -i option of {@link CtsApiCoverage}.
+ */
+class DexDepsExtractor {
+
+    private static final String CONSTRUCTOR_NAME = "<init>";
+
+    private static final Map<Character, String> PRIMITIVE_TYPES =
+            new HashMap<Character, String>();
+
+    static {
+        PRIMITIVE_TYPES.put('Z', "boolean");
+        PRIMITIVE_TYPES.put('B', "byte");
+        PRIMITIVE_TYPES.put('C', "char");
+        PRIMITIVE_TYPES.put('S', "short");
+        PRIMITIVE_TYPES.put('I', "int");
+        PRIMITIVE_TYPES.put('J', "long");
+        PRIMITIVE_TYPES.put('F', "float");
+        PRIMITIVE_TYPES.put('D', "double");
+        PRIMITIVE_TYPES.put('V', "void");
+    }
+
+    private DexDepsExtractor() {}
+
+    /**
+     * Scans the dex files of an APK, i.e. classes.dex, classes2.dex and so on, for references to
+     * methods of classes not defined in the same dex file, like dexdeps does.
+     *
+     * @param testApk containing the tests to scan
+     * @return an {@link ApkCoverage} of the constructors and methods called by the APK
+     */
+    static ApkCoverage getApkCoverage(File testApk) {
+        ApkCoverage apkCoverage = new ApkCoverage(testApk.getName());
+        try {
+            MultiDexContainer<? extends DexBackedDexFile> container =
+                    DexFileFactory.loadDexContainer(testApk, Opcodes.getDefault());
+            for (String entryName : container.getDexEntryNames()) {
+                addDexCoverage(apkCoverage, container.getEntry(entryName));
+            }
+        } catch (IOException
+                | DexFileFactory.DexFileNotFoundException
+                | DexFileFactory.UnsupportedFileTypeException e) {
+            // Acceptable in cases where the apk does not contain a classes.dex.
+            System.err.println("warning: unable to load dex files of: " + testApk.getPath());
+        }
+        return apkCoverage;
+    }
+
+    private static void addDexCoverage(ApkCoverage apkCoverage, DexBackedDexFile dexFile) {
+        Set<String> internalTypes = new HashSet<String>();
+        for (DexBackedClassDef classDef : dexFile.getClasses()) {
+            internalTypes.add(classDef.getType());
+        }
+
+        List<String> parameterTypes = new ArrayList<String>();
+        for (Reference reference : dexFile.getReferences(ReferenceType.METHOD)) {
+            MethodReference method = (MethodReference) reference;
+            String definingClass = method.getDefiningClass();
+            // Methods of arrays, e.g. clone(), are not part of the API.
+            if (internalTypes.contains(definingClass) || definingClass.startsWith("[")) {
+                continue;
+            }
+            String packageName = getPackageName(definingClass);
+            String className = getClassName(definingClass);
+            parameterTypes.clear();
+            for (CharSequence parameterType : method.getParameterTypes()) {
+                parameterTypes.add(descriptorToJavaName(parameterType.toString()));
+            }
+            if (CONSTRUCTOR_NAME.equals(method.getName())) {
+                apkCoverage.addCoveredConstructor(packageName, className, parameterTypes);
+            } else {
+                apkCoverage.addCoveredMethod(
+                        packageName, className, method.getName(), parameterTypes);
+            }
+        }
+    }
+
+    /** Given Landroid/app/Notification$Builder; returns android.app */
+    static String getPackageName(String descriptor) {
+        int end = descriptor.lastIndexOf('/');
+        if (end < 0) {
+            return "";
+        }
+        return descriptor.substring(1, end).replace('/', '.');
+    }
+
+    /** Given Landroid/app/Notification$Builder; returns Notification.Builder */
+    static String getClassName(String descriptor) {
+        int start = descriptor.lastIndexOf('/') + 1;
+        if (start == 0) {
+            // default package, skips the leading 'L'
+            start = 1;
+        }
+        return descriptor.substring(start, descriptor.length() - 1).replace('$', '.');
+    }
+
+    /** Given [Landroid/app/Notification$Builder; returns android.app.Notification.Builder[] */
+    static String descriptorToJavaName(String descriptor) {
+        int arrayDepth = 0;
+        while (descriptor.charAt(arrayDepth) == '[') {
+            arrayDepth++;
+        }
+        String name = PRIMITIVE_TYPES.get(descriptor.charAt(arrayDepth));
+        if (name == null) {
+            name = descriptor.substring(arrayDepth + 1, descriptor.length() - 1)
+                    .replace('/', '.')
+                    .replace('$', '.');
+        }
+        StringBuilder javaName = new StringBuilder(name);
+        for (int i = 0; i < arrayDepth; i++) {
+            javaName.append("[]");
+        }
+        return javaName.toString();
+    }
+}
@@ -25,13 +25,11 @@ import java.util.List;
 
 /**
  * {@link DefaultHander} that parses the output of dexdeps and adds the coverage information to
- * an {@link ApiCoverage} object.
+ * an {@link ApkCoverage} object.
  */
 class DexDepsXmlHandler extends DefaultHandler {
 
-    private final ApiCoverage mPackageMap;
-
-    private final String mTestApkName;
+    private final ApkCoverage mApkCoverage;
 
     private String mCurrentPackageName;
 
@@ -41,9 +39,8 @@ class DexDepsXmlHandler extends DefaultHandler {
 
     private List<String> mCurrentParameterTypes = new ArrayList<String>();
 
-    DexDepsXmlHandler(ApiCoverage packageMap, String testApkName) {
-        this.mPackageMap = packageMap;
-        this.mTestApkName = testApkName;
+    DexDepsXmlHandler(ApkCoverage apkCoverage) {
+        this.mApkCoverage = apkCoverage;
     }
 
     @Override
@@ -69,22 +66,12 @@ class DexDepsXmlHandler extends DefaultHandler {
     public void endElement(String uri, String localName, String name) throws SAXException {
         super.endElement(uri, localName, name);
         if ("constructor".equalsIgnoreCase(localName)) {
-            ApiPackage apiPackage = mPackageMap.getPackage(mCurrentPackageName);
-            if (apiPackage != null) {
-                ApiClass apiClass = apiPackage.getClass(mCurrentClassName);
-                if (apiClass != null) {
-                    apiClass.markConstructorCovered(mCurrentParameterTypes, mTestApkName);
-                }
-            }
+            mApkCoverage.addCoveredConstructor(
+                    mCurrentPackageName, mCurrentClassName, mCurrentParameterTypes);
         }  else if ("method".equalsIgnoreCase(localName)) {
-            ApiPackage apiPackage = mPackageMap.getPackage(mCurrentPackageName);
-            if (apiPackage != null) {
-                ApiClass apiClass = apiPackage.getClass(mCurrentClassName);
-                if (apiClass != null) {
-                    apiClass.markMethodCovered(
-                            mCurrentMethodName, mCurrentParameterTypes, mTestApkName);
-                }
-            }
+            mApkCoverage.addCoveredMethod(
+                    mCurrentPackageName, mCurrentClassName, mCurrentMethodName,
+                    mCurrentParameterTypes);
         }
     }
 }
@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.cts.apicoverage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+/** Unit tests for {@link DexDepsExtractor} */
+@RunWith(JUnit4.class)
+public class DexDepsExtractorTest {
+    // HelloActivity.apk's source code: android/development/samples/HelloActivity
+    // shared with release-parser-tests
+    private static final String TEST_APP_APK = "HelloActivity.apk";
+    // CtsCompilationApp.apk's source code: cts/hostsidetests/compilation/app
+    private static final String TEST_CTS_APK = "CtsCompilationApp.apk";
+    private static final String CLASSES_DEX = "classes.dex";
+
+    /**
+     * Test {@link DexDepsExtractor} finds the same constructors and methods as dexdeps in all the
+     * dex files of a multidex APK
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testMultiDexParity() throws Exception {
+        File apkFile = File.createTempFile("MultiDex", ".apk");
+        apkFile.deleteOnExit();
+        try (ZipOutputStream output = new ZipOutputStream(new FileOutputStream(apkFile))) {
+            copyDex(TEST_APP_APK, output, CLASSES_DEX);
+            copyDex(TEST_CTS_APK, output, "classes2.dex");
+        }
+
+        List<String> expected =
+                CtsApiCoverage.getApkCoverage(apkFile, getDexDepsPath())
+                        .getCoveredMemberSignatures();
+        List<String> actual = DexDepsExtractor.getApkCoverage(apkFile).getCoveredMemberSignatures();
+        assertFalse("dexdeps found no references", expected.isEmpty());
+        assertEquals(String.join("\n", expected), String.join("\n", actual));
+    }
+
+    // Returns the dexdeps named by the "dexdeps" system property, or the one built in
+    // $ANDROID_HOST_OUT/bin
+    private static String getDexDepsPath() throws IOException {
+        String path = System.getProperty("dexdeps");
+        if (path == null) {
+            String hostOut = System.getenv("ANDROID_HOST_OUT");
+            if (hostOut == null) {
+                throw new IOException(
+                        "Set ANDROID_HOST_OUT or the dexdeps system property to run dexdeps");
+            }
+            path = new File(hostOut, "bin/dexdeps").getPath();
+        }
+        if (!new File(path).canExecute()) {
+            throw new IOException("dexdeps not found at " + path);
+        }
+        return path;
+    }
+
+    // Copies the classes.dex of an APK in the resources to a dex entry of another APK
+    private void copyDex(String apkName, ZipOutputStream output, String entryName)
+            throws IOException {
+        try (ZipInputStream input = new ZipInputStream(getResourceAsStream(apkName))) {
+            ZipEntry entry;
+            while ((entry = input.getNextEntry()) != null) {
+                if (CLASSES_DEX.equals(entry.getName())) {
+                    output.putNextEntry(new ZipEntry(entryName));
+                    copy(input, output);
+                    output.closeEntry();
+                    return;
+                }
+            }
+        }
+        throw new IOException("No " + CLASSES_DEX + " in " + apkName);
+    }
+
+    private InputStream getResourceAsStream(String name) throws IOException {
+        InputStream input = getClass().getClassLoader().getResourceAsStream(name);
+        if (input == null) {
+            throw new IOException("Resource not found: " + name);
+        }
+        return input;
+    }
+
+    private static void copy(InputStream input, OutputStream output) throws IOException {
+        byte[] buffer = new byte[4096];
+        int length;
+        while ((length = input.read(buffer)) > 0) {
+            output.write(buffer, 0, length);
+        }
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.cts.releaseparser;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Computes SHA-256 content IDs of files on a bounded pool of hashing threads.
+ *
+ * <p>Files are read through a {@link FileChannel} into a per-thread direct buffer, so hashing a
+ * large file overlaps with the parsing done by the thread which submitted it.
+ */
+public class ContentIdHasher {
+    private static final int HASH_BLOCK_SIZE = 1024 * 1024;
+    private static final int POOL_SIZE = Runtime.getRuntime().availableProcessors();
+    // runs a task on the submitting thread when this many files are already waiting
+    private static final int QUEUE_SIZE = POOL_SIZE * 4;
+    private static final double BYTES_PER_MB = 1024.0 * 1024.0;
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    private static final ThreadLocal<ByteBuffer> sBuffer =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(HASH_BLOCK_SIZE));
+
+    private static final ThreadPoolExecutor sExecutor = createExecutor();
+
+    /** Content ID of a file and how fast it was hashed */
+    public static class Result {
+        private final String mContentId;
+        private final long mSize;
+        private final long mTimeNanos;
+
+        Result(String contentId, long size, long timeNanos) {
+            mContentId = contentId;
+            mSize = size;
+            mTimeNanos = timeNanos;
+        }
+
+        public String getContentId() {
+            return mContentId;
+        }
+
+        public long getSize() {
+            return mSize;
+        }
+
+        public long getTimeNanos() {
+            return mTimeNanos;
+        }
+
+        /** Gets the hash throughput in MB/s */
+        public double getThroughput() {
+            if (mTimeNanos <= 0) {
+                return 0;
+            }
+            return (mSize / BYTES_PER_MB) / (mTimeNanos / NANOS_PER_SECOND);
+        }
+    }
+
+    private ContentIdHasher() {}
+
+    /**
+     * Starts hashing a file on the hashing pool
+     *
+     * @param file to hash
+     * @return the {@link Future} of the hash {@link Result}
+     */
+    public static Future<Result> submit(File file) {
+        return sExecutor.submit(() -> hash(file));
+    }
+
+    /**
+     * Waits for a hash submitted by {@link #submit(File)}. When called from a {@link ForkJoinPool}
+     * worker, the pool may add a compensating thread to keep walking while this one waits.
+     */
+    public static Result await(Future<Result> future)
+            throws InterruptedException, ExecutionException {
+        if (!future.isDone()) {
+            ForkJoinPool.managedBlock(
+                    new ForkJoinPool.ManagedBlocker() {
+                        @Override
+                        public boolean block() throws InterruptedException {
+                            try {
+                                future.get();
+                            } catch (ExecutionException e) {
+                                // rethrown by the get() below
+                            }
+                            return true;
+                        }
+
+                        @Override
+                        public boolean isReleasable() {
+                            return future.isDone();
+                        }
+                    });
+        }
+        return future.get();
+    }
+
+    /**
+     * Hashes a file on the calling thread
+     *
+     * @param file to hash
+     * @return the Base64 SHA-256 content ID with the time spent
+     */
+    public static Result hash(File file) throws IOException, NoSuchAlgorithmException {
+        long startTime = System.nanoTime();
+        MessageDigest md = MessageDigest.getInstance("SHA-256");
+        ByteBuffer buffer = sBuffer.get();
+        long size = 0;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            buffer.clear();
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                size += buffer.remaining();
+                md.update(buffer);
+                buffer.clear();
+            }
+        }
+        // Converts to Base64 String
+        String contentId = Base64.getEncoder().encodeToString(md.digest());
+        return new Result(contentId, size, System.nanoTime() - startTime);
+    }
+
+    private static ThreadPoolExecutor createExecutor() {
+        ThreadFactory threadFactory =
+                runnable -> {
+                    Thread thread = new Thread(runnable, "ContentIdHasher");
+                    // does not keep the JVM alive after the parsing is done
+                    thread.setDaemon(true);
+                    return thread;
+                };
+        return new ThreadPoolExecutor(
+                POOL_SIZE,
+                POOL_SIZE,
+                0L,
+                TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(QUEUE_SIZE),
+                threadFactory,
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+}
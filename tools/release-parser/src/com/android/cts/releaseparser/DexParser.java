@@ -40,9 +40,13 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
@@ -55,6 +59,15 @@ public class DexParser extends FileParser {
     private String mPackageName;
     private boolean mParseInternalApi;
 
+    // Indexed mode: classes and external references are looked up on demand
+    private DexBackedDexFile mDexFile;
+    private Map<String, DexBackedClassDef> mClassDefIndex;
+    // indices into the field/method reference pools by the external defining class
+    private Map<String, List<Integer>> mExternalFieldIndex;
+    private Map<String, List<Integer>> mExternalMethodIndex;
+    private Map<String, ApiClass> mInternalApiClassCache;
+    private Map<String, ApiClass> mExternalApiClassCache;
+
     public DexParser(File file) {
         super(file);
         // default is the file name with out extenion
@@ -95,93 +108,255 @@ public class DexParser extends FileParser {
         mInternalApiPackageBuilder = ApiPackage.newBuilder();
         mInternalApiPackageBuilder.setName(mPackageName);
         mInternalApiClassBuilderMap = new HashMap<String, ApiClass.Builder>();
-        DexBackedDexFile dexFile = null;
 
-        // Loads a Dex file
-        System.out.println("dexFile: " + getFile().getAbsoluteFile());
-        try {
-            dexFile = DexFileFactory.loadDexFile(getFile().getAbsoluteFile(), Opcodes.getDefault());
+        // Loads the Dex file once for the full parse and the indexed lookups
+        index();
+        if (mDexFile == null) {
+            mExternalApiPackageBuilder.setError(
+                    "Unable to load dex file: " + getFile().getAbsoluteFile());
+            return;
+        }
 
+        if (mParseInternalApi) {
             // Iterates through all clesses in the Dex file
-            for (DexBackedClassDef classDef : dexFile.getClasses()) {
-                // Still need to build the map to filter out internal classes later
+            for (DexBackedClassDef classDef : mDexFile.getClasses()) {
                 ApiClass.Builder classBuilder =
                         ClassUtils.getApiClassBuilder(
                                 mInternalApiClassBuilderMap, classDef.getType());
-                if (mParseInternalApi) {
-                    classBuilder.setAccessFlags(classDef.getAccessFlags());
-                    classBuilder.setSuperClass(
-                            ClassUtils.getCanonicalName(classDef.getSuperclass()));
-                    classBuilder.addAllInterfaces(
-                            classDef.getInterfaces()
-                                    .stream()
-                                    .map(iType -> ClassUtils.getCanonicalName(iType))
-                                    .collect(Collectors.toList()));
-
-                    List<ApiAnnotation> annLst = getAnnotationList(classDef.getAnnotations());
-                    if (!annLst.isEmpty()) {
-                        classBuilder.addAllAnnotations(annLst);
-                    }
-
-                    for (DexBackedField dxField : classDef.getFields()) {
-                        ApiField.Builder fieldBuilder = ApiField.newBuilder();
-                        fieldBuilder.setName(dxField.getName());
-                        fieldBuilder.setType(ClassUtils.getCanonicalName(dxField.getType()));
-                        fieldBuilder.setAccessFlags(dxField.getAccessFlags());
-                        annLst = getAnnotationList(dxField.getAnnotations());
-                        if (!annLst.isEmpty()) {
-                            fieldBuilder.addAllAnnotations(annLst);
-                        }
-                        classBuilder.addFields(fieldBuilder.build());
-                    }
-
-                    for (DexBackedMethod dxMethod : classDef.getMethods()) {
-                        ApiMethod.Builder methodBuilder = ApiMethod.newBuilder();
-                        methodBuilder.setName(dxMethod.getName());
-                        methodBuilder.setAccessFlags(dxMethod.getAccessFlags());
-                        for (String parameter : dxMethod.getParameterTypes()) {
-                            methodBuilder.addParameters(ClassUtils.getCanonicalName(parameter));
-                        }
-                        methodBuilder.setReturnType(
-                                ClassUtils.getCanonicalName(dxMethod.getReturnType()));
-                        annLst = getAnnotationList(dxMethod.getAnnotations());
-                        if (!annLst.isEmpty()) {
-                            methodBuilder.addAllAnnotations(annLst);
-                        }
-                        classBuilder.addMethods(methodBuilder.build());
-                    }
+                addInternalApi(classBuilder, classDef);
+            }
+        }
+
+        // The class index filters out internal classes
+        mDexFile.getReferences(ReferenceType.FIELD)
+                .stream()
+                .map(f -> (DexBackedFieldReference) f)
+                .filter(f -> (!mClassDefIndex.containsKey(f.getDefiningClass())))
+                .forEach(f -> processField(mExternalApiClassBuilderMap, f));
+
+        mDexFile.getReferences(ReferenceType.METHOD)
+                .stream()
+                .map(m -> (DexBackedMethodReference) m)
+                .filter(m -> (!mClassDefIndex.containsKey(m.getDefiningClass())))
+                .filter(m -> !isArrayClone(m))
+                .forEach(m -> processMethod(mExternalApiClassBuilderMap, m));
+
+        ClassUtils.addAllApiClasses(mExternalApiClassBuilderMap, mExternalApiPackageBuilder);
+        if (mParseInternalApi) {
+            ClassUtils.addAllApiClasses(mInternalApiClassBuilderMap, mInternalApiPackageBuilder);
+        }
+    }
+
+    /**
+     * Gets the types of classes defined in the dex file
+     *
+     * @return a Set of type descriptors, e.g. Landroid/app/Activity;
+     */
+    public Set<String> getInternalClassTypes() {
+        index();
+        return Collections.unmodifiableSet(mClassDefIndex.keySet());
+    }
+
+    /**
+     * Gets the types of classes, whose fields or methods are referenced by the dex file but which
+     * are not defined in it
+     *
+     * @return a Set of type descriptors, e.g. Landroid/app/Activity;
+     */
+    public Set<String> getExternalClassTypes() {
+        index();
+        indexExternalReferences();
+        Set<String> types = new HashSet<String>(mExternalFieldIndex.keySet());
+        types.addAll(mExternalMethodIndex.keySet());
+        return types;
+    }
+
+    /**
+     * Builds the internal API of a class on first access, with annotations, fields and methods
+     *
+     * @param type descriptor of a class defined in the dex file, e.g. Lcom/foo/Bar;
+     * @return the ApiClass or null if the class is not defined in the dex file
+     */
+    public ApiClass getInternalApiClass(String type) {
+        index();
+        ApiClass apiClass = mInternalApiClassCache.get(type);
+        if (apiClass == null) {
+            DexBackedClassDef classDef = mClassDefIndex.get(type);
+            if (classDef == null) {
+                return null;
+            }
+            ApiClass.Builder classBuilder =
+                    ApiClass.newBuilder().setName(ClassUtils.getCanonicalName(type));
+            addInternalApi(classBuilder, classDef);
+            apiClass = classBuilder.build();
+            mInternalApiClassCache.put(type, apiClass);
+        }
+        return apiClass;
+    }
+
+    /**
+     * Builds the referenced external API of a class on first access
+     *
+     * @param type descriptor of a class referenced by the dex file, e.g. Landroid/app/Activity;
+     * @return the ApiClass or null if no field nor method of the class is referenced
+     */
+    public ApiClass getExternalApiClass(String type) {
+        index();
+        indexExternalReferences();
+        ApiClass apiClass = mExternalApiClassCache.get(type);
+        if (apiClass == null) {
+            List<Integer> fieldIndices = mExternalFieldIndex.get(type);
+            List<Integer> methodIndices = mExternalMethodIndex.get(type);
+            if (fieldIndices == null && methodIndices == null) {
+                return null;
+            }
+            HashMap<String, ApiClass.Builder> builderMap = new HashMap<String, ApiClass.Builder>();
+            if (fieldIndices != null) {
+                List<? extends Reference> fields = mDexFile.getReferences(ReferenceType.FIELD);
+                for (int index : fieldIndices) {
+                    processField(builderMap, (DexBackedFieldReference) fields.get(index));
+                }
+            }
+            if (methodIndices != null) {
+                List<? extends Reference> methods = mDexFile.getReferences(ReferenceType.METHOD);
+                for (int index : methodIndices) {
+                    processMethod(builderMap, (DexBackedMethodReference) methods.get(index));
                 }
             }
+            apiClass = builderMap.get(type).build();
+            mExternalApiClassCache.put(type, apiClass);
+        }
+        return apiClass;
+    }
+
+    /**
+     * Gets external class dependencies by walking the field, method and type reference pools only,
+     * without building any ApiClass
+     *
+     * @return a sorted List of canonical names of classes used but not defined by the dex file
+     */
+    public List<String> getExternalDependencies() {
+        index();
+        Set<String> dependencies = new TreeSet<String>();
+        if (mDexFile == null) {
+            return new ArrayList<String>(dependencies);
+        }
+        for (Reference ref : mDexFile.getReferences(ReferenceType.FIELD)) {
+            addExternalDependency(dependencies, ((FieldReference) ref).getDefiningClass());
+        }
+        for (Reference ref : mDexFile.getReferences(ReferenceType.METHOD)) {
+            addExternalDependency(dependencies, ((MethodReference) ref).getDefiningClass());
+        }
+        for (Reference ref : mDexFile.getReferences(ReferenceType.TYPE)) {
+            DexBackedTypeReference typeRef = (DexBackedTypeReference) ref;
+            if (!isInternal(typeRef)) {
+                addExternalDependency(dependencies, typeRef.getType());
+            }
+        }
+        return new ArrayList<String>(dependencies);
+    }
 
-            dexFile.getReferences(ReferenceType.FIELD)
-                    .stream()
-                    .map(f -> (DexBackedFieldReference) f)
-                    .filter(f -> (!mInternalApiClassBuilderMap.containsKey(f.getDefiningClass())))
-                    .forEach(f -> processField(f));
-
-            dexFile.getReferences(ReferenceType.METHOD)
-                    .stream()
-                    .map(m -> (DexBackedMethodReference) m)
-                    .filter(m -> (!mInternalApiClassBuilderMap.containsKey(m.getDefiningClass())))
-                    .filter(
-                            m ->
-                                    !(m.getDefiningClass().startsWith("[")
-                                            && m.getName().equals("clone")))
-                    .forEach(m -> processMethod(m));
-
-            ClassUtils.addAllApiClasses(mExternalApiClassBuilderMap, mExternalApiPackageBuilder);
-            if (mParseInternalApi) {
-                ClassUtils.addAllApiClasses(
-                        mInternalApiClassBuilderMap, mInternalApiPackageBuilder);
+    private void addExternalDependency(Set<String> dependencies, String type) {
+        // array types, e.g. [Ljava/lang/String;, are not classes to depend on
+        if (type.charAt(0) != ClassUtils.TYPE_ARRAY && !mClassDefIndex.containsKey(type)) {
+            dependencies.add(ClassUtils.getCanonicalName(type));
+        }
+    }
+
+    // Loads the dex file and indexes its classes by type without parsing them
+    private void index() {
+        if (mClassDefIndex != null) {
+            return;
+        }
+        mClassDefIndex = new HashMap<String, DexBackedClassDef>();
+        mInternalApiClassCache = new HashMap<String, ApiClass>();
+        mExternalApiClassCache = new HashMap<String, ApiClass>();
+        System.out.println("dexFile: " + getFile().getAbsoluteFile());
+        try {
+            mDexFile =
+                    DexFileFactory.loadDexFile(getFile().getAbsoluteFile(), Opcodes.getDefault());
+            for (DexBackedClassDef classDef : mDexFile.getClasses()) {
+                mClassDefIndex.put(classDef.getType(), classDef);
             }
         } catch (IOException | DexFileFactory.DexFileNotFoundException ex) {
-            String error = "Unable to load dex file: " + getFile().getAbsoluteFile();
-            mExternalApiPackageBuilder.setError(error);
-            System.err.println(error);
+            System.err.println("Unable to load dex file: " + getFile().getAbsoluteFile());
             ex.printStackTrace();
         }
     }
 
+    // Indexes the field & method reference pools by external defining classes
+    private void indexExternalReferences() {
+        if (mExternalFieldIndex != null) {
+            return;
+        }
+        mExternalFieldIndex = new HashMap<String, List<Integer>>();
+        mExternalMethodIndex = new HashMap<String, List<Integer>>();
+        if (mDexFile == null) {
+            return;
+        }
+        List<? extends Reference> fields = mDexFile.getReferences(ReferenceType.FIELD);
+        for (int i = 0; i < fields.size(); i++) {
+            String type = ((DexBackedFieldReference) fields.get(i)).getDefiningClass();
+            if (!mClassDefIndex.containsKey(type)) {
+                mExternalFieldIndex.computeIfAbsent(type, k -> new ArrayList<Integer>()).add(i);
+            }
+        }
+        List<? extends Reference> methods = mDexFile.getReferences(ReferenceType.METHOD);
+        for (int i = 0; i < methods.size(); i++) {
+            DexBackedMethodReference m = (DexBackedMethodReference) methods.get(i);
+            String type = m.getDefiningClass();
+            if (!mClassDefIndex.containsKey(type) && !isArrayClone(m)) {
+                mExternalMethodIndex.computeIfAbsent(type, k -> new ArrayList<Integer>()).add(i);
+            }
+        }
+    }
+
+    private static boolean isArrayClone(DexBackedMethodReference m) {
+        return m.getDefiningClass().startsWith("[") && m.getName().equals("clone");
+    }
+
+    private void addInternalApi(ApiClass.Builder classBuilder, DexBackedClassDef classDef) {
+        classBuilder.setAccessFlags(classDef.getAccessFlags());
+        classBuilder.setSuperClass(ClassUtils.getCanonicalName(classDef.getSuperclass()));
+        classBuilder.addAllInterfaces(
+                classDef.getInterfaces()
+                        .stream()
+                        .map(iType -> ClassUtils.getCanonicalName(iType))
+                        .collect(Collectors.toList()));
+
+        List<ApiAnnotation> annLst = getAnnotationList(classDef.getAnnotations());
+        if (!annLst.isEmpty()) {
+            classBuilder.addAllAnnotations(annLst);
+        }
+
+        for (DexBackedField dxField : classDef.getFields()) {
+            ApiField.Builder fieldBuilder = ApiField.newBuilder();
+            fieldBuilder.setName(dxField.getName());
+            fieldBuilder.setType(ClassUtils.getCanonicalName(dxField.getType()));
+            fieldBuilder.setAccessFlags(dxField.getAccessFlags());
+            annLst = getAnnotationList(dxField.getAnnotations());
+            if (!annLst.isEmpty()) {
+                fieldBuilder.addAllAnnotations(annLst);
+            }
+            classBuilder.addFields(fieldBuilder.build());
+        }
+
+        for (DexBackedMethod dxMethod : classDef.getMethods()) {
+            ApiMethod.Builder methodBuilder = ApiMethod.newBuilder();
+            methodBuilder.setName(dxMethod.getName());
+            methodBuilder.setAccessFlags(dxMethod.getAccessFlags());
+            for (String parameter : dxMethod.getParameterTypes()) {
+                methodBuilder.addParameters(ClassUtils.getCanonicalName(parameter));
+            }
+            methodBuilder.setReturnType(ClassUtils.getCanonicalName(dxMethod.getReturnType()));
+            annLst = getAnnotationList(dxMethod.getAnnotations());
+            if (!annLst.isEmpty()) {
+                methodBuilder.addAllAnnotations(annLst);
+            }
+            classBuilder.addMethods(methodBuilder.build());
+        }
+    }
+
     private List<ApiAnnotation> getAnnotationList(Set<? extends Annotation> annotations) {
         List<ApiAnnotation> apiAnnotationList = new ArrayList<ApiAnnotation>();
         for (Annotation annotation : annotations) {
@@ -245,16 +420,18 @@ public class DexParser extends FileParser {
         }
     }
 
-    private void processField(DexBackedFieldReference f) {
+    private void processField(
+            HashMap<String, ApiClass.Builder> apiClassBuilderMap, DexBackedFieldReference f) {
         ApiField.Builder fieldBuilder = ApiField.newBuilder();
         fieldBuilder.setName(f.getName());
         fieldBuilder.setType(ClassUtils.getCanonicalName(f.getType()));
         ApiClass.Builder classBuilder =
-                ClassUtils.getApiClassBuilder(mExternalApiClassBuilderMap, f.getDefiningClass());
+                ClassUtils.getApiClassBuilder(apiClassBuilderMap, f.getDefiningClass());
         classBuilder.addFields(fieldBuilder.build());
     }
 
-    private void processMethod(DexBackedMethodReference m) {
+    private void processMethod(
+            HashMap<String, ApiClass.Builder> apiClassBuilderMap, DexBackedMethodReference m) {
         ApiMethod.Builder methodBuilder = ApiMethod.newBuilder();
         methodBuilder.setName(m.getName());
         for (String parameter : m.getParameterTypes()) {
@@ -262,7 +439,7 @@ public class DexParser extends FileParser {
         }
         methodBuilder.setReturnType(ClassUtils.getCanonicalName(m.getReturnType()));
         ApiClass.Builder classBuilder =
-                ClassUtils.getApiClassBuilder(mExternalApiClassBuilderMap, m.getDefiningClass());
+                ClassUtils.getApiClassBuilder(apiClassBuilderMap, m.getDefiningClass());
         classBuilder.addMethods(methodBuilder.build());
     }
 
@@ -334,6 +511,7 @@ public class DexParser extends FileParser {
                     + "Options:\n"
                     + "\t-i PATH\t The file path of the file to be parsed.\n"
                     + "\t-pi \t Parses internal methods and fields too. Output will be large when parsing multiple files in a release.\n"
+                    + "\t-d \t Only prints external class dependencies, which is much faster.\n"
                     + "\t-of PATH\t The file path of the output file instead of printing to System.out.\n";
 
     public static void main(String[] args) {
@@ -348,7 +526,9 @@ public class DexParser extends FileParser {
             DexParser aParser = new DexParser(apkFile);
             aParser.setParseInternalApi(parseInternalApi);
 
-            if (outputFileName != null) {
+            if (argParser.containsOption("d")) {
+                System.out.println(String.join("\n", aParser.getExternalDependencies()));
+            } else if (outputFileName != null) {
                 FileOutputStream txtOutput = new FileOutputStream(outputFileName);
                 txtOutput.write(
                         TextFormat.printToString(aParser.getExternalApiPackage())
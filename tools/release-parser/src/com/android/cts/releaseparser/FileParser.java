@@ -21,14 +21,13 @@ import com.android.cts.releaseparser.ReleaseProto.*;
 import com.google.protobuf.TextFormat;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.charset.Charset;
-import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.util.Base64;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 public class FileParser {
     private static final String NO_ID = "";
@@ -57,6 +56,8 @@ public class FileParser {
     protected String mContentId;
     protected String mCodeId;
     protected Entry.Builder mFileEntryBuilder;
+    private Future<ContentIdHasher.Result> mContentIdFuture;
+    private ContentIdHasher.Result mHashResult;
 
     public static FileParser getParser(File file) {
         String fName = file.getName();
@@ -129,24 +130,35 @@ public class FileParser {
     public String getFileContentId() {
         if (NO_ID.equals(mContentId)) {
             try {
-                MessageDigest md = MessageDigest.getInstance("SHA-256");
-                FileInputStream fis = new FileInputStream(mFile);
-                byte[] dataBytes = new byte[READ_BLOCK_SIZE];
-                int nread = 0;
-                while ((nread = fis.read(dataBytes)) != -1) {
-                    md.update(dataBytes, 0, nread);
+                if (mContentIdFuture != null) {
+                    mHashResult = ContentIdHasher.await(mContentIdFuture);
+                } else {
+                    mHashResult = ContentIdHasher.hash(mFile);
                 }
-                // Converts to Base64 String
-                mContentId = Base64.getEncoder().encodeToString(md.digest());
+                mContentId = mHashResult.getContentId();
             } catch (IOException e) {
                 System.err.println("IOException:" + e.getMessage());
             } catch (NoSuchAlgorithmException e) {
                 System.err.println("NoSuchAlgorithmException:" + e.getMessage());
+            } catch (ExecutionException e) {
+                System.err.println("Failed to hash: " + getFileName() + ", err:" + e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                System.err.println("Interrupted while hashing: " + getFileName());
             }
         }
         return mContentId;
     }
 
+    /**
+     * Gets the hash metrics of the content ID
+     *
+     * @return the {@link ContentIdHasher.Result} or null if the file was not hashed
+     */
+    public ContentIdHasher.Result getHashResult() {
+        return mHashResult;
+    }
+
     public int getAbiBits() {
         return 0;
     }
@@ -197,12 +209,19 @@ public class FileParser {
     }
 
     private void parse() {
+        // hashes on the hashing pool while parsing the file content
+        if (mContentIdFuture == null
+                && NO_ID.equals(mContentId)
+                && getType() != Entry.EntryType.SYMBOLIC_LINK) {
+            mContentIdFuture = ContentIdHasher.submit(mFile);
+        }
         mFileEntryBuilder = Entry.newBuilder();
         mFileEntryBuilder.setName(getFileName());
         mFileEntryBuilder.setSize(getFile().length());
-        mFileEntryBuilder.setContentId(getFileContentId());
-        mFileEntryBuilder.setCodeId(getCodeId());
         mFileEntryBuilder.setType(getType());
         setAdditionalInfo();
+        // the code ID of some parsers is the content ID, so it waits for the hash after parsing
+        mFileEntryBuilder.setCodeId(getCodeId());
+        mFileEntryBuilder.setContentId(getFileContentId());
     }
 }
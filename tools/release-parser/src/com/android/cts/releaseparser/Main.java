@@ -19,6 +19,7 @@ package com.android.cts.releaseparser;
 import com.android.cts.releaseparser.ReleaseProto.*;
 import com.google.protobuf.TextFormat;
 
+import java.io.File;
 import java.io.FileOutputStream;
 import java.nio.charset.Charset;
 import java.nio.file.Paths;
@@ -33,19 +34,48 @@ public class Main {
                     + "\tto prase a release, such as device build, test suite or app distribution package\n"
                     + "Options:\n"
                     + "\t-i PATH\t path to a release folder\n"
-                    + "\t-o PATH\t path to output files\n";
+                    + "\t-o PATH\t path to output files\n"
+                    + "\t-t N\t parses files with N threads, default: 0 to parse serially\n"
+                    + "\t-b \t also parses serially to report the speedup of -t N\n"
+                    + "\t-c PATH\t path to a parse cache file to skip parsing unchanged files\n"
+                    + "\t-ci \t invalidates the parse cache before parsing\n";
 
     public static void main(final String[] args) {
         try {
             ArgumentParser argParser = new ArgumentParser(args);
             String relFolder = argParser.getParameterElement("i", 0);
             String outputPath = argParser.getParameterElement("o", 0);
+            String threads = argParser.getParameterElement("t", 0);
+            int parallelism = (threads == null) ? 0 : Integer.parseInt(threads);
 
             // parse a release folder
-            ReleaseParser relParser = new ReleaseParser(relFolder);
+            ReleaseParser relParser = new ReleaseParser(relFolder, parallelism);
+            String cachePath = argParser.getParameterElement("c", 0);
+            ParseCache parseCache = null;
+            if (cachePath != null) {
+                parseCache = new ParseCache(new File(cachePath));
+                if (argParser.containsOption("ci")) {
+                    parseCache.invalidate();
+                }
+                relParser.setParseCache(parseCache);
+            }
             String relNameVer = relParser.getReleaseId();
+            if (parseCache != null) {
+                System.out.printf(
+                        "Parse cache hits: %d, misses: %d\n",
+                        parseCache.getHitCount(), parseCache.getMissCount());
+                parseCache.save();
+            }
+            System.out.printf(
+                    "Parsed %s in %d ms with %d thread(s)\n",
+                    relFolder, relParser.getParseTimeMillis(), parallelism);
+            if (argParser.containsOption("b") && parallelism > 0) {
+                reportSpeedup(relParser, relFolder);
+            }
             relParser.writeRelesaeContentCsvFile(
                     relNameVer, getPathString(outputPath, "%s-ReleaseContent.csv", relNameVer));
+            relParser.writeHashMetricsCsvFile(
+                    relNameVer, getPathString(outputPath, "%s-HashMetrics.csv", relNameVer));
 
             // write release content JSON file
             JsonPrinter jPrinter =
@@ -99,6 +129,17 @@ public class Main {
         }
     }
 
+    // parses the release again serially, checks the content is the same and prints the speedup
+    private static void reportSpeedup(ReleaseParser relParser, String relFolder) {
+        ReleaseParser serialParser = new ReleaseParser(relFolder);
+        long serialTime = serialParser.getParseTimeMillis();
+        long parallelTime = Math.max(relParser.getParseTimeMillis(), 1L);
+        boolean same = serialParser.getReleaseContent().equals(relParser.getReleaseContent());
+        System.out.printf(
+                "Serial: %d ms, parallel: %d ms, speedup: %.2fx, same content: %b\n",
+                serialTime, parallelTime, (double) serialTime / parallelTime, same);
+    }
+
     public static String getPathString(String outputPath, String format, String id) {
         return Paths.get(outputPath, String.format(format, id)).toString();
     }
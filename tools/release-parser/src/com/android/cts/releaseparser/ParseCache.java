@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.cts.releaseparser;
+
+import com.android.cts.releaseparser.ReleaseProto.*;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An on-disk cache of parsed file entries keyed by (path, size, last modified time).
+ *
+ * <p>A file whose size and last modified time have not changed since it was cached is neither
+ * hashed nor parsed again. The cache is safe to be used by multiple parsing threads.
+ */
+public class ParseCache {
+    // bumps it when a parser changes its output to drop caches of older parsers
+    private static final int CACHE_VERSION = 2;
+
+    private final File mCacheFile;
+    private final Map<String, CachedEntry> mCachedEntries;
+    private final AtomicLong mHitCount;
+    private final AtomicLong mMissCount;
+
+    /**
+     * Creates a cache backed by a file, loads the file if it exists
+     *
+     * @param cacheFile the file to load from and save to
+     */
+    public ParseCache(File cacheFile) {
+        mCacheFile = cacheFile;
+        mCachedEntries = new ConcurrentHashMap<String, CachedEntry>();
+        mHitCount = new AtomicLong();
+        mMissCount = new AtomicLong();
+        load();
+    }
+
+    /**
+     * Gets the cached entry of a file
+     *
+     * @param file to look up
+     * @return the {@link CachedEntry} or null if the file is not cached or has been changed
+     */
+    public CachedEntry get(File file) {
+        CachedEntry cachedEntry = mCachedEntries.get(getKey(file));
+        if (cachedEntry != null
+                && cachedEntry.getSize() == file.length()
+                && cachedEntry.getLastModified() == file.lastModified()) {
+            mHitCount.incrementAndGet();
+            return cachedEntry;
+        }
+        mMissCount.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Caches the entry of a file
+     *
+     * @param file parsed
+     * @param entry the parser output of the file
+     * @param releaseInfo release level info of a build.prop or a test suite tradefed jar, or null
+     */
+    public void put(File file, Entry entry, ReleaseContent releaseInfo) {
+        CachedEntry.Builder cachedEntry =
+                CachedEntry.newBuilder()
+                        .setSize(file.length())
+                        .setLastModified(file.lastModified())
+                        .setEntry(entry);
+        if (releaseInfo != null) {
+            cachedEntry.setReleaseInfo(releaseInfo);
+        }
+        mCachedEntries.put(getKey(file), cachedEntry.build());
+    }
+
+    /** Drops all cached entries, also from the cache file on the next {@link #save()} */
+    public void invalidate() {
+        mCachedEntries.clear();
+    }
+
+    /** Drops the cached entry of a file */
+    public void invalidate(File file) {
+        mCachedEntries.remove(getKey(file));
+    }
+
+    public long getHitCount() {
+        return mHitCount.get();
+    }
+
+    public long getMissCount() {
+        return mMissCount.get();
+    }
+
+    public int size() {
+        return mCachedEntries.size();
+    }
+
+    /** Writes the cache to the cache file, without the entries of files no longer existing */
+    public void save() {
+        mCachedEntries.keySet().removeIf(key -> !new File(key).isFile());
+        ParseCacheContent content =
+                ParseCacheContent.newBuilder()
+                        .setVersion(CACHE_VERSION)
+                        .putAllEntries(mCachedEntries)
+                        .build();
+        try (FileOutputStream output = new FileOutputStream(mCacheFile)) {
+            content.writeTo(output);
+        } catch (IOException e) {
+            System.err.println("Failed to save cache: " + mCacheFile + ", err:" + e.getMessage());
+        }
+    }
+
+    private void load() {
+        if (!mCacheFile.isFile()) {
+            return;
+        }
+        try (FileInputStream input = new FileInputStream(mCacheFile)) {
+            ParseCacheContent content = ParseCacheContent.parseFrom(input);
+            if (content.getVersion() == CACHE_VERSION) {
+                mCachedEntries.putAll(content.getEntriesMap());
+            } else {
+                System.err.println("Drops cache of version " + content.getVersion());
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to load cache: " + mCacheFile + ", err:" + e.getMessage());
+        }
+    }
+
+    private static String getKey(File file) {
+        return file.getAbsolutePath();
+    }
+}
@@ -33,6 +33,11 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
 
 class ReleaseParser {
     private static final String ROOT_FOLDER_TAG = "/";
@@ -67,12 +72,30 @@ class ReleaseParser {
     private Path mRootPath;
     private ReleaseContent.Builder mRelContentBuilder;
     private Map<String, Entry> mEntries;
+    // number of worker threads to parse files, 0 for parsing on the caller thread
+    private final int mParallelism;
+    private long mParseTimeMillis;
+    private ParseCache mParseCache;
+    // content ID hash metrics of parsed files by relative path
+    private Map<String, ContentIdHasher.Result> mHashResults;
 
     ReleaseParser(String folder) {
+        this(folder, 0);
+    }
+
+    /**
+     * Creates a release parser
+     *
+     * @param folder path to a release folder
+     * @param parallelism number of threads of a ForkJoinPool to walk the folder, 0 for serial
+     */
+    ReleaseParser(String folder, int parallelism) {
         mFolderPath = folder;
+        mParallelism = parallelism;
         File fFile = new File(mFolderPath);
         mRootPath = Paths.get(fFile.getAbsolutePath());
         mEntries = new HashMap<String, Entry>();
+        mHashResults = new ConcurrentHashMap<String, ContentIdHasher.Result>();
     }
 
     public String getReleaseId() {
@@ -92,7 +115,14 @@ class ReleaseParser {
             // default APP_DISTRIBUTION_PACKAGE if no BUILD_PROP nor TEST_SUITE_TRADEFED is found
             mRelContentBuilder.setReleaseType(ReleaseType.APP_DISTRIBUTION_PACKAGE);
             // also add the root folder entry
-            Entry.Builder fBuilder = parseFolder(mFolderPath);
+            long startTime = System.currentTimeMillis();
+            Entry.Builder fBuilder;
+            if (mParallelism > 0) {
+                fBuilder = parseFolderParallel(mFolderPath);
+            } else {
+                fBuilder = parseFolder(mFolderPath);
+            }
+            mParseTimeMillis = System.currentTimeMillis() - startTime;
             if (mRelContentBuilder.getName().equals("")) {
                 System.err.println("Release Name unknown!");
                 mRelContentBuilder.setName(mFolderPath);
@@ -111,9 +141,23 @@ class ReleaseParser {
         return mRelContentBuilder.build();
     }
 
+    /**
+     * Sets a cache to skip parsing files not changed since the last run
+     *
+     * @param parseCache the cache to look up and to update, or null to parse all files
+     */
+    public void setParseCache(ParseCache parseCache) {
+        mParseCache = parseCache;
+    }
+
+    /** Gets the wall-clock time in milliseconds spent on walking and parsing the release folder */
+    public long getParseTimeMillis() {
+        getReleaseContent();
+        return mParseTimeMillis;
+    }
+
     // Parse all files in a folder and return the foler entry builder
     private Entry.Builder parseFolder(String fPath) {
-        Entry.Builder folderEntry = Entry.newBuilder();
         File folder = new File(fPath);
         Path folderPath = Paths.get(folder.getAbsolutePath());
         String folderRelativePath = mRootPath.relativize(folderPath).toString();
@@ -124,80 +168,178 @@ class ReleaseParser {
         // walks through all files
         for (File file : fileList) {
             if (file.isFile()) {
-                String fileRelativePath =
-                        mRootPath.relativize(Paths.get(file.getAbsolutePath())).toString();
-                FileParser fParser = FileParser.getParser(file);
-                Entry.Builder fileEntryBuilder = fParser.getFileEntryBuilder();
-                fileEntryBuilder.setRelativePath(fileRelativePath);
-
-                if (folderRelativePath.isEmpty()) {
-                    fileEntryBuilder.setParentFolder(ROOT_FOLDER_TAG);
-                } else {
-                    fileEntryBuilder.setParentFolder(folderRelativePath);
-                }
-
-                Entry.EntryType eType = fParser.getType();
-                switch (eType) {
-                    case TEST_SUITE_TRADEFED:
-                        mRelContentBuilder.setTestSuiteTradefed(fileRelativePath);
-                        TestSuiteTradefedParser tstParser = (TestSuiteTradefedParser) fParser;
-                        // get [cts]-known-failures.xml
-                        mRelContentBuilder.addAllKnownFailures(tstParser.getKnownFailureList());
-                        mRelContentBuilder.setName(tstParser.getName());
-                        mRelContentBuilder.setFullname(tstParser.getFullName());
-                        mRelContentBuilder.setBuildNumber(tstParser.getBuildNumber());
-                        mRelContentBuilder.setTargetArch(tstParser.getTargetArch());
-                        mRelContentBuilder.setVersion(tstParser.getVersion());
-                        mRelContentBuilder.setReleaseType(ReleaseType.TEST_SUITE);
-                        break;
-                    case BUILD_PROP:
-                        BuildPropParser bpParser = (BuildPropParser) fParser;
-                        try {
-                            mRelContentBuilder.setReleaseType(ReleaseType.DEVICE_BUILD);
-                            mRelContentBuilder.setName(bpParser.getName());
-                            mRelContentBuilder.setFullname(bpParser.getFullName());
-                            mRelContentBuilder.setBuildNumber(bpParser.getBuildNumber());
-                            mRelContentBuilder.setVersion(bpParser.getVersion());
-                            mRelContentBuilder.putAllProperties(bpParser.getProperties());
-                        } catch (Exception e) {
-                            System.err.println(
-                                    "No product name, version & etc. in "
-                                            + file.getAbsoluteFile()
-                                            + ", err:"
-                                            + e.getMessage());
-                        }
-                        break;
-                    default:
-                }
-                // System.err.println("File:" + file.getAbsoluteFile());
-                if (fParser.getDependencies() != null) {
-                    fileEntryBuilder.addAllDependencies(fParser.getDependencies());
-                }
-                if (fParser.getDynamicLoadingDependencies() != null) {
-                    fileEntryBuilder.addAllDynamicLoadingDependencies(
-                            fParser.getDynamicLoadingDependencies());
-                }
-                fileEntryBuilder.setAbiBits(fParser.getAbiBits());
-                fileEntryBuilder.setAbiArchitecture(fParser.getAbiArchitecture());
-
-                Entry fEntry = fileEntryBuilder.build();
+                ParseFileTask fTask = new ParseFileTask(file, folderRelativePath);
+                Entry fEntry = fTask.parse();
+                updateReleaseContent(fTask.mReleaseInfo, fEntry);
                 entryList.add(fEntry);
                 mEntries.put(fEntry.getRelativePath(), fEntry);
                 folderSize += file.length();
             } else if (file.isDirectory()) {
                 // Checks subfolders
                 Entry.Builder subFolderEntry = parseFolder(file.getAbsolutePath());
-                if (folderRelativePath.isEmpty()) {
-                    subFolderEntry.setParentFolder(ROOT_FOLDER_TAG);
-                } else {
-                    subFolderEntry.setParentFolder(folderRelativePath);
-                }
-                Entry sfEntry = subFolderEntry.build();
+                Entry sfEntry = getSubFolderEntry(subFolderEntry, folderRelativePath);
                 entryList.add(sfEntry);
                 mEntries.put(sfEntry.getRelativePath(), sfEntry);
                 folderSize += sfEntry.getSize();
             }
         }
+        return getFolderEntryBuilder(folderRelativePath, folderSize, entryList);
+    }
+
+    // Parse all files in a folder with a ForkJoinPool and return the foler entry builder
+    private Entry.Builder parseFolderParallel(String fPath) {
+        ForkJoinPool pool = new ForkJoinPool(mParallelism);
+        FolderResult result;
+        try {
+            result = pool.invoke(new ParseFolderTask(new File(fPath)));
+        } finally {
+            pool.shutdown();
+        }
+
+        // merges in the same order as parseFolder to keep the output deterministic
+        for (Entry entry : result.mEntries) {
+            mEntries.put(entry.getRelativePath(), entry);
+        }
+        for (ParseFileTask fTask : result.mReleaseInfoTasks) {
+            updateReleaseContent(fTask.mReleaseInfo, fTask.join());
+        }
+        return result.mFolderEntry;
+    }
+
+    // Gets a file entry from the parse cache, or null if the file needs to be parsed
+    private CachedEntry getCachedEntry(File file, String folderRelativePath) {
+        if (mParseCache == null) {
+            return null;
+        }
+        CachedEntry cachedEntry = mParseCache.get(file);
+        if (cachedEntry == null) {
+            return null;
+        }
+        // the same file may be cached from a release parsed at a different root
+        Entry.Builder fileEntryBuilder = cachedEntry.getEntry().toBuilder();
+        setEntryPath(fileEntryBuilder, file, folderRelativePath);
+        return cachedEntry.toBuilder().setEntry(fileEntryBuilder).build();
+    }
+
+    private void setEntryPath(
+            Entry.Builder fileEntryBuilder, File file, String folderRelativePath) {
+        String fileRelativePath =
+                mRootPath.relativize(Paths.get(file.getAbsolutePath())).toString();
+        fileEntryBuilder.setRelativePath(fileRelativePath);
+
+        if (folderRelativePath.isEmpty()) {
+            fileEntryBuilder.setParentFolder(ROOT_FOLDER_TAG);
+        } else {
+            fileEntryBuilder.setParentFolder(folderRelativePath);
+        }
+    }
+
+    // Parses a file and return its entry, safe to be called from any thread
+    private Entry parseFile(
+            FileParser fParser, String folderRelativePath, ReleaseContent releaseInfo) {
+        File file = fParser.getFile();
+        Entry.Builder fileEntryBuilder = fParser.getFileEntryBuilder();
+        setEntryPath(fileEntryBuilder, file, folderRelativePath);
+
+        // System.err.println("File:" + file.getAbsoluteFile());
+        if (fParser.getDependencies() != null) {
+            fileEntryBuilder.addAllDependencies(fParser.getDependencies());
+        }
+        if (fParser.getDynamicLoadingDependencies() != null) {
+            fileEntryBuilder.addAllDynamicLoadingDependencies(
+                    fParser.getDynamicLoadingDependencies());
+        }
+        fileEntryBuilder.setAbiBits(fParser.getAbiBits());
+        fileEntryBuilder.setAbiArchitecture(fParser.getAbiArchitecture());
+        Entry fEntry = fileEntryBuilder.build();
+        ContentIdHasher.Result hashResult = fParser.getHashResult();
+        if (hashResult != null) {
+            mHashResults.put(fEntry.getRelativePath(), hashResult);
+        }
+        if (mParseCache != null) {
+            mParseCache.put(file, fEntry, releaseInfo);
+        }
+        return fEntry;
+    }
+
+    // Gets release level info of a test suite tradefed jar or a build.prop, or null for other files
+    private static ReleaseContent getReleaseInfo(FileParser fParser) {
+        ReleaseContent.Builder releaseInfo = ReleaseContent.newBuilder();
+        switch (fParser.getType()) {
+            case TEST_SUITE_TRADEFED:
+                TestSuiteTradefedParser tstParser = (TestSuiteTradefedParser) fParser;
+                // get [cts]-known-failures.xml
+                releaseInfo.addAllKnownFailures(tstParser.getKnownFailureList());
+                releaseInfo.setName(tstParser.getName());
+                releaseInfo.setFullname(tstParser.getFullName());
+                releaseInfo.setBuildNumber(tstParser.getBuildNumber());
+                releaseInfo.setTargetArch(tstParser.getTargetArch());
+                releaseInfo.setVersion(tstParser.getVersion());
+                releaseInfo.setReleaseType(ReleaseType.TEST_SUITE);
+                return releaseInfo.build();
+            case BUILD_PROP:
+                BuildPropParser bpParser = (BuildPropParser) fParser;
+                try {
+                    releaseInfo.setReleaseType(ReleaseType.DEVICE_BUILD);
+                    releaseInfo.setName(bpParser.getName());
+                    releaseInfo.setFullname(bpParser.getFullName());
+                    releaseInfo.setBuildNumber(bpParser.getBuildNumber());
+                    releaseInfo.setVersion(bpParser.getVersion());
+                    releaseInfo.putAllProperties(bpParser.getProperties());
+                } catch (Exception e) {
+                    System.err.println(
+                            "No product name, version & etc. in "
+                                    + fParser.getFile().getAbsoluteFile()
+                                    + ", err:"
+                                    + e.getMessage());
+                }
+                return releaseInfo.build();
+            default:
+                return null;
+        }
+    }
+
+    // Updates release level info from a parsed or cached test suite tradefed jar or build.prop
+    private void updateReleaseContent(ReleaseContent releaseInfo, Entry fEntry) {
+        if (releaseInfo == null) {
+            return;
+        }
+        switch (fEntry.getType()) {
+            case TEST_SUITE_TRADEFED:
+                mRelContentBuilder.setTestSuiteTradefed(fEntry.getRelativePath());
+                mRelContentBuilder.addAllKnownFailures(releaseInfo.getKnownFailuresList());
+                mRelContentBuilder.setName(releaseInfo.getName());
+                mRelContentBuilder.setFullname(releaseInfo.getFullname());
+                mRelContentBuilder.setBuildNumber(releaseInfo.getBuildNumber());
+                mRelContentBuilder.setTargetArch(releaseInfo.getTargetArch());
+                mRelContentBuilder.setVersion(releaseInfo.getVersion());
+                mRelContentBuilder.setReleaseType(ReleaseType.TEST_SUITE);
+                break;
+            case BUILD_PROP:
+                mRelContentBuilder.setReleaseType(ReleaseType.DEVICE_BUILD);
+                mRelContentBuilder.setName(releaseInfo.getName());
+                mRelContentBuilder.setFullname(releaseInfo.getFullname());
+                mRelContentBuilder.setBuildNumber(releaseInfo.getBuildNumber());
+                mRelContentBuilder.setVersion(releaseInfo.getVersion());
+                mRelContentBuilder.putAllProperties(releaseInfo.getPropertiesMap());
+                break;
+            default:
+        }
+    }
+
+    private static Entry getSubFolderEntry(
+            Entry.Builder subFolderEntry, String folderRelativePath) {
+        if (folderRelativePath.isEmpty()) {
+            subFolderEntry.setParentFolder(ROOT_FOLDER_TAG);
+        } else {
+            subFolderEntry.setParentFolder(folderRelativePath);
+        }
+        return subFolderEntry.build();
+    }
+
+    private static Entry.Builder getFolderEntryBuilder(
+            String folderRelativePath, Long folderSize, List<Entry> entryList) {
+        Entry.Builder folderEntry = Entry.newBuilder();
         folderEntry.setName(folderRelativePath);
         folderEntry.setSize(folderSize);
         folderEntry.setType(Entry.EntryType.FOLDER);
@@ -253,6 +395,39 @@ class ReleaseParser {
         }
     }
 
+    // writes content ID hash throughput of parsed files to a CSV file
+    public void writeHashMetricsCsvFile(String relNameVer, String csvFile) {
+        getReleaseContent();
+        try {
+            FileWriter fWriter = new FileWriter(csvFile);
+            PrintWriter pWriter = new PrintWriter(fWriter);
+            // Header
+            pWriter.printf("release,relative_path,size,hash_time_ms,hash_mb_per_sec\n");
+            long totalSize = 0L;
+            long totalTimeNanos = 0L;
+            for (Map.Entry<String, ContentIdHasher.Result> entry :
+                    new TreeMap<String, ContentIdHasher.Result>(mHashResults).entrySet()) {
+                ContentIdHasher.Result result = entry.getValue();
+                pWriter.printf(
+                        "%s,%s,%d,%.3f,%.2f\n",
+                        relNameVer,
+                        entry.getKey(),
+                        result.getSize(),
+                        result.getTimeNanos() / 1e6,
+                        result.getThroughput());
+                totalSize += result.getSize();
+                totalTimeNanos += result.getTimeNanos();
+            }
+            pWriter.flush();
+            pWriter.close();
+            System.out.printf(
+                    "Hashed %d files, %d bytes in %d ms of hashing time\n",
+                    mHashResults.size(), totalSize, totalTimeNanos / 1000000L);
+        } catch (IOException e) {
+            System.err.println("IOException:" + e.getMessage());
+        }
+    }
+
     // writes known failures to a CSV file
     public void writeKnownFailureCsvFile(String relNameVer, String csvFile) {
         ReleaseContent relContent = getReleaseContent();
@@ -279,4 +454,97 @@ class ReleaseParser {
     public Collection<Entry> getFileEntries() {
         return getReleaseContent().getEntries().values();
     }
+
+    /** Result of a folder parsed by {@link ParseFolderTask}, in the parseFolder walk order. */
+    private static class FolderResult {
+        Entry.Builder mFolderEntry;
+        // all entries under the folder, excluding the folder itself
+        List<Entry> mEntries = new ArrayList<Entry>();
+        // parsed or cached files carrying release info, e.g. build.prop
+        List<ParseFileTask> mReleaseInfoTasks = new ArrayList<ParseFileTask>();
+    }
+
+    /** Parses a file, forked by {@link ParseFolderTask}. */
+    private class ParseFileTask extends RecursiveTask<Entry> {
+        private final File mFile;
+        private final String mFolderRelativePath;
+        // release level info of a build.prop or a test suite tradefed jar
+        private ReleaseContent mReleaseInfo;
+
+        ParseFileTask(File file, String folderRelativePath) {
+            mFile = file;
+            mFolderRelativePath = folderRelativePath;
+        }
+
+        @Override
+        protected Entry compute() {
+            return parse();
+        }
+
+        // Gets the file entry from the parse cache, or parses the file
+        Entry parse() {
+            CachedEntry cachedEntry = getCachedEntry(mFile, mFolderRelativePath);
+            if (cachedEntry != null) {
+                if (cachedEntry.hasReleaseInfo()) {
+                    mReleaseInfo = cachedEntry.getReleaseInfo();
+                }
+                return cachedEntry.getEntry();
+            }
+            FileParser fParser = FileParser.getParser(mFile);
+            mReleaseInfo = getReleaseInfo(fParser);
+            return parseFile(fParser, mFolderRelativePath, mReleaseInfo);
+        }
+    }
+
+    /** Parses files and subfolders of a folder concurrently. */
+    private class ParseFolderTask extends RecursiveTask<FolderResult> {
+        private final File mFolder;
+
+        ParseFolderTask(File folder) {
+            mFolder = folder;
+        }
+
+        @Override
+        protected FolderResult compute() {
+            Path folderPath = Paths.get(mFolder.getAbsolutePath());
+            String folderRelativePath = mRootPath.relativize(folderPath).toString();
+            File[] fileList = mFolder.listFiles();
+            List<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>();
+            for (File file : fileList) {
+                if (file.isFile()) {
+                    tasks.add(new ParseFileTask(file, folderRelativePath));
+                } else if (file.isDirectory()) {
+                    tasks.add(new ParseFolderTask(file));
+                }
+            }
+            invokeAll(tasks);
+
+            FolderResult result = new FolderResult();
+            Long folderSize = 0L;
+            List<Entry> entryList = new ArrayList<Entry>();
+            for (ForkJoinTask<?> task : tasks) {
+                if (task instanceof ParseFileTask) {
+                    Entry fEntry = ((ParseFileTask) task).join();
+                    if (((ParseFileTask) task).mReleaseInfo != null) {
+                        result.mReleaseInfoTasks.add((ParseFileTask) task);
+                    }
+                    entryList.add(fEntry);
+                    result.mEntries.add(fEntry);
+                    folderSize += ((ParseFileTask) task).mFile.length();
+                } else {
+                    FolderResult subResult = ((ParseFolderTask) task).join();
+                    Entry sfEntry =
+                            getSubFolderEntry(subResult.mFolderEntry, folderRelativePath);
+                    result.mEntries.addAll(subResult.mEntries);
+                    result.mReleaseInfoTasks.addAll(subResult.mReleaseInfoTasks);
+                    entryList.add(sfEntry);
+                    result.mEntries.add(sfEntry);
+                    folderSize += sfEntry.getSize();
+                }
+            }
+            result.mFolderEntry =
+                    getFolderEntryBuilder(folderRelativePath, folderSize, entryList);
+            return result;
+        }
+    }
 }
@@ -66,6 +66,14 @@ public class SoParser extends FileParser {
         return getFileContentId();
     }
 
+    @Override
+    public void setAdditionalInfo() {
+        // parses the ELF file while the content ID is being hashed
+        if (mDependencies == null) {
+            parse();
+        }
+    }
+
     @Override
     public List<String> getDependencies() {
         if (mDependencies == null) {
@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.cts.releaseparser;
+
+import com.android.cts.releaseparser.ReleaseProto.*;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/** Unit tests for {@link DexParser} */
+@RunWith(JUnit4.class)
+public class DexParserTest {
+    // Shell.apk's source code:
+    // android/frameworks/base/packages/Shell/AndroidManifest.xml
+    private static final String TEST_SYS_APK = "Shell.apk";
+
+    /**
+     * Test the indexed mode of {@link DexParser} returns the same classes as a full parse
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testIndexedApiClasses() throws Exception {
+        File apkFile = ClassUtils.getResrouceFile(getClass(), TEST_SYS_APK);
+        DexParser fullParser = new DexParser(apkFile);
+        fullParser.setParseInternalApi(true);
+        DexParser indexedParser = new DexParser(apkFile);
+
+        Map<String, ApiClass> externalClasses = new HashMap<String, ApiClass>();
+        for (ApiClass apiClass : fullParser.getExternalApiPackage().getClassesList()) {
+            externalClasses.put(apiClass.getName(), apiClass);
+        }
+        assertEquals(externalClasses.size(), indexedParser.getExternalClassTypes().size());
+        for (String type : indexedParser.getExternalClassTypes()) {
+            ApiClass apiClass = indexedParser.getExternalApiClass(type);
+            assertEquals(externalClasses.get(apiClass.getName()), apiClass);
+        }
+
+        List<ApiClass> internalClasses = fullParser.getInternalApiPackage().getClassesList();
+        assertEquals(internalClasses.size(), indexedParser.getInternalClassTypes().size());
+        for (String type : indexedParser.getInternalClassTypes()) {
+            assertTrue(internalClasses.contains(indexedParser.getInternalApiClass(type)));
+        }
+    }
+
+    /**
+     * Test {@link DexParser#getExternalDependencies} covers all referenced external classes
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testExternalDependencies() throws Exception {
+        File apkFile = ClassUtils.getResrouceFile(getClass(), TEST_SYS_APK);
+        DexParser aParser = new DexParser(apkFile);
+        List<String> dependencies = aParser.getExternalDependencies();
+        for (ApiClass apiClass : aParser.getExternalApiPackage().getClassesList()) {
+            if (!apiClass.getName().endsWith("[]")) {
+                assertTrue(apiClass.getName(), dependencies.contains(apiClass.getName()));
+            }
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.cts.releaseparser;
+
+import com.android.cts.releaseparser.ReleaseProto.*;
+import com.google.protobuf.TextFormat;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import static org.junit.Assert.*;
+
+/** Unit tests for {@link ReleaseParser} */
+@RunWith(JUnit4.class)
+public class ReleaseParserTest {
+    private static final String TEST_BUILD_PROP = "build.prop";
+    private static final String TEST_PLATFORM_XML = "platform.xml";
+    private static final String TEST_NDK_SO = "libEGL.so";
+    private static final String TEST_APK = "HelloActivity.apk";
+    private static final int TEST_PARALLELISM = 4;
+
+    /**
+     * Test {@link ReleaseParser} returns the same content when walking a folder in parallel
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testParallelParseFolder() throws Exception {
+        File relFolder = Files.createTempDirectory("RPT").toFile();
+        relFolder.deleteOnExit();
+        copyResource(TEST_BUILD_PROP, relFolder);
+        File etcFolder = mkdir(relFolder, "etc");
+        copyResource(TEST_PLATFORM_XML, etcFolder);
+        File libFolder = mkdir(relFolder, "lib");
+        copyResource(TEST_NDK_SO, libFolder);
+        File appFolder = mkdir(mkdir(relFolder, "app"), "HelloActivity");
+        copyResource(TEST_APK, appFolder);
+
+        ReleaseContent serialContent =
+                new ReleaseParser(relFolder.getAbsolutePath()).getReleaseContent();
+        ReleaseContent parallelContent =
+                new ReleaseParser(relFolder.getAbsolutePath(), TEST_PARALLELISM)
+                        .getReleaseContent();
+        assertTrue(
+                String.format(
+                        "Parallel parsing does not return the same ReleaseContent.\n%s\n%s",
+                        TextFormat.printToString(parallelContent),
+                        TextFormat.printToString(serialContent)),
+                parallelContent.equals(serialContent));
+        assertEquals(
+                "Parallel parsing does not keep the entry order.",
+                serialContent.getEntriesMap().keySet().toString(),
+                parallelContent.getEntriesMap().keySet().toString());
+    }
+
+    /**
+     * Test {@link ReleaseParser} skips unchanged files with a {@link ParseCache}
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testParseCache() throws Exception {
+        File relFolder = Files.createTempDirectory("RPT").toFile();
+        relFolder.deleteOnExit();
+        copyResource(TEST_BUILD_PROP, relFolder);
+        copyResource(TEST_PLATFORM_XML, relFolder);
+        File libFolder = mkdir(relFolder, "lib");
+        copyResource(TEST_NDK_SO, libFolder);
+        File cacheFile = File.createTempFile("RPC", ".pb");
+        cacheFile.deleteOnExit();
+
+        ParseCache parseCache = new ParseCache(cacheFile);
+        ReleaseParser relParser = new ReleaseParser(relFolder.getAbsolutePath());
+        relParser.setParseCache(parseCache);
+        ReleaseContent expectedContent = relParser.getReleaseContent();
+        assertEquals(0, parseCache.getHitCount());
+        assertEquals(3, parseCache.getMissCount());
+        parseCache.save();
+
+        // the release info of build.prop is restored from the cache
+        ParseCache loadedCache = new ParseCache(cacheFile);
+        relParser = new ReleaseParser(relFolder.getAbsolutePath(), TEST_PARALLELISM);
+        relParser.setParseCache(loadedCache);
+        assertEquals(expectedContent, relParser.getReleaseContent());
+        assertEquals(3, loadedCache.getHitCount());
+        assertEquals(0, loadedCache.getMissCount());
+
+        loadedCache.invalidate();
+        relParser = new ReleaseParser(relFolder.getAbsolutePath());
+        relParser.setParseCache(loadedCache);
+        assertEquals(expectedContent, relParser.getReleaseContent());
+        assertEquals(3, loadedCache.getMissCount());
+
+        // entries of deleted files are dropped on save
+        new File(libFolder, TEST_NDK_SO).delete();
+        loadedCache.save();
+        assertEquals(2, new ParseCache(cacheFile).size());
+    }
+
+    private File mkdir(File parent, String name) {
+        File folder = new File(parent, name);
+        folder.mkdirs();
+        folder.deleteOnExit();
+        return folder;
+    }
+
+    private void copyResource(String fileName, File folder) throws Exception {
+        File rFile = ClassUtils.getResrouceFile(getClass(), fileName);
+        File target = new File(folder, fileName);
+        Files.copy(rFile.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        target.deleteOnExit();
+    }
+}
@@ -28,8 +28,10 @@ import org.junit.runners.Suite.SuiteClasses;
 @RunWith(Suite.class)
 @SuiteClasses({
     ApkParserTest.class,
+    DexParserTest.class,
     SoParserTest.class,
     FileParserTest.class,
+    ReleaseParserTest.class,
 })
 public class UnitTests {
     // empty on purpose
@@ -37,6 +37,11 @@ public class BuildDalvikSuite extends BuildUtilBase {
 
     public static final String TARGET_MAIN_FILE = "mains.jar";
 
+    // the fingerprints of the build steps, to build only the steps whose inputs changed
+    private static final String BUILD_STEP_HASH_FILE_SUFFIX = ".buildsteps";
+    // the system property overriding the number of steps built at the same time
+    private static final String BUILD_THREADS_PROPERTY = "util.build.threads";
+
     // the folder for the generated junit-files for the cts host (which in turn
     // execute the real vm tests using adb push/shell etc)
     private String OUTPUT_FOLDER = "";
@@ -215,12 +220,15 @@ public class BuildDalvikSuite extends BuildUtilBase {
         scriptDataDir.mkdirs();
         writeToFile(new File(scriptDataDir, "scriptdata"), handler.datafileContent);
 
-        for (BuildStep buildStep : handler.targets) {
-            if (!buildStep.build()) {
-                System.out.println("building failed. buildStep: " +
-                        buildStep.getClass().getName() + ", " + buildStep);
-                System.exit(1);
-            }
+        // The hash file is next to the output folder, which is packaged as a whole.
+        File outputFolder = new File(OUTPUT_FOLDER).getAbsoluteFile();
+        BuildStepExecutor executor = new BuildStepExecutor(
+                new File(outputFolder.getParentFile(),
+                        outputFolder.getName() + BUILD_STEP_HASH_FILE_SUFFIX),
+                Integer.getInteger(BUILD_THREADS_PROPERTY,
+                        Runtime.getRuntime().availableProcessors()));
+        if (!executor.build(handler.targets)) {
+            System.exit(1);
         }
     }
 
@@ -21,7 +21,9 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.channels.FileChannel;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 abstract class BuildStep implements Comparable<BuildStep> {
@@ -80,6 +82,9 @@ abstract class BuildStep implements Comparable<BuildStep> {
 
     private Set<BuildStep> children;
 
+    /**
+     * Builds the children of this step one after another, then this step.
+     */
     boolean build() {
         if (children != null) {
             for (BuildStep child : children) {
@@ -88,7 +93,36 @@ abstract class BuildStep implements Comparable<BuildStep> {
                 }
             }
         }
-        return true;
+        return buildSelf();
+    }
+
+    /**
+     * Builds this step only, once the outputs of its children are available.
+     */
+    abstract boolean buildSelf();
+
+    /**
+     * Returns the files read by this step. Some of them may be the outputs of its children.
+     */
+    List<File> getInputFiles() {
+        if (inputFile == null) {
+            return Collections.emptyList();
+        }
+        return Collections.singletonList(inputFile.fileName);
+    }
+
+    /**
+     * Returns the files written by this step.
+     */
+    List<File> getOutputFiles() {
+        return Collections.singletonList(outputFile.fileName);
+    }
+
+    Set<BuildStep> getChildren() {
+        if (children == null) {
+            return Collections.emptySet();
+        }
+        return children;
     }
 
     @Override
@@ -0,0 +1,362 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package util.build;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Builds {@link BuildStep}s and their children on a pool of worker threads.
+ *
+ * <p>A step is started as soon as all of its children are built, so that independent steps run
+ * at the same time. A step is not built again if its output file exists and the fingerprint of
+ * its inputs is the one recorded in the hash file by the last build. The fingerprint covers the
+ * contents of the input files which are not produced by a child, and the fingerprints of the
+ * children.
+ */
+class BuildStepExecutor {
+
+    private static final String HASH_ALGORITHM = "SHA-256";
+    private static final int REPORTED_SLOWEST_STEPS = 10;
+
+    private final File hashFile;
+    private final int threadCount;
+
+    /** Fingerprints recorded by the last build, by output path. */
+    private final Properties recordedFingerprints = new Properties();
+    /** Fingerprints of the steps which are built or up to date, by output path. */
+    private final Properties currentFingerprints = new Properties();
+
+    private final Map<BuildStep, String> fingerprints = new HashMap<BuildStep, String>();
+    private final Set<BuildStep> upToDateSteps = new HashSet<BuildStep>();
+    /** Number of children left to build, for each step to build. */
+    private final Map<BuildStep, Integer> pendingChildren = new HashMap<BuildStep, Integer>();
+    /** Steps to build which depend on a step to build. */
+    private final Map<BuildStep, List<BuildStep>> parents = new HashMap<BuildStep, List<BuildStep>>();
+    private final List<BuildStep> readySteps = new ArrayList<BuildStep>();
+
+    /**
+     * @param hashFile the file recording the fingerprints of the steps between builds
+     * @param threadCount the number of steps to build at the same time
+     */
+    BuildStepExecutor(File hashFile, int threadCount) {
+        this.hashFile = hashFile;
+        this.threadCount = threadCount;
+    }
+
+    private static class StepResult {
+        final BuildStep step;
+        final boolean success;
+        final long elapsedNanos;
+
+        StepResult(BuildStep step, boolean success, long elapsedNanos) {
+            this.step = step;
+            this.success = success;
+            this.elapsedNanos = elapsedNanos;
+        }
+    }
+
+    /**
+     * Builds the targets and the children they need, and prints the time spent per step.
+     *
+     * @return false if a step failed; the steps depending on it are not built
+     */
+    boolean build(Collection<BuildStep> targets) {
+        long start = System.nanoTime();
+        loadFingerprints();
+        for (BuildStep target : targets) {
+            schedule(target);
+        }
+        System.out.println("building " + pendingChildren.size() + " steps on " + threadCount
+                + " threads, " + upToDateSteps.size() + " steps are up to date");
+
+        List<StepResult> results = new ArrayList<StepResult>();
+        boolean success = true;
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        try {
+            CompletionService<StepResult> completionService =
+                    new ExecutorCompletionService<StepResult>(executor);
+            int running = 0;
+            for (BuildStep step : readySteps) {
+                completionService.submit(() -> buildStep(step));
+                running++;
+            }
+            while (running > 0) {
+                StepResult result = completionService.take().get();
+                running--;
+                results.add(result);
+                BuildStep step = result.step;
+                if (!result.success) {
+                    System.out.println("building failed. buildStep: " +
+                            step.getClass().getName() + ", " + step);
+                    success = false;
+                    continue;
+                }
+                currentFingerprints.setProperty(step.outputFile.getPath(), fingerprints.get(step));
+                if (!success || !parents.containsKey(step)) {
+                    continue;
+                }
+                for (BuildStep parent : parents.get(step)) {
+                    int pending = pendingChildren.get(parent) - 1;
+                    pendingChildren.put(parent, pending);
+                    if (pending == 0) {
+                        completionService.submit(() -> buildStep(parent));
+                        running++;
+                    }
+                }
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException("failed to build steps", e);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        storeFingerprints();
+        printTimings(results, System.nanoTime() - start);
+        return success;
+    }
+
+    /**
+     * Returns true if the step has to be built, in which case it is scheduled after those of
+     * its children which have to be built too.
+     */
+    private boolean schedule(BuildStep step) {
+        if (pendingChildren.containsKey(step)) {
+            return true;
+        }
+        if (upToDateSteps.contains(step)) {
+            return false;
+        }
+        String fingerprint = getFingerprint(step);
+        if (fingerprint.equals(recordedFingerprints.getProperty(step.outputFile.getPath()))
+                && outputsExist(step)) {
+            upToDateSteps.add(step);
+            keepFingerprints(step);
+            return false;
+        }
+
+        int count = 0;
+        for (BuildStep child : step.getChildren()) {
+            if (schedule(child)) {
+                parents.computeIfAbsent(child, k -> new ArrayList<BuildStep>()).add(step);
+                count++;
+            }
+        }
+        pendingChildren.put(step, count);
+        if (count == 0) {
+            readySteps.add(step);
+        }
+        return true;
+    }
+
+    /**
+     * Keeps the fingerprints of an up to date step and of its children for the next build. The
+     * children are not scheduled, but may still have to be built for another step if their
+     * outputs are gone.
+     */
+    private void keepFingerprints(BuildStep step) {
+        String path = step.outputFile.getPath();
+        if (currentFingerprints.containsKey(path)) {
+            return;
+        }
+        currentFingerprints.setProperty(path, getFingerprint(step));
+        for (BuildStep child : step.getChildren()) {
+            keepFingerprints(child);
+        }
+    }
+
+    private static boolean outputsExist(BuildStep step) {
+        for (File output : step.getOutputFiles()) {
+            if (!output.exists()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static StepResult buildStep(BuildStep step) {
+        long start = System.nanoTime();
+        boolean success;
+        try {
+            success = step.buildSelf();
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            success = false;
+        }
+        return new StepResult(step, success, System.nanoTime() - start);
+    }
+
+    private String getFingerprint(BuildStep step) {
+        String fingerprint = fingerprints.get(step);
+        if (fingerprint != null) {
+            return fingerprint;
+        }
+
+        MessageDigest digest = newDigest();
+        update(digest, step.getClass().getName());
+        update(digest, step.outputFile.getPath());
+        for (File output : step.getOutputFiles()) {
+            update(digest, output.getAbsolutePath());
+        }
+        Set<File> childOutputs = new HashSet<File>();
+        // Sorted by output path, so that the fingerprint does not depend on the set order.
+        for (BuildStep child : new TreeSet<BuildStep>(step.getChildren())) {
+            childOutputs.add(child.outputFile.fileName.getAbsoluteFile());
+            update(digest, getFingerprint(child));
+        }
+        for (File input : step.getInputFiles()) {
+            File absoluteInput = input.getAbsoluteFile();
+            update(digest, absoluteInput.getPath());
+            if (!childOutputs.contains(absoluteInput)) {
+                updateWithContents(digest, absoluteInput.toPath());
+            }
+        }
+
+        fingerprint = toHex(digest.digest());
+        fingerprints.put(step, fingerprint);
+        return fingerprint;
+    }
+
+    private static void updateWithContents(MessageDigest digest, Path path) {
+        try {
+            if (Files.isDirectory(path)) {
+                List<Path> files;
+                try (Stream<Path> stream = Files.walk(path)) {
+                    files = stream.filter(Files::isRegularFile).sorted()
+                            .collect(Collectors.toList());
+                }
+                for (Path file : files) {
+                    update(digest, path.relativize(file).toString());
+                    digest.update(Files.readAllBytes(file));
+                }
+            } else if (Files.isRegularFile(path)) {
+                digest.update(Files.readAllBytes(path));
+            } else {
+                // Let the step report the missing input.
+                update(digest, "missing");
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("failed to read " + path, e);
+        }
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        digest.update(value.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(HASH_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder builder = new StringBuilder(2 * bytes.length);
+        for (byte b : bytes) {
+            builder.append(Character.forDigit((b >> 4) & 0xf, 16));
+            builder.append(Character.forDigit(b & 0xf, 16));
+        }
+        return builder.toString();
+    }
+
+    private void loadFingerprints() {
+        if (!hashFile.exists()) {
+            return;
+        }
+        try (InputStream in = new FileInputStream(hashFile)) {
+            recordedFingerprints.load(in);
+        } catch (IOException e) {
+            // Build everything again.
+            System.err.println("failed to read " + hashFile.getAbsolutePath() + ": "
+                    + e.getMessage());
+            recordedFingerprints.clear();
+        }
+    }
+
+    private void storeFingerprints() {
+        // Intermediate outputs are deleted by the steps reading them, they cannot be up to date.
+        currentFingerprints.keySet().removeIf(path -> !new File((String) path).exists());
+        File parent = hashFile.getAbsoluteFile().getParentFile();
+        if (!parent.mkdirs() && !parent.isDirectory()) {
+            System.err.println("failed to create directory: " + parent.getAbsolutePath());
+            return;
+        }
+        try (OutputStream out = new FileOutputStream(hashFile)) {
+            currentFingerprints.store(out, null);
+        } catch (IOException e) {
+            System.err.println("failed to write " + hashFile.getAbsolutePath() + ": "
+                    + e.getMessage());
+        }
+    }
+
+    private void printTimings(List<StepResult> results, long elapsedNanos) {
+        Map<String, long[]> totals = new TreeMap<String, long[]>();
+        for (StepResult result : results) {
+            long[] total = totals.computeIfAbsent(result.step.getClass().getSimpleName(),
+                    k -> new long[2]);
+            total[0]++;
+            total[1] += result.elapsedNanos;
+        }
+        System.out.println("built " + results.size() + " steps in " + elapsedNanos / 1000000
+                + " ms, skipped " + upToDateSteps.size() + " steps which are up to date");
+        for (Map.Entry<String, long[]> entry : totals.entrySet()) {
+            long[] total = entry.getValue();
+            System.out.println("  " + entry.getKey() + ": " + total[0] + " steps, "
+                    + total[1] / 1000000 + " ms in total, " + total[1] / total[0] / 1000
+                    + " us per step");
+        }
+
+        List<StepResult> slowest = new ArrayList<StepResult>(results);
+        Collections.sort(slowest, (r1, r2) -> Long.compare(r2.elapsedNanos, r1.elapsedNanos));
+        for (StepResult result : slowest.subList(0,
+                Math.min(REPORTED_SLOWEST_STEPS, slowest.size()))) {
+            System.out.println("  " + result.elapsedNanos / 1000000 + " ms: "
+                    + result.step.getClass().getSimpleName() + " "
+                    + result.step.outputFile.getPath());
+        }
+    }
+}
@@ -41,34 +41,30 @@ public class D8BuildStep extends BuildStep {
   }
 
   @Override
-  boolean build() {
-
-    if (super.build()) {
-      try {
-        builder.setOutput(Paths.get(outputFile.fileName.getAbsolutePath()), OutputMode.DexIndexed);
-        Files.find(
-                Paths.get(inputFile.fileName.getAbsolutePath()),
-                1000,
-                D8BuildStep::isJarOrClassFile)
-            .forEach(
-                p -> {
-                  try {
-                    builder.addProgramFiles(p);
-                  } catch (Throwable e) {
-                    e.printStackTrace();
-                  }
-                });
-        D8.run(builder.build());
-      } catch (Throwable e) {
-        e.printStackTrace();
-        return false;
-      }
-      if (deleteInputFileAfterBuild) {
-        inputFile.fileName.delete();
-      }
-      return true;
+  boolean buildSelf() {
+    try {
+      builder.setOutput(Paths.get(outputFile.fileName.getAbsolutePath()), OutputMode.DexIndexed);
+      Files.find(
+              Paths.get(inputFile.fileName.getAbsolutePath()),
+              1000,
+              D8BuildStep::isJarOrClassFile)
+          .forEach(
+              p -> {
+                try {
+                  builder.addProgramFiles(p);
+                } catch (Throwable e) {
+                  e.printStackTrace();
+                }
+              });
+      D8.run(builder.build());
+    } catch (Throwable e) {
+      e.printStackTrace();
+      return false;
     }
-    return false;
+    if (deleteInputFileAfterBuild) {
+      inputFile.fileName.delete();
+    }
+    return true;
   }
 
   @Override
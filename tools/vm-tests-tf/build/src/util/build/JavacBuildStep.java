@@ -19,10 +19,12 @@ package util.build;
 import java.io.File;
 import java.lang.Iterable;
 import java.util.stream.Collectors;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.TreeSet;
 import javax.tools.JavaCompiler;
 import javax.tools.JavaFileObject;
 import javax.tools.StandardJavaFileManager;
@@ -46,54 +48,67 @@ public class JavacBuildStep extends SourceBuildStep {
         sourceFiles.add(sourceFile);
     }
 
+    /**
+     * Returns the source files in order, then the class path entries, which are read as well.
+     */
     @Override
-    boolean build() {
-        if (super.build())
-        {
-            if (sourceFiles.isEmpty())
-            {
-                return true;
+    List<File> getInputFiles() {
+        List<File> files = new ArrayList<File>();
+        for (String sourceFile : new TreeSet<String>(sourceFiles)) {
+            files.add(new File(sourceFile));
+        }
+        for (String classPathEntry : classPath.split(":")) {
+            if (!classPathEntry.isEmpty()) {
+                files.add(new File(classPathEntry));
             }
+        }
+        return files;
+    }
 
-            File destFile = new File(destPath);
-            if (!destFile.exists() && !destFile.mkdirs())
-            {
-                System.err.println("failed to create destination dir");
-                return false;
-            }
+    @Override
+    boolean buildSelf() {
+        if (sourceFiles.isEmpty())
+        {
+            return true;
+        }
+
+        File destFile = new File(destPath);
+        if (!destFile.exists() && !destFile.mkdirs())
+        {
+            System.err.println("failed to create destination dir");
+            return false;
+        }
 
-            Iterable<File> classPathFiles = Arrays.asList(classPath.split(":"))
-                    .stream()
-                    .map(File::new)
-                    .collect(Collectors.toList());
+        Iterable<File> classPathFiles = Arrays.asList(classPath.split(":"))
+                .stream()
+                .map(File::new)
+                .collect(Collectors.toList());
 
-            JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
-            try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(
-                    null,     // diagnosticListener: we don't care about the details.
-                    null,     // locale: use default locale.
-                    null)) {  // charset: use platform default.
-                fileManager.setLocation(StandardLocation.CLASS_OUTPUT, Arrays.asList(
-                        new File(destPath)));
-                fileManager.setLocation(StandardLocation.CLASS_PATH, classPathFiles);
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(
+                null,     // diagnosticListener: we don't care about the details.
+                null,     // locale: use default locale.
+                null)) {  // charset: use platform default.
+            fileManager.setLocation(StandardLocation.CLASS_OUTPUT, Arrays.asList(
+                    new File(destPath)));
+            fileManager.setLocation(StandardLocation.CLASS_PATH, classPathFiles);
 
-                Iterable<? extends JavaFileObject> compilationUnits =
-                        fileManager.getJavaFileObjectsFromStrings(sourceFiles);
+            Iterable<? extends JavaFileObject> compilationUnits =
+                    fileManager.getJavaFileObjectsFromStrings(sourceFiles);
 
-                List<String> options = Arrays.asList("-source", "1.7", "-target", "1.7");
+            List<String> options = Arrays.asList("-source", "1.7", "-target", "1.7");
 
-                return compiler.getTask(
-                        null,  // out: write errors to System.err.
-                        fileManager,
-                        null,  // diagnosticListener: we don't care about the details.
-                        options,
-                        null,  // classes: classes for annotation processing = none.
-                        compilationUnits).call();
-            } catch (Exception e) {
-                e.printStackTrace();
-                return false;
-            }
+            return compiler.getTask(
+                    null,  // out: write errors to System.err.
+                    fileManager,
+                    null,  // diagnosticListener: we don't care about the details.
+                    options,
+                    null,  // classes: classes for annotation processing = none.
+                    compilationUnits).call();
+        } catch (Exception e) {
+            e.printStackTrace();
+            return false;
         }
-        return false;
     }
 
     @Override
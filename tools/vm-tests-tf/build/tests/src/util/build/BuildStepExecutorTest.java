@@ -0,0 +1,250 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package util.build;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/** Unit tests for {@link BuildStepExecutor} */
+@RunWith(JUnit4.class)
+public class BuildStepExecutorTest {
+    private static final int THREAD_COUNT = 4;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    /** Names of the steps in the order they were built */
+    private final List<String> mBuilt = Collections.synchronizedList(new ArrayList<String>());
+
+    /**
+     * Test the steps are built after their children, once each, even when a child is shared
+     */
+    @Test
+    public void testBuildsChildrenFirst() throws Exception {
+        Graph graph = new Graph();
+
+        assertTrue(newExecutor().build(graph.targets()));
+
+        assertEquals(4, mBuilt.size());
+        assertBuiltBefore("a", "c");
+        assertBuiltBefore("b", "c");
+        assertBuiltBefore("c", "d");
+        assertBuiltBefore("a", "d");
+        assertEquals("a\nb\na\n", read(graph.d.outputFile.fileName));
+    }
+
+    /**
+     * Test a second build skips all the steps, and changing an input rebuilds only the steps
+     * depending on it
+     */
+    @Test
+    public void testSkipsUpToDateSteps() throws Exception {
+        assertTrue(newExecutor().build(new Graph().targets()));
+        mBuilt.clear();
+
+        assertTrue(newExecutor().build(new Graph().targets()));
+        assertEquals(Collections.emptyList(), mBuilt);
+
+        write("b.in", "b changed\n");
+        assertTrue(newExecutor().build(new Graph().targets()));
+        assertEquals(Arrays.asList("b", "c", "d"), mBuilt);
+    }
+
+    /**
+     * Test a step is built again when its output is deleted
+     */
+    @Test
+    public void testRebuildsMissingOutput() throws Exception {
+        Graph graph = new Graph();
+        assertTrue(newExecutor().build(graph.targets()));
+        mBuilt.clear();
+
+        assertTrue(graph.d.outputFile.fileName.delete());
+        assertTrue(newExecutor().build(new Graph().targets()));
+        assertEquals(Arrays.asList("d"), mBuilt);
+    }
+
+    /**
+     * Test the steps depending on a failed step are not built
+     */
+    @Test
+    public void testFailedStepStopsParents() throws Exception {
+        Graph graph = new Graph();
+        graph.b.mFail = true;
+
+        assertFalse(newExecutor().build(graph.targets()));
+
+        assertFalse(mBuilt.contains("c"));
+        assertFalse(mBuilt.contains("d"));
+    }
+
+    /**
+     * Test a {@link JavacBuildStep} is skipped while its sources are unchanged, and built again
+     * once one of them changes
+     */
+    @Test
+    public void testRebuildsJavacStepWhenSourceChanges() throws Exception {
+        File source = write("src/Foo.java", "class Foo {}\n");
+        File classes = new File(mFolder.getRoot(), "classes");
+        File classFile = new File(classes, "Foo.class");
+
+        assertTrue(newExecutor().build(javacTarget(classes, source)));
+        assertTrue(classFile.exists());
+
+        assertTrue(classFile.delete());
+        assertTrue(newExecutor().build(javacTarget(classes, source)));
+        assertFalse(classFile.exists());
+
+        write("src/Foo.java", "class Foo { int bar; }\n");
+        assertTrue(newExecutor().build(javacTarget(classes, source)));
+        assertTrue(classFile.exists());
+    }
+
+    private BuildStepExecutor newExecutor() {
+        return new BuildStepExecutor(new File(mFolder.getRoot(), "hashes.properties"),
+                THREAD_COUNT);
+    }
+
+    private static List<BuildStep> javacTarget(File classes, File source) {
+        JavacBuildStep step = new JavacBuildStep(classes.getPath(), "");
+        step.addSourceFile(source.getPath());
+        return Collections.<BuildStep>singletonList(step);
+    }
+
+    private void assertBuiltBefore(String child, String parent) {
+        assertTrue(child + " built after " + parent + ": " + mBuilt,
+                mBuilt.indexOf(child) < mBuilt.indexOf(parent));
+    }
+
+    private File write(String name, String content) throws IOException {
+        File file = new File(mFolder.getRoot(), name);
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Steps a and b read an input file each, c reads the outputs of a and b, and d those of c
+     * and a
+     */
+    private class Graph {
+        final FakeStep a;
+        final FakeStep b;
+        final FakeStep c;
+        final FakeStep d;
+
+        Graph() throws IOException {
+            File aInput = new File(mFolder.getRoot(), "a.in");
+            if (!aInput.exists()) {
+                write("a.in", "a\n");
+            }
+            File bInput = new File(mFolder.getRoot(), "b.in");
+            if (!bInput.exists()) {
+                write("b.in", "b\n");
+            }
+            a = new FakeStep("a", aInput);
+            b = new FakeStep("b", bInput);
+            c = new FakeStep("c", a, b);
+            d = new FakeStep("d", c, a);
+        }
+
+        List<BuildStep> targets() {
+            return Arrays.<BuildStep>asList(d, b);
+        }
+    }
+
+    /** Writes the contents of its inputs to its output, one after another */
+    private class FakeStep extends BuildStep {
+        private final String mName;
+        private final List<File> mInputs = new ArrayList<File>();
+        boolean mFail;
+
+        FakeStep(String name, File input) {
+            super(new File(mFolder.getRoot(), name + ".out"));
+            mName = name;
+            mInputs.add(input);
+        }
+
+        FakeStep(String name, FakeStep... children) {
+            super(new File(mFolder.getRoot(), name + ".out"));
+            mName = name;
+            for (FakeStep child : children) {
+                addChild(child);
+                mInputs.add(child.outputFile.fileName);
+            }
+        }
+
+        @Override
+        boolean buildSelf() {
+            if (mFail) {
+                return false;
+            }
+            StringBuilder content = new StringBuilder();
+            try {
+                for (File input : mInputs) {
+                    content.append(read(input));
+                }
+                Files.write(outputFile.fileName.toPath(),
+                        content.toString().getBytes(StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                return false;
+            }
+            mBuilt.add(mName);
+            return true;
+        }
+
+        @Override
+        List<File> getInputFiles() {
+            return mInputs;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return super.equals(obj) && mName.equals(((FakeStep) obj).mName);
+        }
+
+        @Override
+        public int hashCode() {
+            return mName.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return mName;
+        }
+    }
+}